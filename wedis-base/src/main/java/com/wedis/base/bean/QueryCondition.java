@@ -0,0 +1,35 @@
+package com.wedis.base.bean;
+
+/**
+ * 值查询的一个条件，例如 user.id == 42
+ */
+public class QueryCondition {
+	private String path; // 以.分隔的字段名、map的key或下标，为空表示整个值
+	private String op = "=="; // ==、!=、>、>=、<、<=、contains、exists
+	private String value; // 比较的值，数字按数值比较，null匹配不存在或为null的值
+
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	public String getOp() {
+		return op;
+	}
+
+	public void setOp(String op) {
+		this.op = op;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public void setValue(String value) {
+		this.value = value;
+	}
+
+}
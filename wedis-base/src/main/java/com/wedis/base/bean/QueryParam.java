@@ -0,0 +1,61 @@
+package com.wedis.base.bean;
+
+import java.util.List;
+
+public class QueryParam {
+	private String cursor = "0"; // 继续查询的游标，为空或"0"时从头开始
+	private Integer count = 500; // 每批SCAN并解码的key数量
+	private String match; // MATCH表达式
+	private List<QueryCondition> conditions; // 所有条件都满足时匹配
+	private Integer limit = 1000; // 最多返回的匹配key数量
+	private Integer rate; // 每秒最多扫描的key数量，为空时使用服务端的上限
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+	public Integer getCount() {
+		return count;
+	}
+
+	public void setCount(Integer count) {
+		this.count = count;
+	}
+
+	public String getMatch() {
+		return match;
+	}
+
+	public void setMatch(String match) {
+		this.match = match;
+	}
+
+	public List<QueryCondition> getConditions() {
+		return conditions;
+	}
+
+	public void setConditions(List<QueryCondition> conditions) {
+		this.conditions = conditions;
+	}
+
+	public Integer getLimit() {
+		return limit;
+	}
+
+	public void setLimit(Integer limit) {
+		this.limit = limit;
+	}
+
+	public Integer getRate() {
+		return rate;
+	}
+
+	public void setRate(Integer rate) {
+		this.rate = rate;
+	}
+
+}
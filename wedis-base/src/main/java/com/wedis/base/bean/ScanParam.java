@@ -0,0 +1,41 @@
+package com.wedis.base.bean;
+
+public class ScanParam {
+	private String cursor = "0"; // SCAN游标，"0"表示从头开始
+	private Integer count = 100; // 每页返回的key数量
+	private String match; // MATCH表达式
+	private String type; // 按类型过滤(string/list/set/zset/hash)
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+	public Integer getCount() {
+		return count;
+	}
+
+	public void setCount(Integer count) {
+		this.count = count;
+	}
+
+	public String getMatch() {
+		return match;
+	}
+
+	public void setMatch(String match) {
+		this.match = match;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+}
@@ -7,7 +7,12 @@ public class CacheDto implements Serializable {
 	private static final long serialVersionUID = -661965120840403114L;
 
 	private String key;
-	private String value;
+	private String value; // 值的预览
+	private String type;
+	private Long ttl; // 剩余过期时间，毫秒，-1表示永不过期，-2表示key不存在
+	private Long size; // 占用内存，字节
+	private Long length; // 字符串的字节数或集合的元素个数
+	private String format; // 字符串类型的值按开头的字节识别出的格式，见SerializeType
 
 	public String getKey() {
 		return key;
@@ -25,4 +30,44 @@ public class CacheDto implements Serializable {
 		this.value = value;
 	}
 
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public Long getTtl() {
+		return ttl;
+	}
+
+	public void setTtl(Long ttl) {
+		this.ttl = ttl;
+	}
+
+	public Long getSize() {
+		return size;
+	}
+
+	public void setSize(Long size) {
+		this.size = size;
+	}
+
+	public Long getLength() {
+		return length;
+	}
+
+	public void setLength(Long length) {
+		this.length = length;
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	public void setFormat(String format) {
+		this.format = format;
+	}
+
 }
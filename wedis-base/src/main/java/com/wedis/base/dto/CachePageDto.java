@@ -0,0 +1,37 @@
+package com.wedis.base.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class CachePageDto implements Serializable {
+
+	private static final long serialVersionUID = 2389125170933528187L;
+
+	private String cursor; // 下一次SCAN的游标，"0"表示已遍历完成
+	private List<CacheDto> caches;
+
+	public CachePageDto() {
+	}
+
+	public CachePageDto(String cursor, List<CacheDto> caches) {
+		this.cursor = cursor;
+		this.caches = caches;
+	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+	public List<CacheDto> getCaches() {
+		return caches;
+	}
+
+	public void setCaches(List<CacheDto> caches) {
+		this.caches = caches;
+	}
+
+}
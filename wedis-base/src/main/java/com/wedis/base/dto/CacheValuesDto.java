@@ -0,0 +1,57 @@
+package com.wedis.base.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class CacheValuesDto implements Serializable {
+
+	private static final long serialVersionUID = -4180312376915048711L;
+
+	private List<CacheDto> caches; // value为反序列化后的json，失败时为(error)开头的错误信息
+	private int failed; // 反序列化失败的个数
+	private long elapsed; // 整批反序列化的耗时，微秒
+	private long maxElapsed; // 耗时最长的一个值的耗时，微秒
+
+	public CacheValuesDto() {
+	}
+
+	public CacheValuesDto(List<CacheDto> caches, int failed, long elapsed, long maxElapsed) {
+		this.caches = caches;
+		this.failed = failed;
+		this.elapsed = elapsed;
+		this.maxElapsed = maxElapsed;
+	}
+
+	public List<CacheDto> getCaches() {
+		return caches;
+	}
+
+	public void setCaches(List<CacheDto> caches) {
+		this.caches = caches;
+	}
+
+	public int getFailed() {
+		return failed;
+	}
+
+	public void setFailed(int failed) {
+		this.failed = failed;
+	}
+
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	public void setElapsed(long elapsed) {
+		this.elapsed = elapsed;
+	}
+
+	public long getMaxElapsed() {
+		return maxElapsed;
+	}
+
+	public void setMaxElapsed(long maxElapsed) {
+		this.maxElapsed = maxElapsed;
+	}
+
+}
@@ -9,6 +9,15 @@ public class ConnectionDto implements Serializable {
 	private String host;
 	private int port;
 	private String pwd;
+	// 连接池设置，为空时使用application.properties中的默认值
+	private Integer maxTotal; // 连接池最大连接数
+	private Integer maxIdle; // 连接池最大空闲连接数
+	private Integer minIdle; // 连接池最小空闲连接数
+	private Long maxWaitMillis; // 获取连接的最长等待时间(毫秒)
+	private Integer timeout; // 连接/读取超时时间(毫秒)
+	private Integer preWarm; // 连接池创建后预先建立的连接数
+	private Long lastUsed; // 最近使用时间
+	private String classPath; // 解码用的应用jar或目录，多个以;或换行分隔
 
 	public Long getId() {
 		return id;
@@ -49,4 +58,68 @@ public class ConnectionDto implements Serializable {
 	public void setPwd(String pwd) {
 		this.pwd = pwd;
 	}
+
+	public Integer getMaxTotal() {
+		return maxTotal;
+	}
+
+	public void setMaxTotal(Integer maxTotal) {
+		this.maxTotal = maxTotal;
+	}
+
+	public Integer getMaxIdle() {
+		return maxIdle;
+	}
+
+	public void setMaxIdle(Integer maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	public Integer getMinIdle() {
+		return minIdle;
+	}
+
+	public void setMinIdle(Integer minIdle) {
+		this.minIdle = minIdle;
+	}
+
+	public Long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	public void setMaxWaitMillis(Long maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	public Integer getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(Integer timeout) {
+		this.timeout = timeout;
+	}
+
+	public Integer getPreWarm() {
+		return preWarm;
+	}
+
+	public void setPreWarm(Integer preWarm) {
+		this.preWarm = preWarm;
+	}
+
+	public Long getLastUsed() {
+		return lastUsed;
+	}
+
+	public void setLastUsed(Long lastUsed) {
+		this.lastUsed = lastUsed;
+	}
+
+	public String getClassPath() {
+		return classPath;
+	}
+
+	public void setClassPath(String classPath) {
+		this.classPath = classPath;
+	}
 }
@@ -0,0 +1,96 @@
+package com.wedis.base.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class QueryPageDto implements Serializable {
+
+	private static final long serialVersionUID = 6419825037714261553L;
+
+	private long queryId; // 用于取消查询
+	private String cursor; // 已经扫描完的位置，从这里继续查询，为空时从头开始，"0"表示已遍历完成
+	private long scanned; // 累计扫描的key数量
+	private long matched; // 累计匹配的key数量
+	private long failed; // 累计解码失败的值的数量
+	private List<CacheDto> caches; // 这一批匹配的key，value为条件中各个path的值的json
+	private boolean done; // 最后一批，查询已经结束
+	private boolean cancelled; // 查询被取消
+
+	public QueryPageDto() {
+	}
+
+	public QueryPageDto(long queryId, String cursor, long scanned, long matched, long failed,
+		List<CacheDto> caches) {
+		this.queryId = queryId;
+		this.cursor = cursor;
+		this.scanned = scanned;
+		this.matched = matched;
+		this.failed = failed;
+		this.caches = caches;
+	}
+
+	public long getQueryId() {
+		return queryId;
+	}
+
+	public void setQueryId(long queryId) {
+		this.queryId = queryId;
+	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+	public long getScanned() {
+		return scanned;
+	}
+
+	public void setScanned(long scanned) {
+		this.scanned = scanned;
+	}
+
+	public long getMatched() {
+		return matched;
+	}
+
+	public void setMatched(long matched) {
+		this.matched = matched;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	public void setFailed(long failed) {
+		this.failed = failed;
+	}
+
+	public List<CacheDto> getCaches() {
+		return caches;
+	}
+
+	public void setCaches(List<CacheDto> caches) {
+		this.caches = caches;
+	}
+
+	public boolean isDone() {
+		return done;
+	}
+
+	public void setDone(boolean done) {
+		this.done = done;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public void setCancelled(boolean cancelled) {
+		this.cancelled = cancelled;
+	}
+
+}
@@ -7,6 +7,13 @@ public enum ResponseCode {
 	AUTH_FAILED(502),// redis密码错误
 	DUPLICATE_KEY(503),// 重复的key
 	JDK_DESERIALIZE_FAILED(504), // jdk反序列化异常
+	KEY_NOT_EXIST(505), // key不存在或不是字符串类型
+	VALUE_DECODE_FAILED(506), // json、压缩等其他格式的值解码异常
+	QUERY_INVALID(507), // 值查询的条件错误
+	QUERY_REJECTED(508), // 同时执行的值查询过多
+	JAR_INVALID(509), // 上传的应用jar无效
+	JDK_SERIALIZE_FAILED(510), // jdk序列化异常
+	SETTING_INVALID(511), // 连接设置超出范围
 	;
 	
 	private int code;
@@ -2,5 +2,16 @@ package com.wedis.base.enums;
 
 public enum SerializeType {
 	JDK, // 自定义的object反序列化
+	AUTO, // 按每个值开头的字节识别格式
+	JSON, // utf-8编码的json
+	GZIP, // gzip压缩，解压后再识别内部的格式
+	ZLIB, // zlib(deflate)压缩，解压后再识别内部的格式
+	LZ4, // lz4 frame格式压缩，解压后再识别内部的格式
+	SNAPPY, // snappy framing格式或snappy-java流压缩，解压后再识别内部的格式
+	MSGPACK, // MessagePack
+	HESSIAN2, // Hessian 2.0序列化
+	PROTOBUF, // protobuf wire format，没有.proto时按字段编号显示
+	STRING, // utf-8文本
+	BYTES, // 无法识别的二进制，按\xHH显示
 	;
 }
@@ -0,0 +1,72 @@
+package com.wedis.base.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * redis中的key/value都是二进制，展示时对32-126的数据转换成字符，其他的转换成\xHH，
+ * 反斜杠转义成\\，以保证能够无损的转换回byte[]
+ */
+public class BinaryUtil {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	public static String toPrintable(byte[] bytes) {
+		if(bytes == null)
+			return null;
+		return toPrintable(bytes, 0, bytes.length);
+	}
+
+	public static String toPrintable(byte[] bytes, int off, int len) {
+		StringBuilder sb = new StringBuilder(len);
+		for(int i = off; i < off + len; i++){
+			int b = bytes[i] & 0xFF;
+			if(b == '\\'){
+				sb.append("\\\\");
+			}else if(b >= 32 && b <= 126){
+				sb.append((char)b);
+			}else{
+				sb.append("\\x").append(HEX[b >> 4]).append(HEX[b & 0x0F]);
+			}
+		}
+		return sb.toString();
+	}
+
+	public static byte[] fromPrintable(String s) {
+		if(s == null)
+			return null;
+		ByteArrayOutputStream out = new ByteArrayOutputStream(s.length());
+		int len = s.length();
+		for(int i = 0; i < len; i++){
+			char c = s.charAt(i);
+			if(c == '\\' && i + 1 < len){
+				char n = s.charAt(i + 1);
+				if(n == '\\'){
+					out.write('\\');
+					i++;
+					continue;
+				}else if(n == 'x' && i + 3 < len){
+					int hi = Character.digit(s.charAt(i + 2), 16);
+					int lo = Character.digit(s.charAt(i + 3), 16);
+					if(hi >= 0 && lo >= 0){
+						out.write((hi << 4) | lo);
+						i += 3;
+						continue;
+					}
+				}
+			}
+			if(c < 0x80){
+				out.write(c);
+			}else{
+				// 用户手工输入的非ascii字符按utf-8编码
+				int end = i + 1;
+				while(end < len && s.charAt(end) >= 0x80)
+					end++;
+				byte[] b = s.substring(i, end).getBytes(StandardCharsets.UTF_8);
+				out.write(b, 0, b.length);
+				i = end - 1;
+			}
+		}
+		return out.toByteArray();
+	}
+}
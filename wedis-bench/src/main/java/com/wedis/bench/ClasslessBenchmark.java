@@ -0,0 +1,103 @@
+package com.wedis.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.wedis.redis.io.JdkInputStream;
+import com.wedis.redis.io.JsonStreamWriter;
+
+/**
+ * 同一个值在类存在和不存在时JdkInputStream的耗时，类不存在时对象读为HashMap，
+ * 以及不创建对象直接输出json的事件模式
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClasslessBenchmark {
+
+	@Param({"flat", "list", "deep"})
+	private String shape;
+
+	private byte[] resolved;
+	private byte[] classless;
+
+	@Setup
+	public void setup() throws IOException {
+		resolved = Values.serialize(Values.create(shape));
+		classless = Values.classless(resolved);
+	}
+
+	@Benchmark
+	public Object resolved() throws Exception {
+		try(JdkInputStream in = new JdkInputStream(resolved)){
+			return in.readObject();
+		}
+	}
+
+	@Benchmark
+	public Object classless() throws Exception {
+		try(JdkInputStream in = new JdkInputStream(classless)){
+			return in.readObject();
+		}
+	}
+
+	@Benchmark
+	public void classlessJson(Blackhole bh) throws Exception {
+		try(JdkInputStream in = new JdkInputStream(classless)){
+			in.accept(new JsonStreamWriter(new BlackholeWriter(bh)));
+		}
+	}
+
+	/**
+	 * 把写出的内容交给Blackhole，避免json输出被优化掉
+	 */
+	private static class BlackholeWriter extends Writer {
+		private final Blackhole bh;
+
+		BlackholeWriter(Blackhole bh) {
+			this.bh = bh;
+		}
+
+		@Override
+		public void write(int c) {
+			bh.consume(c);
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			bh.consume(str);
+			bh.consume(len);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			bh.consume(cbuf);
+			bh.consume(len);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
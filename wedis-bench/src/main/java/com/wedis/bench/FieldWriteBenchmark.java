@@ -0,0 +1,57 @@
+package com.wedis.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wedis.redis.io.JdkInputStream;
+
+/**
+ * 大量只有基本类型字段的小对象，耗时主要在给字段赋值上，
+ * 对比类存在时按字段类型写入对象和类不存在时写入HashMap
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldWriteBenchmark {
+
+	@Param({"primitives"})
+	private String shape;
+
+	private byte[] resolved;
+	private byte[] classless;
+
+	@Setup
+	public void setup() throws IOException {
+		resolved = Values.serialize(Values.create(shape));
+		classless = Values.classless(resolved);
+	}
+
+	@Benchmark
+	public Object resolved() throws Exception {
+		try(JdkInputStream in = new JdkInputStream(resolved)){
+			return in.readObject();
+		}
+	}
+
+	@Benchmark
+	public Object classless() throws Exception {
+		try(JdkInputStream in = new JdkInputStream(classless)){
+			return in.readObject();
+		}
+	}
+}
@@ -0,0 +1,291 @@
+package com.wedis.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按Hessian2Output的编码规则写出benchmark使用的值，项目中没有hessian的依赖。
+ * 只支持model包中的对象以及它们用到的基本类型、String、Date、数组、List和Map
+ */
+public class Hessian2Writer {
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	private final Map<Object, Integer> refs = new IdentityHashMap<>();
+	private final Map<Class<?>, Integer> classDefs = new HashMap<>();
+	private final Map<Class<?>, List<Field>> classFields = new HashMap<>();
+	private final Map<String, Integer> types = new HashMap<>();
+
+	public static byte[] serialize(Object value) throws IllegalAccessException {
+		Hessian2Writer writer = new Hessian2Writer();
+		writer.writeObject(value);
+		return writer.out.toByteArray();
+	}
+
+	private void writeObject(Object value) throws IllegalAccessException {
+		if(value == null){
+			out.write('N');
+		}else if(value instanceof Boolean){
+			out.write((Boolean)value ? 'T' : 'F');
+		}else if(value instanceof Long){
+			writeLong((Long)value);
+		}else if(value instanceof Double || value instanceof Float){
+			writeDouble(((Number)value).doubleValue());
+		}else if(value instanceof Number){
+			writeInt(((Number)value).intValue());
+		}else if(value instanceof Character){
+			writeString(value.toString());
+		}else if(value instanceof String){
+			writeString((String)value);
+		}else if(value instanceof Date){
+			out.write('J');
+			writeInt64(((Date)value).getTime());
+		}else if(value instanceof byte[]){
+			// binary不能被引用
+			byte[] b = (byte[])value;
+			out.write('B');
+			writeInt16(b.length);
+			out.write(b, 0, b.length);
+		}else if(writeRef(value)){
+			return;
+		}else if(value instanceof int[]){
+			int[] a = (int[])value;
+			writeListBegin(a.length, "[int");
+			for(int v : a){
+				writeInt(v);
+			}
+		}else if(value instanceof long[]){
+			long[] a = (long[])value;
+			writeListBegin(a.length, "[long");
+			for(long v : a){
+				writeLong(v);
+			}
+		}else if(value instanceof double[]){
+			double[] a = (double[])value;
+			writeListBegin(a.length, "[double");
+			for(double v : a){
+				writeDouble(v);
+			}
+		}else if(value instanceof Object[]){
+			Object[] a = (Object[])value;
+			writeListBegin(a.length, "[" + value.getClass().getComponentType().getName());
+			for(Object v : a){
+				writeObject(v);
+			}
+		}else if(value instanceof Collection){
+			Collection<?> c = (Collection<?>)value;
+			writeListBegin(c.size(), value instanceof ArrayList ? null : value.getClass().getName());
+			for(Object v : c){
+				writeObject(v);
+			}
+		}else if(value instanceof Map){
+			out.write('H');
+			for(Map.Entry<?, ?> e : ((Map<?, ?>)value).entrySet()){
+				writeObject(e.getKey());
+				writeObject(e.getValue());
+			}
+			out.write('Z');
+		}else{
+			writeInstance(value);
+		}
+	}
+
+	private boolean writeRef(Object value) {
+		Integer ref = refs.get(value);
+		if(ref != null){
+			out.write('Q');
+			writeInt(ref);
+			return true;
+		}
+		refs.put(value, refs.size());
+		return false;
+	}
+
+	private void writeInstance(Object value) throws IllegalAccessException {
+		Class<?> cl = value.getClass();
+		List<Field> fields = classFields.get(cl);
+		if(fields == null){
+			fields = new ArrayList<>();
+			for(Class<?> c = cl; c != Object.class; c = c.getSuperclass()){
+				for(Field f : c.getDeclaredFields()){
+					if((f.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) == 0){
+						f.setAccessible(true);
+						fields.add(f);
+					}
+				}
+			}
+			classFields.put(cl, fields);
+		}
+		Integer def = classDefs.get(cl);
+		if(def == null){
+			out.write('C');
+			writeString(cl.getName());
+			writeInt(fields.size());
+			for(Field f : fields){
+				writeString(f.getName());
+			}
+			def = classDefs.size();
+			classDefs.put(cl, def);
+		}
+		if(def <= 0x0F){
+			out.write(0x60 + def);
+		}else{
+			out.write('O');
+			writeInt(def);
+		}
+		for(Field f : fields){
+			writeObject(f.get(value));
+		}
+	}
+
+	private void writeListBegin(int length, String type) {
+		if(type == null){
+			if(length <= 7){
+				out.write(0x78 + length);
+			}else{
+				out.write('X');
+				writeInt(length);
+			}
+			return;
+		}
+		if(length <= 7){
+			out.write(0x70 + length);
+			writeType(type);
+		}else{
+			out.write('V');
+			writeType(type);
+			writeInt(length);
+		}
+	}
+
+	private void writeType(String type) {
+		Integer ref = types.get(type);
+		if(ref != null){
+			writeInt(ref);
+		}else{
+			types.put(type, types.size());
+			writeString(type);
+		}
+	}
+
+	private void writeInt(int v) {
+		if(v >= -0x10 && v <= 0x2F){
+			out.write(v + 0x90);
+		}else if(v >= -0x800 && v <= 0x7FF){
+			out.write(0xC8 + (v >> 8));
+			out.write(v);
+		}else if(v >= -0x40000 && v <= 0x3FFFF){
+			out.write(0xD4 + (v >> 16));
+			out.write(v >> 8);
+			out.write(v);
+		}else{
+			out.write('I');
+			writeInt32(v);
+		}
+	}
+
+	private void writeLong(long v) {
+		if(v >= -0x08 && v <= 0x0F){
+			out.write((int)(v + 0xE0));
+		}else if(v >= -0x800 && v <= 0x7FF){
+			out.write((int)(0xF8 + (v >> 8)));
+			out.write((int)v);
+		}else if(v >= -0x40000 && v <= 0x3FFFF){
+			out.write((int)(0x3C + (v >> 16)));
+			out.write((int)(v >> 8));
+			out.write((int)v);
+		}else if(v == (int)v){
+			out.write('Y');
+			writeInt32((int)v);
+		}else{
+			out.write('L');
+			writeInt64(v);
+		}
+	}
+
+	private void writeDouble(double v) {
+		int i = (int)v;
+		if(Double.doubleToRawLongBits(v) == 0){
+			out.write(0x5B);
+		}else if(i == v && i == 1){
+			out.write(0x5C);
+		}else if(i == v && i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE){
+			out.write(0x5D);
+			out.write(i);
+		}else if(i == v && i >= Short.MIN_VALUE && i <= Short.MAX_VALUE){
+			out.write(0x5E);
+			writeInt16(i);
+		}else{
+			out.write('D');
+			writeInt64(Double.doubleToLongBits(v));
+		}
+	}
+
+	/**
+	 * 长度是字符个数，超过0x8000个字符时分块
+	 */
+	private void writeString(String s) {
+		int off = 0;
+		int len = s.length();
+		while(len - off > 0x8000){
+			out.write('R');
+			writeInt16(0x8000);
+			writeChars(s, off, 0x8000);
+			off += 0x8000;
+		}
+		int n = len - off;
+		if(n <= 0x1F){
+			out.write(n);
+		}else if(n <= 0x3FF){
+			out.write(0x30 + (n >> 8));
+			out.write(n);
+		}else{
+			out.write('S');
+			writeInt16(n);
+		}
+		writeChars(s, off, n);
+	}
+
+	/**
+	 * 与Hessian2Output相同，代理对按两个3字节的字符写出
+	 */
+	private void writeChars(String s, int off, int n) {
+		for(int i = off; i < off + n; i++){
+			char c = s.charAt(i);
+			if(c < 0x80){
+				out.write(c);
+			}else if(c < 0x800){
+				out.write(0xC0 | (c >> 6));
+				out.write(0x80 | (c & 0x3F));
+			}else{
+				out.write(0xE0 | (c >> 12));
+				out.write(0x80 | ((c >> 6) & 0x3F));
+				out.write(0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	private void writeInt16(int v) {
+		out.write(v >> 8);
+		out.write(v);
+	}
+
+	private void writeInt32(int v) {
+		out.write(v >> 24);
+		out.write(v >> 16);
+		out.write(v >> 8);
+		out.write(v);
+	}
+
+	private void writeInt64(long v) {
+		writeInt32((int)(v >> 32));
+		writeInt32((int)v);
+	}
+}
@@ -0,0 +1,70 @@
+package com.wedis.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wedis.redis.io.Hessian2InputStream;
+import com.wedis.redis.io.JdkInputStream;
+import com.wedis.redis.io.JdkInputStreamPool;
+
+/**
+ * 同一个值分别按hessian2和jdk序列化后，在类不存在时Hessian2InputStream与JdkInputStream的耗时对比，
+ * 两者都把对象读为HashMap
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HessianDecodeBenchmark {
+
+	@Param({"flat", "list", "deep", "primitives"})
+	private String shape;
+
+	private byte[] hessian;
+	private byte[] jdk;
+	private Hessian2InputStream reused;
+
+	@Setup
+	public void setup() throws Exception {
+		Object value = Values.create(shape);
+		hessian = Hessian2Writer.serialize(value);
+		jdk = Values.classless(Values.serialize(value));
+		reused = new Hessian2InputStream(hessian);
+	}
+
+	@Benchmark
+	public Object hessian2() throws Exception {
+		try(Hessian2InputStream in = new Hessian2InputStream(hessian)){
+			return in.readObject();
+		}
+	}
+
+	@Benchmark
+	public Object hessian2Reused() throws Exception {
+		reused.reset(hessian, 0, hessian.length);
+		return reused.readObject();
+	}
+
+	@Benchmark
+	public Object jdkClassless() throws Exception {
+		JdkInputStream in = JdkInputStreamPool.acquire(jdk);
+		try{
+			return in.readObject();
+		}finally{
+			JdkInputStreamPool.release(in);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.wedis.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wedis.redis.io.JdkInputStream;
+import com.wedis.redis.io.JdkInputStreamPool;
+
+/**
+ * 类都存在时JdkInputStream与java.io.ObjectInputStream反序列化的耗时对比，
+ * 以及JdkInputStream直接解析byte[]、按线程复用与包装成InputStream的差别。
+ * collections中的JDK集合和值由JdkIntrinsic直接读取
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JdkDecodeBenchmark {
+
+	@Param({"flat", "list", "deep", "ints", "longs", "doubles", "string", "collections"})
+	private String shape;
+
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		bytes = Values.serialize(Values.create(shape));
+	}
+
+	@Benchmark
+	public Object objectInputStream() throws Exception {
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))){
+			return in.readObject();
+		}
+	}
+
+	@Benchmark
+	public Object jdkInputStream() throws Exception {
+		try(JdkInputStream in = new JdkInputStream(bytes)){
+			return in.readObject();
+		}
+	}
+
+	@Benchmark
+	public Object jdkInputStreamPooled() throws Exception {
+		JdkInputStream in = JdkInputStreamPool.acquire(bytes);
+		try{
+			return in.readObject();
+		}finally{
+			JdkInputStreamPool.release(in);
+		}
+	}
+
+	@Benchmark
+	public Object jdkInputStreamFromStream() throws Exception {
+		try(JdkInputStream in = new JdkInputStream(new ByteArrayInputStream(bytes))){
+			return in.readObject();
+		}
+	}
+}
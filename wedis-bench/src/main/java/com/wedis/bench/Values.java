@@ -0,0 +1,135 @@
+package com.wedis.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.wedis.bench.model.FlatBean;
+import com.wedis.bench.model.PrimitiveBean;
+import com.wedis.bench.model.TreeNode;
+
+/**
+ * benchmark使用的值和它们的jdk序列化结果
+ */
+public class Values {
+
+	private static final String MODEL_PACKAGE = "com.wedis.bench.model";
+	/** 与MODEL_PACKAGE等长的不存在的包名，替换后字符串的长度前缀不需要改变 */
+	private static final String MISSING_PACKAGE = "com.wedis.bench.absnt";
+
+	private Values() {
+	}
+
+	/**
+	 * 按名称创建值：
+	 * <ul>
+	 * <li>flat: 单个只有基本类型和字符串字段的对象</li>
+	 * <li>list: 1000个flat对象的ArrayList</li>
+	 * <li>deep: 深度8、每层3个子节点的树，共3280个节点</li>
+	 * <li>primitives: 10万个只有基本类型字段的小对象的数组</li>
+	 * <li>ints/longs/doubles: 100万个元素的基本类型数组</li>
+	 * <li>string: 100万个字符的中英文混合字符串</li>
+	 * <li>collections: 1000个HashMap的ArrayList，值为包装类、Date、BigDecimal和TreeMap</li>
+	 * </ul>
+	 */
+	public static Object create(String shape) {
+		switch(shape){
+		case "flat":
+			return new FlatBean(1);
+		case "list":
+			List<FlatBean> list = new ArrayList<>();
+			for(int i = 0; i < 1000; i++){
+				list.add(new FlatBean(i));
+			}
+			return list;
+		case "deep":
+			return TreeNode.build(8, 3);
+		case "primitives":
+			PrimitiveBean[] beans = new PrimitiveBean[100000];
+			for(int i = 0; i < beans.length; i++){
+				beans[i] = new PrimitiveBean(i);
+			}
+			return beans;
+		case "ints":
+			int[] ints = new int[1000000];
+			for(int i = 0; i < ints.length; i++){
+				ints[i] = i * 31;
+			}
+			return ints;
+		case "longs":
+			long[] longs = new long[1000000];
+			for(int i = 0; i < longs.length; i++){
+				longs[i] = i * 1000000007L;
+			}
+			return longs;
+		case "doubles":
+			double[] doubles = new double[1000000];
+			for(int i = 0; i < doubles.length; i++){
+				doubles[i] = i * 0.5;
+			}
+			return doubles;
+		case "string":
+			StringBuilder sb = new StringBuilder();
+			while(sb.length() < 1000000){
+				sb.append("redis缓存value-").append(sb.length());
+			}
+			return sb.toString();
+		case "collections":
+			List<Map<String, Object>> maps = new ArrayList<>();
+			for(int i = 0; i < 1000; i++){
+				Map<String, Object> map = new HashMap<>();
+				map.put("id", (long)i);
+				map.put("count", i);
+				map.put("rate", i * 0.5);
+				map.put("enabled", i % 2 == 0);
+				map.put("created", new Date(1500000000000L + i));
+				map.put("amount", BigDecimal.valueOf(i * 100 + 1, 2));
+				map.put("tags", new TreeMap<>(Collections.singletonMap("tag" + i, i)));
+				maps.add(map);
+			}
+			return maps;
+		default:
+			throw new IllegalArgumentException("unknown shape: " + shape);
+		}
+	}
+
+	public static byte[] serialize(Object value) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(value);
+		oos.close();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * 把流中model包的类名都换成不存在的包，模拟wedis中没有业务类的情况
+	 */
+	public static byte[] classless(byte[] bytes) {
+		byte[] result = Arrays.copyOf(bytes, bytes.length);
+		replace(result, MODEL_PACKAGE, MISSING_PACKAGE);
+		replace(result, MODEL_PACKAGE.replace('.', '/'), MISSING_PACKAGE.replace('.', '/'));
+		return result;
+	}
+
+	private static void replace(byte[] bytes, String from, String to) {
+		byte[] f = from.getBytes(StandardCharsets.UTF_8);
+		byte[] t = to.getBytes(StandardCharsets.UTF_8);
+		outer: for(int i = 0; i <= bytes.length - f.length; i++){
+			for(int j = 0; j < f.length; j++){
+				if(bytes[i + j] != f[j])
+					continue outer;
+			}
+			System.arraycopy(t, 0, bytes, i, t.length);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.wedis.bench.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 只有基本类型和字符串字段的对象，类似缓存中常见的用户信息
+ */
+public class FlatBean implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private long id;
+	private int age;
+	private boolean vip;
+	private double balance;
+	private String name;
+	private String email;
+	private String address;
+	private Date created;
+
+	public FlatBean(long id) {
+		this.id = id;
+		this.age = (int)(id % 80);
+		this.vip = id % 3 == 0;
+		this.balance = id * 1.5;
+		this.name = "user-" + id;
+		this.email = "user" + id + "@example.com";
+		this.address = "上海市浦东新区世纪大道" + id + "号";
+		this.created = new Date(1500000000000L + id);
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public int getAge() {
+		return age;
+	}
+
+	public boolean isVip() {
+		return vip;
+	}
+
+	public double getBalance() {
+		return balance;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public Date getCreated() {
+		return created;
+	}
+}
@@ -0,0 +1,62 @@
+package com.wedis.bench.model;
+
+import java.io.Serializable;
+
+/**
+ * 所有基本类型字段各一个的小对象，反序列化耗时主要在字段赋值上
+ */
+public class PrimitiveBean implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private boolean flag;
+	private byte b;
+	private char c;
+	private short s;
+	private int i;
+	private float f;
+	private long l;
+	private double d;
+
+	public PrimitiveBean(int n) {
+		this.flag = n % 2 == 0;
+		this.b = (byte)n;
+		this.c = (char)('a' + n % 26);
+		this.s = (short)n;
+		this.i = n;
+		this.f = n * 0.5F;
+		this.l = n * 1000000007L;
+		this.d = n * 0.25;
+	}
+
+	public boolean isFlag() {
+		return flag;
+	}
+
+	public byte getB() {
+		return b;
+	}
+
+	public char getC() {
+		return c;
+	}
+
+	public short getS() {
+		return s;
+	}
+
+	public int getI() {
+		return i;
+	}
+
+	public float getF() {
+		return f;
+	}
+
+	public long getL() {
+		return l;
+	}
+
+	public double getD() {
+		return d;
+	}
+}
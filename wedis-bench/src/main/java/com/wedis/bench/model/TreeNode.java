@@ -0,0 +1,58 @@
+package com.wedis.bench.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多层嵌套的对象图，每个节点带有子节点列表和指向父节点的引用
+ */
+public class TreeNode implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private int id;
+	private String label;
+	private TreeNode parent;
+	private List<TreeNode> children = new ArrayList<>();
+
+	public TreeNode(int id, TreeNode parent) {
+		this.id = id;
+		this.label = "node-" + id;
+		this.parent = parent;
+	}
+
+	/**
+	 * 创建深度为depth，每个节点有fanout个子节点的树
+	 */
+	public static TreeNode build(int depth, int fanout) {
+		TreeNode root = new TreeNode(0, null);
+		grow(root, depth - 1, fanout, new int[]{1});
+		return root;
+	}
+
+	private static void grow(TreeNode node, int depth, int fanout, int[] seq) {
+		if(depth <= 0)
+			return;
+		for(int i = 0; i < fanout; i++){
+			TreeNode child = new TreeNode(seq[0]++, node);
+			node.children.add(child);
+			grow(child, depth - 1, fanout, seq);
+		}
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public TreeNode getParent() {
+		return parent;
+	}
+
+	public List<TreeNode> getChildren() {
+		return children;
+	}
+}
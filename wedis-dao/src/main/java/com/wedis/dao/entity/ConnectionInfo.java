@@ -6,6 +6,14 @@ public class ConnectionInfo {
 	private String host;
 	private String port;
 	private String pwd;
+	private Integer maxTotal;
+	private Integer maxIdle;
+	private Integer minIdle;
+	private Long maxWaitMillis;
+	private Integer timeout;
+	private Integer preWarm;
+	private Long lastUsed;
+	private String classPath;
 
 	public Long getId() {
 		return id;
@@ -47,4 +55,68 @@ public class ConnectionInfo {
 		this.pwd = pwd;
 	}
 
+	public Integer getMaxTotal() {
+		return maxTotal;
+	}
+
+	public void setMaxTotal(Integer maxTotal) {
+		this.maxTotal = maxTotal;
+	}
+
+	public Integer getMaxIdle() {
+		return maxIdle;
+	}
+
+	public void setMaxIdle(Integer maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	public Integer getMinIdle() {
+		return minIdle;
+	}
+
+	public void setMinIdle(Integer minIdle) {
+		this.minIdle = minIdle;
+	}
+
+	public Long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	public void setMaxWaitMillis(Long maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	public Integer getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(Integer timeout) {
+		this.timeout = timeout;
+	}
+
+	public Integer getPreWarm() {
+		return preWarm;
+	}
+
+	public void setPreWarm(Integer preWarm) {
+		this.preWarm = preWarm;
+	}
+
+	public Long getLastUsed() {
+		return lastUsed;
+	}
+
+	public void setLastUsed(Long lastUsed) {
+		this.lastUsed = lastUsed;
+	}
+
+	public String getClassPath() {
+		return classPath;
+	}
+
+	public void setClassPath(String classPath) {
+		this.classPath = classPath;
+	}
+
 }
@@ -3,13 +3,15 @@ package com.wedis.dao.mapper;
 import java.util.List;
 
 import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
 import com.wedis.base.dto.ConnectionDto;
 
 public interface ConnectionInfoMapper {
-	@Insert("INSERT INTO connection_info (name,host,port,pwd) VALUES (#{name},#{host},#{port},#{pwd})")
+	@Insert("INSERT INTO connection_info (name,host,port,pwd,max_total,max_idle,min_idle,max_wait_millis,timeout,pre_warm,class_path)"
+		+ " VALUES (#{name},#{host},#{port},#{pwd},#{maxTotal},#{maxIdle},#{minIdle},#{maxWaitMillis},#{timeout},#{preWarm},#{classPath})")
 	public void save(ConnectionDto info);
 
 	@Select("SELECT * FROM connection_info")
@@ -21,7 +23,12 @@ public interface ConnectionInfoMapper {
 	@Select("SELECT id FROM connection_info WHERE name=#{name}")
 	public Long loadIdForName(String name);
 
-	@Update("UPDATE connection_info SET name=#{name},host=#{host},port=#{port},pwd=#{pwd} WHERE id=#{id}")
+	@Update("UPDATE connection_info SET name=#{name},host=#{host},port=#{port},pwd=#{pwd},max_total=#{maxTotal},"
+		+ "max_idle=#{maxIdle},min_idle=#{minIdle},max_wait_millis=#{maxWaitMillis},timeout=#{timeout},pre_warm=#{preWarm},"
+		+ "class_path=#{classPath} WHERE id=#{id}")
 	public void update(ConnectionDto info);
 
+	@Update("UPDATE connection_info SET last_used=#{lastUsed} WHERE id=#{id}")
+	public void touch(@Param("id") Long id, @Param("lastUsed") long lastUsed);
+
 }
@@ -0,0 +1,189 @@
+package com.wedis.redis.converter;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.core.convert.converter.Converter;
+
+/**
+ * 在一个固定并行度的ForkJoinPool中通过converter批量解码一页值，值的格式由converter识别，每个值相互独立，
+ * 一个值失败只记录在这个值的error中，不影响其他值。
+ *
+ * 按字节数拆分任务，每个子任务最多LEAF_BYTES个字节或只有一个值，大小不均匀的值由工作窃取平衡；
+ * 整批不超过LEAF_BYTES时直接在调用线程中解码，不切换线程
+ */
+public class BatchDecoder {
+
+	/** 一个子任务最多解码的字节数 */
+	private static final long LEAF_BYTES = 64 * 1024;
+
+	private final Converter<byte[], Object> converter;
+	private final ForkJoinPool pool;
+
+	/** 已经完成的批次 */
+	private final LongAdder batches = new LongAdder();
+	/** 所有批次的值的个数 */
+	private final LongAdder values = new LongAdder();
+	/** 所有批次中失败的值的个数 */
+	private final LongAdder failures = new LongAdder();
+	/** 所有批次的耗时总和 */
+	private final LongAdder elapsedNanos = new LongAdder();
+	/** 耗时最长的一批的耗时 */
+	private final LongAccumulator maxElapsedNanos = new LongAccumulator(Math::max, 0);
+
+	public BatchDecoder(Converter<byte[], Object> converter, int parallelism) {
+		this.converter = converter;
+		this.pool = new ForkJoinPool(parallelism, p -> {
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			t.setName("wedis-decode-" + t.getPoolIndex());
+			t.setDaemon(true);
+			return t;
+		}, null, false);
+	}
+
+	/**
+	 * 解码所有的值，null(key不存在)的结果也是null，全部完成后返回
+	 */
+	public BatchResult decodeAll(List<byte[]> list) {
+		return decodeAll(list, converter);
+	}
+
+	/**
+	 * 使用另外的converter转换所有的值，共用同一个线程池，例如在解码的同时对值做判断
+	 */
+	public BatchResult decodeAll(List<byte[]> list, Converter<byte[], Object> converter) {
+		long start = System.nanoTime();
+		byte[][] sources = list.toArray(new byte[list.size()][]);
+		// 按字节数的前缀和拆分任务
+		long[] offsets = new long[sources.length + 1];
+		for(int i = 0; i < sources.length; i++){
+			offsets[i + 1] = offsets[i] + (sources[i] == null ? 0 : sources[i].length);
+		}
+		BatchResult result = new BatchResult(sources.length);
+		LongAdder decodeNanos = new LongAdder();
+		LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		DecodeTask task = new DecodeTask(converter, sources, offsets, 0, sources.length, result,
+			decodeNanos, maxNanos);
+		if(offsets[sources.length] <= LEAF_BYTES){
+			task.compute();
+		}else{
+			pool.invoke(task);
+		}
+		long elapsed = System.nanoTime() - start;
+		result.finish(elapsed, decodeNanos.sum(), maxNanos.get());
+
+		batches.increment();
+		values.add(sources.length);
+		failures.add(result.getFailed());
+		elapsedNanos.add(elapsed);
+		maxElapsedNanos.accumulate(elapsed);
+		return result;
+	}
+
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	public long batches() {
+		return batches.sum();
+	}
+
+	public long values() {
+		return values.sum();
+	}
+
+	public long failures() {
+		return failures.sum();
+	}
+
+	public long elapsedNanos() {
+		return elapsedNanos.sum();
+	}
+
+	public long maxElapsedNanos() {
+		return maxElapsedNanos.get();
+	}
+
+	private static void decode(Converter<byte[], Object> converter, byte[] source, int index,
+		BatchResult result) {
+		if(source == null)
+			return;
+		try{
+			result.set(index, converter.convert(source));
+		}catch(RuntimeException e){
+			result.fail(index, e.getMessage() != null ? e.getMessage() : e.toString());
+		}catch(StackOverflowError e){
+			// 嵌套过深的对象图只影响这一个值
+			result.fail(index, "decoding failed?" + e.toString());
+		}
+	}
+
+	private class DecodeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Converter<byte[], Object> converter;
+		private final byte[][] sources;
+		private final long[] offsets;
+		private final int from;
+		private final int to;
+		private final BatchResult result;
+		private final LongAdder decodeNanos;
+		private final LongAccumulator maxNanos;
+
+		DecodeTask(Converter<byte[], Object> converter, byte[][] sources, long[] offsets, int from,
+			int to, BatchResult result, LongAdder decodeNanos, LongAccumulator maxNanos) {
+			this.converter = converter;
+			this.sources = sources;
+			this.offsets = offsets;
+			this.from = from;
+			this.to = to;
+			this.result = result;
+			this.decodeNanos = decodeNanos;
+			this.maxNanos = maxNanos;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > 1 && offsets[to] - offsets[from] > LEAF_BYTES){
+				int mid = split();
+				invokeAll(
+					new DecodeTask(converter, sources, offsets, from, mid, result, decodeNanos, maxNanos),
+					new DecodeTask(converter, sources, offsets, mid, to, result, decodeNanos, maxNanos));
+				return;
+			}
+			long total = 0;
+			long max = 0;
+			for(int i = from; i < to; i++){
+				long start = System.nanoTime();
+				decode(converter, sources[i], i, result);
+				long nanos = System.nanoTime() - start;
+				total += nanos;
+				max = Math.max(max, nanos);
+			}
+			decodeNanos.add(total);
+			maxNanos.accumulate(max);
+		}
+
+		/**
+		 * 按字节数二分，两边至少各有一个值
+		 */
+		private int split() {
+			long half = (offsets[from] + offsets[to]) >>> 1;
+			int lo = from + 1;
+			int hi = to - 1;
+			while(lo < hi){
+				int mid = (lo + hi) >>> 1;
+				if(offsets[mid] < half){
+					lo = mid + 1;
+				}else{
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.wedis.redis.converter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一批值的解码结果和这一批的耗时，values和errors与输入的下标一一对应
+ */
+public class BatchResult {
+
+	private final Object[] values; // 解码的结果，输入为null或失败时为null
+	private final String[] errors; // 解码失败时的错误信息，成功时为null
+	private int failed; // 失败的个数
+	private long elapsedNanos; // 整批的耗时
+	private long decodeNanos; // 所有值解码耗时的总和，并行时大于elapsedNanos
+	private long maxNanos; // 耗时最长的一个值的耗时
+
+	BatchResult(int size) {
+		values = new Object[size];
+		errors = new String[size];
+	}
+
+	public List<Object> getValues() {
+		return Arrays.asList(values);
+	}
+
+	public List<String> getErrors() {
+		return Arrays.asList(errors);
+	}
+
+	public Object getValue(int index) {
+		return values[index];
+	}
+
+	public String getError(int index) {
+		return errors[index];
+	}
+
+	public int size() {
+		return values.length;
+	}
+
+	public int getFailed() {
+		return failed;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public long getDecodeNanos() {
+		return decodeNanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	void set(int index, Object value) {
+		values[index] = value;
+	}
+
+	void fail(int index, String error) {
+		errors[index] = error;
+	}
+
+	/**
+	 * 所有值都处理完后由调用线程汇总
+	 */
+	void finish(long elapsedNanos, long decodeNanos, long maxNanos) {
+		int failed = 0;
+		for(String error : errors){
+			if(error != null)
+				failed++;
+		}
+		this.failed = failed;
+		this.elapsedNanos = elapsedNanos;
+		this.decodeNanos = decodeNanos;
+		this.maxNanos = maxNanos;
+	}
+}
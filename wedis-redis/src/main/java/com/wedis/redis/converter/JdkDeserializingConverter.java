@@ -1,33 +1,86 @@
 package com.wedis.redis.converter;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
+import java.io.InputStream;
 
 import org.springframework.core.convert.converter.Converter;
 
 import com.wedis.base.enums.ResponseCode;
 import com.wedis.base.exception.CoreException;
+import com.wedis.redis.io.JarClassLoader;
 import com.wedis.redis.io.JdkInputStream;
+import com.wedis.redis.io.JdkInputStreamPool;
 
 public class JdkDeserializingConverter implements Converter<byte[], Object> {
 
+	private final boolean editable;
+
+	public JdkDeserializingConverter() {
+		this(false);
+	}
+
+	/**
+	 * @param editable 为true时按可写回模式解码，没有类的对象保留类描述符，可以由JdkSerializingConverter写回
+	 */
+	public JdkDeserializingConverter(boolean editable) {
+		this.editable = editable;
+	}
+
 	@Override
 	public Object convert(byte[] source) {
+		return convert(source, null);
+	}
+
+	/**
+	 * 先在应用jar中查找流中的类，找到的类创建真正的对象并调用类的readObject，找不到的类按HashMap解码。
+	 * 找不到的类的对象不能赋值给有类的对象的字段时，整个值不使用应用jar重新解码。
+	 * loader为null时与convert(source)相同，loader的引用由调用方持有
+	 */
+	public Object convert(byte[] source, JarClassLoader loader) {
+		if(loader == null)
+			return decode(source, null);
+		try{
+			return decode(source, loader);
+		}catch(ClassCastException e){
+			return decode(source, null);
+		}
+	}
+
+	private Object decode(byte[] source, JarClassLoader loader) {
 		JdkInputStream jis = null;
 		try{
-			jis = new JdkInputStream(new ByteArrayInputStream(source));
+			// 批量读取时按线程复用JdkInputStream
+			jis = JdkInputStreamPool.acquire(source);
+			// 反序列化出的值会被保留，重复的短字符串只保留一份。写回时相同的字符串对象会写成引用，可写回模式下不合并
+			jis.setInternStrings(!editable);
+			jis.setEditable(editable);
+			jis.setClassLoader(loader);
 			return jis.readObject();
+		}catch(ClassCastException e){
+			if(loader != null)
+				throw e;
+			throw new CoreException(ResponseCode.JDK_DESERIALIZE_FAILED,
+				"deserializing failed?" + e.toString());
 		}catch(Exception e){
 			throw new CoreException(ResponseCode.JDK_DESERIALIZE_FAILED,
 				"deserializing failed?" + e.toString());
 		}finally{
 			if(jis != null)
-				try{
-					jis.close();
-				}catch(IOException e){
-					throw new CoreException(ResponseCode.JDK_DESERIALIZE_FAILED,
-						"deserializing failed?" + e.toString());
-				}
+				JdkInputStreamPool.release(jis);
+		}
+	}
+
+	/**
+	 * 从流中反序列化，例如边解压边读取的值。按1K的块缓冲区读取，不需要先读出整个值
+	 */
+	public Object convert(InputStream source) {
+		try{
+			JdkInputStream jis = new JdkInputStream(source);
+			jis.setInternStrings(!editable);
+			jis.setEditable(editable);
+			return jis.readObject();
+		}catch(Exception e){
+			throw new CoreException(ResponseCode.JDK_DESERIALIZE_FAILED,
+				"deserializing failed?" + e.toString());
 		}
 	}
 
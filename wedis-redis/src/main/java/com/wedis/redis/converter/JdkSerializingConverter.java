@@ -0,0 +1,26 @@
+package com.wedis.redis.converter;
+
+import org.springframework.core.convert.converter.Converter;
+
+import com.wedis.base.enums.ResponseCode;
+import com.wedis.base.exception.CoreException;
+import com.wedis.redis.io.JdkOutputStream;
+
+/**
+ * 按ObjectOutputStream的格式序列化，可以写回可写回模式解码出的没有类的对象，类描述符与原来的值相同
+ */
+public class JdkSerializingConverter implements Converter<Object, byte[]> {
+
+	@Override
+	public byte[] convert(Object source) {
+		try{
+			JdkOutputStream jos = new JdkOutputStream();
+			jos.writeObject(source);
+			return jos.toByteArray();
+		}catch(Exception e){
+			throw new CoreException(ResponseCode.JDK_SERIALIZE_FAILED,
+				"serializing failed?" + e.toString());
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.wedis.redis.decoder;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 最多读取max个字节，超过时抛出IOException，防止很小的压缩值解压出超大的数据
+ */
+class BoundedInputStream extends FilterInputStream {
+
+	private final long max;
+	private long count;
+
+	BoundedInputStream(InputStream in, long max) {
+		super(in);
+		this.max = max;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if(b >= 0)
+			count(1);
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = in.read(b, off, len);
+		if(n > 0)
+			count(n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = in.skip(n);
+		if(skipped > 0)
+			count(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void count(long n) throws IOException {
+		count += n;
+		if(count > max)
+			throw new IOException("inflated value larger than " + max + " bytes");
+	}
+}
@@ -0,0 +1,30 @@
+package com.wedis.redis.decoder;
+
+import com.wedis.base.enums.SerializeType;
+import com.wedis.base.util.BinaryUtil;
+
+/**
+ * 无法识别的二进制，按redis-cli的格式显示成可打印的字符串
+ */
+public class BytesValueDecoder implements ValueDecoder {
+
+	@Override
+	public SerializeType getType() {
+		return SerializeType.BYTES;
+	}
+
+	@Override
+	public boolean accepts(int first) {
+		return true;
+	}
+
+	@Override
+	public boolean sniff(byte[] value) {
+		return true;
+	}
+
+	@Override
+	public Object decode(byte[] value) {
+		return BinaryUtil.toPrintable(value);
+	}
+}
@@ -0,0 +1,133 @@
+package com.wedis.redis.decoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.wedis.base.enums.ResponseCode;
+import com.wedis.base.enums.SerializeType;
+import com.wedis.base.exception.CoreException;
+
+/**
+ * 压缩的值，按魔数识别:
+ * <ul>
+ * <li>gzip: 1F 8B 08</li>
+ * <li>zlib: 78 01/5E/9C/DA</li>
+ * <li>lz4 frame: 04 22 4D 18</li>
+ * <li>snappy framing格式: FF 06 00 00 "sNaPpY"，snappy-java: 82 "SNAPPY" 00</li>
+ * </ul>
+ * 边解压边交给registry识别内部的格式，jdk和json直接从解压流中解析，
+ * 不会同时持有压缩的值和整个解压后的值
+ */
+public class CompressedValueDecoder implements ValueDecoder {
+
+	/** 解压后的最大字节数，防止很小的压缩值解压出超大的数据 */
+	private static final int MAX_INFLATED = 64 * 1024 * 1024;
+	/** 解压时从压缩数据中每次读取的字节数 */
+	private static final int BUFFER_SIZE = 8192;
+
+	private final SerializeType type;
+	private final ValueDecoderRegistry registry;
+
+	public CompressedValueDecoder(SerializeType type, ValueDecoderRegistry registry) {
+		if(type != SerializeType.GZIP && type != SerializeType.ZLIB && type != SerializeType.LZ4
+			&& type != SerializeType.SNAPPY)
+			throw new IllegalArgumentException("not a compressed type: " + type);
+		this.type = type;
+		this.registry = registry;
+	}
+
+	@Override
+	public SerializeType getType() {
+		return type;
+	}
+
+	@Override
+	public boolean accepts(int first) {
+		switch(type){
+		case GZIP:
+			return first == 0x1F;
+		case ZLIB:
+			return first == 0x78;
+		case LZ4:
+			return first == 0x04;
+		default:
+			return first == 0xFF || first == 0x82;
+		}
+	}
+
+	@Override
+	public boolean sniff(byte[] value) {
+		switch(type){
+		case GZIP:
+			return value.length >= 3 && value[0] == 0x1F && value[1] == (byte)0x8B && value[2] == 0x08;
+		case ZLIB:
+			if(value.length < 3)
+				return false;
+			// zlib头部的两个字节按大端组成的数必须是31的倍数
+			int flg = value[1] & 0xFF;
+			return value[0] == 0x78 && (flg == 0x01 || flg == 0x5E || flg == 0x9C || flg == 0xDA);
+		case LZ4:
+			// 魔数之后的FLG中版本号必须是01
+			return value.length >= 7 && value[0] == 0x04 && value[1] == 0x22 && value[2] == 0x4D
+				&& value[3] == 0x18 && (value[4] & 0xC0) == 0x40;
+		default:
+			return startsWith(value, SnappyInputStream.FRAMED_MAGIC)
+				|| startsWith(value, SnappyInputStream.XERIAL_MAGIC);
+		}
+	}
+
+	@Override
+	public Object decode(byte[] value) {
+		return decode(new ByteArrayInputStream(value));
+	}
+
+	/**
+	 * 压缩的值中又是一个压缩的值时也按流解压，不会读出中间的数据
+	 */
+	@Override
+	public Object decode(InputStream in) {
+		try(InputStream inflated = new BoundedInputStream(open(in), MAX_INFLATED)){
+			return registry.decode(inflated);
+		}catch(IOException e){
+			throw new CoreException(ResponseCode.VALUE_DECODE_FAILED,
+				type.name().toLowerCase() + " inflate failed?" + e.toString());
+		}
+	}
+
+	private InputStream open(InputStream in) throws IOException {
+		switch(type){
+		case GZIP:
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		case ZLIB:
+			return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE) {
+				// 使用自己的Inflater时close不会释放，需要显式end
+				@Override
+				public void close() throws IOException {
+					try{
+						super.close();
+					}finally{
+						inf.end();
+					}
+				}
+			};
+		case LZ4:
+			return new Lz4FrameInputStream(in);
+		default:
+			return new SnappyInputStream(in);
+		}
+	}
+
+	private static boolean startsWith(byte[] value, byte[] magic) {
+		if(value.length < magic.length)
+			return false;
+		for(int i = 0; i < magic.length; i++){
+			if(value[i] != magic[i])
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,54 @@
+package com.wedis.redis.decoder;
+
+import java.io.IOException;
+
+import com.wedis.base.enums.ResponseCode;
+import com.wedis.base.enums.SerializeType;
+import com.wedis.base.exception.CoreException;
+import com.wedis.redis.io.Hessian2InputStream;
+
+/**
+ * Hessian 2.0序列化的对象：以类定义'C'加上短字符串形式的类名开头，
+ * 或者以'M'加上短字符串形式的类型开头的map，或者是'H' 0x02 0x00的消息头。
+ * 由Hessian2InputStream解析，类不存在时对象按HashMap显示
+ */
+public class Hessian2ValueDecoder implements ValueDecoder {
+
+	@Override
+	public SerializeType getType() {
+		return SerializeType.HESSIAN2;
+	}
+
+	@Override
+	public boolean accepts(int first) {
+		return first == 'C' || first == 'M' || first == 'H';
+	}
+
+	@Override
+	public boolean sniff(byte[] value) {
+		if(value.length < 3)
+			return false;
+		int first = value[0];
+		if(first == 'H')
+			return value[1] == 0x02 && value[2] == 0x00;
+		// 0x01-0x1f为长度小于32的字符串，后面是类名的第一个字符
+		int len = value[1];
+		return len > 0 && len < 0x20 && value.length > len + 1 && isNameStart(value[2]);
+	}
+
+	@Override
+	public Object decode(byte[] value) {
+		Hessian2InputStream in = new Hessian2InputStream(value);
+		// 解码出的值会被保留，重复的短字符串只保留一份
+		in.setInternStrings(true);
+		try{
+			return in.readObject();
+		}catch(IOException | RuntimeException e){
+			throw new CoreException(ResponseCode.VALUE_DECODE_FAILED, "hessian2 decode failed?" + e.toString());
+		}
+	}
+
+	private static boolean isNameStart(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$' || c == '[';
+	}
+}
@@ -0,0 +1,40 @@
+package com.wedis.redis.decoder;
+
+import java.io.InputStream;
+
+import com.wedis.base.enums.SerializeType;
+import com.wedis.redis.converter.JdkDeserializingConverter;
+
+/**
+ * jdk序列化的值，以流的头部0xACED0005识别，类不存在时按HashMap解析
+ */
+public class JdkValueDecoder implements ValueDecoder {
+
+	private final JdkDeserializingConverter converter = new JdkDeserializingConverter();
+
+	@Override
+	public SerializeType getType() {
+		return SerializeType.JDK;
+	}
+
+	@Override
+	public boolean accepts(int first) {
+		return first == 0xAC;
+	}
+
+	@Override
+	public boolean sniff(byte[] value) {
+		return value.length >= 4 && value[0] == (byte)0xAC && value[1] == (byte)0xED
+			&& value[2] == 0x00 && value[3] == 0x05;
+	}
+
+	@Override
+	public Object decode(byte[] value) {
+		return converter.convert(value);
+	}
+
+	@Override
+	public Object decode(InputStream in) {
+		return converter.convert(in);
+	}
+}
@@ -0,0 +1,88 @@
+package com.wedis.redis.decoder;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.parser.Feature;
+import com.wedis.base.enums.ResponseCode;
+import com.wedis.base.enums.SerializeType;
+import com.wedis.base.exception.CoreException;
+
+/**
+ * utf-8编码的json对象或数组。只检查开头的两个非空白字符，值被截断(例如预览)时也能识别。
+ *
+ * 值来自redis，不可信，解析时不识别@type和$ref，不会按值中的类名创建对象
+ */
+public class JsonValueDecoder implements ValueDecoder {
+
+	/** 识别时检查的字节数，开头的空白字符也计算在内，全是空白的大值不会被整个扫描 */
+	private static final int SNIFF_BYTES = 256;
+	/** 不识别@type和$ref，保持字段顺序 */
+	private static final Feature[] FEATURES = { Feature.DisableSpecialKeyDetect, Feature.IgnoreAutoType,
+		Feature.OrderedField };
+
+	@Override
+	public SerializeType getType() {
+		return SerializeType.JSON;
+	}
+
+	@Override
+	public boolean accepts(int first) {
+		return first == '{' || first == '[' || isWhitespace(first);
+	}
+
+	@Override
+	public boolean sniff(byte[] value) {
+		int end = Math.min(value.length, SNIFF_BYTES);
+		int i = skipWhitespace(value, 0, end);
+		if(i >= end)
+			return false;
+		int open = value[i];
+		if(open != '{' && open != '[')
+			return false;
+		i = skipWhitespace(value, i + 1, end);
+		if(i >= end)
+			return false;
+		int next = value[i];
+		if(open == '{')
+			return next == '"' || next == '}';
+		return next == '{' || next == '[' || next == '"' || next == ']' || next == '-'
+			|| (next >= '0' && next <= '9') || next == 't' || next == 'f' || next == 'n';
+	}
+
+	@Override
+	public Object decode(byte[] value) {
+		try{
+			return JSON.parse(new String(value, StandardCharsets.UTF_8), FEATURES);
+		}catch(JSONException e){
+			throw new CoreException(ResponseCode.VALUE_DECODE_FAILED, "json parse failed?" + e.getMessage());
+		}
+	}
+
+	/**
+	 * 边读边解析，不需要先把整个值解码成String
+	 */
+	@Override
+	public Object decode(InputStream in) {
+		try(JSONReader reader = new JSONReader(new InputStreamReader(in, StandardCharsets.UTF_8), FEATURES)){
+			return reader.readObject();
+		}catch(JSONException e){
+			throw new CoreException(ResponseCode.VALUE_DECODE_FAILED, "json parse failed?" + e.getMessage());
+		}
+	}
+
+	private static int skipWhitespace(byte[] value, int i, int end) {
+		while(i < end && isWhitespace(value[i])){
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isWhitespace(int b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+}
@@ -0,0 +1,249 @@
+package com.wedis.redis.decoder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * lz4 frame格式(魔数04 22 4D 18)的解压流，每次解压一个block，内存占用只有一个block加上64K的窗口。
+ *
+ * 支持独立block和相互引用的block、多个连续的frame以及skippable frame，
+ * 不支持预置字典(dictID)。不校验xxhash32校验和
+ */
+class Lz4FrameInputStream extends InputStream {
+
+	static final int MAGIC = 0x184D2204;
+	/** skippable frame的魔数是0x184D2A50到0x184D2A5F */
+	private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+	/** block可以引用前面64K以内已解压的数据 */
+	private static final int WINDOW = 64 * 1024;
+
+	private final InputStream in;
+
+	private boolean blockChecksum;
+	private boolean contentChecksum;
+	private boolean independent;
+	/** 压缩后的block */
+	private byte[] block;
+	/** 前面的窗口加上当前解压出的block */
+	private byte[] window;
+	/** window中可读的范围 */
+	private int pos;
+	private int limit;
+	private boolean eof;
+
+	Lz4FrameInputStream(InputStream in) throws IOException {
+		this.in = in;
+		if(!readFrameHeader(readIntLE()))
+			throw new IOException("not a lz4 frame");
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(pos == limit && !fill())
+			return -1;
+		return window[pos++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0)
+			return 0;
+		if(pos == limit && !fill())
+			return -1;
+		int n = Math.min(len, limit - pos);
+		System.arraycopy(window, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * 读取frame头，magic不是lz4 frame也不是skippable frame时返回false
+	 */
+	private boolean readFrameHeader(int magic) throws IOException {
+		while((magic & 0xFFFFFFF0) == SKIPPABLE_MAGIC){
+			skipFully(readIntLE() & 0xFFFFFFFFL);
+			magic = readIntLE();
+		}
+		if(magic != MAGIC)
+			return false;
+		int flg = readByte();
+		int bd = readByte();
+		if((flg >>> 6) != 1)
+			throw new IOException("unsupported lz4 frame version: " + (flg >>> 6));
+		if((flg & 0x01) != 0)
+			throw new IOException("lz4 frame with dictionary is not supported");
+		independent = (flg & 0x20) != 0;
+		blockChecksum = (flg & 0x10) != 0;
+		contentChecksum = (flg & 0x04) != 0;
+		int blockSize = 1 << (8 + 2 * ((bd >>> 4) & 0x07));
+		if(blockSize < WINDOW)
+			throw new IOException("invalid lz4 block size: " + bd);
+		if((flg & 0x08) != 0)
+			skipFully(8);
+		// header checksum
+		skipFully(1);
+		if(block == null || block.length < blockSize){
+			block = new byte[blockSize];
+			window = new byte[WINDOW + blockSize];
+		}
+		pos = limit = 0;
+		return true;
+	}
+
+	/**
+	 * 解压下一个block，所有frame都读完时返回false
+	 */
+	private boolean fill() throws IOException {
+		while(!eof){
+			int size = readIntLE();
+			if(size == 0){
+				// end mark
+				if(contentChecksum)
+					skipFully(4);
+				int magic = readIntLEOrEOF();
+				if(magic == -1 || !readFrameHeader(magic)){
+					// 之后不是frame时视为结束，与lz4命令行相同
+					eof = true;
+				}
+				continue;
+			}
+			boolean compressed = (size & 0x80000000) == 0;
+			size &= 0x7FFFFFFF;
+			if(size > block.length)
+				throw new IOException("lz4 block larger than " + block.length + " bytes");
+			// 相互引用的block保留前面最多64K的数据
+			int dict = 0;
+			if(!independent && limit > 0){
+				dict = Math.min(limit, WINDOW);
+				System.arraycopy(window, limit - dict, window, 0, dict);
+			}
+			if(compressed){
+				readFully(block, size);
+				limit = dict + decompress(block, size, window, dict);
+			}else{
+				readFully(window, dict, size);
+				limit = dict + size;
+			}
+			pos = dict;
+			if(blockChecksum)
+				skipFully(4);
+			if(limit > pos)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 解压一个lz4 block到dst的start位置，返回解压出的字节数。match可以引用start之前的窗口
+	 */
+	static int decompress(byte[] src, int srcLen, byte[] dst, int start) throws IOException {
+		int sp = 0;
+		int dp = start;
+		int dstEnd = dst.length;
+		while(sp < srcLen){
+			int token = src[sp++] & 0xFF;
+			int literal = token >>> 4;
+			if(literal == 15){
+				int b;
+				do{
+					if(sp >= srcLen)
+						throw corrupted();
+					b = src[sp++] & 0xFF;
+					literal += b;
+				}while(b == 255);
+			}
+			if(literal > srcLen - sp || literal > dstEnd - dp)
+				throw corrupted();
+			System.arraycopy(src, sp, dst, dp, literal);
+			sp += literal;
+			dp += literal;
+			// 最后一个sequence只有literal
+			if(sp == srcLen)
+				break;
+			if(sp + 2 > srcLen)
+				throw corrupted();
+			int offset = (src[sp] & 0xFF) | (src[sp + 1] & 0xFF) << 8;
+			sp += 2;
+			int match = token & 0x0F;
+			if(match == 15){
+				int b;
+				do{
+					if(sp >= srcLen)
+						throw corrupted();
+					b = src[sp++] & 0xFF;
+					match += b;
+				}while(b == 255);
+			}
+			match += 4;
+			int from = dp - offset;
+			if(offset == 0 || from < 0 || match > dstEnd - dp)
+				throw corrupted();
+			if(offset >= match){
+				System.arraycopy(dst, from, dst, dp, match);
+				dp += match;
+			}else{
+				// 重叠的match逐个字节复制，重复前面的offset个字节
+				for(int end = dp + match; dp < end;){
+					dst[dp++] = dst[from++];
+				}
+			}
+		}
+		return dp - start;
+	}
+
+	private static IOException corrupted() {
+		return new IOException("corrupted lz4 block");
+	}
+
+	private int readByte() throws IOException {
+		int b = in.read();
+		if(b < 0)
+			throw new EOFException("unexpected end of lz4 frame");
+		return b;
+	}
+
+	private int readIntLE() throws IOException {
+		return readByte() | readByte() << 8 | readByte() << 16 | readByte() << 24;
+	}
+
+	/**
+	 * 读取下一个frame的魔数，已经到结尾时返回-1
+	 */
+	private int readIntLEOrEOF() throws IOException {
+		int b = in.read();
+		if(b < 0)
+			return -1;
+		return b | readByte() << 8 | readByte() << 16 | readByte() << 24;
+	}
+
+	private void readFully(byte[] b, int len) throws IOException {
+		readFully(b, 0, len);
+	}
+
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		while(len > 0){
+			int n = in.read(b, off, len);
+			if(n < 0)
+				throw new EOFException("unexpected end of lz4 frame");
+			off += n;
+			len -= n;
+		}
+	}
+
+	private void skipFully(long n) throws IOException {
+		while(n > 0){
+			long skipped = in.skip(n);
+			if(skipped <= 0){
+				readByte();
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.wedis.redis.decoder;
+
+import java.io.IOException;
+
+import com.wedis.base.enums.ResponseCode;
+import com.wedis.base.enums.SerializeType;
+import com.wedis.base.exception.CoreException;
+import com.wedis.redis.io.MsgpackReader;
+
+/**
+ * MessagePack序列化的map或数组。fixmap(0x80-0x8f)和fixarray(0x90-0x9f)不可能是utf-8的第一个字节；
+ * array16/32和map16/32(0xdc-0xdf)的第二个字节是长度的高位，通常小于0x80，与utf-8的双字节字符区分
+ */
+public class MsgpackValueDecoder implements ValueDecoder {
+
+	@Override
+	public SerializeType getType() {
+		return SerializeType.MSGPACK;
+	}
+
+	@Override
+	public boolean accepts(int first) {
+		return (first >= 0x80 && first <= 0x9F) || (first >= 0xDC && first <= 0xDF);
+	}
+
+	@Override
+	public boolean sniff(byte[] value) {
+		int first = value[0] & 0xFF;
+		if(first <= 0x9F)
+			return value.length > 1 || first == 0x80 || first == 0x90;
+		int header = first <= 0xDD ? (first == 0xDC ? 3 : 5) : (first == 0xDE ? 3 : 5);
+		return value.length >= header && (value[1] & 0x80) == 0;
+	}
+
+	@Override
+	public Object decode(byte[] value) {
+		try{
+			return new MsgpackReader(value).readObject();
+		}catch(IOException e){
+			throw new CoreException(ResponseCode.VALUE_DECODE_FAILED, "msgpack decode failed?" + e.toString());
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.wedis.redis.decoder;
+
+import java.io.IOException;
+
+import com.wedis.base.enums.ResponseCode;
+import com.wedis.base.enums.SerializeType;
+import com.wedis.base.exception.CoreException;
+import com.wedis.redis.io.ProtobufReader;
+
+/**
+ * protobuf wire format。只识别字段编号1-3开头的消息，这些tag都是控制字符，不会是文本的开头；
+ * 识别时最多解析前两个字段的tag和长度，检查wire type和长度是否合法
+ */
+public class ProtobufValueDecoder implements ValueDecoder {
+
+	/** 最多检查的字段个数 */
+	private static final int SNIFF_FIELDS = 2;
+
+	@Override
+	public SerializeType getType() {
+		return SerializeType.PROTOBUF;
+	}
+
+	@Override
+	public boolean accepts(int first) {
+		return first < 0x20 && (first >> 3) >= 1 && isWireType(first & 0x07);
+	}
+
+	@Override
+	public boolean sniff(byte[] value) {
+		int pos = 0;
+		for(int f = 0; f < SNIFF_FIELDS && pos < value.length; f++){
+			long tag = readVarint(value, pos);
+			if(tag < 0)
+				return false;
+			pos = (int)(tag >>> 32);
+			int key = (int)tag;
+			if((key >>> 3) == 0 || !isWireType(key & 0x07))
+				return false;
+			switch(key & 0x07){
+			case 0:
+				long v = readVarint(value, pos);
+				if(v < 0)
+					return false;
+				pos = (int)(v >>> 32);
+				break;
+			case 1:
+				pos += 8;
+				break;
+			case 2:
+				long len = readVarint(value, pos);
+				if(len < 0)
+					return false;
+				long next = (len >>> 32) + (len & 0xFFFFFFFFL);
+				if(next > value.length)
+					return false;
+				pos = (int)next;
+				break;
+			default:
+				pos += 4;
+			}
+			if(pos > value.length)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public Object decode(byte[] value) {
+		try{
+			return new ProtobufReader(value).readObject();
+		}catch(IOException e){
+			throw new CoreException(ResponseCode.VALUE_DECODE_FAILED, "protobuf decode failed?" + e.toString());
+		}
+	}
+
+	private static boolean isWireType(int type) {
+		// 3和4是已经废弃的group
+		return type == 0 || type == 1 || type == 2 || type == 5;
+	}
+
+	/**
+	 * 读取一个最多10个字节的varint，返回(结束位置 << 32 | 低32位的值)，越界或超过10个字节时返回-1
+	 */
+	private static long readVarint(byte[] b, int pos) {
+		int value = 0;
+		for(int shift = 0; shift < 70; shift += 7){
+			if(pos >= b.length)
+				return -1;
+			int x = b[pos++];
+			if(shift < 32)
+				value |= (x & 0x7F) << shift;
+			if(x >= 0)
+				return ((long)pos << 32) | (value & 0xFFFFFFFFL);
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,272 @@
+package com.wedis.redis.decoder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * snappy的解压流，每次解压一个chunk，支持两种带头部的格式:
+ * <ul>
+ * <li>snappy framing格式，以stream identifier chunk(FF 06 00 00 "sNaPpY")开头，
+ * 每个chunk解压后最多64K</li>
+ * <li>snappy-java(xerial)的SnappyOutputStream，以82 "SNAPPY" 00开头，之后是两个版本号，
+ * 每个chunk是4个字节大端的长度加上一个snappy block</li>
+ * </ul>
+ * 没有头部的snappy block无法识别，不支持。不校验crc32c
+ */
+class SnappyInputStream extends InputStream {
+
+	static final byte[] FRAMED_MAGIC = { (byte)0xFF, 0x06, 0x00, 0x00, 's', 'N', 'a', 'P', 'p', 'Y' };
+	static final byte[] XERIAL_MAGIC = { (byte)0x82, 'S', 'N', 'A', 'P', 'P', 'Y', 0x00 };
+
+	/** framing格式一个chunk解压后的最大字节数 */
+	private static final int FRAMED_CHUNK = 64 * 1024;
+	/** snappy-java的一个chunk的最大字节数，默认的chunk是32K */
+	private static final int MAX_XERIAL_CHUNK = 16 * 1024 * 1024;
+
+	private final InputStream in;
+	private final boolean framed;
+
+	/** 压缩后的chunk */
+	private byte[] chunk = new byte[0];
+	/** 解压后的chunk */
+	private byte[] buf = new byte[0];
+	private int pos;
+	private int limit;
+	private boolean eof;
+
+	SnappyInputStream(InputStream in) throws IOException {
+		this.in = in;
+		int first = readByte();
+		if(first == 0xFF){
+			framed = true;
+			readMagic(FRAMED_MAGIC);
+		}else if(first == 0x82){
+			framed = false;
+			readMagic(XERIAL_MAGIC);
+			// version和compatible version
+			skipFully(8);
+		}else{
+			throw new IOException("not a snappy stream");
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(pos == limit && !fill())
+			return -1;
+		return buf[pos++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0)
+			return 0;
+		if(pos == limit && !fill())
+			return -1;
+		int n = Math.min(len, limit - pos);
+		System.arraycopy(buf, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private void readMagic(byte[] magic) throws IOException {
+		for(int i = 1; i < magic.length; i++){
+			if(readByte() != (magic[i] & 0xFF))
+				throw new IOException("not a snappy stream");
+		}
+	}
+
+	/**
+	 * 解压下一个有数据的chunk，结束时返回false
+	 */
+	private boolean fill() throws IOException {
+		while(!eof){
+			if(framed ? fillFramed() : fillXerial())
+				return true;
+		}
+		return false;
+	}
+
+	private boolean fillFramed() throws IOException {
+		int type = in.read();
+		if(type < 0){
+			eof = true;
+			return false;
+		}
+		int length = readByte() | readByte() << 8 | readByte() << 16;
+		switch(type){
+		case 0x00: // 压缩的数据，前4个字节是crc
+		case 0x01: // 没有压缩的数据
+			if(length < 4 || length - 4 > FRAMED_CHUNK + FRAMED_CHUNK / 6 + 32)
+				throw new IOException("invalid snappy chunk length: " + length);
+			skipFully(4);
+			if(type == 0x01){
+				if(length - 4 > FRAMED_CHUNK)
+					throw new IOException("invalid snappy chunk length: " + length);
+				ensureBuf(length - 4);
+				readFully(buf, length - 4);
+				pos = 0;
+				limit = length - 4;
+			}else{
+				inflateChunk(length - 4, FRAMED_CHUNK);
+			}
+			return limit > 0;
+		case 0xFF: // 拼接的流中再次出现的stream identifier
+			if(length != 6)
+				throw new IOException("invalid snappy stream identifier");
+			skipFully(6);
+			return false;
+		default:
+			// 0x02-0x7F是保留的不可跳过的chunk，0x80-0xFE可以跳过
+			if(type < 0x80)
+				throw new IOException("unsupported snappy chunk type: " + type);
+			skipFully(length);
+			return false;
+		}
+	}
+
+	private boolean fillXerial() throws IOException {
+		int b = in.read();
+		if(b < 0){
+			eof = true;
+			return false;
+		}
+		int length = b << 24 | readByte() << 16 | readByte() << 8 | readByte();
+		if(length < 0 || length > MAX_XERIAL_CHUNK)
+			throw new IOException("invalid snappy chunk length: " + length);
+		inflateChunk(length, MAX_XERIAL_CHUNK);
+		return limit > 0;
+	}
+
+	private void inflateChunk(int length, int maxLength) throws IOException {
+		if(chunk.length < length)
+			chunk = new byte[length];
+		readFully(chunk, length);
+		// 开头是varint编码的解压后的长度
+		int sp = 0;
+		int uncompressed = 0;
+		for(int shift = 0;; shift += 7){
+			if(sp >= length || shift > 28)
+				throw corrupted();
+			int v = chunk[sp++] & 0xFF;
+			uncompressed |= (v & 0x7F) << shift;
+			if(v < 0x80)
+				break;
+		}
+		if(uncompressed < 0 || uncompressed > maxLength)
+			throw new IOException("snappy chunk larger than " + maxLength + " bytes");
+		ensureBuf(uncompressed);
+		if(decompress(chunk, sp, length, buf, uncompressed) != uncompressed)
+			throw corrupted();
+		pos = 0;
+		limit = uncompressed;
+	}
+
+	/**
+	 * 解压一个snappy block中varint之后的部分，返回解压出的字节数
+	 */
+	static int decompress(byte[] src, int sp, int srcEnd, byte[] dst, int dstEnd) throws IOException {
+		int dp = 0;
+		while(sp < srcEnd){
+			int tag = src[sp++] & 0xFF;
+			int len;
+			int offset;
+			switch(tag & 0x03){
+			case 0: // literal
+				len = tag >>> 2;
+				if(len >= 60){
+					int bytes = len - 59;
+					if(sp + bytes > srcEnd)
+						throw corrupted();
+					len = 0;
+					for(int i = 0; i < bytes; i++){
+						len |= (src[sp++] & 0xFF) << (8 * i);
+					}
+				}
+				len++;
+				if(len <= 0 || len > srcEnd - sp || len > dstEnd - dp)
+					throw corrupted();
+				System.arraycopy(src, sp, dst, dp, len);
+				sp += len;
+				dp += len;
+				continue;
+			case 1: // 1个字节的offset
+				if(sp >= srcEnd)
+					throw corrupted();
+				len = ((tag >>> 2) & 0x07) + 4;
+				offset = (tag >>> 5) << 8 | (src[sp++] & 0xFF);
+				break;
+			case 2: // 2个字节的offset
+				if(sp + 2 > srcEnd)
+					throw corrupted();
+				len = (tag >>> 2) + 1;
+				offset = (src[sp] & 0xFF) | (src[sp + 1] & 0xFF) << 8;
+				sp += 2;
+				break;
+			default: // 4个字节的offset
+				if(sp + 4 > srcEnd)
+					throw corrupted();
+				len = (tag >>> 2) + 1;
+				offset = (src[sp] & 0xFF) | (src[sp + 1] & 0xFF) << 8 | (src[sp + 2] & 0xFF) << 16
+					| (src[sp + 3] & 0xFF) << 24;
+				sp += 4;
+				break;
+			}
+			int from = dp - offset;
+			if(offset <= 0 || from < 0 || len > dstEnd - dp)
+				throw corrupted();
+			if(offset >= len){
+				System.arraycopy(dst, from, dst, dp, len);
+				dp += len;
+			}else{
+				for(int end = dp + len; dp < end;){
+					dst[dp++] = dst[from++];
+				}
+			}
+		}
+		return dp;
+	}
+
+	private static IOException corrupted() {
+		return new IOException("corrupted snappy chunk");
+	}
+
+	private void ensureBuf(int size) {
+		if(buf.length < size)
+			buf = new byte[size];
+	}
+
+	private int readByte() throws IOException {
+		int b = in.read();
+		if(b < 0)
+			throw new EOFException("unexpected end of snappy stream");
+		return b;
+	}
+
+	private void readFully(byte[] b, int len) throws IOException {
+		int off = 0;
+		while(off < len){
+			int n = in.read(b, off, len - off);
+			if(n < 0)
+				throw new EOFException("unexpected end of snappy stream");
+			off += n;
+		}
+	}
+
+	private void skipFully(long n) throws IOException {
+		while(n > 0){
+			long skipped = in.skip(n);
+			if(skipped <= 0){
+				readByte();
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+}
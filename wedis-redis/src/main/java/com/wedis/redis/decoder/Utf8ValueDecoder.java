@@ -0,0 +1,57 @@
+package com.wedis.redis.decoder;
+
+import java.nio.charset.StandardCharsets;
+
+import com.wedis.base.enums.SerializeType;
+
+/**
+ * utf-8文本。只检查前SNIFF_BYTES个字节是否是合法的utf-8并且除了\t\r\n之外没有控制字符
+ */
+public class Utf8ValueDecoder implements ValueDecoder {
+
+	/** 识别时检查的字节数 */
+	private static final int SNIFF_BYTES = 256;
+
+	@Override
+	public SerializeType getType() {
+		return SerializeType.STRING;
+	}
+
+	@Override
+	public boolean accepts(int first) {
+		return (first >= 0x20 && first != 0x7F && first < 0x80) || first == '\t' || first == '\n'
+			|| first == '\r' || (first >= 0xC2 && first <= 0xF4);
+	}
+
+	@Override
+	public boolean sniff(byte[] value) {
+		int end = Math.min(value.length, SNIFF_BYTES);
+		int i = 0;
+		while(i < end){
+			int b = value[i] & 0xFF;
+			if(b < 0x80){
+				if((b < 0x20 && b != '\t' && b != '\n' && b != '\r') || b == 0x7F)
+					return false;
+				i++;
+				continue;
+			}
+			int size = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+			if(b < 0xC2 || b > 0xF4)
+				return false;
+			for(int k = 1; k < size; k++){
+				if(i + k >= end)
+					// 只检查到SNIFF_BYTES，值被截断(例如预览)时也可能在字符中间结束
+					return true;
+				if((value[i + k] & 0xC0) != 0x80)
+					return false;
+			}
+			i += size;
+		}
+		return true;
+	}
+
+	@Override
+	public Object decode(byte[] value) {
+		return new String(value, StandardCharsets.UTF_8);
+	}
+}
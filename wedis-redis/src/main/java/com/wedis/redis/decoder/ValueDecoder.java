@@ -0,0 +1,45 @@
+package com.wedis.redis.decoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.wedis.base.enums.SerializeType;
+
+/**
+ * 一种值格式的识别和解码，注册到ValueDecoderRegistry后按值开头的字节自动选择
+ */
+public interface ValueDecoder {
+
+	SerializeType getType();
+
+	/**
+	 * 值的第一个字节为first(0-255)时是否可能是这个格式。注册时对每个字节调用一次，
+	 * 识别时只对第一个字节可能匹配的解码器调用sniff
+	 */
+	boolean accepts(int first);
+
+	/**
+	 * 判断值是否是这个格式，只能检查值开头固定个数的字节，不能随值的长度增长
+	 */
+	boolean sniff(byte[] value);
+
+	/**
+	 * 解码成可以转换成json的对象(Map、List、String、Number等)，失败时抛出CoreException
+	 */
+	Object decode(byte[] value);
+
+	/**
+	 * 从流中解码，用于解压后的值，流中剩余的所有字节就是这个值。
+	 * 默认读出全部字节后调用decode(byte[])，能按流解析的格式覆盖这个方法，不再同时持有整个解压后的值
+	 */
+	default Object decode(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int n;
+		while((n = in.read(buf)) > 0){
+			out.write(buf, 0, n);
+		}
+		return decode(out.toByteArray());
+	}
+}
@@ -0,0 +1,133 @@
+package com.wedis.redis.decoder;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.wedis.base.enums.SerializeType;
+
+/**
+ * 值格式的解码器注册表。按值的第一个字节查表得到可能匹配的解码器，依次调用sniff，
+ * 每个sniff只检查固定个数的字节，因此识别一个值的代价与值的大小无关，
+ * 不同格式混在一起的keyspace也可以一次渲染，不需要给每个连接选择序列化方式。
+ *
+ * 先注册的解码器优先，都不匹配时按BYTES显示
+ */
+public class ValueDecoderRegistry {
+
+	private static final ValueDecoder[] NONE = new ValueDecoder[0];
+	/** 按流解码时读出来识别格式的字节数 */
+	private static final int HEAD_BYTES = 1024;
+
+	private static final ValueDecoderRegistry DEFAULT = new ValueDecoderRegistry();
+	static{
+		DEFAULT.register(new JdkValueDecoder());
+		DEFAULT.register(new CompressedValueDecoder(SerializeType.GZIP, DEFAULT));
+		DEFAULT.register(new CompressedValueDecoder(SerializeType.ZLIB, DEFAULT));
+		DEFAULT.register(new CompressedValueDecoder(SerializeType.LZ4, DEFAULT));
+		DEFAULT.register(new CompressedValueDecoder(SerializeType.SNAPPY, DEFAULT));
+		DEFAULT.register(new JsonValueDecoder());
+		DEFAULT.register(new Hessian2ValueDecoder());
+		DEFAULT.register(new MsgpackValueDecoder());
+		DEFAULT.register(new ProtobufValueDecoder());
+		DEFAULT.register(new Utf8ValueDecoder());
+	}
+
+	private final ValueDecoder fallback = new BytesValueDecoder();
+	private final List<ValueDecoder> decoders = new ArrayList<>();
+	/** 第一个字节 -> 可能匹配的解码器，注册时整体替换 */
+	private volatile ValueDecoder[][] table;
+	/** 空值没有第一个字节，由STRING的解码器解码 */
+	private volatile ValueDecoder empty = fallback;
+
+	public ValueDecoderRegistry() {
+		table = new ValueDecoder[256][];
+		Arrays.fill(table, NONE);
+	}
+
+	/**
+	 * 默认的注册表，包含所有内置的格式
+	 */
+	public static ValueDecoderRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * 注册一个解码器，同一种格式只保留最后注册的一个
+	 */
+	public synchronized void register(ValueDecoder decoder) {
+		for(int i = 0; i < decoders.size(); i++){
+			if(decoders.get(i).getType() == decoder.getType()){
+				decoders.remove(i);
+				break;
+			}
+		}
+		decoders.add(decoder);
+		ValueDecoder[][] table = new ValueDecoder[256][];
+		List<ValueDecoder> matched = new ArrayList<>();
+		for(int b = 0; b < 256; b++){
+			matched.clear();
+			for(ValueDecoder d : decoders){
+				if(d.accepts(b))
+					matched.add(d);
+			}
+			table[b] = matched.isEmpty() ? NONE : matched.toArray(new ValueDecoder[matched.size()]);
+		}
+		this.table = table;
+		ValueDecoder string = get(SerializeType.STRING);
+		this.empty = string != null ? string : fallback;
+	}
+
+	/**
+	 * 识别值的格式，都不匹配时返回BYTES的解码器
+	 */
+	public ValueDecoder detect(byte[] value) {
+		if(value.length == 0)
+			return empty;
+		for(ValueDecoder d : table[value[0] & 0xFF]){
+			if(d.sniff(value))
+				return d;
+		}
+		return fallback;
+	}
+
+	/**
+	 * 返回指定格式的解码器，AUTO和没有注册的格式返回null
+	 */
+	public synchronized ValueDecoder get(SerializeType type) {
+		if(type == SerializeType.BYTES)
+			return fallback;
+		for(ValueDecoder d : decoders){
+			if(d.getType() == type)
+				return d;
+		}
+		return null;
+	}
+
+	/**
+	 * 识别格式后解码
+	 */
+	public Object decode(byte[] value) {
+		return detect(value).decode(value);
+	}
+
+	/**
+	 * 从流中识别格式后解码，例如解压后的值。只缓冲开头的HEAD_BYTES个字节用于识别，
+	 * 之后交给解码器按流读取
+	 */
+	public Object decode(InputStream in) throws IOException {
+		BufferedInputStream bin = new BufferedInputStream(in, HEAD_BYTES);
+		bin.mark(HEAD_BYTES);
+		byte[] head = new byte[HEAD_BYTES];
+		int n = 0;
+		int r;
+		while(n < head.length && (r = bin.read(head, n, head.length - n)) > 0){
+			n += r;
+		}
+		bin.reset();
+		return detect(n == head.length ? head : Arrays.copyOf(head, n)).decode(bin);
+	}
+}
@@ -0,0 +1,236 @@
+package com.wedis.redis.factory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.jar.JarFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.wedis.base.dto.ConnectionDto;
+import com.wedis.base.enums.ResponseCode;
+import com.wedis.base.exception.CoreException;
+import com.wedis.redis.io.JarClassLoader;
+
+/**
+ * 按连接缓存解码用的应用jar的classloader。
+ *
+ * 连接的jar来自连接设置中的classPath(jar文件或目录，多个以;或换行分隔，目录中的所有jar都加入)和上传到
+ * ${wedis.jar.dir}/{连接id}/中的jar。jar的路径、大小或修改时间变化后下一次使用时重新创建loader，
+ * 旧的loader等正在进行的解码结束后关闭。
+ *
+ * 每个连接最多每CHECK_INTERVAL列出并检查一次jar，其间直接使用缓存的loader；上传、删除jar和修改连接设置
+ * 时立即失效，只有在目录中直接替换的jar最多在CHECK_INTERVAL之后生效
+ */
+@Component
+public class ClassLoaderFactory {
+
+	private static final Logger logger = LoggerFactory.getLogger(ClassLoaderFactory.class);
+
+	/** 上传的jar保存的目录，每个连接一个子目录 */
+	@Value("${wedis.jar.dir:${user.home}/.wedis/jars}")
+	private String jarDir;
+
+	@Autowired
+	private WedisConnectionFactory connFactory;
+
+	private final Map<Long, JarClassLoader> loaders = new ConcurrentHashMap<>();
+	/** 连接 -> 最近一次检查jar的时间，没有jar的连接也记录 */
+	private final Map<Long, Long> checked = new ConcurrentHashMap<>();
+	private static final long CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+	/** 每次destroy加一，锁外列出jar期间有destroy时列出的结果作废 */
+	private volatile int generation;
+	/** 创建过的loader数量，jar没有变化时不应该增长 */
+	private final LongAdder created = new LongAdder();
+
+	/**
+	 * 返回连接的classloader并增加一个引用，使用完后调用release；连接没有配置jar时返回null
+	 */
+	public JarClassLoader acquire(Long id) {
+		long now = System.currentTimeMillis();
+		Long last = checked.get(id);
+		if(last != null && now - last < CHECK_INTERVAL){
+			JarClassLoader loader = loaders.get(id);
+			if(loader == null)
+				return null;
+			if(loader.retain())
+				return loader;
+		}
+		// 列出jar和读取文件属性在锁外，锁只保护替换loader；列出之后有destroy时重新列出
+		for(;;){
+			int gen = generation;
+			List<File> jars = listJarFiles(id);
+			String signature = jars.isEmpty() ? null : signature(jars);
+			synchronized(this){
+				if(gen != generation)
+					continue;
+				checked.put(id, now);
+				return replace(id, jars, signature);
+			}
+		}
+	}
+
+	/**
+	 * 按最新的jar返回连接的loader，jar变化时替换缓存的loader，调用时持有锁
+	 */
+	private JarClassLoader replace(Long id, List<File> jars, String signature) {
+		JarClassLoader loader = loaders.get(id);
+		if(signature == null){
+			if(loader != null){
+				loaders.remove(id);
+				loader.retire();
+			}
+			return null;
+		}
+		if(loader != null && loader.getSignature().equals(signature) && loader.retain())
+			return loader;
+		if(loader != null)
+			loader.retire();
+
+		loader = new JarClassLoader(toUrls(jars), getClass().getClassLoader(), signature);
+		loader.retain();
+		loaders.put(id, loader);
+		created.increment();
+		logger.info("create classloader for connection {}, jars:{}", id, jars);
+		return loader;
+	}
+
+	/**
+	 * 连接设置修改或删除后调用，正在使用的loader在解码结束后关闭
+	 */
+	public synchronized void destroy(Long id) {
+		generation++;
+		checked.remove(id);
+		JarClassLoader loader = loaders.remove(id);
+		if(loader != null)
+			loader.retire();
+	}
+
+	/**
+	 * 保存上传的jar，同名的jar被替换
+	 */
+	public void saveJar(Long id, String fileName, InputStream in) throws IOException {
+		String name = fileName == null ? "" : new File(fileName).getName();
+		if(!name.endsWith(".jar"))
+			throw new CoreException(ResponseCode.JAR_INVALID, "not a jar: " + fileName);
+		File dir = uploadDir(id);
+		if(!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("can not create " + dir);
+		Path tmp = Files.createTempFile(dir.toPath(), name, ".tmp");
+		try{
+			Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+			// 打不开的文件不作为jar保存
+			try(JarFile jar = new JarFile(tmp.toFile())){
+				jar.size();
+			}catch(IOException e){
+				throw new CoreException(ResponseCode.JAR_INVALID, "invalid jar: " + name);
+			}
+			Files.move(tmp, new File(dir, name).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}finally{
+			Files.deleteIfExists(tmp);
+		}
+		destroy(id);
+	}
+
+	/**
+	 * 删除上传的jar，不存在时返回false
+	 */
+	public boolean deleteJar(Long id, String fileName) throws IOException {
+		File jar = new File(uploadDir(id), new File(fileName).getName());
+		if(!jar.isFile())
+			return false;
+		destroy(id);
+		return Files.deleteIfExists(jar.toPath());
+	}
+
+	/**
+	 * 连接当前使用的所有jar的路径
+	 */
+	public List<String> listJars(Long id) {
+		List<String> paths = new ArrayList<>();
+		for(File jar : listJarFiles(id)){
+			paths.add(jar.getAbsolutePath());
+		}
+		return paths;
+	}
+
+	public Map<String, Long> metrics() {
+		Map<String, Long> metrics = new LinkedHashMap<>();
+		long resolved = 0;
+		for(JarClassLoader loader : loaders.values()){
+			resolved += loader.resolvedSize();
+		}
+		metrics.put("classLoaders", (long)loaders.size());
+		metrics.put("classLoadersCreated", created.sum());
+		metrics.put("classLoaderResolved", resolved);
+		return metrics;
+	}
+
+	private File uploadDir(Long id) {
+		return new File(jarDir, String.valueOf(id));
+	}
+
+	private List<File> listJarFiles(Long id) {
+		List<File> jars = new ArrayList<>();
+		ConnectionDto conn = connFactory.getConnectionDto(id);
+		if(conn != null && StringUtils.hasText(conn.getClassPath())){
+			for(String path : conn.getClassPath().split("[;\\r\\n]+")){
+				if(StringUtils.hasText(path))
+					addJars(new File(path.trim()), jars);
+			}
+		}
+		addJars(uploadDir(id), jars);
+		return jars;
+	}
+
+	private static void addJars(File file, List<File> jars) {
+		if(file.isFile()){
+			jars.add(file);
+		}else if(file.isDirectory()){
+			File[] files = file.listFiles((dir, name) -> name.endsWith(".jar"));
+			if(files != null){
+				Arrays.sort(files);
+				jars.addAll(Arrays.asList(files));
+			}
+		}
+	}
+
+	private static String signature(List<File> jars) {
+		StringBuilder sb = new StringBuilder();
+		for(File jar : jars){
+			sb.append(jar.getAbsolutePath()).append(':').append(jar.length()).append(':')
+				.append(jar.lastModified()).append(';');
+		}
+		return sb.toString();
+	}
+
+	private static URL[] toUrls(List<File> jars) {
+		URL[] urls = new URL[jars.size()];
+		for(int i = 0; i < urls.length; i++){
+			try{
+				urls[i] = jars.get(i).toURI().toURL();
+			}catch(MalformedURLException e){
+				throw new IllegalArgumentException(e);
+			}
+		}
+		return urls;
+	}
+}
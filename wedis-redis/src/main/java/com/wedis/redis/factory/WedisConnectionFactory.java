@@ -1,11 +1,26 @@
 package com.wedis.redis.factory;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisPassword;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
@@ -19,15 +34,47 @@ import com.wedis.base.dto.ConnectionDto;
 import com.wedis.redis.factory.loader.ConnectionLoader;
 import com.wedis.redis.serializer.ByteRedisSerializer;
 
+/**
+ * 连接池按(connectionId, db)划分，每个库使用独立的连接池，连接在创建时就已经选好了库，
+ * 借出的连接不需要再执行SELECT，也不会把库的状态带回到其他库的连接池中。
+ * 
+ * 启动时只加载连接配置，连接池在第一次使用时才创建，最近使用过的连接在后台并行预热，
+ * 启动时间不受保存的连接数量和连接是否可用的影响
+ */
 @Component
 public class WedisConnectionFactory implements InitializingBean {
 
-	private final Map<Long, JedisConnectionFactory> factorys = new ConcurrentHashMap<>();
+	private static final Logger logger = LoggerFactory.getLogger(WedisConnectionFactory.class);
+
+	private static final int DEFAULT_DB = 0;
+
+	private final Map<Long, ConnectionDto> conns = new ConcurrentHashMap<>();
+	private final Map<DbKey, JedisConnectionFactory> factorys = new ConcurrentHashMap<>();
 	// 使用template主要是为了能够方便的管理连接池的获取和释放(ps:比较懒，但是会多一层无用的转换)
-	private final Map<Long, RedisTemplate<byte[], byte[]>> templates = new ConcurrentHashMap<>();
+	private final Map<DbKey, RedisTemplate<byte[], byte[]>> templates = new ConcurrentHashMap<>();
+
+	/** 借出的非0号库的连接数，这些连接每次借出都省掉了一次SELECT */
+	private final LongAdder selectAvoided = new LongAdder();
+	/** 最近一次记录使用时间的时刻，避免每次借出连接都写库 */
+	private final Map<Long, Long> touched = new ConcurrentHashMap<>();
+	private static final long TOUCH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+	/** 在后台写入最近使用时间，不阻塞借出连接 */
+	private final ExecutorService touchExecutor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "wedis-touch");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/** 启动时预热最近使用过的连接数量，0表示不预热 */
+	@Value("${wedis.connection.prewarm-count:5}")
+	private int prewarmCount;
+	/** 预热使用的线程数 */
+	@Value("${wedis.connection.prewarm-threads:4}")
+	private int prewarmThreads;
 
 	@Autowired
 	private ConnectionLoader loader;
+	/** 默认的连接池设置，连接没有单独设置时使用 */
 	@Autowired
 	private JedisClientConfiguration clientConfig;
 
@@ -37,71 +84,238 @@ public class WedisConnectionFactory implements InitializingBean {
 		for(ConnectionDto c : conns){
 			addConnection(c);
 		}
+		preWarmRecent(conns);
 	}
 
+	/**
+	 * 只登记连接配置，连接池在第一次使用时创建
+	 */
 	public void addConnection(ConnectionDto conn) {
-		addTemplate(conn, addFactory(conn));
+		Assert.notNull(conn.getId(), "Id must not be null");
+		conns.put(conn.getId(), conn);
+	}
+
+	/**
+	 * 在后台线程中并行预热最近使用过的prewarmCount个连接，不阻塞启动
+	 */
+	private void preWarmRecent(List<ConnectionDto> all) {
+		if(prewarmCount <= 0)
+			return;
+		List<ConnectionDto> recent = all.stream().filter(c -> c.getLastUsed() != null)
+			.sorted(Comparator.comparing(ConnectionDto::getLastUsed).reversed())
+			.limit(prewarmCount).collect(Collectors.toList());
+		if(recent.isEmpty())
+			return;
+
+		AtomicInteger seq = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(
+			Math.max(1, Math.min(prewarmThreads, recent.size())), r -> {
+				Thread t = new Thread(r, "wedis-prewarm-" + seq.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		for(ConnectionDto c : recent){
+			executor.execute(() -> {
+				try{
+					getFactory(new DbKey(c.getId(), DEFAULT_DB)).getConnection().close();
+				}catch(RuntimeException e){
+					logger.warn("pre-warm connection failed, id:{}, {}", c.getId(), e.toString());
+				}
+			});
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * 记录连接的最近使用时间，用于下次启动时决定预热哪些连接。并发借出时只有更新了touched的
+	 * 线程写库，写库在touchExecutor中执行
+	 */
+	private void touch(Long id) {
+		long now = System.currentTimeMillis();
+		Long last = touched.get(id);
+		if(last != null && now - last < TOUCH_INTERVAL)
+			return;
+		if(last == null ? touched.putIfAbsent(id, now) != null : !touched.replace(id, last, now))
+			return;
+		touchExecutor.execute(() -> {
+			try{
+				loader.touch(id, now);
+			}catch(RuntimeException e){
+				logger.warn("update last used time failed, id:{}, {}", id, e.toString());
+			}
+		});
+	}
+
+	/**
+	 * 已登记的连接配置，没有时返回null
+	 */
+	public ConnectionDto getConnectionDto(Long id) {
+		return conns.get(id);
 	}
 
 	public void destroy(Long id) {
-		templates.remove(id);
-		JedisConnectionFactory factory = factorys.remove(id);
+		conns.remove(id);
+		touched.remove(id);
+		Iterator<DbKey> it = factorys.keySet().iterator();
+		while(it.hasNext()){
+			DbKey key = it.next();
+			if(key.id.equals(id)){
+				templates.remove(key);
+				JedisConnectionFactory factory = factorys.remove(key);
+				if(factory != null)
+					factory.destroy();
+			}
+		}
+	}
+
+	private JedisConnectionFactory getFactory(DbKey key) {
+		JedisConnectionFactory factory = factorys.get(key);
 		if(factory != null)
-			factory.destroy();
+			return factory;
+		ConnectionDto conn = conns.get(key.id);
+		if(conn == null){
+			throw new IllegalArgumentException("ConnectionFactory not found, id:" + key.id);
+		}
+		// computeIfAbsent中只创建连接池，不建立连接；预热在锁外由创建了连接池的线程执行一次，
+		// 不可达的连接不会让同一个bin上的其他连接等待连接超时
+		JedisConnectionFactory[] created = new JedisConnectionFactory[1];
+		factory = factorys.computeIfAbsent(key, k -> created[0] = createFactory(conn, k.db));
+		if(created[0] != null)
+			preWarm(created[0], conn);
+		return factory;
 	}
 
-	private JedisConnectionFactory addFactory(ConnectionDto conn) {
+	private JedisConnectionFactory createFactory(ConnectionDto conn, int db) {
 		RedisStandaloneConfiguration standalone = new RedisStandaloneConfiguration();
 		standalone.setHostName(conn.getHost());
 		standalone.setPort(conn.getPort());
 		standalone.setPassword(RedisPassword.of(conn.getPwd()));
+		// 连接创建时执行一次SELECT，之后借出不再切换库
+		standalone.setDatabase(db);
 
-		JedisConnectionFactory factory = new JedisConnectionFactory(standalone, clientConfig);
+		JedisConnectionFactory factory = new JedisConnectionFactory(standalone,
+			createClientConfig(conn));
 		factory.afterPropertiesSet();
-		addFactory(conn.getId(), factory);
-
 		return factory;
 	}
 
-	private RedisTemplate<byte[], byte[]> addTemplate(ConnectionDto conn,
-		JedisConnectionFactory factory) {
+	private JedisClientConfiguration createClientConfig(ConnectionDto conn) {
+		GenericObjectPoolConfig poolConfig = clientConfig.getPoolConfig().isPresent()
+			? clientConfig.getPoolConfig().get().clone() : new GenericObjectPoolConfig();
+		if(conn.getMaxTotal() != null)
+			poolConfig.setMaxTotal(conn.getMaxTotal());
+		if(conn.getMaxIdle() != null)
+			poolConfig.setMaxIdle(conn.getMaxIdle());
+		if(conn.getMinIdle() != null)
+			poolConfig.setMinIdle(conn.getMinIdle());
+		if(conn.getMaxWaitMillis() != null)
+			poolConfig.setMaxWaitMillis(conn.getMaxWaitMillis());
+		// 预热的连接要能留在池中
+		if(conn.getPreWarm() != null && poolConfig.getMaxIdle() >= 0
+			&& poolConfig.getMaxIdle() < conn.getPreWarm())
+			poolConfig.setMaxIdle(conn.getPreWarm());
+
+		Duration connectTimeout = conn.getTimeout() == null ? clientConfig.getConnectTimeout()
+			: Duration.ofMillis(conn.getTimeout());
+		Duration readTimeout = conn.getTimeout() == null ? clientConfig.getReadTimeout()
+			: Duration.ofMillis(conn.getTimeout());
+		return JedisClientConfiguration.builder().connectTimeout(connectTimeout)
+			.readTimeout(readTimeout).usePooling().poolConfig(poolConfig).build();
+	}
+
+	/**
+	 * 预先建立preWarm个连接放回池中，避免第一批请求都在建立连接
+	 */
+	private void preWarm(JedisConnectionFactory factory, ConnectionDto conn) {
+		int count = conn.getPreWarm() == null ? 0 : conn.getPreWarm();
+		int maxTotal = factory.getClientConfiguration().getPoolConfig().get().getMaxTotal();
+		if(maxTotal >= 0)
+			count = Math.min(count, maxTotal);
+		List<RedisConnection> warmed = new ArrayList<>(count);
+		try{
+			for(int i = 0; i < count; i++){
+				warmed.add(factory.getConnection());
+			}
+		}catch(RuntimeException e){
+			logger.warn("pre-warm connection failed, id:{}, {}", conn.getId(), e.toString());
+		}finally{
+			for(RedisConnection c : warmed){
+				c.close();
+			}
+		}
+	}
+
+	private RedisTemplate<byte[], byte[]> createTemplate(JedisConnectionFactory factory) {
 		RedisTemplate<byte[], byte[]> template = new RedisTemplate<>();
 		template.setConnectionFactory(factory);
 		template.setDefaultSerializer(ByteRedisSerializer.INSTANCE);
 		template.afterPropertiesSet();
-		addTemplate(conn.getId(), template);
-
 		return template;
 	}
 
-	private void addFactory(Long id, JedisConnectionFactory factory) {
-		Assert.notNull(id, "Id must not be null");
-		Assert.notNull(factory, "Factory must not be null");
-		factorys.put(id, factory);
-	}
-	
-	private void addTemplate(Long id, RedisTemplate<byte[], byte[]> template) {
-		Assert.notNull(id, "Id must not be null");
-		Assert.notNull(template, "RedisTemplate must not be null");
-		templates.put(id, template);
+	public RedisConnection getConnection(Long id) {
+		return getConnection(id, DEFAULT_DB);
 	}
 
-	public RedisConnection getConnection(Long id) {
+	public RedisConnection getConnection(Long id, Integer db) {
 		Assert.notNull(id, "Id must not be null");
-		JedisConnectionFactory factory = factorys.get(id);
-		if(factory == null) {
-			throw new IllegalArgumentException("ConnectionFactory not found, id:"+id);
+		RedisConnection conn = getFactory(new DbKey(id, db)).getConnection();
+		if(db != null && db != DEFAULT_DB){
+			selectAvoided.increment();
 		}
-		return factory.getConnection();
+		touch(id);
+		return conn;
 	}
 
 	public RedisTemplate<byte[], byte[]> getTemplate(Long id) {
+		return getTemplate(id, DEFAULT_DB);
+	}
+
+	public RedisTemplate<byte[], byte[]> getTemplate(Long id, Integer db) {
 		Assert.notNull(id, "Id must not be null");
-		RedisTemplate<byte[], byte[]> template = templates.get(id);
-		if(template == null){
-			throw new IllegalArgumentException("RedisTemplate not found, id:" + id);
+		DbKey key = new DbKey(id, db);
+		touch(id);
+		RedisTemplate<byte[], byte[]> template = templates.get(key);
+		if(template != null)
+			return template;
+		JedisConnectionFactory factory = getFactory(key);
+		return templates.computeIfAbsent(key, k -> createTemplate(factory));
+	}
+
+	/**
+	 * 连接池相关的统计信息
+	 */
+	public Map<String, Long> metrics() {
+		Map<String, Long> metrics = new LinkedHashMap<>();
+		metrics.put("connections", (long)conns.size());
+		metrics.put("dbPools", (long)factorys.size());
+		metrics.put("selectAvoided", selectAvoided.sum());
+		return metrics;
+	}
+
+	private static final class DbKey {
+		private final Long id;
+		private final int db;
+
+		DbKey(Long id, Integer db) {
+			this.id = id;
+			this.db = db == null ? DEFAULT_DB : db;
+		}
+
+		@Override
+		public int hashCode() {
+			return id.hashCode() * 31 + db;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj)
+				return true;
+			if(!(obj instanceof DbKey))
+				return false;
+			DbKey other = (DbKey)obj;
+			return db == other.db && id.equals(other.id);
 		}
-		return template;
 	}
 
 }
@@ -6,4 +6,9 @@ import com.wedis.base.dto.ConnectionDto;
 
 public interface ConnectionLoader {
 	public List<ConnectionDto> load();
+
+	/**
+	 * 记录连接的最近使用时间
+	 */
+	public void touch(Long id, long lastUsed);
 }
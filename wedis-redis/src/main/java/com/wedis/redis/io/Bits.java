@@ -1,7 +1,25 @@
 package com.wedis.redis.io;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.wedis.base.util.UnsafeUtil;
+
+import sun.misc.Unsafe;
+
 public class Bits {
 
+	private static final Unsafe unsafe = UnsafeUtil.unsafe;
+	private static final long BYTE_ARRAY_BASE = unsafe.arrayBaseOffset(byte[].class);
+	private static final boolean BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+	/** 平台是否支持不对齐的读取，不支持时通过ByteBuffer视图批量解码 */
+	private static final boolean UNALIGNED;
+	static{
+		String arch = System.getProperty("os.arch");
+		UNALIGNED = arch.equals("i386") || arch.equals("x86") || arch.equals("amd64")
+			|| arch.equals("x86_64") || arch.equals("aarch64") || arch.equals("ppc64le");
+	}
+
 	static boolean getBoolean(byte[] b, int off) {
 		return b[off] != 0;
 	}
@@ -77,5 +95,81 @@ public class Bits {
 	static void putDouble(byte[] b, int off, double val) {
 		putLong(b, off, Double.doubleToLongBits(val));
 	}
-}
 
+	/*
+	 * 大端字节批量解码为基本类型数组，每次读取一个完整的字再按需交换字节序，
+	 * JIT会编译为连续的load + bswap，不再逐个字节拼接
+	 */
+
+	static void getChars(byte[] src, int srcpos, char[] dst, int dstpos, int n) {
+		if(!UNALIGNED){
+			ByteBuffer.wrap(src, srcpos, n << 1).asCharBuffer().get(dst, dstpos, n);
+			return;
+		}
+		long addr = BYTE_ARRAY_BASE + srcpos;
+		for(int i = dstpos, end = dstpos + n; i < end; i++, addr += 2){
+			char v = unsafe.getChar(src, addr);
+			dst[i] = BIG_ENDIAN ? v : Character.reverseBytes(v);
+		}
+	}
+
+	static void getShorts(byte[] src, int srcpos, short[] dst, int dstpos, int n) {
+		if(!UNALIGNED){
+			ByteBuffer.wrap(src, srcpos, n << 1).asShortBuffer().get(dst, dstpos, n);
+			return;
+		}
+		long addr = BYTE_ARRAY_BASE + srcpos;
+		for(int i = dstpos, end = dstpos + n; i < end; i++, addr += 2){
+			short v = unsafe.getShort(src, addr);
+			dst[i] = BIG_ENDIAN ? v : Short.reverseBytes(v);
+		}
+	}
+
+	static void getInts(byte[] src, int srcpos, int[] dst, int dstpos, int n) {
+		if(!UNALIGNED){
+			ByteBuffer.wrap(src, srcpos, n << 2).asIntBuffer().get(dst, dstpos, n);
+			return;
+		}
+		long addr = BYTE_ARRAY_BASE + srcpos;
+		for(int i = dstpos, end = dstpos + n; i < end; i++, addr += 4){
+			int v = unsafe.getInt(src, addr);
+			dst[i] = BIG_ENDIAN ? v : Integer.reverseBytes(v);
+		}
+	}
+
+	static void getFloats(byte[] src, int srcpos, float[] dst, int dstpos, int n) {
+		if(!UNALIGNED){
+			ByteBuffer.wrap(src, srcpos, n << 2).asFloatBuffer().get(dst, dstpos, n);
+			return;
+		}
+		long addr = BYTE_ARRAY_BASE + srcpos;
+		for(int i = dstpos, end = dstpos + n; i < end; i++, addr += 4){
+			int v = unsafe.getInt(src, addr);
+			dst[i] = Float.intBitsToFloat(BIG_ENDIAN ? v : Integer.reverseBytes(v));
+		}
+	}
+
+	static void getLongs(byte[] src, int srcpos, long[] dst, int dstpos, int n) {
+		if(!UNALIGNED){
+			ByteBuffer.wrap(src, srcpos, n << 3).asLongBuffer().get(dst, dstpos, n);
+			return;
+		}
+		long addr = BYTE_ARRAY_BASE + srcpos;
+		for(int i = dstpos, end = dstpos + n; i < end; i++, addr += 8){
+			long v = unsafe.getLong(src, addr);
+			dst[i] = BIG_ENDIAN ? v : Long.reverseBytes(v);
+		}
+	}
+
+	static void getDoubles(byte[] src, int srcpos, double[] dst, int dstpos, int n) {
+		if(!UNALIGNED){
+			ByteBuffer.wrap(src, srcpos, n << 3).asDoubleBuffer().get(dst, dstpos, n);
+			return;
+		}
+		long addr = BYTE_ARRAY_BASE + srcpos;
+		for(int i = dstpos, end = dstpos + n; i < end; i++, addr += 8){
+			long v = unsafe.getLong(src, addr);
+			dst[i] = Double.longBitsToDouble(BIG_ENDIAN ? v : Long.reverseBytes(v));
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.wedis.redis.io;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 跨JdkInputStream共享的类描述符缓存。同一个类的描述符只在第一次出现时加载类、
+ * 反射查找构造器、readObject方法和字段以及计算Unsafe偏移量，之后直接复制缓存中的结果。
+ *
+ * key由类名、serialVersionUID、flags和所有字段的签名组成，类改变了字段后不会命中旧的缓存。
+ * 缓存的描述符不包含superDesc，superDesc属于每个流自己的handle表。
+ *
+ * DEFAULT用于wedis自己classpath中的类，每个JarClassLoader有自己的实例，不同loader加载的同名类不会混用描述符
+ */
+class ClassDescCache {
+
+	static final ClassDescCache DEFAULT = new ClassDescCache();
+
+	/** 最多缓存的描述符数量，超出后淘汰最久未使用的 */
+	private static final int MAX_SIZE = 1024;
+
+	private final Map<DescKey, ObjectStreamDesc> cache = Collections
+		.synchronizedMap(new LinkedHashMap<DescKey, ObjectStreamDesc>(64, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<DescKey, ObjectStreamDesc> eldest) {
+				return size() > MAX_SIZE;
+			}
+		});
+
+	ClassDescCache() {
+	}
+
+	/**
+	 * 返回与从流中读到的描述符对应的已解析描述符，没有时返回null
+	 */
+	ObjectStreamDesc get(ObjectStreamDesc model) {
+		return cache.get(model.getKey());
+	}
+
+	void put(ObjectStreamDesc model, ObjectStreamDesc resolved) {
+		cache.put(model.getKey(), resolved);
+	}
+
+	int size() {
+		return cache.size();
+	}
+
+	void clear() {
+		cache.clear();
+	}
+
+	static final class DescKey {
+		private final String name;
+		private final long suid;
+		private final byte flags;
+		/** 依次为每个字段的签名和名称 */
+		private final String[] fields;
+		private final int hash;
+
+		DescKey(String name, long suid, byte flags, String[] fields) {
+			this.name = name;
+			this.suid = suid;
+			this.flags = flags;
+			this.fields = fields;
+			int h = name.hashCode();
+			h = 31 * h + Long.hashCode(suid);
+			h = 31 * h + flags;
+			this.hash = 31 * h + Arrays.hashCode(fields);
+		}
+
+		String[] getFields() {
+			return fields;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj)
+				return true;
+			if(!(obj instanceof DescKey))
+				return false;
+			DescKey other = (DescKey)obj;
+			return hash == other.hash && suid == other.suid && flags == other.flags
+				&& name.equals(other.name) && Arrays.equals(fields, other.fields);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.wedis.redis.io;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 找不到的类名缓存。wedis的classpath中基本没有业务类，每次Class.forName都会抛出带完整
+ * 堆栈的ClassNotFoundException，代价很高；同一个类名在进程中只查找一次，之后直接按
+ * HashMap解析
+ */
+public class ClassMissCache {
+
+	/** 最多缓存的类名数量，超出后淘汰最久未使用的 */
+	private static final int MAX_SIZE = 4096;
+
+	private static final Map<String, Boolean> missing = Collections
+		.synchronizedMap(new LinkedHashMap<String, Boolean>(64, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return size() > MAX_SIZE;
+			}
+		});
+
+	/** 命中缓存，省掉了一次Class.forName */
+	private static final LongAdder hits = new LongAdder();
+	/** 没有命中缓存，Class.forName找不到类后加入缓存 */
+	private static final LongAdder misses = new LongAdder();
+
+	private ClassMissCache() {
+	}
+
+	static boolean contains(String name) {
+		if(missing.get(name) != null){
+			hits.increment();
+			return true;
+		}
+		return false;
+	}
+
+	static void add(String name) {
+		misses.increment();
+		missing.put(name, Boolean.TRUE);
+	}
+
+	static void clear() {
+		missing.clear();
+	}
+
+	public static long hits() {
+		return hits.sum();
+	}
+
+	public static long misses() {
+		return misses.sum();
+	}
+
+	public static int size() {
+		return missing.size();
+	}
+}
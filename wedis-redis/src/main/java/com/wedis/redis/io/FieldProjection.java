@@ -0,0 +1,561 @@
+package com.wedis.redis.io;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JdkInputStream.project的事件回调，按字段路径只创建需要的值，其他字段和元素通过wantsValue在流中跳过。
+ *
+ * path以.分隔，每一段依次匹配对象的字段名、map的key或数组和集合的下标。HashMap、TreeMap等map类的
+ * 自定义数据按key匹配，ArrayList、HashSet等集合类的自定义数据按下标匹配，其他类的自定义数据需要以@data
+ * 作为一段。匹配到的值按以下方式创建：对象为字段名 -> 值的LinkedHashMap，map类为key -> value的
+ * LinkedHashMap，数组和集合类为ArrayList，Date、BigInteger、BigDecimal和包装类为值本身。
+ * 引用之前跳过或没有创建出来的值时从源数组中重新读取这个值，只有从InputStream读取时为{"@ref":handle}。
+ *
+ * 同一个path匹配到多个值时只保留第一个
+ */
+public class FieldProjection implements JdkStreamVisitor {
+
+	/** 最多同时投影的path个数，每个容器中还能匹配的path以long的位表示 */
+	public static final int MAX_PATHS = 64;
+	/** 自定义数据为key、value交替的map类 */
+	static final Set<String> MAP_CLASSES = new HashSet<>(Arrays.asList("java.util.HashMap",
+		"java.util.LinkedHashMap", "java.util.TreeMap", "java.util.Hashtable", "java.util.Properties",
+		"java.util.IdentityHashMap", "java.util.EnumMap", "java.util.concurrent.ConcurrentHashMap"));
+	/** 自定义数据为元素列表的集合类 */
+	static final Set<String> LIST_CLASSES = new HashSet<>(Arrays.asList("java.util.ArrayList",
+		"java.util.LinkedList", "java.util.HashSet", "java.util.LinkedHashSet", "java.util.ArrayDeque",
+		"java.util.PriorityQueue", "java.util.concurrent.CopyOnWriteArrayList", "java.util.TreeSet"));
+	/** 自定义数据中第一个对象是比较器，之后才是元素 */
+	static final String TREE_SET = "java.util.TreeSet";
+	/** ConcurrentHashMap的自定义数据以null, null结束 */
+	static final String CONCURRENT_HASH_MAP = "java.util.concurrent.ConcurrentHashMap";
+	private static final String DATA = JdkInputStream.CUSTOM_DATA_FIELD;
+	private static final Object NOT_FOUND = new Object();
+
+	private static final int OBJECT = 0;
+	private static final int ARRAY = 1;
+	private static final int MAP_DATA = 2;
+	private static final int LIST_DATA = 3;
+
+	/** 跳过下一个值 */
+	private static final int SKIP = 0;
+	/** 进入下一个值继续匹配 */
+	private static final int DESCEND = 1;
+	/** 创建下一个值 */
+	private static final int BUILD = 2;
+	/** 创建下一个值作为map的key */
+	private static final int KEY = 3;
+	/** map类和集合类的自定义数据，按key或下标继续匹配 */
+	private static final int DATA_FIELD = 4;
+
+	private final String[] paths;
+	private final String[][] segments;
+	private final Map<String, Object> found = new HashMap<>();
+
+	/** 正在匹配的容器，跳过的部分没有事件，不会进入 */
+	private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+	/** 已经为下一个值做过决定 */
+	private boolean decided;
+	private int decision;
+	/** 下一个值完整匹配的path */
+	private long matched;
+	/** 下一个值之下还需要继续匹配的path */
+	private long alive;
+	/** 下一个值在path中的层数 */
+	private int depth;
+	/** 正在创建的值，为null时按path匹配 */
+	private Builder builder;
+	/** 已经创建出来的对象，handle -> 值，之后的引用直接指向它 */
+	private final Map<Integer, Object> built = new HashMap<>();
+
+	public FieldProjection(String... paths) {
+		if(paths.length > MAX_PATHS)
+			throw new IllegalArgumentException("at most " + MAX_PATHS + " paths");
+		this.paths = paths;
+		segments = new String[paths.length][];
+		long all = 0;
+		long root = 0;
+		for(int i = 0; i < paths.length; i++){
+			segments[i] = paths[i].isEmpty() ? new String[0] : paths[i].split("\\.", -1);
+			if(segments[i].length == 0){
+				root |= 1L << i;
+			}else{
+				all |= 1L << i;
+			}
+		}
+		// 空的path表示整个值
+		decided = true;
+		matched = root;
+		alive = all;
+		depth = 0;
+		decision = root != 0 ? BUILD : DESCEND;
+		if(root != 0){
+			builder = new Builder();
+		}
+	}
+
+	/**
+	 * 按传入的顺序返回找到的path -> 值，没有找到的path不在结果中
+	 */
+	public Map<String, Object> getValues() {
+		Map<String, Object> values = new LinkedHashMap<>();
+		for(String path : paths){
+			if(found.containsKey(path)){
+				values.put(path, found.get(path));
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public boolean wantsValue() throws IOException {
+		if(builder != null)
+			return true;
+		decide();
+		if(decision != SKIP)
+			return true;
+		// 跳过的值没有任何事件，这里就结束这个值
+		slotDone();
+		return false;
+	}
+
+	@Override
+	public void startObject(String className, int handle) throws IOException {
+		if(prepare()){
+			builder.startObject(className, handle);
+			return;
+		}
+		if(decision == DESCEND){
+			frames.push(new Frame(OBJECT, depth, alive, className));
+		}else{
+			// 以容器为结尾的path不会走到这里，非容器的值不会有子节点
+			frames.push(new Frame(OBJECT, depth, 0, className));
+		}
+		decided = false;
+	}
+
+	@Override
+	public void field(String name) throws IOException {
+		if(builder != null){
+			builder.field(name);
+			return;
+		}
+		Frame frame = frames.peek();
+		frame.name = name;
+		if(DATA.equals(name) && (MAP_CLASSES.contains(frame.className) || LIST_CLASSES.contains(frame.className))){
+			decided = true;
+			decision = DATA_FIELD;
+		}else{
+			decided = false;
+		}
+	}
+
+	@Override
+	public void endObject() throws IOException {
+		if(builder != null){
+			builder.endObject();
+			return;
+		}
+		frames.pop();
+		slotDone();
+	}
+
+	@Override
+	public void startArray(String className, int length, int handle) throws IOException {
+		if(decided && decision == DATA_FIELD){
+			Frame owner = frames.peek();
+			Frame data = new Frame(MAP_CLASSES.contains(owner.className) ? MAP_DATA : LIST_DATA, owner.depth,
+				owner.alive, owner.className);
+			if(TREE_SET.equals(owner.className)){
+				data.index = -1;
+			}
+			frames.push(data);
+			decided = false;
+			return;
+		}
+		if(prepare()){
+			builder.startArray(className, length, handle);
+			return;
+		}
+		frames.push(new Frame(ARRAY, depth, decision == DESCEND ? alive : 0, className));
+		decided = false;
+	}
+
+	@Override
+	public void primitives(Object array, int length) throws IOException {
+		if(builder != null){
+			builder.primitives(array, length);
+			return;
+		}
+		Frame frame = frames.peek();
+		for(int i = 0; i < length; i++){
+			long bits = match(frame, String.valueOf(frame.index++), true);
+			for(int p = 0; bits != 0; p++, bits >>>= 1){
+				if((bits & 1) != 0 && !found.containsKey(paths[p])){
+					found.put(paths[p], Array.get(array, i));
+				}
+			}
+		}
+	}
+
+	@Override
+	public void endArray() throws IOException {
+		if(builder != null){
+			builder.endArray();
+			return;
+		}
+		Frame frame = frames.pop();
+		// 自定义数据不是一个值，所属的对象在endObject时结束
+		if(frame.kind == ARRAY){
+			slotDone();
+		}
+	}
+
+	@Override
+	public void value(Object value) throws IOException {
+		if(prepare()){
+			builder.add(value);
+			return;
+		}
+		slotDone();
+	}
+
+	@Override
+	public boolean replaysReference(int handle) throws IOException {
+		return !built.containsKey(handle);
+	}
+
+	@Override
+	public void reference(int handle) throws IOException {
+		if(prepare()){
+			builder.reference(handle);
+			return;
+		}
+		// 引用已经创建出来的值时从中继续查找
+		Object value = decision == DESCEND ? built.get(handle) : null;
+		if(value != null){
+			built(value);
+			return;
+		}
+		slotDone();
+	}
+
+	@Override
+	public void truncated(long remaining) throws IOException {
+		// project不使用预览限制
+	}
+
+	@Override
+	public void truncatedString(String prefix, long remainingBytes) throws IOException {
+		value(prefix);
+	}
+
+	/**
+	 * 基本类型字段和自定义数据之外的值在事件到达时才做决定，返回是否交给builder
+	 */
+	private boolean prepare() {
+		if(builder != null)
+			return true;
+		if(!decided){
+			decide();
+		}
+		return builder != null;
+	}
+
+	/**
+	 * 按当前容器和下一个值的名称决定跳过、继续匹配还是创建
+	 */
+	private void decide() {
+		if(decided)
+			return;
+		decided = true;
+		Frame frame = frames.peek();
+		if(frame == null || frame.alive == 0){
+			decision = SKIP;
+			return;
+		}
+		String name;
+		switch(frame.kind){
+		case OBJECT:
+			name = frame.name;
+			break;
+		case MAP_DATA:
+			if(frame.expectKey){
+				decision = KEY;
+				builder = new Builder();
+				return;
+			}
+			name = String.valueOf(frame.key);
+			break;
+		default:
+			if(frame.index < 0){
+				decision = SKIP;
+				return;
+			}
+			name = String.valueOf(frame.index);
+			break;
+		}
+		matched = match(frame, name, true);
+		alive = match(frame, name, false);
+		depth = frame.depth + 1;
+		if(matched != 0){
+			decision = BUILD;
+			builder = new Builder();
+		}else{
+			decision = alive != 0 ? DESCEND : SKIP;
+		}
+	}
+
+	/**
+	 * 容器中还能匹配的path里，下一段等于name并且到此结束(last)或者还有后续的path
+	 */
+	private long match(Frame frame, String name, boolean last) {
+		long bits = 0;
+		for(long rest = frame.alive; rest != 0; rest &= rest - 1){
+			int p = Long.numberOfTrailingZeros(rest);
+			String[] segs = segments[p];
+			if(segs[frame.depth].equals(name) && (segs.length == frame.depth + 1) == last){
+				bits |= 1L << p;
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * 一个值结束，map的key和value交替，集合的下标加一
+	 */
+	private void slotDone() {
+		decided = false;
+		Frame frame = frames.peek();
+		if(frame == null)
+			return;
+		if(frame.kind == MAP_DATA){
+			frame.expectKey = !frame.expectKey;
+		}else if(frame.kind != OBJECT){
+			frame.index++;
+		}
+	}
+
+	/**
+	 * builder创建完一个值
+	 */
+	private void built(Object value) {
+		builder = null;
+		if(decision == KEY){
+			frames.peek().key = value;
+			slotDone();
+			return;
+		}
+		for(int p = 0; p < paths.length; p++){
+			if((matched & 1L << p) != 0 && !found.containsKey(paths[p])){
+				found.put(paths[p], value);
+			}else if((alive & 1L << p) != 0 && !found.containsKey(paths[p])){
+				// 同时有更长的path时从创建出的值中继续查找
+				Object v = walk(value, segments[p], depth);
+				if(v != NOT_FOUND){
+					found.put(paths[p], v);
+				}
+			}
+		}
+		slotDone();
+	}
+
+	private static Object walk(Object value, String[] segs, int from) {
+		for(int i = from; i < segs.length; i++){
+			if(value instanceof Map){
+				Map<?, ?> map = (Map<?, ?>)value;
+				if(map.containsKey(segs[i])){
+					value = map.get(segs[i]);
+					continue;
+				}
+				Object next = NOT_FOUND;
+				for(Map.Entry<?, ?> e : map.entrySet()){
+					if(String.valueOf(e.getKey()).equals(segs[i])){
+						next = e.getValue();
+						break;
+					}
+				}
+				if(next == NOT_FOUND)
+					return NOT_FOUND;
+				value = next;
+			}else if(value instanceof List){
+				List<?> list = (List<?>)value;
+				int index;
+				try{
+					index = Integer.parseInt(segs[i]);
+				}catch(NumberFormatException e){
+					return NOT_FOUND;
+				}
+				if(index < 0 || index >= list.size())
+					return NOT_FOUND;
+				value = list.get(index);
+			}else{
+				return NOT_FOUND;
+			}
+		}
+		return value;
+	}
+
+	private static final class Frame {
+		final int kind;
+		/** 这个容器在path中的层数，子节点匹配path的第depth段 */
+		final int depth;
+		/** 在这个容器中还能匹配的path */
+		final long alive;
+		final String className;
+		/** 对象中当前的字段名 */
+		String name;
+		/** 数组和集合中下一个元素的下标 */
+		int index;
+		/** map的自定义数据中下一个是否是key */
+		boolean expectKey = true;
+		Object key;
+
+		Frame(int kind, int depth, long alive, String className) {
+			this.kind = kind;
+			this.depth = depth;
+			this.alive = alive;
+			this.className = className;
+		}
+	}
+
+	/**
+	 * 把匹配到的值的事件创建成Map和List，最外层的值结束时交给built
+	 */
+	private final class Builder {
+		private final ArrayDeque<Node> nodes = new ArrayDeque<>();
+
+		void startObject(String className, int handle) {
+			Node node = new Node(OBJECT, className, handle);
+			node.map = new LinkedHashMap<>();
+			if(!MAP_CLASSES.contains(className) && !LIST_CLASSES.contains(className)){
+				built.put(handle, node.map);
+			}
+			nodes.push(node);
+		}
+
+		void field(String name) {
+			nodes.peek().field = name;
+		}
+
+		void endObject() {
+			Node node = nodes.pop();
+			Object value = node.map;
+			if(MAP_CLASSES.contains(node.className)){
+				value = node.data != null ? node.data : new LinkedHashMap<>();
+			}else if(LIST_CLASSES.contains(node.className)){
+				value = node.data != null ? node.data : new ArrayList<>();
+			}
+			built.put(node.handle, value);
+			add(value);
+		}
+
+		void startArray(String className, int length, int handle) {
+			Node owner = nodes.peek();
+			if(owner != null && owner.kind == OBJECT && DATA.equals(owner.field) && className == null
+				&& (MAP_CLASSES.contains(owner.className) || LIST_CLASSES.contains(owner.className))){
+				Node data = new Node(MAP_CLASSES.contains(owner.className) ? MAP_DATA : LIST_DATA, owner.className,
+					-1);
+				if(data.kind == MAP_DATA){
+					data.map = new LinkedHashMap<>();
+				}else{
+					data.list = new ArrayList<>();
+					data.skip = TREE_SET.equals(owner.className) ? 1 : 0;
+				}
+				nodes.push(data);
+				return;
+			}
+			Node node = new Node(ARRAY, className, handle);
+			node.list = new ArrayList<>(length < 0 ? 10 : Math.min(length, 1024));
+			if(handle >= 0){
+				built.put(handle, node.list);
+			}
+			nodes.push(node);
+		}
+
+		void primitives(Object array, int length) {
+			List<Object> list = nodes.peek().list;
+			for(int i = 0; i < length; i++){
+				list.add(Array.get(array, i));
+			}
+		}
+
+		void endArray() {
+			Node node = nodes.pop();
+			if(node.kind == ARRAY){
+				add(node.list);
+				return;
+			}
+			// 自定义数据作为所属对象的值
+			nodes.peek().data = node.kind == MAP_DATA ? node.map : node.list;
+		}
+
+		void reference(int handle) {
+			Object value = built.get(handle);
+			add(value != null ? value : Collections.singletonMap("@ref", handle));
+		}
+
+		void add(Object value) {
+			Node node = nodes.peek();
+			if(node == null){
+				built(value);
+				return;
+			}
+			switch(node.kind){
+			case OBJECT:
+				node.map.put(node.field, value);
+				break;
+			case MAP_DATA:
+				if(!node.hasKey){
+					node.key = value;
+					node.hasKey = true;
+					break;
+				}
+				node.hasKey = false;
+				if(node.key == null && value == null && CONCURRENT_HASH_MAP.equals(node.className))
+					break;
+				node.map.put(node.key, value);
+				break;
+			default:
+				if(node.skip > 0){
+					node.skip--;
+					break;
+				}
+				node.list.add(value);
+			}
+		}
+	}
+
+	private static final class Node {
+		final int kind;
+		final String className;
+		final int handle;
+		Map<Object, Object> map;
+		List<Object> list;
+		/** 对象中当前的字段名 */
+		String field;
+		/** map类和集合类的自定义数据创建出的值 */
+		Object data;
+		Object key;
+		boolean hasKey;
+		/** 集合的自定义数据中开头需要跳过的对象个数 */
+		int skip;
+
+		Node(int kind, String className, int handle) {
+			this.kind = kind;
+			this.className = className;
+			this.handle = handle;
+		}
+	}
+}
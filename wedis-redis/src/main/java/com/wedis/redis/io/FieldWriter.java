@@ -0,0 +1,132 @@
+package com.wedis.redis.io;
+
+import java.lang.reflect.Field;
+
+import com.wedis.base.enums.ResponseCode;
+import com.wedis.base.exception.CoreException;
+import com.wedis.base.util.UnsafeUtil;
+
+import sun.misc.Unsafe;
+
+/**
+ * 一个类描述符的字段写入器，解析描述符时创建一次，随描述符缓存在ClassDescCache中。
+ *
+ * 基本类型字段按类型分组，每组一个循环直接调用对应的Unsafe.putXxx，
+ * 写入时不装箱、不经过虚方法分派，也不再逐个字段判断类是否存在
+ */
+final class FieldWriter {
+
+	private static final Unsafe unsafe = UnsafeUtil.unsafe;
+
+	/** 基本类型字段的分组顺序，与ends的下标对应 */
+	private static final String PRIM_ORDER = "ZBCSIFJD";
+
+	/** 按类型分组后每个基本类型字段的Unsafe偏移量 */
+	private final long[] primKeys;
+	/** 按类型分组后每个基本类型字段在数据中的位置 */
+	private final int[] primOffs;
+	/** 每组基本类型字段在primKeys中的结束位置 */
+	private final int[] ends = new int[PRIM_ORDER.length()];
+	/** 对象字段的Unsafe偏移量 */
+	private final long[] objKeys;
+	/** 对象字段在值数组中的位置 */
+	private final int[] objOffs;
+	/** 本地类中对象字段的类型，写入前检查，jar与写入时的版本不同时字段的类型可能不同 */
+	private final Field[] objFields;
+	/** 流中有、类中没有或类型不同的字段，写入时抛出异常 */
+	private final String missing;
+
+	FieldWriter(ObjectStreamField[] fields, int numPrimFields) {
+		String missing = null;
+		int numObjFields = fields.length - numPrimFields;
+		primKeys = new long[numPrimFields];
+		primOffs = new int[numPrimFields];
+		objKeys = new long[numObjFields];
+		objOffs = new int[numObjFields];
+		objFields = new Field[numObjFields];
+
+		int n = 0;
+		for(int t = 0; t < PRIM_ORDER.length(); t++){
+			char code = PRIM_ORDER.charAt(t);
+			for(int i = 0; i < numPrimFields; i++){
+				ObjectStreamField f = fields[i];
+				if(f.getTypeCode() != code)
+					continue;
+				Field field = f.getField();
+				if(field == null || field.getType() != f.getType()){
+					missing = missing == null ? f.getName() : missing;
+					continue;
+				}
+				primKeys[n] = unsafe.objectFieldOffset(field);
+				primOffs[n++] = f.getOffset();
+			}
+			ends[t] = n;
+		}
+		for(int i = 0; i < numObjFields; i++){
+			ObjectStreamField f = fields[numPrimFields + i];
+			Field field = f.getField();
+			if(field == null || field.getType().isPrimitive()){
+				missing = missing == null ? f.getName() : missing;
+				continue;
+			}
+			objKeys[i] = unsafe.objectFieldOffset(field);
+			objOffs[i] = f.getOffset();
+			objFields[i] = field;
+		}
+		this.missing = missing;
+	}
+
+	void writePrims(Object obj, byte[] buf) {
+		checkMissing();
+		long[] keys = primKeys;
+		int[] offs = primOffs;
+		int i = 0;
+		for(int end = ends[0]; i < end; i++){
+			unsafe.putBoolean(obj, keys[i], buf[offs[i]] != 0);
+		}
+		for(int end = ends[1]; i < end; i++){
+			unsafe.putByte(obj, keys[i], buf[offs[i]]);
+		}
+		for(int end = ends[2]; i < end; i++){
+			unsafe.putChar(obj, keys[i], Bits.getChar(buf, offs[i]));
+		}
+		for(int end = ends[3]; i < end; i++){
+			unsafe.putShort(obj, keys[i], Bits.getShort(buf, offs[i]));
+		}
+		for(int end = ends[4]; i < end; i++){
+			unsafe.putInt(obj, keys[i], Bits.getInt(buf, offs[i]));
+		}
+		for(int end = ends[5]; i < end; i++){
+			unsafe.putFloat(obj, keys[i], Bits.getFloat(buf, offs[i]));
+		}
+		for(int end = ends[6]; i < end; i++){
+			unsafe.putLong(obj, keys[i], Bits.getLong(buf, offs[i]));
+		}
+		for(int end = ends[7]; i < end; i++){
+			unsafe.putDouble(obj, keys[i], Bits.getDouble(buf, offs[i]));
+		}
+	}
+
+	void writeObjs(Object obj, Object[] vals) {
+		checkMissing();
+		long[] keys = objKeys;
+		int[] offs = objOffs;
+		Field[] fields = objFields;
+		for(int i = 0; i < keys.length; i++){
+			Object val = vals[offs[i]];
+			// 没有类的对象读成的HashMap等不是字段的类型，不能写入，与ObjectInputStream相同抛出异常
+			if(val != null && !fields[i].getType().isInstance(val)){
+				throw new ClassCastException("cannot assign instance of " + val.getClass().getName() + " to field "
+					+ fields[i].getDeclaringClass().getName() + "." + fields[i].getName() + " of type "
+					+ fields[i].getType().getName() + " in instance of " + obj.getClass().getName());
+			}
+			unsafe.putObject(obj, keys[i], val);
+		}
+	}
+
+	private void checkMissing() {
+		if(missing != null){
+			throw new CoreException(ResponseCode.JDK_DESERIALIZE_FAILED, "没有找到字段:" + missing);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package com.wedis.redis.io;
+
+import java.util.Arrays;
+
+/**
+ * 跨Hessian2InputStream共享的类定义缓存。每个hessian2的值都会重新写出它用到的类定义('C'、类名、字段数和字段名)，
+ * 按类定义的原始字节查找，命中时直接使用已经解析的类名和字段名数组，不再为每个值创建这些字符串。
+ *
+ * 与StringTable相同，表的大小固定，每个槽位只保存最后一次放入的类定义，冲突时直接覆盖，不加锁。
+ * key是类定义的全部字节，类增加或删除了字段后不会命中旧的缓存
+ */
+final class Hessian2ClassDefCache {
+
+	/** 槽位数量，必须是2的幂 */
+	private static final int SIZE = 1024;
+	/** 缓存的类定义的最大字节数 */
+	static final int MAX_BYTES = 4096;
+
+	private static final Entry[] table = new Entry[SIZE];
+
+	private Hessian2ClassDefCache() {
+	}
+
+	/**
+	 * 返回b中off开始的len个字节对应的类定义，没有时返回null
+	 */
+	static Hessian2InputStream.ClassDef get(byte[] b, int off, int len) {
+		int h = hash(b, off, len);
+		Entry e = table[h & (SIZE - 1)];
+		if(e != null && e.hash == h && e.bytes.length == len && matches(e.bytes, b, off)){
+			return e.def;
+		}
+		return null;
+	}
+
+	static void put(byte[] b, int off, int len, Hessian2InputStream.ClassDef def) {
+		int h = hash(b, off, len);
+		table[h & (SIZE - 1)] = new Entry(h, Arrays.copyOfRange(b, off, off + len), def);
+	}
+
+	static void clear() {
+		Arrays.fill(table, null);
+	}
+
+	private static int hash(byte[] b, int off, int len) {
+		int h = 0;
+		for(int i = off, end = off + len; i < end; i++){
+			h = 31 * h + b[i];
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean matches(byte[] bytes, byte[] b, int off) {
+		for(int i = 0; i < bytes.length; i++){
+			if(bytes[i] != b[off + i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class Entry {
+		private final int hash;
+		private final byte[] bytes;
+		private final Hessian2InputStream.ClassDef def;
+
+		Entry(int hash, byte[] bytes, Hessian2InputStream.ClassDef def) {
+			this.hash = hash;
+			this.bytes = bytes;
+			this.def = def;
+		}
+	}
+}
@@ -0,0 +1,534 @@
+package com.wedis.redis.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 不需要类存在的Hessian 2.0反序列化，直接在源数组上解析，与JdkInputStream相同，
+ * 对象都按HashMap(字段名 -> 字段值)返回，不加载值中的任何类，也不调用任何构造器或readResolve。
+ * <ul>
+ * <li>list按ArrayList返回，typed list(包括[int等数组)的类型被忽略</li>
+ * <li>map按LinkedHashMap返回，保持写入的顺序</li>
+ * <li>java.math.BigDecimal按value字段还原成BigDecimal，日期还原成Date</li>
+ * </ul>
+ * 类定义按原始字节在Hessian2ClassDefCache中查找，同一个类的类定义只在第一次出现时创建类名和字段名
+ */
+public class Hessian2InputStream implements Closeable {
+
+	/** Hessian2Output写出的'H' 0x02 0x00消息头 */
+	private static final int HEADER_LENGTH = 3;
+	/** 按固定长度创建list时最多预分配的元素个数，长度来自值本身，不可信 */
+	private static final int MAX_PRESIZE = 1024;
+
+	private byte[] buf;
+	private int pos;
+	private int end;
+
+	/** 对象、list和map按出现的顺序放入，由'Q'引用 */
+	private final ArrayList<Object> refs = new ArrayList<>();
+	private final ArrayList<ClassDef> classDefs = new ArrayList<>();
+	/** typed list和typed map的类型，由类型的序号引用 */
+	private final ArrayList<String> types = new ArrayList<>();
+	/** 解码非ASCII和分块的字符串时复用 */
+	private char[] chars = new char[64];
+	/** 短的ASCII字符串值是否从StringTable中取 */
+	private boolean internStrings;
+
+	public Hessian2InputStream(byte[] buf) {
+		this(buf, 0, buf.length);
+	}
+
+	public Hessian2InputStream(byte[] buf, int off, int len) {
+		reset(buf, off, len);
+	}
+
+	/**
+	 * 改为从buf中读取下一个值，引用表、类定义表保留容量继续使用
+	 */
+	public void reset(byte[] buf, int off, int len) {
+		if(off < 0 || len < 0 || off + len > buf.length || off + len < 0){
+			throw new IndexOutOfBoundsException();
+		}
+		this.buf = buf;
+		this.pos = off;
+		this.end = off + len;
+		refs.clear();
+		classDefs.clear();
+		types.clear();
+		if(len >= HEADER_LENGTH && buf[off] == 'H' && buf[off + 1] == 0x02 && buf[off + 2] == 0x00){
+			pos += HEADER_LENGTH;
+		}
+	}
+
+	/**
+	 * 设置为true时不超过StringTable.MAX_LENGTH个字节的ASCII字符串值也从StringTable中取，
+	 * 类名、字段名和类型名总是从StringTable中取
+	 */
+	public void setInternStrings(boolean internStrings) {
+		this.internStrings = internStrings;
+	}
+
+	/**
+	 * 是否还有没有读取的值
+	 */
+	public boolean available() {
+		return pos < end;
+	}
+
+	@Override
+	public void close() {
+		buf = null;
+		refs.clear();
+		classDefs.clear();
+		types.clear();
+	}
+
+	public Object readObject() throws IOException {
+		int tag = read();
+		switch(tag){
+		case 'N':
+			return null;
+		case 'T':
+			return Boolean.TRUE;
+		case 'F':
+			return Boolean.FALSE;
+		case 'I':
+			return readInt32();
+		case 'L':
+			return readInt64();
+		case 'Y':
+			return (long)readInt32();
+		case 'D':
+			return Double.longBitsToDouble(readInt64());
+		case 0x5B:
+			return 0.0D;
+		case 0x5C:
+			return 1.0D;
+		case 0x5D:
+			return (double)(byte)read();
+		case 0x5E:
+			return (double)(short)readUnsignedShort();
+		case 0x5F:
+			// 以千分之一为单位的32位整数
+			return readInt32() * 0.001D;
+		case 'J':
+			return new Date(readInt64());
+		case 'K':
+			return new Date(readInt32() * 60000L);
+		case 'S':
+		case 'R':
+			return readString(tag, internStrings);
+		case 'A':
+		case 'B':
+			return readBinary(tag);
+		case 'C':
+			readClassDef();
+			return readObject();
+		case 'O':
+			return readInstance(readInt());
+		case 'Q':
+			return readRef(readInt());
+		case 'H':
+			return readMap(new LinkedHashMap<>());
+		case 'M':
+			readType();
+			return readMap(new LinkedHashMap<>());
+		case 'U':
+			readType();
+			return readList(-1);
+		case 'V':
+			readType();
+			return readList(readInt());
+		case 'W':
+			return readList(-1);
+		case 'X':
+			return readList(readInt());
+		default:
+		}
+		if(tag <= 0x1F || (tag >= 0x30 && tag <= 0x33))
+			return readString(tag, internStrings);
+		if((tag >= 0x20 && tag <= 0x2F) || (tag >= 0x34 && tag <= 0x37))
+			return readBinary(tag);
+		if(tag >= 0x80 && tag <= 0xD7)
+			return readInt(tag);
+		if(tag >= 0xD8 || (tag >= 0x38 && tag <= 0x3F))
+			return readLong(tag);
+		if(tag >= 0x60 && tag <= 0x6F)
+			return readInstance(tag - 0x60);
+		if(tag >= 0x70 && tag <= 0x77){
+			readType();
+			return readList(tag - 0x70);
+		}
+		if(tag >= 0x78 && tag <= 0x7F)
+			return readList(tag - 0x78);
+		throw new StreamCorruptedException(String.format("invalid hessian tag: 0x%02X at %d", tag, pos - 1));
+	}
+
+	private int read() throws IOException {
+		if(pos >= end)
+			throw new EOFException("unexpected end of hessian value");
+		return buf[pos++] & 0xFF;
+	}
+
+	private void require(int n) throws IOException {
+		if(n > end - pos)
+			throw new EOFException("unexpected end of hessian value");
+	}
+
+	private int readUnsignedShort() throws IOException {
+		require(2);
+		int v = (buf[pos] & 0xFF) << 8 | (buf[pos + 1] & 0xFF);
+		pos += 2;
+		return v;
+	}
+
+	private int readInt32() throws IOException {
+		require(4);
+		int v = Bits.getInt(buf, pos);
+		pos += 4;
+		return v;
+	}
+
+	private long readInt64() throws IOException {
+		require(8);
+		long v = Bits.getLong(buf, pos);
+		pos += 8;
+		return v;
+	}
+
+	/**
+	 * 读取一个int，用于长度、序号等只能是int的位置
+	 */
+	private int readInt() throws IOException {
+		int tag = read();
+		if(tag == 'I')
+			return readInt32();
+		if(tag >= 0x80 && tag <= 0xD7)
+			return readInt(tag);
+		throw new StreamCorruptedException(String.format("expected hessian int: 0x%02X at %d", tag, pos - 1));
+	}
+
+	private int readInt(int tag) throws IOException {
+		if(tag <= 0xBF)
+			return tag - 0x90;
+		if(tag <= 0xCF)
+			return (tag - 0xC8) << 8 | read();
+		require(2);
+		int v = (tag - 0xD4) << 16 | (buf[pos] & 0xFF) << 8 | (buf[pos + 1] & 0xFF);
+		pos += 2;
+		return v;
+	}
+
+	private long readLong(int tag) throws IOException {
+		if(tag >= 0xD8 && tag <= 0xEF)
+			return tag - 0xE0;
+		if(tag >= 0xF0)
+			return (tag - 0xF8) << 8 | read();
+		require(2);
+		long v = (tag - 0x3C) << 16 | (buf[pos] & 0xFF) << 8 | (buf[pos + 1] & 0xFF);
+		pos += 2;
+		return v;
+	}
+
+	/**
+	 * 读取字符串，长度是utf-16的字符个数。只有一块并且全部是ASCII字符时直接由字节创建String，
+	 * 否则逐块解码到chars中
+	 */
+	@SuppressWarnings("deprecation")
+	private String readString(int tag, boolean intern) throws IOException {
+		int len = readStringLength(tag);
+		boolean last = tag != 'R';
+		if(last && len <= end - pos && isAscii(pos, len)){
+			String s = intern && len <= StringTable.MAX_LENGTH ? StringTable.get(buf, pos, len)
+				: new String(buf, 0, pos, len);
+			pos += len;
+			return s;
+		}
+		int n = 0;
+		while(true){
+			if(chars.length - n < len){
+				chars = Arrays.copyOf(chars, Math.max(chars.length * 2, n + len));
+			}
+			n = decodeChars(n, len);
+			if(last)
+				break;
+			tag = read();
+			if(!isStringTag(tag))
+				throw new StreamCorruptedException(String.format("expected hessian string chunk: 0x%02X", tag));
+			len = readStringLength(tag);
+			last = tag != 'R';
+		}
+		return new String(chars, 0, n);
+	}
+
+	private static boolean isStringTag(int tag) {
+		return tag <= 0x1F || (tag >= 0x30 && tag <= 0x33) || tag == 'S' || tag == 'R';
+	}
+
+	private int readStringLength(int tag) throws IOException {
+		if(tag <= 0x1F)
+			return tag;
+		if(tag <= 0x33)
+			return (tag - 0x30) << 8 | read();
+		return readUnsignedShort();
+	}
+
+	private boolean isAscii(int off, int len) {
+		for(int i = off, stop = off + len; i < stop; i++){
+			if(buf[i] < 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * 解码count个utf-16字符到chars的n位置，返回解码后的字符个数。
+	 * hessian把代理对按两个3字节的字符写出，4字节的utf-8也按两个字符计数
+	 */
+	private int decodeChars(int n, int count) throws IOException {
+		char[] chars = this.chars;
+		int stop = n + count;
+		while(n < stop){
+			int b1 = read();
+			if(b1 < 0x80){
+				chars[n++] = (char)b1;
+			}else if((b1 & 0xE0) == 0xC0){
+				chars[n++] = (char)((b1 & 0x1F) << 6 | continuation());
+			}else if((b1 & 0xF0) == 0xE0){
+				int b2 = continuation();
+				chars[n++] = (char)((b1 & 0x0F) << 12 | b2 << 6 | continuation());
+			}else if((b1 & 0xF8) == 0xF0 && n + 1 < stop){
+				int b2 = continuation();
+				int b3 = continuation();
+				int cp = (b1 & 0x07) << 18 | b2 << 12 | b3 << 6 | continuation();
+				chars[n++] = Character.highSurrogate(cp);
+				chars[n++] = Character.lowSurrogate(cp);
+			}else{
+				throw new StreamCorruptedException("invalid utf-8 in hessian string at " + (pos - 1));
+			}
+		}
+		return n;
+	}
+
+	private int continuation() throws IOException {
+		int b = read();
+		if((b & 0xC0) != 0x80)
+			throw new StreamCorruptedException("invalid utf-8 in hessian string at " + (pos - 1));
+		return b & 0x3F;
+	}
+
+	private byte[] readBinary(int tag) throws IOException {
+		int len = readBinaryLength(tag);
+		if(tag != 'A'){
+			require(len);
+			byte[] b = Arrays.copyOfRange(buf, pos, pos + len);
+			pos += len;
+			return b;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		while(true){
+			require(len);
+			out.write(buf, pos, len);
+			pos += len;
+			if(tag != 'A')
+				return out.toByteArray();
+			tag = read();
+			if(!(tag == 'A' || tag == 'B' || (tag >= 0x20 && tag <= 0x2F) || (tag >= 0x34 && tag <= 0x37)))
+				throw new StreamCorruptedException(String.format("expected hessian binary chunk: 0x%02X", tag));
+			len = readBinaryLength(tag);
+		}
+	}
+
+	private int readBinaryLength(int tag) throws IOException {
+		if(tag <= 0x2F)
+			return tag - 0x20;
+		if(tag <= 0x37)
+			return (tag - 0x34) << 8 | read();
+		return readUnsignedShort();
+	}
+
+	/**
+	 * 读取typed list和typed map的类型，类型本身不使用，只需要登记序号
+	 */
+	private void readType() throws IOException {
+		int tag = read();
+		if(isStringTag(tag)){
+			types.add(readString(tag, true));
+		}else{
+			pos--;
+			int index = readInt();
+			if(index < 0 || index >= types.size())
+				throw new StreamCorruptedException("invalid hessian type reference: " + index);
+		}
+	}
+
+	/**
+	 * 'C'之后的类定义：类名、字段数、字段名。先跳过整个类定义得到它的字节范围，在缓存中找到时不再解码其中的字符串
+	 */
+	private void readClassDef() throws IOException {
+		int start = pos;
+		int defEnd = skipClassDef();
+		ClassDef def = null;
+		if(defEnd > 0){
+			def = Hessian2ClassDefCache.get(buf, start, defEnd - start);
+		}
+		if(def != null){
+			pos = defEnd;
+		}else{
+			pos = start;
+			String type = readName();
+			int count = readInt();
+			if(count < 0 || count > end - pos)
+				throw new StreamCorruptedException("invalid hessian field count: " + count);
+			String[] fields = new String[count];
+			for(int i = 0; i < count; i++){
+				fields[i] = readName();
+			}
+			def = new ClassDef(type, fields);
+			if(defEnd > 0){
+				Hessian2ClassDefCache.put(buf, start, defEnd - start, def);
+			}
+		}
+		classDefs.add(def);
+	}
+
+	private String readName() throws IOException {
+		int tag = read();
+		if(!isStringTag(tag))
+			throw new StreamCorruptedException(String.format("expected hessian string: 0x%02X at %d", tag, pos - 1));
+		return readString(tag, true);
+	}
+
+	/**
+	 * 跳过pos处的类定义，返回结束位置。类定义中有分块的字符串或者超过MAX_BYTES时返回-1，不缓存
+	 */
+	private int skipClassDef() throws IOException {
+		int start = pos;
+		try{
+			if(!skipName())
+				return -1;
+			int count = readInt();
+			for(int i = 0; i < count; i++){
+				if(!skipName() || pos - start > Hessian2ClassDefCache.MAX_BYTES)
+					return -1;
+			}
+			return pos - start > Hessian2ClassDefCache.MAX_BYTES ? -1 : pos;
+		}finally{
+			pos = start;
+		}
+	}
+
+	private boolean skipName() throws IOException {
+		int tag = read();
+		if(!isStringTag(tag) || tag == 'R')
+			return false;
+		int len = readStringLength(tag);
+		for(int i = 0; i < len; i++){
+			int b = read();
+			if(b >= 0x80){
+				int size = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+				require(size - 1);
+				pos += size - 1;
+				if(size == 4)
+					i++;
+			}
+		}
+		return true;
+	}
+
+	private Object readInstance(int index) throws IOException {
+		if(index < 0 || index >= classDefs.size())
+			throw new StreamCorruptedException("invalid hessian class definition reference: " + index);
+		ClassDef def = classDefs.get(index);
+		String[] fields = def.fields;
+		if(def.bigDecimal){
+			int ref = refs.size();
+			refs.add(null);
+			Object value = readObject();
+			BigDecimal decimal;
+			try{
+				decimal = value instanceof String ? new BigDecimal((String)value) : null;
+			}catch(NumberFormatException e){
+				throw new StreamCorruptedException("invalid BigDecimal: " + value);
+			}
+			refs.set(ref, decimal);
+			return decimal;
+		}
+		// 与JdkInputStream中不存在的类相同，按HashMap返回
+		HashMap<String, Object> map = new HashMap<>(Math.max((int)(fields.length / .75F) + 1, 16));
+		refs.add(map);
+		for(String field : fields){
+			map.put(field, readObject());
+		}
+		return map;
+	}
+
+	private Object readRef(int index) throws IOException {
+		if(index < 0 || index >= refs.size())
+			throw new StreamCorruptedException("invalid hessian reference: " + index);
+		return refs.get(index);
+	}
+
+	/**
+	 * length为-1时一直读到'Z'
+	 */
+	private List<Object> readList(int length) throws IOException {
+		ArrayList<Object> list = new ArrayList<>(length < 0 ? 10 : Math.min(length, MAX_PRESIZE));
+		refs.add(list);
+		if(length < 0){
+			while(peek() != 'Z'){
+				list.add(readObject());
+			}
+			pos++;
+		}else{
+			for(int i = 0; i < length; i++){
+				list.add(readObject());
+			}
+		}
+		return list;
+	}
+
+	private Map<Object, Object> readMap(Map<Object, Object> map) throws IOException {
+		refs.add(map);
+		while(peek() != 'Z'){
+			Object key = readObject();
+			map.put(key, readObject());
+		}
+		pos++;
+		return map;
+	}
+
+	private int peek() throws IOException {
+		if(pos >= end)
+			throw new EOFException("unexpected end of hessian value");
+		return buf[pos] & 0xFF;
+	}
+
+	/**
+	 * 解析后的类定义，在所有流之间共享，不可修改
+	 */
+	static final class ClassDef {
+		final String type;
+		final String[] fields;
+		/** java.math.BigDecimal只有一个value字段，按BigDecimal还原 */
+		final boolean bigDecimal;
+
+		ClassDef(String type, String[] fields) {
+			this.type = type;
+			this.fields = fields;
+			this.bigDecimal = "java.math.BigDecimal".equals(type) && fields.length == 1
+				&& "value".equals(fields[0]);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package com.wedis.redis.io;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.fastjson.serializer.SerializeConfig;
+
+/**
+ * 一个连接的应用jar的classloader。类优先从jar中加载(child-first)，jar中没有时再交给wedis的classloader，
+ * jdk自己的类总是由父loader加载。每个连接一个loader，不同连接的同名类互不影响。
+ *
+ * 流中类名的查找结果按loader缓存，找不到的类也只查找一次；解析出的类描述符保存在loader自己的ClassDescCache中，
+ * 第一次之后按类型解码与按HashMap解码一样不再有Class.forName和反射的开销。
+ *
+ * 用引用计数管理生命周期：创建时的一个引用属于缓存，每次解码前retain、解码后release；retire释放缓存的引用，
+ * 计数归零时关闭jar文件，正在进行的解码不受影响
+ */
+public class JarClassLoader extends URLClassLoader {
+
+	static{
+		ClassLoader.registerAsParallelCapable();
+	}
+
+	/** 总是由父loader加载的包，避免jar中带的jdk类替换掉真正的jdk类 */
+	private static final String[] PARENT_FIRST = { "java.", "javax.", "sun.", "com.sun.", "jdk.", "org.w3c.",
+		"org.xml." };
+	/** 找不到的类在缓存中的标记 */
+	private static final Class<?> MISSING = Void.TYPE;
+	/** 最多缓存的类名数量，超出后不再缓存新的类名 */
+	private static final int MAX_RESOLVED = 8192;
+
+	/** jar文件的路径、大小和修改时间，jar变化后不再使用这个loader */
+	private final String signature;
+	private final ConcurrentHashMap<String, Class<?>> resolved = new ConcurrentHashMap<>();
+	private final ClassDescCache descCache = new ClassDescCache();
+	private final AtomicInteger refs = new AtomicInteger(1);
+	private final AtomicBoolean retired = new AtomicBoolean();
+	/** 输出这个loader中的类的fastjson配置，第一次使用时创建，loader关闭时丢弃 */
+	private volatile SerializeConfig serializeConfig;
+
+	public JarClassLoader(URL[] urls, ClassLoader parent, String signature) {
+		super(urls, parent);
+		this.signature = signature;
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		synchronized(getClassLoadingLock(name)){
+			Class<?> c = findLoadedClass(name);
+			if(c == null && !isParentFirst(name)){
+				try{
+					c = findClass(name);
+				}catch(ClassNotFoundException e){
+					// jar中没有，交给父loader
+				}
+			}
+			if(c == null){
+				c = getParent().loadClass(name);
+			}
+			if(resolve){
+				resolveClass(c);
+			}
+			return c;
+		}
+	}
+
+	private static boolean isParentFirst(String name) {
+		for(String prefix : PARENT_FIRST){
+			if(name.startsWith(prefix)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 查找流中的类名，不初始化类，找不到或依赖的类缺失时返回null。结果按类名缓存
+	 */
+	Class<?> resolve(String name) {
+		Class<?> cl = resolved.get(name);
+		if(cl == null){
+			try{
+				cl = Class.forName(name, false, this);
+			}catch(ClassNotFoundException | LinkageError e){
+				cl = MISSING;
+			}
+			if(resolved.size() < MAX_RESOLVED){
+				resolved.put(name, cl);
+			}
+		}
+		return cl == MISSING ? null : cl;
+	}
+
+	ClassDescCache getDescCache() {
+		return descCache;
+	}
+
+	/**
+	 * 把按这个loader解码出的对象输出为json的配置。应用的类不一定有getter，按字段输出；配置中缓存的
+	 * 序列化器引用应用的类，不能放入全局的配置，每个loader一个。并发第一次使用时可能创建多个，结果相同
+	 */
+	public SerializeConfig getSerializeConfig() {
+		SerializeConfig config = serializeConfig;
+		if(config == null){
+			config = new SerializeConfig(true);
+			config.setAsmEnable(false);
+			serializeConfig = config;
+		}
+		return config;
+	}
+
+	public String getSignature() {
+		return signature;
+	}
+
+	/**
+	 * 缓存的类名数量
+	 */
+	public int resolvedSize() {
+		return resolved.size();
+	}
+
+	/**
+	 * 增加一个引用，loader已经关闭时返回false
+	 */
+	public boolean retain() {
+		for(;;){
+			int n = refs.get();
+			if(n <= 0){
+				return false;
+			}
+			if(refs.compareAndSet(n, n + 1)){
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 释放一个引用，最后一个引用释放后关闭loader
+	 */
+	public void release() {
+		if(refs.decrementAndGet() == 0){
+			resolved.clear();
+			descCache.clear();
+			serializeConfig = null;
+			try{
+				close();
+			}catch(IOException e){
+				// 关闭jar文件失败不影响使用
+			}
+		}
+	}
+
+	/**
+	 * 从缓存中移除后调用，不再被新的解码使用，只释放一次缓存持有的引用
+	 */
+	public void retire() {
+		if(retired.compareAndSet(false, true)){
+			release();
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.wedis.redis.io;
+
+import java.util.ArrayList;
+
+/**
+ * 可写回模式下元素类型没有类的对象数组，保留数组的类描述符。元素类型有类时仍创建这个类型的数组
+ */
+public class JdkArray extends ArrayList<Object> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient ObjectStreamDesc desc;
+
+	JdkArray(ObjectStreamDesc desc, int length) {
+		super(length);
+		this.desc = desc;
+	}
+
+	/**
+	 * 流中的数组类名，例如[Lcom.foo.Item;
+	 */
+	public String getClassName() {
+		return desc.getName();
+	}
+
+	ObjectStreamDesc getDesc() {
+		return desc;
+	}
+}
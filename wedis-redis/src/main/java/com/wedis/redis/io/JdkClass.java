@@ -0,0 +1,34 @@
+package com.wedis.redis.io;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONAware;
+
+/**
+ * 可写回模式下流中的Class对象，保留类描述符，显示和转换成json时与普通模式一样是类名
+ */
+public final class JdkClass implements JSONAware {
+
+	private final ObjectStreamDesc desc;
+
+	JdkClass(ObjectStreamDesc desc) {
+		this.desc = desc;
+	}
+
+	public String getName() {
+		return desc.getName();
+	}
+
+	ObjectStreamDesc getDesc() {
+		return desc;
+	}
+
+	@Override
+	public String toJSONString() {
+		return JSON.toJSONString(desc.getName());
+	}
+
+	@Override
+	public String toString() {
+		return desc.getName();
+	}
+}
@@ -0,0 +1,47 @@
+package com.wedis.redis.io;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONAware;
+
+/**
+ * 可写回模式下的枚举值，保留流中的枚举类描述符，显示和转换成json时与普通模式一样是枚举常量名
+ */
+public final class JdkEnum implements JSONAware {
+
+	private final ObjectStreamDesc desc;
+	private final String name;
+
+	JdkEnum(ObjectStreamDesc desc, String name) {
+		this.desc = desc;
+		this.name = name;
+	}
+
+	/**
+	 * 同一个枚举类的另一个常量
+	 */
+	public JdkEnum valueOf(String name) {
+		return new JdkEnum(desc, name);
+	}
+
+	public String getClassName() {
+		return desc.getName();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	ObjectStreamDesc getDesc() {
+		return desc;
+	}
+
+	@Override
+	public String toJSONString() {
+		return JSON.toJSONString(name);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -14,13 +14,18 @@ import java.io.SerializablePermission;
 import java.io.StreamCorruptedException;
 import java.io.UTFDataFormatException;
 import java.io.WriteAbortedException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.wedis.base.enums.ResponseCode;
 import com.wedis.base.exception.CoreException;
@@ -34,6 +39,58 @@ public class JdkInputStream extends ObjectInputStream {
 
 	/** marker for unshared objects in internal handle table */
 	private static final Object unsharedMarker = new Object();
+	/** 事件模式下代替对象和数组放入handle表，不保留已经读过的值 */
+	private static final Object visitedMarker = new Object();
+	/** 预览时handle表中保留的字符串的最大长度，更长的只保留这么多个字符，重复引用时以truncatedString推送 */
+	private static final int MAX_VISIT_STRING = 1024;
+	/** 事件模式下基本类型数组每次推送的元素个数 */
+	private static final int VISIT_CHUNK = 1024;
+	/** 放回JdkInputStreamPool后的源数组 */
+	private static final byte[] EMPTY_BYTES = new byte[0];
+	/** 事件模式下自定义数据对应的字段名 */
+	static final String CUSTOM_DATA_FIELD = "@data";
+	/** 预览时跳过的部分仍按事件模式解析，但不推送事件 */
+	private static final JdkStreamVisitor NO_EVENTS = new JdkStreamVisitor() {
+		@Override
+		public void startObject(String className, int handle) {
+		}
+
+		@Override
+		public void field(String name) {
+		}
+
+		@Override
+		public void endObject() {
+		}
+
+		@Override
+		public void startArray(String className, int length, int handle) {
+		}
+
+		@Override
+		public void primitives(Object array, int length) {
+		}
+
+		@Override
+		public void endArray() {
+		}
+
+		@Override
+		public void value(Object value) {
+		}
+
+		@Override
+		public void reference(int handle) {
+		}
+
+		@Override
+		public void truncated(long remaining) {
+		}
+
+		@Override
+		public void truncatedString(String prefix, long remainingBytes) {
+		}
+	};
 
 	/** table mapping primitive type names to corresponding class objects */
 	private static final HashMap<String, Class<?>> primClasses = new HashMap<>(8, 1.0F);
@@ -49,8 +106,27 @@ public class JdkInputStream extends ObjectInputStream {
 		primClasses.put("void", void.class);
 	}
 
+	/** 短的ASCII字符串值是否从StringTable中取 */
+	private boolean internStrings;
+	/** 事件模式的回调，为null时创建对象 */
+	private JdkStreamVisitor visitor;
+	/** 事件模式的预览限制，为null时不限制 */
+	private VisitLimit visitLimit;
+	/** 事件模式下当前所在的对象和数组的层数 */
+	private int visitDepth;
+	/** 开始推送事件时已经读取的字节数 */
+	private long visitStart;
+	/** 已经有对象或数组以truncated标记结束 */
+	private boolean visitTruncated;
+	/** 上一个字符串被截断时未解码的字节数 */
+	private long stringRemaining;
+	/** 应用jar的classloader，为null时只在wedis自己的classpath中查找类 */
+	private JarClassLoader classLoader;
+	/** 可写回模式，没有类的对象、枚举、Class和数组保留类描述符，可以由JdkOutputStream写回 */
+	private boolean editable;
+
 	/** filter stream for handling block data conversion */
-	private final BlockDataInputStream bin;
+	private BlockDataInputStream bin;
 	/** validation callback list */
 	private final ValidationList vlist;
 	/** recursion depth */
@@ -82,6 +158,10 @@ public class JdkInputStream extends ObjectInputStream {
 	 * not during readObject upcall.
 	 */
 	private SerialCallbackContext curContext;
+	/** 按readObject的嵌套层数复用的SerialCallbackContext */
+	private SerialCallbackContext[] contexts = new SerialCallbackContext[4];
+	/** 当前readObject的嵌套层数 */
+	private int contextDepth;
 
 	/**
 	 * Filter of class descriptors and classes read from the stream; may be
@@ -90,7 +170,36 @@ public class JdkInputStream extends ObjectInputStream {
 	private ObjectInputFilter serialFilter;
 
 	public JdkInputStream(InputStream in) throws IOException {
-		bin = new BlockDataInputStream(in);
+		this(in, null, 0, 0);
+	}
+
+	/**
+	 * 直接在源数组上读取，不再经过ByteArrayInputStream和1K的块缓冲区，block data和
+	 * 基本类型都直接从源数组中解析，只有String、数组等结果本身需要复制
+	 */
+	public JdkInputStream(byte[] buf) throws IOException {
+		this(buf, 0, buf.length);
+	}
+
+	public JdkInputStream(byte[] buf, int off, int len) throws IOException {
+		this(null, buf, off, len);
+	}
+
+	/**
+	 * heap buffer直接读取底层数组，direct buffer先复制一次，不改变buffer的position
+	 */
+	public JdkInputStream(ByteBuffer buffer) throws IOException {
+		this(null, buffer.hasArray() ? buffer.array() : toArray(buffer),
+			buffer.hasArray() ? buffer.arrayOffset() + buffer.position() : 0, buffer.remaining());
+	}
+
+	private JdkInputStream(InputStream in, byte[] buf, int off, int len) throws IOException {
+		if(buf != null){
+			checkBounds(buf, off, len);
+			bin = new BlockDataInputStream(buf, off, len);
+		}else{
+			bin = new BlockDataInputStream(in);
+		}
 		handles = new HandleTable(10);
 		vlist = new ValidationList();
 		serialFilter = ObjectInputFilter.Config.getSerialFilter();
@@ -98,12 +207,85 @@ public class JdkInputStream extends ObjectInputStream {
 		bin.setBlockDataMode(true);
 	}
 
+	private static void checkBounds(byte[] buf, int off, int len) {
+		if(off < 0 || len < 0 || off + len > buf.length || off + len < 0){
+			throw new IndexOutOfBoundsException();
+		}
+	}
+
+	/**
+	 * 改为从buf中读取下一个值，与新建一个JdkInputStream(buf)相同，但是handle表、缓冲区等
+	 * 都保留下来继续使用，handle表不再从10开始重新扩容。visitLimit和internStrings保持不变。
+	 *
+	 * 只能在没有正在进行的readObject和accept时调用，批量解码时通过JdkInputStreamPool按线程复用
+	 */
+	public void reset(byte[] buf, int off, int len) throws IOException {
+		checkBounds(buf, off, len);
+		if(depth != 0){
+			throw new IllegalStateException("reset during readObject");
+		}
+		clear();
+		if(bin.ain != null){
+			bin.reset(buf, off, len);
+		}else{
+			bin = new BlockDataInputStream(buf, off, len);
+		}
+		closed = false;
+		totalObjectRefs = 0;
+		passHandle = NULL_HANDLE;
+		defaultDataEnd = false;
+		curContext = null;
+		contextDepth = 0;
+		stringRemaining = 0;
+		readStreamHeader();
+		bin.setBlockDataMode(true);
+	}
+
+	public void reset(byte[] buf) throws IOException {
+		reset(buf, 0, buf.length);
+	}
+
+	/**
+	 * 放回JdkInputStreamPool前调用，释放对上一个值的源数组和所有已读对象的引用
+	 */
+	void release() {
+		clear();
+		depth = 0;
+		for(int i = 0; i < contexts.length && contexts[i] != null; i++){
+			contexts[i].exit();
+		}
+		curContext = null;
+		classLoader = null;
+		if(bin.ain != null){
+			bin.reset(EMPTY_BYTES, 0, 0);
+		}
+	}
+
+	/**
+	 * handle表当前的容量
+	 */
+	int handleCapacity() {
+		return handles.entries.length;
+	}
+
 	@Override
 	protected Object readObjectOverride() throws IOException, ClassNotFoundException {
+		return readTopObject(false);
+	}
+
+	/**
+	 * 读取一个不共享的对象，流中之后对它的反向引用会抛出异常，应用类的readObject中会用到
+	 */
+	@Override
+	public Object readUnshared() throws IOException, ClassNotFoundException {
+		return readTopObject(true);
+	}
+
+	private Object readTopObject(boolean unshared) throws IOException, ClassNotFoundException {
 		// if nested read, passHandle contains handle of enclosing object
 		int outerHandle = passHandle;
 		try{
-			Object obj = readObject0(false);
+			Object obj = readObject0(unshared);
 			handles.markDependency(outerHandle, passHandle);
 			ClassNotFoundException ex = handles.lookupException(passHandle);
 			if(ex != null){
@@ -121,6 +303,99 @@ public class JdkInputStream extends ObjectInputStream {
 		}
 	}
 
+	/**
+	 * 设置为true时不超过StringTable.MAX_LENGTH个字节的ASCII字符串值也从StringTable中取，
+	 * 同时打开大量相同结构的值时重复的短字符串只保留一份。类名和字段名总是从StringTable中取
+	 */
+	public void setInternStrings(boolean internStrings) {
+		this.internStrings = internStrings;
+	}
+
+	/**
+	 * 设置后流中的类先在应用jar中查找，找到的类按类自己的readObject解码，找不到的类仍按HashMap解码。
+	 * loader的引用由调用方持有，放回JdkInputStreamPool时清除
+	 */
+	public void setClassLoader(JarClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * 设置为true时没有类的对象解码为JdkObject并保留writeObject写出的自定义数据，没有类的枚举和Class
+	 * 解码为JdkEnum和JdkClass，元素类型没有类的对象数组解码为JdkArray，都保留流中的类描述符，
+	 * 修改后可以由JdkOutputStream按原来的格式写回。放回JdkInputStreamPool时清除
+	 */
+	public void setEditable(boolean editable) {
+		this.editable = editable;
+	}
+
+	/**
+	 * 设置accept的预览限制，为null时推送完整的对象图
+	 */
+	public void setVisitLimit(VisitLimit visitLimit) {
+		this.visitLimit = visitLimit;
+	}
+
+	/**
+	 * 以事件的方式读取下一个对象，对象图不会被创建出来，内存占用与对象图大小无关。
+	 * 所有对象都按没有类处理，不会调用类的readObject方法。
+	 *
+	 * 设置了预览限制时，读到限制或源数据提前结束后停止读取并正常返回，之后不能再从流中读取
+	 */
+	public void accept(JdkStreamVisitor visitor) throws IOException {
+		int outerHandle = passHandle;
+		this.visitor = visitor;
+		visitDepth = 0;
+		visitStart = bin.getBytesRead();
+		visitTruncated = false;
+		try{
+			readObject0(false);
+		}catch(EOFException e){
+			if(visitLimit == null){
+				throw e;
+			}
+			if(!visitTruncated){
+				visitor.truncated(-1);
+			}
+		}finally{
+			this.visitor = null;
+			passHandle = outerHandle;
+			if(closed && depth == 0){
+				clear();
+			}
+		}
+	}
+
+	/**
+	 * 以事件的方式读取下一个对象，只创建paths指向的值，其他部分在流中跳过。
+	 * path以.分隔，依次为字段名、map的key或数组和集合的下标，例如attributes.user.id。
+	 * 返回path -> 值，没有找到的path不在结果中，见FieldProjection。不受预览限制的影响
+	 */
+	public Map<String, Object> project(String... paths) throws IOException {
+		FieldProjection projection = new FieldProjection(paths);
+		VisitLimit oldLimit = visitLimit;
+		visitLimit = null;
+		try{
+			accept(projection);
+		}finally{
+			visitLimit = oldLimit;
+		}
+		return projection.getValues();
+	}
+
+	private boolean visiting() {
+		return visitor != null;
+	}
+
+	/**
+	 * 事件模式下推送一个简单值
+	 */
+	private <T> T visit(T value) throws IOException {
+		if(visiting()){
+			visitor.value(value);
+		}
+		return value;
+	}
+
 	protected void readStreamHeader() throws IOException, StreamCorruptedException {
 		short s0 = bin.readShort();
 		short s1 = bin.readShort();
@@ -130,6 +405,12 @@ public class JdkInputStream extends ObjectInputStream {
 		}
 	}
 
+	private static byte[] toArray(ByteBuffer buffer) {
+		byte[] buf = new byte[buffer.remaining()];
+		buffer.duplicate().get(buf);
+		return buf;
+	}
+
 	private ObjectStreamDesc readClassDesc() throws IOException {
 		ObjectStreamDesc desc = new ObjectStreamDesc();
 		desc.readNonProxy(this);
@@ -271,6 +552,10 @@ public class JdkInputStream extends ObjectInputStream {
 	}
 
 	private Object readObject0(boolean unshared) throws IOException {
+		if(visitor != null && visitLimit != null
+			&& bin.getBytesRead() - visitStart > visitLimit.getMaxBytes()){
+			throw new VisitLimitException();
+		}
 		boolean oldMode = bin.getBlockDataMode();
 		if(oldMode){
 			int remain = bin.currentBlockRemaining();
@@ -289,36 +574,66 @@ public class JdkInputStream extends ObjectInputStream {
 			bin.readByte();
 			handleReset();
 		}
+		// 没有预览限制的事件模式下记录值在源数组中的位置，handle表中没有保留的值被引用时重新读取
+		int start = visiting() && visitLimit == null ? bin.position() : -1;
+		int first = handles.size();
 
 		depth++;
 		totalObjectRefs++;
 		try{
 			switch(tc){
 			case TC_NULL:
-				return readNull();
+				return visit(readNull());
 
 			case TC_REFERENCE:
-				return readHandle(unshared);
+				Object ref = readHandle(unshared);
+				if(visiting()){
+					if(ref instanceof String || ref instanceof Number || ref instanceof Date
+						|| ref instanceof Boolean || ref instanceof Character){
+						visitor.value(ref);
+					}else if(ref instanceof StringPrefix){
+						visitor.truncatedString(((StringPrefix)ref).prefix, ((StringPrefix)ref).remaining);
+					}else if(ref == visitedMarker && handles.replayStart(passHandle) >= 0
+						&& visitor.replaysReference(passHandle)){
+						return replay(passHandle);
+					}else{
+						visitor.reference(passHandle);
+					}
+				}
+				return ref;
 
 			case TC_CLASS:
-				return readClass(unshared);
+				return visit(readClass(unshared));
 
 			case TC_CLASSDESC:
 			case TC_PROXYCLASSDESC:
-				return readClassDesc(unshared);
+				ObjectStreamDesc desc = readClassDesc(unshared);
+				if(visiting()){
+					visitor.value(desc == null ? null : desc.getName());
+				}
+				return desc;
 
 			case TC_STRING:
 			case TC_LONGSTRING:
-				return checkResolve(readString(unshared));
+				Object str = checkResolve(readString(unshared));
+				markReplay(start, first);
+				if(visiting()){
+					if(stringRemaining > 0){
+						visitor.truncatedString((String)str, stringRemaining);
+					}else{
+						visitor.value(str);
+					}
+				}
+				return str;
 
 			case TC_ARRAY:
-				return checkResolve(readArray(unshared));
+				return markReplay(checkResolve(readArray(unshared)), start, first);
 
 			case TC_ENUM:
-				return checkResolve(readEnum(unshared));
+				return visit(checkResolve(readEnum(unshared)));
 
 			case TC_OBJECT:
-				return checkResolve(readOrdinaryObject(unshared));
+				return markReplay(checkResolve(readOrdinaryObject(unshared)), start, first);
 
 			case TC_EXCEPTION:
 				IOException ex = readFatalException();
@@ -355,6 +670,42 @@ public class JdkInputStream extends ObjectInputStream {
 		}
 	}
 
+	/**
+	 * 刚读完的值在handle表中没有保留时，记录它从源数组的start处开始，其中第一个handle为first
+	 */
+	private void markReplay(int start, int first) {
+		if(start >= 0 && passHandle != NULL_HANDLE && handles.lookupObject(passHandle) == visitedMarker){
+			handles.markReplay(passHandle, start, first);
+		}
+	}
+
+	private Object markReplay(Object obj, int start, int first) {
+		markReplay(start, first);
+		return obj;
+	}
+
+	/**
+	 * 在源数组中重新读取handle的值并推送它的事件，代替reference事件。handle表先退回到这个值开始时的大小，
+	 * 重新读取时分配的handle与第一次相同，读完后回到引用之后的位置继续读取
+	 */
+	private Object replay(int handle) throws IOException {
+		int pos = bin.position();
+		int size = handles.size;
+		int lowDep = handles.lowDep;
+		bin.seek(handles.replayStart(handle));
+		handles.size = handles.replayFirst(handle);
+		handles.lowDep = -1;
+		try{
+			readObject0(false);
+		}finally{
+			bin.seek(pos);
+			handles.size = size;
+			handles.lowDep = lowDep;
+		}
+		passHandle = handle;
+		return null;
+	}
+
 	private Object checkResolve(Object obj) throws IOException {
 		if(!enableResolve || handles.lookupException(passHandle) != null){
 			return obj;
@@ -375,7 +726,8 @@ public class JdkInputStream extends ObjectInputStream {
 
 			case TC_STRING:
 			case TC_LONGSTRING:
-				return readString(false);
+				// 字段的类型签名总是完整解码，跳过的部分中也可能有新的类描述符
+				return readString(false, true, true);
 
 			default:
 				throw new StreamCorruptedException(String.format("invalid type code: %02X", tc));
@@ -424,12 +776,14 @@ public class JdkInputStream extends ObjectInputStream {
 		return obj;
 	}
 
-	private String readClass(boolean unshared) throws IOException {
+	private Object readClass(boolean unshared) throws IOException {
 		if(bin.readByte() != TC_CLASS){
 			throw new InternalError();
 		}
 		ObjectStreamDesc desc = readClassDesc(false);
-		String cl = desc.getName();
+		// 有类时总是返回Class，才能赋值给有类的对象的Class字段；事件模式下只推送名称
+		Object cl = visiting() ? desc.getName() : desc.hasClass() ? desc.forClass()
+			: editable ? new JdkClass(desc) : desc.getName();
 		passHandle = handles.assign(unshared ? unsharedMarker : cl);
 
 		handles.finish(passHandle);
@@ -522,7 +876,17 @@ public class JdkInputStream extends ObjectInputStream {
 		try{
 			totalObjectRefs++;
 			depth++;
-			desc.initNonProxy(readDesc, resolveClass(readDesc), readClassDesc(false));
+			ObjectStreamDesc superDesc = readClassDesc(false);
+			// 同一个类只在第一次出现时加载类和反射查找字段，之后复制缓存的结果。应用jar中的类缓存在各自的loader中
+			ClassDescCache descs = classLoader != null ? classLoader.getDescCache() : ClassDescCache.DEFAULT;
+			ObjectStreamDesc resolved = descs.get(readDesc);
+			if(resolved == null){
+				readDesc.readFields();
+				resolved = new ObjectStreamDesc();
+				resolved.initNonProxy(readDesc, resolveClass(readDesc), null);
+				descs.put(readDesc, resolved);
+			}
+			desc.initNonProxy(resolved, superDesc);
 		}finally{
 			depth--;
 		}
@@ -535,6 +899,21 @@ public class JdkInputStream extends ObjectInputStream {
 
 	protected Class<?> resolveClass(ObjectStreamDesc desc) throws IOException {
 		String name = desc.getName();
+		if(classLoader != null){
+			Class<?> cl = classLoader.resolve(name);
+			if(cl == null){
+				cl = primClasses.get(name);
+			}
+			if(cl == null){
+				desc.hasClass(false);
+				return HashMap.class;
+			}
+			return cl;
+		}
+		if(ClassMissCache.contains(name)){
+			desc.hasClass(false);
+			return HashMap.class;
+		}
 		try{
 			return Class.forName(name, false, latestUserDefinedLoader());
 		}catch(ClassNotFoundException ex){
@@ -542,28 +921,63 @@ public class JdkInputStream extends ObjectInputStream {
 			if(cl != null){
 				return cl;
 			}else{
+				ClassMissCache.add(name);
 				desc.hasClass(false);
 				return HashMap.class;
 			}
 		}
 	}
 
+	/**
+	 * 读取类名和字段名，这些名称会在大量值中重复出现，短名称都从StringTable中取
+	 */
+	String readName() throws IOException {
+		return bin.readUTFBody(bin.readUnsignedShort(), true);
+	}
+
 	private String readString(boolean unshared) throws IOException {
-		String str;
+		return readString(unshared, internStrings, false);
+	}
+
+	/**
+	 * @param full 事件模式下也完整解码并保留在handle表中，用于类描述符中的类型签名
+	 */
+	private String readString(boolean unshared, boolean intern, boolean full) throws IOException {
+		long utflen;
 		byte tc = bin.readByte();
 		switch(tc){
 		case TC_STRING:
-			str = bin.readUTF();
+			utflen = bin.readUnsignedShort();
 			break;
 
 		case TC_LONGSTRING:
-			str = bin.readLongUTF();
+			utflen = bin.readLong();
 			break;
 
 		default:
 			throw new StreamCorruptedException(String.format("invalid type code: %02X", tc));
 		}
-		passHandle = handles.assign(unshared ? unsharedMarker : str);
+		String str;
+		stringRemaining = 0;
+		// 没有预览限制时跳过的字符串之后可能被引用，不能从源数组重新读取时完整解码
+		if(visitor == null || full
+			|| (visitLimit == null && (visitor != NO_EVENTS || !bin.canSeek()))){
+			str = bin.readUTFBody(utflen, intern);
+		}else{
+			// 预览时只解码前面一部分，跳过的字符串不解码
+			str = bin.readUTFPrefix(utflen,
+				visitor == NO_EVENTS ? 0 : visitLimit.getMaxStringBytes());
+		}
+		// 截断的字符串和预览时的长字符串只保留前面的部分，重复引用时以truncatedString推送
+		Object entry = str;
+		if(visiting() && !full){
+			if(stringRemaining > 0){
+				entry = visitLimit == null ? visitedMarker : new StringPrefix(str, stringRemaining);
+			}else if(visitLimit != null && str.length() > MAX_VISIT_STRING){
+				entry = StringPrefix.of(str, utflen);
+			}
+		}
+		passHandle = handles.assign(unshared ? unsharedMarker : entry);
 		handles.finish(passHandle);
 		return str;
 	}
@@ -575,68 +989,123 @@ public class JdkInputStream extends ObjectInputStream {
 
 		ObjectStreamDesc desc = readClassDesc(false);
 		int len = bin.readInt();
-
-		Object array = new Object[len];
+		if(visiting()){
+			return visitArray(desc, len, unshared);
+		}
 
 		String name = null;
 		if(desc == null || (name = desc.getName()) == null || name.length() < 2
 			|| name.charAt(0) != '['){
-			Object[] oa = (Object[])array;
+			Object[] oa = new Object[len];
 			for(int i = 0; i < len; i++){
 				oa[i] = readObject0(false);
 			}
-			return array;
+			return oa;
 		}
 
-		int arrayHandle = handles.assign(unshared ? unsharedMarker : array);
-
-		switch(name.charAt(1)){
+		char type = name.charAt(1);
+		bin.checkRemaining((long)len * (type == 'L' || type == '[' ? 1 : primitiveSize(type)));
+		// 先创建出数组再分配handle，之后对基本类型数组的引用才能取到这个数组
+		Object array;
+		switch(type){
 		case 'Z':
 			// boolean
 			array = new boolean[len];
-			bin.readBooleans((boolean[])array, 0, len);
 			break;
 		case 'B':
 			// byte
 			array = new byte[len];
-			bin.readFully((byte[])array, 0, len, true);
 			break;
 		case 'C':
 			// char
 			array = new char[len];
-			bin.readChars((char[])array, 0, len);
 			break;
 		case 'S':
 			// short
 			array = new short[len];
-			bin.readShorts((short[])array, 0, len);
 			break;
 		case 'I':
 			// int
 			array = new int[len];
-			bin.readInts((int[])array, 0, len);
 			break;
 		case 'F':
 			// float
 			array = new float[len];
-			bin.readFloats((float[])array, 0, len);
 			break;
 		case 'J':
 			// long
 			array = new long[len];
-			bin.readLongs((long[])array, 0, len);
 			break;
 		case 'D':
 			// double
 			array = new double[len];
+			break;
+		default:
+			array = newObjectArray(desc, len);
+			break;
+		}
+
+		int arrayHandle = handles.assign(unshared ? unsharedMarker : array);
+
+		switch(type){
+		case 'Z':
+			bin.readBooleans((boolean[])array, 0, len);
+			break;
+		case 'B':
+			bin.readFully((byte[])array, 0, len, true);
+			break;
+		case 'C':
+			bin.readChars((char[])array, 0, len);
+			break;
+		case 'S':
+			bin.readShorts((short[])array, 0, len);
+			break;
+		case 'I':
+			bin.readInts((int[])array, 0, len);
+			break;
+		case 'F':
+			bin.readFloats((float[])array, 0, len);
+			break;
+		case 'J':
+			bin.readLongs((long[])array, 0, len);
+			break;
+		case 'D':
 			bin.readDoubles((double[])array, 0, len);
 			break;
 		default:
 			// object
+			if(array instanceof JdkArray){
+				List<Object> list = (JdkArray)array;
+				for(int i = 0; i < len; i++){
+					list.add(readObject0(false));
+					handles.markDependency(arrayHandle, passHandle);
+				}
+				break;
+			}
 			Object[] oa = (Object[])array;
 			for(int i = 0; i < len; i++){
-				oa[i] = readObject0(false);
+				Object element = readObject0(false);
 				handles.markDependency(arrayHandle, passHandle);
+				try{
+					oa[i] = element;
+				}catch(ArrayStoreException e){
+					// 元素是没有类的子类对象，可写回模式下整个数组改为JdkArray，否则改为Object[]
+					if(!editable){
+						oa = setHandleObject(arrayHandle, Arrays.copyOf(oa, len, Object[].class));
+						oa[i] = element;
+						array = oa;
+						continue;
+					}
+					JdkArray list = new JdkArray(desc, len);
+					list.addAll(Arrays.asList(oa).subList(0, i));
+					list.add(element);
+					for(int j = i + 1; j < len; j++){
+						list.add(readObject0(false));
+						handles.markDependency(arrayHandle, passHandle);
+					}
+					array = setHandleObject(arrayHandle, list);
+					break;
+				}
 			}
 			break;
 		}
@@ -646,7 +1115,186 @@ public class JdkInputStream extends ObjectInputStream {
 		return array;
 	}
 
-	private String readEnum(boolean unshared) throws IOException {
+	/**
+	 * 数组类型有类时创建这个类型的数组，有类的对象的数组字段才能赋值；否则可写回模式下创建JdkArray，
+	 * 其他模式下创建Object[]
+	 */
+	private Object newObjectArray(ObjectStreamDesc desc, int len) {
+		Class<?> cl = desc.hasClass() ? desc.forClass() : null;
+		if(cl != null && cl.isArray()){
+			return Array.newInstance(cl.getComponentType(), len);
+		}
+		return editable ? new JdkArray(desc, len) : new Object[len];
+	}
+
+	private Object visitArray(ObjectStreamDesc desc, int len, boolean unshared)
+		throws IOException {
+		String name = desc == null ? null : desc.getName();
+		int arrayHandle = handles.assign(unshared ? unsharedMarker : visitedMarker);
+		visitor.startArray(name, len, arrayHandle);
+		char type = name != null && name.length() >= 2 && name.charAt(0) == '[' ? name.charAt(1)
+			: 'L';
+		JdkStreamVisitor oldVisitor = visitor;
+		boolean marked = false;
+		visitDepth++;
+		try{
+			// 预览时只推送前面的元素，超出嵌套层数的数组只推送长度
+			int max = len;
+			if(visitor == NO_EVENTS){
+				max = 0;
+			}else if(visitLimit != null){
+				max = visitDepth > visitLimit.getMaxDepth() ? 0
+					: Math.min(len, visitLimit.getMaxElements());
+			}
+			switch(type){
+			case 'Z':
+			case 'B':
+			case 'C':
+			case 'S':
+			case 'I':
+			case 'F':
+			case 'J':
+			case 'D':
+				visitPrimitives(type, max);
+				if(max < len){
+					visitor.truncated(len - max);
+					marked = true;
+					skipPrimitives(type, len - max);
+				}
+				break;
+			default:
+				for(int i = 0; i < len; i++){
+					if(i == max){
+						visitor.truncated(len - max);
+						marked = true;
+						visitor = NO_EVENTS;
+					}
+					visitValue(false);
+					handles.markDependency(arrayHandle, passHandle);
+				}
+				break;
+			}
+		}catch(EOFException e){
+			visitor = oldVisitor;
+			visitTruncated(e, marked);
+			visitor.endArray();
+			throw e;
+		}finally{
+			visitor = oldVisitor;
+			visitDepth--;
+		}
+		visitor.endArray();
+
+		handles.finish(arrayHandle);
+		passHandle = arrayHandle;
+		return null;
+	}
+
+	/**
+	 * 预览时读到了限制的位置，没有标记过时以truncated标记结束当前的对象或数组，
+	 * 之后继续向外抛出，外层的对象和数组也依次结束。没有预览限制时直接抛出
+	 */
+	private void visitTruncated(EOFException e, boolean marked) throws IOException {
+		if(visitLimit == null){
+			throw e;
+		}
+		if(!marked){
+			visitor.truncated(-1);
+		}
+		visitTruncated = true;
+	}
+
+	/**
+	 * 直接跳过基本类型数组剩余的元素，数组模式下不需要读取
+	 */
+	private void skipPrimitives(char type, int count) throws IOException {
+		long n = (long)count * primitiveSize(type);
+		if(bin.skip(n) < n){
+			throw new EOFException();
+		}
+	}
+
+	private static int primitiveSize(char type) {
+		switch(type){
+		case 'Z':
+		case 'B':
+			return 1;
+		case 'C':
+		case 'S':
+			return 2;
+		case 'I':
+		case 'F':
+			return 4;
+		default:
+			return 8;
+		}
+	}
+
+	/**
+	 * 基本类型数组分段读取后推送，不需要一次创建整个数组
+	 */
+	private void visitPrimitives(char type, int len) throws IOException {
+		int size = Math.min(len, VISIT_CHUNK);
+		Object chunk;
+		switch(type){
+		case 'Z':
+			chunk = new boolean[size];
+			break;
+		case 'B':
+			chunk = new byte[size];
+			break;
+		case 'C':
+			chunk = new char[size];
+			break;
+		case 'S':
+			chunk = new short[size];
+			break;
+		case 'I':
+			chunk = new int[size];
+			break;
+		case 'F':
+			chunk = new float[size];
+			break;
+		case 'J':
+			chunk = new long[size];
+			break;
+		default:
+			chunk = new double[size];
+			break;
+		}
+		for(int off = 0; off < len; off += size){
+			int n = Math.min(size, len - off);
+			switch(type){
+			case 'Z':
+				bin.readBooleans((boolean[])chunk, 0, n);
+				break;
+			case 'B':
+				bin.readFully((byte[])chunk, 0, n, true);
+				break;
+			case 'C':
+				bin.readChars((char[])chunk, 0, n);
+				break;
+			case 'S':
+				bin.readShorts((short[])chunk, 0, n);
+				break;
+			case 'I':
+				bin.readInts((int[])chunk, 0, n);
+				break;
+			case 'F':
+				bin.readFloats((float[])chunk, 0, n);
+				break;
+			case 'J':
+				bin.readLongs((long[])chunk, 0, n);
+				break;
+			default:
+				bin.readDoubles((double[])chunk, 0, n);
+				break;
+			}
+			visitor.primitives(chunk, n);
+		}
+	}
+
+	private Object readEnum(boolean unshared) throws IOException {
 		if(bin.readByte() != TC_ENUM){
 			throw new InternalError();
 		}
@@ -658,14 +1306,32 @@ public class JdkInputStream extends ObjectInputStream {
 
 		int enumHandle = handles.assign(unshared ? unsharedMarker : null);
 
-		String name = readString(false);
+		// 跳过的枚举之后被引用时以名称推送，名称总是完整解码
+		String name = readString(false, internStrings, true);
+		Object en = visiting() ? name : resolveEnum(desc, name);
 		if(!unshared){
-			handles.setObject(enumHandle, name);
+			handles.setObject(enumHandle, en);
 		}
 
 		handles.finish(enumHandle);
 		passHandle = enumHandle;
-		return name;
+		return en;
+	}
+
+	/**
+	 * 枚举类存在时返回枚举常量，有类的对象的枚举字段才能赋值；否则可写回模式下返回JdkEnum，其他模式下返回名称
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Object resolveEnum(ObjectStreamDesc desc, String name) {
+		Class<?> cl = desc.hasClass() ? desc.forClass() : null;
+		if(cl != null && cl.isEnum()){
+			try{
+				return Enum.valueOf((Class<? extends Enum>)cl, name);
+			}catch(IllegalArgumentException e){
+				// 本地的枚举类中没有这个常量
+			}
+		}
+		return editable ? new JdkEnum(desc, name) : name;
 	}
 
 	private Object readOrdinaryObject(boolean unshared) throws IOException {
@@ -674,8 +1340,19 @@ public class JdkInputStream extends ObjectInputStream {
 		}
 
 		ObjectStreamDesc desc = readClassDesc(false);
+		JdkIntrinsic intrinsic = desc.getIntrinsic();
+		if(visiting()){
+			if(intrinsic != null && intrinsic.isScalar()){
+				return visitScalar(intrinsic, desc, unshared);
+			}
+			return visitOrdinaryObject(desc, unshared);
+		}
+
+		if(intrinsic != null){
+			return readIntrinsic(intrinsic, desc, unshared);
+		}
 
-		Object obj = desc.newInstance();
+		Object obj = editable && !desc.hasClass() ? new JdkObject(desc) : desc.newInstance();
 		passHandle = handles.assign(unshared ? unsharedMarker : obj);
 		if(desc.isExternalizable()){
 			throw new CoreException(ResponseCode.JDK_DESERIALIZE_FAILED, "暂不支持Externalizable");
@@ -688,20 +1365,268 @@ public class JdkInputStream extends ObjectInputStream {
 		return obj;
 	}
 
+	/**
+	 * 常用JDK类不经过序列化构造器和反射调用readObject，由JdkIntrinsic直接按数据格式读取
+	 */
+	private Object readIntrinsic(JdkIntrinsic intrinsic, ObjectStreamDesc desc, boolean unshared)
+		throws IOException {
+		int objHandle = handles.assign(unshared ? unsharedMarker : null);
+		passHandle = objHandle;
+		Object obj = intrinsic.read(this, desc.getClassDataLayout(), objHandle);
+		JdkIntrinsic.count();
+		handles.finish(objHandle);
+		passHandle = objHandle;
+		return obj;
+	}
+
+	/**
+	 * 内置读取中创建出对象后放入handle，unshared的对象不能被引用，仍保留unsharedMarker
+	 */
+	<T> T setHandleObject(int handle, T obj) {
+		if(handles.lookupObject(handle) != unsharedMarker){
+			handles.setObject(handle, obj);
+		}
+		return obj;
+	}
+
+	/**
+	 * 内置读取中读出一层的基本类型字段，返回的数组在下次读取时被覆盖
+	 */
+	byte[] readSlotPrims(ObjectStreamDesc slot) throws IOException {
+		int primDataSize = slot.getPrimDataSize();
+		if(primVals == null || primVals.length < primDataSize){
+			primVals = new byte[primDataSize];
+		}
+		bin.readFully(primVals, 0, primDataSize, false);
+		return primVals;
+	}
+
+	/**
+	 * 内置读取中读出一个对象字段或自定义数据中的一个对象
+	 */
+	Object readSlotObject(int handle) throws IOException {
+		Object obj = readObject0(false);
+		handles.markDependency(handle, passHandle);
+		passHandle = handle;
+		return obj;
+	}
+
+	/**
+	 * 内置读取中读出这一层writeObject余下的数据直到TC_ENDBLOCKDATA，可写回模式下无法按原来的类
+	 * 读取时原样保留到JdkObject
+	 */
+	List<Object> readSlotCustomData() throws IOException {
+		return readCustomData();
+	}
+
+	boolean isEditable() {
+		return editable;
+	}
+
+	/**
+	 * 字段之后是writeObject写出的块数据和对象
+	 */
+	void startCustomData() throws IOException {
+		bin.setBlockDataMode(true);
+	}
+
+	/**
+	 * 结束一层的数据，跳过writeObject多写出的部分直到TC_ENDBLOCKDATA
+	 */
+	void endSlot(ObjectStreamDesc slot) throws IOException {
+		if(slot.hasWriteObjectData()){
+			if(!bin.getBlockDataMode()){
+				bin.setBlockDataMode(true);
+			}
+			skipCustomData();
+		}else{
+			bin.setBlockDataMode(false);
+		}
+	}
+
+	/**
+	 * Date、BigDecimal等单个值不按字段推送，由内置读取解码后以value推送，之后对它的引用也推送这个值
+	 */
+	private Object visitScalar(JdkIntrinsic intrinsic, ObjectStreamDesc desc, boolean unshared)
+		throws IOException {
+		JdkStreamVisitor oldVisitor = visitor;
+		// 其中的BigInteger和byte[]按对象读取，不推送事件
+		visitor = null;
+		Object obj;
+		try{
+			obj = readIntrinsic(intrinsic, desc, unshared);
+		}finally{
+			visitor = oldVisitor;
+		}
+		visitor.value(obj);
+		return obj;
+	}
+
+	private Object visitOrdinaryObject(ObjectStreamDesc desc, boolean unshared)
+		throws IOException {
+		int objHandle = handles.assign(unshared ? unsharedMarker : visitedMarker);
+		passHandle = objHandle;
+		if(desc.isExternalizable()){
+			throw new CoreException(ResponseCode.JDK_DESERIALIZE_FAILED, "暂不支持Externalizable");
+		}
+		visitor.startObject(desc.getName(), objHandle);
+		JdkStreamVisitor oldVisitor = visitor;
+		boolean marked = false;
+		visitDepth++;
+		try{
+			// 超出嵌套层数的对象不推送字段
+			if(visitLimit != null && visitor != NO_EVENTS && visitDepth > visitLimit.getMaxDepth()){
+				visitor.truncated(-1);
+				marked = true;
+				visitor = NO_EVENTS;
+			}
+			for(ObjectStreamDesc slotDesc : desc.getClassDataLayout()){
+				visitFields(slotDesc);
+				if(slotDesc.hasWriteObjectData()){
+					visitCustomData();
+				}else{
+					bin.setBlockDataMode(false);
+				}
+			}
+		}catch(EOFException e){
+			visitor = oldVisitor;
+			visitTruncated(e, marked);
+			visitor.endObject();
+			throw e;
+		}finally{
+			visitor = oldVisitor;
+			visitDepth--;
+		}
+		visitor.endObject();
+
+		handles.finish(objHandle);
+		passHandle = objHandle;
+		return null;
+	}
+
+	private void visitFields(ObjectStreamDesc desc) throws IOException {
+		int primDataSize = desc.getPrimDataSize();
+		if(primVals == null || primVals.length < primDataSize){
+			primVals = new byte[primDataSize];
+		}
+		bin.readFully(primVals, 0, primDataSize, false);
+
+		ObjectStreamField[] fields = desc.getFields(false);
+		int numPrimFields = fields.length - desc.getNumObjFields();
+		for(int i = 0; i < numPrimFields; i++){
+			ObjectStreamField f = fields[i];
+			visitor.field(f.getName());
+			visitor.value(ObjectStreamDesc.getPrimValue(f, primVals));
+		}
+
+		int objHandle = passHandle;
+		for(int i = numPrimFields; i < fields.length; i++){
+			ObjectStreamField f = fields[i];
+			visitor.field(f.getName());
+			visitValue(f.isUnshared());
+			handles.markDependency(objHandle, passHandle);
+		}
+		passHandle = objHandle;
+	}
+
+	/**
+	 * 事件模式下读取一个值，visitor不需要这个值时不推送事件直接跳过
+	 */
+	private void visitValue(boolean unshared) throws IOException {
+		if(visitor == NO_EVENTS || visitor.wantsValue()){
+			readObject0(unshared);
+			return;
+		}
+		JdkStreamVisitor oldVisitor = visitor;
+		visitor = NO_EVENTS;
+		try{
+			readObject0(unshared);
+		}finally{
+			visitor = oldVisitor;
+		}
+	}
+
+	/**
+	 * writeObject写出的自定义数据，其中的对象以@data数组推送，块数据无法解析，直接跳过
+	 */
+	private void visitCustomData() throws IOException {
+		int oldHandle = passHandle;
+		visitor.field(CUSTOM_DATA_FIELD);
+		visitor.startArray(null, -1, NULL_HANDLE);
+		JdkStreamVisitor oldVisitor = visitor;
+		int max = visitLimit == null ? -1 : visitLimit.getMaxElements();
+		int count = 0;
+		boolean marked = false;
+		try{
+			for(boolean end = false; !end;){
+				if(bin.getBlockDataMode()){
+					bin.skipBlockData();
+					bin.setBlockDataMode(false);
+				}
+				switch(bin.peekByte()){
+				case TC_BLOCKDATA:
+				case TC_BLOCKDATALONG:
+					bin.setBlockDataMode(true);
+					break;
+
+				case TC_ENDBLOCKDATA:
+					bin.readByte();
+					end = true;
+					break;
+
+				default:
+					// 预览时只推送前面的元素，元素个数在块数据中，无法得知剩余多少
+					if(count++ == max){
+						visitor.truncated(-1);
+						marked = true;
+						visitor = NO_EVENTS;
+					}
+					visitValue(false);
+					break;
+				}
+			}
+		}catch(EOFException e){
+			visitor = oldVisitor;
+			visitTruncated(e, marked);
+			visitor.endArray();
+			throw e;
+		}finally{
+			visitor = oldVisitor;
+		}
+		passHandle = oldHandle;
+		visitor.endArray();
+	}
+
+	/**
+	 * 取出当前嵌套层数的SerialCallbackContext并设置对象和描述符，每一层只创建一次
+	 */
+	private SerialCallbackContext enterContext(Object obj, ObjectStreamDesc desc) {
+		if(contextDepth == contexts.length){
+			contexts = Arrays.copyOf(contexts, contextDepth << 1);
+		}
+		SerialCallbackContext ctx = contexts[contextDepth];
+		if(ctx == null){
+			ctx = contexts[contextDepth] = new SerialCallbackContext();
+		}
+		contextDepth++;
+		ctx.enter(obj, desc);
+		return ctx;
+	}
+
 	private void readSerialData(Object obj, ObjectStreamDesc desc) throws IOException {
 		ObjectStreamDesc[] slots = desc.getClassDataLayout();
 		for(int i = 0; i < slots.length; i++){
 			ObjectStreamDesc slotDesc = slots[i];
 			if(obj == null || handles.lookupException(passHandle) != null){
 				defaultReadFields(null, slotDesc); // skip field values
-			}else if(slotDesc.hasReadObjectMethod()){
+			}else if(slotDesc.hasReadObjectMethod() && !(obj instanceof JdkObject)){
 				ThreadDeath t = null;
 				boolean reset = false;
 				SerialCallbackContext oldContext = curContext;
 				if(oldContext != null)
 					oldContext.check();
 				try{
-					curContext = new SerialCallbackContext(obj, slotDesc);
+					curContext = enterContext(obj, slotDesc);
 
 					bin.setBlockDataMode(true);
 					slotDesc.invokeReadObject(obj, this);
@@ -714,6 +1639,7 @@ public class JdkInputStream extends ObjectInputStream {
 							if(oldContext != null)
 								oldContext.check();
 							curContext = oldContext;
+							contextDepth--;
 							reset = true;
 						}catch(ThreadDeath x){
 							t = x; // defer until reset is true
@@ -729,13 +1655,59 @@ public class JdkInputStream extends ObjectInputStream {
 			}
 
 			if(slotDesc.hasWriteObjectData()){
-				skipCustomData();
+				if(obj instanceof JdkObject){
+					((JdkObject)obj).setCustomData(i, slots.length, readCustomData());
+				}else{
+					skipCustomData();
+				}
 			}else{
 				bin.setBlockDataMode(false);
 			}
 		}
 	}
 
+	/**
+	 * 可写回模式下读取一层writeObject写出的数据直到TC_ENDBLOCKDATA，连续的块数据合并为一个Block
+	 */
+	private List<Object> readCustomData() throws IOException {
+		List<Object> data = JdkObject.newCustomData();
+		int oldHandle = passHandle;
+		byte[] buf = EMPTY_BYTES;
+		for(;;){
+			if(bin.getBlockDataMode()){
+				int len = 0;
+				for(int n; ; len += n){
+					if(len == buf.length){
+						buf = Arrays.copyOf(buf, Math.max(64, len << 1));
+					}
+					if((n = bin.read(buf, len, buf.length - len)) < 0){
+						break;
+					}
+				}
+				if(len > 0){
+					data.add(new JdkObject.Block(Arrays.copyOf(buf, len)));
+				}
+				bin.setBlockDataMode(false);
+			}
+			switch(bin.peekByte()){
+			case TC_BLOCKDATA:
+			case TC_BLOCKDATALONG:
+				bin.setBlockDataMode(true);
+				break;
+
+			case TC_ENDBLOCKDATA:
+				bin.readByte();
+				passHandle = oldHandle;
+				return data;
+
+			default:
+				data.add(readObject0(false));
+				handles.markDependency(oldHandle, passHandle);
+				break;
+			}
+		}
+	}
+
 	private void defaultReadFields(Object obj, ObjectStreamDesc desc) throws IOException {
 		int primDataSize = desc.getPrimDataSize();
 		if(primVals == null || primVals.length < primDataSize){
@@ -763,7 +1735,22 @@ public class JdkInputStream extends ObjectInputStream {
 		passHandle = objHandle;
 	}
 
+	/**
+	 * 事件模式下类描述符中的自定义数据不属于对象图，不推送事件
+	 */
 	private void skipCustomData() throws IOException {
+		JdkStreamVisitor oldVisitor = visitor;
+		if(oldVisitor != null){
+			visitor = NO_EVENTS;
+		}
+		try{
+			skipCustomData0();
+		}finally{
+			visitor = oldVisitor;
+		}
+	}
+
+	private void skipCustomData0() throws IOException {
 		int oldHandle = passHandle;
 		for(;;){
 			if(bin.getBlockDataMode()){
@@ -781,36 +1768,150 @@ public class JdkInputStream extends ObjectInputStream {
 				passHandle = oldHandle;
 				return;
 
-			default:
-				readObject0(false);
+			default:
+				readObject0(false);
+				break;
+			}
+		}
+	}
+
+	private IOException readFatalException() throws IOException {
+		if(bin.readByte() != TC_EXCEPTION){
+			throw new InternalError();
+		}
+		clear();
+		return (IOException)readObject0(false);
+	}
+
+	private void handleReset() throws StreamCorruptedException {
+		if(depth > 0){
+			throw new StreamCorruptedException("unexpected reset; recursion depth: " + depth);
+		}
+		clear();
+	}
+
+	private static ClassLoader latestUserDefinedLoader() {
+		return sun.misc.VM.latestUserDefinedLoader();
+	}
+
+	/**
+	 * 解码modified UTF-8。全部是ASCII字符时直接由字节创建String，intern为true时短字符串从StringTable中取，
+	 * 否则整个字符串一次解码到char[]中
+	 */
+	@SuppressWarnings("deprecation")
+	private static String decodeUTF(byte[] buf, int pos, int utflen, boolean intern)
+		throws UTFDataFormatException {
+		int stop = pos + utflen;
+		int ascii = pos;
+		while(ascii < stop && buf[ascii] >= 0){
+			ascii++;
+		}
+		if(ascii == stop){
+			return intern && utflen <= StringTable.MAX_LENGTH ? StringTable.get(buf, pos, utflen)
+				: new String(buf, 0, pos, utflen);
+		}
+		char[] chars = new char[utflen];
+		int n = 0;
+		while(pos < ascii){
+			chars[n++] = (char)buf[pos++];
+		}
+		while(pos < stop){
+			int b1 = buf[pos++] & 0xFF;
+			int b2, b3;
+			switch(b1 >> 4){
+			case 0:
+			case 1:
+			case 2:
+			case 3:
+			case 4:
+			case 5:
+			case 6:
+			case 7: // 1 byte format: 0xxxxxxx
+				chars[n++] = (char)b1;
+				break;
+
+			case 12:
+			case 13: // 2 byte format: 110xxxxx 10xxxxxx
+				if(pos >= stop || ((b2 = buf[pos++]) & 0xC0) != 0x80){
+					throw new UTFDataFormatException();
+				}
+				chars[n++] = (char)(((b1 & 0x1F) << 6) | ((b2 & 0x3F) << 0));
+				break;
+
+			case 14: // 3 byte format: 1110xxxx 10xxxxxx 10xxxxxx
+				if(pos + 1 >= stop || ((b2 = buf[pos]) & 0xC0) != 0x80
+					|| ((b3 = buf[pos + 1]) & 0xC0) != 0x80){
+					throw new UTFDataFormatException();
+				}
+				pos += 2;
+				chars[n++] = (char)(((b1 & 0x0F) << 12) | ((b2 & 0x3F) << 6)
+					| ((b3 & 0x3F) << 0));
 				break;
+
+			default: // 10xx xxxx, 1111 xxxx
+				throw new UTFDataFormatException();
 			}
 		}
+		return new String(chars, 0, n);
 	}
 
-	private IOException readFatalException() throws IOException {
-		if(bin.readByte() != TC_EXCEPTION){
-			throw new InternalError();
-		}
-		clear();
-		return (IOException)readObject0(false);
+	/**
+	 * 返回前len个字节中完整字符所占的字节数，不完整的最后一个字符不计入
+	 */
+	private static int utfBoundary(byte[] b, int off, int len) {
+		if(len == 0){
+			return 0;
+		}
+		int last = off + len - 1;
+		int i = last;
+		while(i > off && i > last - 2 && (b[i] & 0xC0) == 0x80){
+			i--;
+		}
+		int b1 = b[i] & 0xFF;
+		int size = (b1 >> 5) == 6 ? 2 : (b1 >> 4) == 14 ? 3 : 1;
+		return i + size <= off + len ? len : i - off;
 	}
 
-	private void handleReset() throws StreamCorruptedException {
-		if(depth > 0){
-			throw new StreamCorruptedException("unexpected reset; recursion depth: " + depth);
+	/**
+	 * 事件模式下没有完整保留的字符串，放入handle表代替字符串本身
+	 */
+	private static final class StringPrefix {
+		final String prefix;
+		/** 没有保留的部分的字节数 */
+		final long remaining;
+
+		StringPrefix(String prefix, long remaining) {
+			this.prefix = prefix;
+			this.remaining = remaining;
 		}
-		clear();
-	}
 
-	private static native void bytesToFloats(byte[] src, int srcpos, float[] dst, int dstpos,
-		int nfloats);
+		/**
+		 * 只保留完整解码的字符串str的前MAX_VISIT_STRING个字符，不截断在代理对中间
+		 */
+		static StringPrefix of(String str, long utflen) {
+			int n = MAX_VISIT_STRING;
+			if(Character.isHighSurrogate(str.charAt(n - 1))){
+				n--;
+			}
+			String prefix = str.substring(0, n);
+			long bytes = 0;
+			for(int i = 0; i < n; i++){
+				char c = prefix.charAt(i);
+				bytes += c >= 0x0001 && c <= 0x007F ? 1 : c > 0x07FF ? 3 : 2;
+			}
+			return new StringPrefix(prefix, utflen - bytes);
+		}
+	}
 
-	private static native void bytesToDoubles(byte[] src, int srcpos, double[] dst, int dstpos,
-		int ndoubles);
+	/**
+	 * 事件模式下读取的字节数超出了预览限制，与源数据提前结束一样处理
+	 */
+	private static class VisitLimitException extends EOFException {
+		private static final long serialVersionUID = 1L;
 
-	private static ClassLoader latestUserDefinedLoader() {
-		return sun.misc.VM.latestUserDefinedLoader();
+		VisitLimitException() {
+			super("visit limit reached");
+		}
 	}
 
 	private static class ValidationList {
@@ -1039,6 +2140,93 @@ public class JdkInputStream extends ObjectInputStream {
 		}
 	}
 
+	/**
+	 * 直接在源数组上读取的PeekInputStream，BlockDataInputStream通过advance()取得数据在
+	 * 源数组中的位置后直接解析，不复制到自己的缓冲区中
+	 */
+	private static class ByteArrayPeekInputStream extends PeekInputStream {
+
+		private byte[] buf;
+		private int offset;
+		private int limit;
+		/** 下一个读取的位置 */
+		private int pos;
+
+		ByteArrayPeekInputStream(byte[] buf, int off, int len) {
+			super(null);
+			reset(buf, off, len);
+		}
+
+		void reset(byte[] buf, int off, int len) {
+			this.buf = buf;
+			this.offset = off;
+			this.limit = off + len;
+			this.pos = off;
+		}
+
+		/**
+		 * 消费n个字节，返回这n个字节在源数组中的起始位置
+		 */
+		int advance(int n) throws EOFException {
+			if(n < 0 || limit - pos < n){
+				throw new EOFException();
+			}
+			int start = pos;
+			pos += n;
+			return start;
+		}
+
+		int position() {
+			return pos;
+		}
+
+		void seek(int pos) {
+			this.pos = pos;
+		}
+
+		int peek() {
+			return pos < limit ? buf[pos] & 0xFF : -1;
+		}
+
+		public int read() {
+			return pos < limit ? buf[pos++] & 0xFF : -1;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if(len == 0){
+				return 0;
+			}
+			int n = Math.min(len, limit - pos);
+			if(n <= 0){
+				return -1;
+			}
+			System.arraycopy(buf, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		void readFully(byte[] b, int off, int len) throws IOException {
+			System.arraycopy(buf, advance(len), b, off, len);
+		}
+
+		public long skip(long n) {
+			n = Math.max(0, Math.min(n, limit - pos));
+			pos += n;
+			return n;
+		}
+
+		public int available() {
+			return limit - pos;
+		}
+
+		public void close() {
+		}
+
+		public long getBytesRead() {
+			return pos - offset;
+		}
+	}
+
 	/**
 	 * Input stream with two modes: in default mode, inputs data written in the
 	 * same format as DataOutputStream; in "block data" mode, inputs data
@@ -1057,8 +2245,8 @@ public class JdkInputStream extends ObjectInputStream {
 		/** readBlockHeader() return value indicating header read may block */
 		private static final int HEADER_BLOCKED = -2;
 
-		/** buffer for reading general/block data */
-		private final byte[] buf = new byte[MAX_BLOCK_SIZE];
+		/** buffer for reading general/block data, 数组模式下就是源数组本身 */
+		private byte[] buf;
 		/** buffer for reading block data headers */
 		private final byte[] hbuf = new byte[MAX_HEADER_SIZE];
 		/** char buffer for fast string reads */
@@ -1077,6 +2265,8 @@ public class JdkInputStream extends ObjectInputStream {
 
 		/** underlying stream (wrapped in peekable filter stream) */
 		private final PeekInputStream in;
+		/** 数组模式下与in相同，否则为null */
+		private final ByteArrayPeekInputStream ain;
 		/** loopback stream (for data reads that span data blocks) */
 		private final DataInputStream din;
 
@@ -1086,9 +2276,76 @@ public class JdkInputStream extends ObjectInputStream {
 		 */
 		BlockDataInputStream(InputStream in) {
 			this.in = new PeekInputStream(in);
+			this.ain = null;
+			this.buf = new byte[MAX_BLOCK_SIZE];
+			din = new DataInputStream(this);
+		}
+
+		/**
+		 * 数组模式，pos和end是源数组中的绝对位置，block data不再复制到buf中
+		 */
+		BlockDataInputStream(byte[] src, int off, int len) {
+			this.ain = new ByteArrayPeekInputStream(src, off, len);
+			this.in = ain;
+			this.buf = src;
 			din = new DataInputStream(this);
 		}
 
+		/**
+		 * 数组模式下确认源数组中至少还有n个字节，数组长度来自值本身，分配之前先检查
+		 */
+		void checkRemaining(long n) throws EOFException {
+			if(ain != null && ain.available() < n){
+				throw new EOFException();
+			}
+		}
+
+		/**
+		 * 数组模式下可以回到之前读过的位置重新读取
+		 */
+		boolean canSeek() {
+			return ain != null;
+		}
+
+		/**
+		 * 非block data模式下下一个读取的位置，数组模式下为源数组中的绝对位置，否则为-1
+		 */
+		int position() {
+			return ain != null && !blkmode ? ain.position() : -1;
+		}
+
+		/**
+		 * 非block data模式下回到position()返回的位置
+		 */
+		void seek(int pos) {
+			ain.seek(pos);
+		}
+
+		/**
+		 * 数组模式下改为从另一个源数组读取，回到刚创建时的状态
+		 */
+		void reset(byte[] src, int off, int len) {
+			ain.reset(src, off, len);
+			buf = src;
+			blkmode = false;
+			pos = 0;
+			end = -1;
+			unread = 0;
+		}
+
+		/**
+		 * 非block data模式下从流中取出n个字节，从buf的pos处开始解析。
+		 * 数组模式下直接把pos指向源数组，不复制
+		 */
+		private void fill(int n) throws IOException {
+			if(ain != null){
+				pos = ain.advance(n);
+			}else{
+				pos = 0;
+				in.readFully(buf, 0, n);
+			}
+		}
+
 		/**
 		 * Sets block data mode to the given mode (true == on, false == off) and
 		 * returns the previous mode value. If the new mode is the same as the
@@ -1214,7 +2471,17 @@ public class JdkInputStream extends ObjectInputStream {
 			try{
 				do{
 					pos = 0;
-					if(unread > 0){
+					if(unread > 0 && ain != null){
+						// 整个数据块直接在源数组中解析
+						int n = Math.min(unread, ain.available());
+						if(n == 0){
+							throw new StreamCorruptedException(
+								"unexpected EOF in middle of data block");
+						}
+						pos = ain.advance(n);
+						end = pos + n;
+						unread -= n;
+					}else if(unread > 0){
 						int n = in.read(buf, 0, Math.min(unread, MAX_BLOCK_SIZE));
 						if(n >= 0){
 							end = n;
@@ -1321,6 +2588,13 @@ public class JdkInputStream extends ObjectInputStream {
 					int nread = (int)Math.min(remain, end - pos);
 					remain -= nread;
 					pos += nread;
+				}else if(ain != null){
+					// 数组模式下一次跳过
+					long nread = ain.skip(remain);
+					if(nread == 0){
+						break;
+					}
+					remain -= nread;
 				}else{
 					int nread = (int)Math.min(remain, MAX_BLOCK_SIZE);
 					if((nread = in.read(buf, 0, nread)) < 0){
@@ -1391,7 +2665,7 @@ public class JdkInputStream extends ObjectInputStream {
 				System.arraycopy(buf, pos, b, off, nread);
 				pos += nread;
 				return nread;
-			}else if(copy){
+			}else if(copy && ain == null){
 				int nread = in.read(buf, 0, Math.min(len, MAX_BLOCK_SIZE));
 				if(nread > 0){
 					System.arraycopy(buf, 0, b, off, nread);
@@ -1459,8 +2733,7 @@ public class JdkInputStream extends ObjectInputStream {
 
 		public char readChar() throws IOException {
 			if(!blkmode){
-				pos = 0;
-				in.readFully(buf, 0, 2);
+				fill(2);
 			}else if(end - pos < 2){
 				return din.readChar();
 			}
@@ -1471,8 +2744,7 @@ public class JdkInputStream extends ObjectInputStream {
 
 		public short readShort() throws IOException {
 			if(!blkmode){
-				pos = 0;
-				in.readFully(buf, 0, 2);
+				fill(2);
 			}else if(end - pos < 2){
 				return din.readShort();
 			}
@@ -1483,8 +2755,7 @@ public class JdkInputStream extends ObjectInputStream {
 
 		public int readUnsignedShort() throws IOException {
 			if(!blkmode){
-				pos = 0;
-				in.readFully(buf, 0, 2);
+				fill(2);
 			}else if(end - pos < 2){
 				return din.readUnsignedShort();
 			}
@@ -1495,8 +2766,7 @@ public class JdkInputStream extends ObjectInputStream {
 
 		public int readInt() throws IOException {
 			if(!blkmode){
-				pos = 0;
-				in.readFully(buf, 0, 4);
+				fill(4);
 			}else if(end - pos < 4){
 				return din.readInt();
 			}
@@ -1507,8 +2777,7 @@ public class JdkInputStream extends ObjectInputStream {
 
 		public float readFloat() throws IOException {
 			if(!blkmode){
-				pos = 0;
-				in.readFully(buf, 0, 4);
+				fill(4);
 			}else if(end - pos < 4){
 				return din.readFloat();
 			}
@@ -1519,8 +2788,7 @@ public class JdkInputStream extends ObjectInputStream {
 
 		public long readLong() throws IOException {
 			if(!blkmode){
-				pos = 0;
-				in.readFully(buf, 0, 8);
+				fill(8);
 			}else if(end - pos < 8){
 				return din.readLong();
 			}
@@ -1531,8 +2799,7 @@ public class JdkInputStream extends ObjectInputStream {
 
 		public double readDouble() throws IOException {
 			if(!blkmode){
-				pos = 0;
-				in.readFully(buf, 0, 8);
+				fill(8);
 			}else if(end - pos < 8){
 				return din.readDouble();
 			}
@@ -1542,7 +2809,7 @@ public class JdkInputStream extends ObjectInputStream {
 		}
 
 		public String readUTF() throws IOException {
-			return readUTFBody(readUnsignedShort());
+			return readUTFBody(readUnsignedShort(), false);
 		}
 
 		@SuppressWarnings("deprecation")
@@ -1563,9 +2830,8 @@ public class JdkInputStream extends ObjectInputStream {
 			while(off < endoff){
 				if(!blkmode){
 					int span = Math.min(endoff - off, MAX_BLOCK_SIZE);
-					in.readFully(buf, 0, span);
+					fill(span);
 					stop = off + span;
-					pos = 0;
 				}else if(end - pos < 1){
 					v[off++] = din.readBoolean();
 					continue;
@@ -1579,69 +2845,67 @@ public class JdkInputStream extends ObjectInputStream {
 			}
 		}
 
+		/**
+		 * 非block data模式下一次解码的元素个数，数组模式下数据已经都在源数组中，一次解码整个数组
+		 */
+		private int maxSpan(int shift) {
+			return ain != null ? Integer.MAX_VALUE >> shift : MAX_BLOCK_SIZE >> shift;
+		}
+
 		void readChars(char[] v, int off, int len) throws IOException {
-			int stop, endoff = off + len;
+			int span, endoff = off + len;
 			while(off < endoff){
 				if(!blkmode){
-					int span = Math.min(endoff - off, MAX_BLOCK_SIZE >> 1);
-					in.readFully(buf, 0, span << 1);
-					stop = off + span;
-					pos = 0;
+					span = Math.min(endoff - off, maxSpan(1));
+					fill(span << 1);
 				}else if(end - pos < 2){
 					v[off++] = din.readChar();
 					continue;
 				}else{
-					stop = Math.min(endoff, off + ((end - pos) >> 1));
+					span = Math.min(endoff - off, ((end - pos) >> 1));
 				}
 
-				while(off < stop){
-					v[off++] = Bits.getChar(buf, pos);
-					pos += 2;
-				}
+				Bits.getChars(buf, pos, v, off, span);
+				off += span;
+				pos += span << 1;
 			}
 		}
 
 		void readShorts(short[] v, int off, int len) throws IOException {
-			int stop, endoff = off + len;
+			int span, endoff = off + len;
 			while(off < endoff){
 				if(!blkmode){
-					int span = Math.min(endoff - off, MAX_BLOCK_SIZE >> 1);
-					in.readFully(buf, 0, span << 1);
-					stop = off + span;
-					pos = 0;
+					span = Math.min(endoff - off, maxSpan(1));
+					fill(span << 1);
 				}else if(end - pos < 2){
 					v[off++] = din.readShort();
 					continue;
 				}else{
-					stop = Math.min(endoff, off + ((end - pos) >> 1));
+					span = Math.min(endoff - off, ((end - pos) >> 1));
 				}
 
-				while(off < stop){
-					v[off++] = Bits.getShort(buf, pos);
-					pos += 2;
-				}
+				Bits.getShorts(buf, pos, v, off, span);
+				off += span;
+				pos += span << 1;
 			}
 		}
 
 		void readInts(int[] v, int off, int len) throws IOException {
-			int stop, endoff = off + len;
+			int span, endoff = off + len;
 			while(off < endoff){
 				if(!blkmode){
-					int span = Math.min(endoff - off, MAX_BLOCK_SIZE >> 2);
-					in.readFully(buf, 0, span << 2);
-					stop = off + span;
-					pos = 0;
+					span = Math.min(endoff - off, maxSpan(2));
+					fill(span << 2);
 				}else if(end - pos < 4){
 					v[off++] = din.readInt();
 					continue;
 				}else{
-					stop = Math.min(endoff, off + ((end - pos) >> 2));
+					span = Math.min(endoff - off, ((end - pos) >> 2));
 				}
 
-				while(off < stop){
-					v[off++] = Bits.getInt(buf, pos);
-					pos += 4;
-				}
+				Bits.getInts(buf, pos, v, off, span);
+				off += span;
+				pos += span << 2;
 			}
 		}
 
@@ -1649,9 +2913,8 @@ public class JdkInputStream extends ObjectInputStream {
 			int span, endoff = off + len;
 			while(off < endoff){
 				if(!blkmode){
-					span = Math.min(endoff - off, MAX_BLOCK_SIZE >> 2);
-					in.readFully(buf, 0, span << 2);
-					pos = 0;
+					span = Math.min(endoff - off, maxSpan(2));
+					fill(span << 2);
 				}else if(end - pos < 4){
 					v[off++] = din.readFloat();
 					continue;
@@ -1659,31 +2922,28 @@ public class JdkInputStream extends ObjectInputStream {
 					span = Math.min(endoff - off, ((end - pos) >> 2));
 				}
 
-				bytesToFloats(buf, pos, v, off, span);
+				Bits.getFloats(buf, pos, v, off, span);
 				off += span;
 				pos += span << 2;
 			}
 		}
 
 		void readLongs(long[] v, int off, int len) throws IOException {
-			int stop, endoff = off + len;
+			int span, endoff = off + len;
 			while(off < endoff){
 				if(!blkmode){
-					int span = Math.min(endoff - off, MAX_BLOCK_SIZE >> 3);
-					in.readFully(buf, 0, span << 3);
-					stop = off + span;
-					pos = 0;
+					span = Math.min(endoff - off, maxSpan(3));
+					fill(span << 3);
 				}else if(end - pos < 8){
 					v[off++] = din.readLong();
 					continue;
 				}else{
-					stop = Math.min(endoff, off + ((end - pos) >> 3));
+					span = Math.min(endoff - off, ((end - pos) >> 3));
 				}
 
-				while(off < stop){
-					v[off++] = Bits.getLong(buf, pos);
-					pos += 8;
-				}
+				Bits.getLongs(buf, pos, v, off, span);
+				off += span;
+				pos += span << 3;
 			}
 		}
 
@@ -1691,9 +2951,8 @@ public class JdkInputStream extends ObjectInputStream {
 			int span, endoff = off + len;
 			while(off < endoff){
 				if(!blkmode){
-					span = Math.min(endoff - off, MAX_BLOCK_SIZE >> 3);
-					in.readFully(buf, 0, span << 3);
-					pos = 0;
+					span = Math.min(endoff - off, maxSpan(3));
+					fill(span << 3);
 				}else if(end - pos < 8){
 					v[off++] = din.readDouble();
 					continue;
@@ -1701,7 +2960,7 @@ public class JdkInputStream extends ObjectInputStream {
 					span = Math.min(endoff - off, ((end - pos) >> 3));
 				}
 
-				bytesToDoubles(buf, pos, v, off, span);
+				Bits.getDoubles(buf, pos, v, off, span);
 				off += span;
 				pos += span << 3;
 			}
@@ -1713,7 +2972,7 @@ public class JdkInputStream extends ObjectInputStream {
 		 * (instead of the standard 2 bytes) to convey the UTF encoding length.
 		 */
 		String readLongUTF() throws IOException {
-			return readUTFBody(readLong());
+			return readUTFBody(readLong(), false);
 		}
 
 		/**
@@ -1721,7 +2980,23 @@ public class JdkInputStream extends ObjectInputStream {
 		 * 8-byte length header) of a UTF encoding, which occupies the next
 		 * utflen bytes.
 		 */
-		private String readUTFBody(long utflen) throws IOException {
+		private String readUTFBody(long utflen, boolean intern) throws IOException {
+			if(blkmode){
+				if(end - pos >= utflen){
+					return readUTFArray((int)utflen, intern);
+				}
+			}else if(ain != null){
+				if(utflen > ain.available()){
+					throw new EOFException();
+				}
+				pos = ain.advance((int)utflen);
+				return readUTFArray((int)utflen, intern);
+			}else if(utflen <= buf.length){
+				// 整个字符串可以一次读入buf时直接解码，不再经过cbuf和StringBuilder
+				in.readFully(buf, 0, (int)utflen);
+				end = pos = 0;
+				return decodeUTF(buf, 0, (int)utflen, intern);
+			}
 			StringBuilder sbuf = new StringBuilder();
 			if(!blkmode){
 				end = pos = 0;
@@ -1750,6 +3025,44 @@ public class JdkInputStream extends ObjectInputStream {
 			return sbuf.toString();
 		}
 
+		/**
+		 * 整个字符串都在buf的pos处，一次解码，不再经过cbuf和StringBuilder分段复制
+		 */
+		private String readUTFArray(int utflen, boolean intern) throws IOException {
+			int start = pos;
+			pos += utflen;
+			return decodeUTF(buf, start, utflen, intern);
+		}
+
+		/**
+		 * 只解码字符串的前max个字节，不会截断在字符中间，其余的字节直接跳过，
+		 * 源数据提前结束时只解码已有的部分。未解码的字节数记在stringRemaining中
+		 */
+		String readUTFPrefix(long utflen, int max) throws IOException {
+			int n = (int)Math.min(utflen, max);
+			byte[] b;
+			int off;
+			if(ain != null){
+				n = Math.min(n, ain.available());
+				b = buf;
+				off = ain.advance(n);
+			}else{
+				b = new byte[n];
+				off = 0;
+				in.readFully(b, 0, n);
+			}
+			int len = utfBoundary(b, off, n);
+			stringRemaining = utflen - len;
+			for(long remain = utflen - n; remain > 0;){
+				long skipped = in.skip(remain);
+				if(skipped <= 0){
+					break;
+				}
+				remain -= skipped;
+			}
+			return decodeUTF(b, off, len, false);
+		}
+
 		/**
 		 * Reads span of UTF-encoded characters out of internal buffer (starting
 		 * at offset pos and ending at or before offset end), consuming no more
@@ -1931,6 +3244,8 @@ public class JdkInputStream extends ObjectInputStream {
 		Object[] entries;
 		/** array mapping handle -> list of dependent handles (if any) */
 		HandleList[] deps;
+		/** 事件模式下handle -> 值在源数组中的位置+1和其中第一个handle，0表示不能重新读取 */
+		long[] replays;
 		/** lowest unresolved dependency */
 		int lowDep = -1;
 		/** number of handles in table */
@@ -1943,6 +3258,7 @@ public class JdkInputStream extends ObjectInputStream {
 			status = new byte[initialCapacity];
 			entries = new Object[initialCapacity];
 			deps = new HandleList[initialCapacity];
+			replays = new long[initialCapacity];
 		}
 
 		/**
@@ -1957,9 +3273,28 @@ public class JdkInputStream extends ObjectInputStream {
 			}
 			status[size] = STATUS_UNKNOWN;
 			entries[size] = obj;
+			replays[size] = 0;
 			return size++;
 		}
 
+		/**
+		 * 记录handle的值从源数组的start处开始，重新读取时先退回到first
+		 */
+		void markReplay(int handle, int start, int first) {
+			replays[handle] = (long)(start + 1) << 32 | first;
+		}
+
+		/**
+		 * 返回handle的值在源数组中的位置，没有记录时返回-1
+		 */
+		int replayStart(int handle) {
+			return (int)(replays[handle] >>> 32) - 1;
+		}
+
+		int replayFirst(int handle) {
+			return (int)replays[handle];
+		}
+
 		/**
 		 * Registers a dependency (in exception status) of one handle on
 		 * another. The dependent handle must be "open" (i.e., assigned, but not
@@ -2126,6 +3461,7 @@ public class JdkInputStream extends ObjectInputStream {
 			Arrays.fill(status, 0, size, (byte)0);
 			Arrays.fill(entries, 0, size, null);
 			Arrays.fill(deps, 0, size, null);
+			Arrays.fill(replays, 0, size, 0);
 			lowDep = -1;
 			size = 0;
 		}
@@ -2146,14 +3482,17 @@ public class JdkInputStream extends ObjectInputStream {
 			byte[] newStatus = new byte[newCapacity];
 			Object[] newEntries = new Object[newCapacity];
 			HandleList[] newDeps = new HandleList[newCapacity];
+			long[] newReplays = new long[newCapacity];
 
 			System.arraycopy(status, 0, newStatus, 0, size);
 			System.arraycopy(entries, 0, newEntries, 0, size);
 			System.arraycopy(deps, 0, newDeps, 0, size);
+			System.arraycopy(replays, 0, newReplays, 0, size);
 
 			status = newStatus;
 			entries = newEntries;
 			deps = newDeps;
+			replays = newReplays;
 		}
 
 		/**
@@ -2249,4 +3588,145 @@ public class JdkInputStream extends ObjectInputStream {
 			throw ex;
 		}
 	}
+
+	/**
+	 * 应用类的readObject中按名称读取字段，字段值先全部读出，再由类按名称取用
+	 */
+	public ObjectInputStream.GetField readFields() throws IOException, ClassNotFoundException {
+		SerialCallbackContext ctx = curContext;
+		if(ctx == null){
+			throw new NotActiveException("not in call to readObject");
+		}
+		ctx.getObj();
+		ObjectStreamDesc curDesc = ctx.getDesc();
+		bin.setBlockDataMode(false);
+		GetFieldImpl getField = new GetFieldImpl(curDesc);
+		getField.readFields();
+		bin.setBlockDataMode(true);
+		if(!curDesc.hasWriteObjectData()){
+			defaultDataEnd = true;
+		}
+		return getField;
+	}
+
+	/**
+	 * 整个对象图读完后调用回调，只能在readObject中注册
+	 */
+	public void registerValidation(ObjectInputValidation obj, int prio)
+		throws NotActiveException, InvalidObjectException {
+		if(depth == 0){
+			throw new NotActiveException("stream inactive");
+		}
+		vlist.register(obj, prio);
+	}
+
+	/**
+	 * readFields读出的一个类的字段值，流中没有的字段返回默认值
+	 */
+	private class GetFieldImpl extends ObjectInputStream.GetField {
+
+		private final ObjectStreamDesc desc;
+		private final byte[] primVals;
+		private final Object[] objVals;
+		/** 每个对象字段的handle，用于查找ClassNotFoundException和记录依赖 */
+		private final int[] objHandles;
+
+		GetFieldImpl(ObjectStreamDesc desc) {
+			this.desc = desc;
+			primVals = new byte[desc.getPrimDataSize()];
+			objVals = new Object[desc.getNumObjFields()];
+			objHandles = new int[objVals.length];
+		}
+
+		void readFields() throws IOException {
+			bin.readFully(primVals, 0, primVals.length, false);
+			int oldHandle = passHandle;
+			ObjectStreamField[] fields = desc.getFields(false);
+			int numPrimFields = fields.length - objVals.length;
+			for(int i = 0; i < objVals.length; i++){
+				objVals[i] = readObject0(fields[numPrimFields + i].isUnshared());
+				objHandles[i] = passHandle;
+			}
+			passHandle = oldHandle;
+		}
+
+		public java.io.ObjectStreamClass getObjectStreamClass() {
+			Class<?> cl = desc.forClass();
+			return cl == null ? null : java.io.ObjectStreamClass.lookupAny(cl);
+		}
+
+		public boolean defaulted(String name) throws IOException {
+			return find(name, null) == null;
+		}
+
+		public boolean get(String name, boolean val) throws IOException {
+			ObjectStreamField f = find(name, Boolean.TYPE);
+			return f == null ? val : Bits.getBoolean(primVals, f.getOffset());
+		}
+
+		public byte get(String name, byte val) throws IOException {
+			ObjectStreamField f = find(name, Byte.TYPE);
+			return f == null ? val : primVals[f.getOffset()];
+		}
+
+		public char get(String name, char val) throws IOException {
+			ObjectStreamField f = find(name, Character.TYPE);
+			return f == null ? val : Bits.getChar(primVals, f.getOffset());
+		}
+
+		public short get(String name, short val) throws IOException {
+			ObjectStreamField f = find(name, Short.TYPE);
+			return f == null ? val : Bits.getShort(primVals, f.getOffset());
+		}
+
+		public int get(String name, int val) throws IOException {
+			ObjectStreamField f = find(name, Integer.TYPE);
+			return f == null ? val : Bits.getInt(primVals, f.getOffset());
+		}
+
+		public float get(String name, float val) throws IOException {
+			ObjectStreamField f = find(name, Float.TYPE);
+			return f == null ? val : Bits.getFloat(primVals, f.getOffset());
+		}
+
+		public long get(String name, long val) throws IOException {
+			ObjectStreamField f = find(name, Long.TYPE);
+			return f == null ? val : Bits.getLong(primVals, f.getOffset());
+		}
+
+		public double get(String name, double val) throws IOException {
+			ObjectStreamField f = find(name, Double.TYPE);
+			return f == null ? val : Bits.getDouble(primVals, f.getOffset());
+		}
+
+		public Object get(String name, Object val) throws IOException {
+			ObjectStreamField f = find(name, Object.class);
+			if(f == null){
+				return val;
+			}
+			int objHandle = objHandles[f.getOffset()];
+			handles.markDependency(passHandle, objHandle);
+			return handles.lookupException(objHandle) == null ? objVals[f.getOffset()] : null;
+		}
+
+		/**
+		 * 按名称查找流中的字段，类型为null时不检查类型；字段不在流中时返回null，类型不符时抛出IllegalArgumentException
+		 */
+		private ObjectStreamField find(String name, Class<?> type) {
+			for(ObjectStreamField f : desc.getFields(false)){
+				if(!f.getName().equals(name)){
+					continue;
+				}
+				if(type == null){
+					return f;
+				}
+				boolean match = type == Object.class ? !f.isPrimitive() : f.getType() == type;
+				if(!match){
+					throw new IllegalArgumentException("no such field " + name + " with type " + type);
+				}
+				return f;
+			}
+			return null;
+		}
+	}
 }
@@ -0,0 +1,77 @@
+package com.wedis.redis.io;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按线程复用的JdkInputStream。批量解码大量值时每个值不再新建流、handle表和缓冲区，
+ * handle表保留扩容后的容量，稳定后除了解码出的对象基本不再分配内存。
+ *
+ * acquire和release必须成对调用，解码过程中再次acquire(例如在readObject方法中)会取到另一个实例。
+ * handle表扩容到MAX_HANDLES以上的实例不放回，避免很大的值解码后一直占用线程的内存
+ */
+public class JdkInputStreamPool {
+
+	/** 每个线程最多保留的实例数 */
+	private static final int MAX_IDLE = 4;
+	/** 放回时handle表容量的上限 */
+	private static final int MAX_HANDLES = 1 << 16;
+
+	private static final ThreadLocal<ArrayDeque<JdkInputStream>> idle = ThreadLocal
+		.withInitial(() -> new ArrayDeque<>(MAX_IDLE));
+
+	/** 复用了已有的实例 */
+	private static final LongAdder reused = new LongAdder();
+	/** 线程中没有空闲实例，新建了一个 */
+	private static final LongAdder created = new LongAdder();
+
+	private JdkInputStreamPool() {
+	}
+
+	public static JdkInputStream acquire(byte[] buf) throws IOException {
+		return acquire(buf, 0, buf.length);
+	}
+
+	/**
+	 * 取出当前线程的一个空闲实例并改为从buf中读取，没有空闲实例时新建。
+	 * 取出的实例没有预览限制，也不从StringTable中取字符串值
+	 */
+	public static JdkInputStream acquire(byte[] buf, int off, int len) throws IOException {
+		JdkInputStream in = idle.get().pollFirst();
+		if(in == null){
+			created.increment();
+			return new JdkInputStream(buf, off, len);
+		}
+		try{
+			in.reset(buf, off, len);
+		}catch(IOException | RuntimeException e){
+			release(in);
+			throw e;
+		}
+		reused.increment();
+		return in;
+	}
+
+	/**
+	 * 放回当前线程，之后不能再使用in
+	 */
+	public static void release(JdkInputStream in) {
+		in.release();
+		in.setVisitLimit(null);
+		in.setInternStrings(false);
+		in.setEditable(false);
+		ArrayDeque<JdkInputStream> deque = idle.get();
+		if(deque.size() < MAX_IDLE && in.handleCapacity() <= MAX_HANDLES){
+			deque.offerFirst(in);
+		}
+	}
+
+	public static long reused() {
+		return reused.sum();
+	}
+
+	public static long created() {
+		return created.sum();
+	}
+}
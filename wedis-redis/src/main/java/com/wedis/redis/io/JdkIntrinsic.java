@@ -0,0 +1,630 @@
+package com.wedis.redis.io;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.wedis.base.util.UnsafeUtil;
+
+import sun.misc.Unsafe;
+
+/**
+ * 常用JDK类的内置读取。这些类都有自己的readObject，按原来的方式需要用序列化构造器创建对象、
+ * 反射调用readObject并为每个对象进入一次SerialCallbackContext；内置读取直接按它们writeObject
+ * 写出的数据格式解析，用公开的构造器创建同一个类的对象，结果与原来的方式相同。
+ *
+ * 只有流中从父类到子类每一层的类名和字段都与下面的签名完全相同时才使用，用户的子类、
+ * 其他JDK版本中字段不同的类仍按原来的方式读取
+ */
+public enum JdkIntrinsic {
+
+	ARRAY_LIST("java.util.ArrayList:Isize") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			int size = Bits.getInt(in.readSlotPrims(slots[0]), 0);
+			in.startCustomData();
+			in.readInt(); // capacity
+			checkSize(size);
+			ArrayList<Object> list = in.setHandleObject(handle, new ArrayList<>(capacity(size)));
+			for(int i = 0; i < size; i++){
+				list.add(in.readSlotObject(handle));
+			}
+			in.endSlot(slots[0]);
+			return list;
+		}
+	},
+	LINKED_LIST("java.util.LinkedList:") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			in.startCustomData();
+			int size = checkSize(in.readInt());
+			LinkedList<Object> list = in.setHandleObject(handle, new LinkedList<>());
+			for(int i = 0; i < size; i++){
+				list.add(in.readSlotObject(handle));
+			}
+			in.endSlot(slots[0]);
+			return list;
+		}
+	},
+	HASH_MAP("java.util.HashMap:FloadFactor Ithreshold") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			return readHashMap(in, slots, handle, false);
+		}
+	},
+	LINKED_HASH_MAP("java.util.HashMap:FloadFactor Ithreshold|java.util.LinkedHashMap:ZaccessOrder") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			Object map = readHashMap(in, slots, handle, true);
+			// accessOrder在entry之后才读到，与原来的方式相同直接写入已经放入handle的对象，
+			// entry中对它的引用仍指向同一个对象
+			if(Bits.getBoolean(in.readSlotPrims(slots[1]), 0)){
+				unsafe.putBoolean(map, ACCESS_ORDER, true);
+			}
+			in.endSlot(slots[1]);
+			return map;
+		}
+	},
+	HASH_SET("java.util.HashSet:") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			return readHashSet(in, slots, handle, false);
+		}
+	},
+	LINKED_HASH_SET("java.util.HashSet:|java.util.LinkedHashSet:") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			Object set = readHashSet(in, slots, handle, true);
+			in.endSlot(slots[1]);
+			return set;
+		}
+	},
+	TREE_MAP("java.util.TreeMap:Ljava/util/Comparator;comparator") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			in.readSlotPrims(slots[0]);
+			Object comparator = in.readSlotObject(handle);
+			if(comparator != null && !(comparator instanceof Comparator) && in.isEditable()){
+				// 可写回模式下保留TreeMap的描述符、比较器和流中的数据，写回时仍是原来的TreeMap
+				JdkObject obj = in.setHandleObject(handle, new JdkObject(slots[0]));
+				obj.putField(slots[0], "comparator", comparator);
+				in.startCustomData();
+				obj.setCustomData(0, slots.length, in.readSlotCustomData());
+				return obj;
+			}
+			in.startCustomData();
+			int size = checkSize(in.readInt());
+			if(comparator != null && !(comparator instanceof Comparator)){
+				// 比较器的类不存在，无法按原来的顺序查找，按流中的顺序以LinkedHashMap代替
+				Map<Object, Object> map = in.setHandleObject(handle, new LinkedHashMap<>(capacity(size)));
+				for(int i = 0; i < size; i++){
+					Object key = in.readSlotObject(handle);
+					map.put(key, in.readSlotObject(handle));
+				}
+				in.endSlot(slots[0]);
+				return map;
+			}
+			TreeMap<Object, Object> map = in.setHandleObject(handle, new TreeMap<>(comparator(comparator)));
+			Object[] entries = new Object[capacity(size) << 1];
+			for(int i = 0; i < size; i++){
+				if(i << 1 == entries.length){
+					entries = Arrays.copyOf(entries, entries.length << 1);
+				}
+				entries[i << 1] = in.readSlotObject(handle);
+				entries[i << 1 | 1] = in.readSlotObject(handle);
+			}
+			in.endSlot(slots[0]);
+			// 流中的key已经排好序，与TreeMap.readObject相同直接建树，不比较key
+			map.putAll(new SortedEntries(comparator(comparator), entries, size));
+			return map;
+		}
+	},
+	TREE_SET("java.util.TreeSet:") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			in.startCustomData();
+			Object comparator = in.readSlotObject(handle);
+			if(comparator != null && !(comparator instanceof Comparator) && in.isEditable()){
+				// 与TreeMap相同保留原来的数据，比较器是自定义数据中的第一个对象
+				JdkObject obj = in.setHandleObject(handle, new JdkObject(slots[0]));
+				List<Object> data = in.readSlotCustomData();
+				data.add(0, comparator);
+				obj.setCustomData(0, slots.length, data);
+				return obj;
+			}
+			int size = checkSize(in.readInt());
+			if(comparator != null && !(comparator instanceof Comparator)){
+				// 比较器的类不存在，按流中的顺序以LinkedHashSet代替
+				Set<Object> set = in.setHandleObject(handle, new LinkedHashSet<>(capacity(size)));
+				for(int i = 0; i < size; i++){
+					set.add(in.readSlotObject(handle));
+				}
+				in.endSlot(slots[0]);
+				return set;
+			}
+			TreeSet<Object> set = in.setHandleObject(handle, new TreeSet<>(comparator(comparator)));
+			Object[] elements = new Object[capacity(size)];
+			for(int i = 0; i < size; i++){
+				if(i == elements.length){
+					elements = Arrays.copyOf(elements, elements.length << 1);
+				}
+				elements[i] = in.readSlotObject(handle);
+			}
+			in.endSlot(slots[0]);
+			set.addAll(new SortedElements(comparator(comparator), elements, size));
+			return set;
+		}
+	},
+	CONCURRENT_HASH_MAP("java.util.concurrent.ConcurrentHashMap:IsegmentMask IsegmentShift "
+		+ "[Ljava/util/concurrent/ConcurrentHashMap$Segment;segments") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			in.readSlotPrims(slots[0]);
+			in.readSlotObject(handle); // segments，只为兼容旧版本写出
+			ConcurrentHashMap<Object, Object> map = in.setHandleObject(handle, new ConcurrentHashMap<>());
+			in.startCustomData();
+			for(;;){
+				Object key = in.readSlotObject(handle);
+				Object value = in.readSlotObject(handle);
+				if(key == null)
+					break;
+				if(value != null){
+					map.put(key, value);
+				}
+			}
+			in.endSlot(slots[0]);
+			return map;
+		}
+	},
+	DATE("java.util.Date:") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			in.startCustomData();
+			Date date = new Date(in.readLong());
+			in.endSlot(slots[0]);
+			return in.setHandleObject(handle, date);
+		}
+	},
+	BIG_INTEGER("java.lang.Number:|java.math.BigInteger:IbitCount IbitLength IfirstNonzeroByteNum "
+		+ "IlowestSetBit Isignum [Bmagnitude") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			in.endSlot(slots[0]);
+			int signum = Bits.getInt(in.readSlotPrims(slots[1]), 16);
+			Object magnitude = in.readSlotObject(handle);
+			in.endSlot(slots[1]);
+			if(!(magnitude instanceof byte[]))
+				throw new StreamCorruptedException("BigInteger: invalid magnitude");
+			try{
+				return in.setHandleObject(handle, new BigInteger(signum, (byte[])magnitude));
+			}catch(NumberFormatException e){
+				throw new StreamCorruptedException("BigInteger: " + e.getMessage());
+			}
+		}
+	},
+	BIG_DECIMAL("java.lang.Number:|java.math.BigDecimal:Iscale Ljava/math/BigInteger;intVal") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			in.endSlot(slots[0]);
+			int scale = Bits.getInt(in.readSlotPrims(slots[1]), 0);
+			Object intVal = in.readSlotObject(handle);
+			in.endSlot(slots[1]);
+			if(!(intVal instanceof BigInteger))
+				throw new StreamCorruptedException("BigDecimal: null or invalid intVal");
+			return in.setHandleObject(handle, new BigDecimal((BigInteger)intVal, scale));
+		}
+	},
+	INTEGER("java.lang.Number:|java.lang.Integer:Ivalue") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			return in.setHandleObject(handle, Bits.getInt(readValue(in, slots), 0));
+		}
+	},
+	LONG("java.lang.Number:|java.lang.Long:Jvalue") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			return in.setHandleObject(handle, Bits.getLong(readValue(in, slots), 0));
+		}
+	},
+	SHORT("java.lang.Number:|java.lang.Short:Svalue") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			return in.setHandleObject(handle, Bits.getShort(readValue(in, slots), 0));
+		}
+	},
+	BYTE("java.lang.Number:|java.lang.Byte:Bvalue") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			return in.setHandleObject(handle, readValue(in, slots)[0]);
+		}
+	},
+	DOUBLE("java.lang.Number:|java.lang.Double:Dvalue") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			return in.setHandleObject(handle, Bits.getDouble(readValue(in, slots), 0));
+		}
+	},
+	FLOAT("java.lang.Number:|java.lang.Float:Fvalue") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			return in.setHandleObject(handle, Bits.getFloat(readValue(in, slots), 0));
+		}
+	},
+	BOOLEAN("java.lang.Boolean:Zvalue") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			return in.setHandleObject(handle, Bits.getBoolean(readValue(in, slots), 0));
+		}
+	},
+	CHARACTER("java.lang.Character:Cvalue") {
+		@Override
+		Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException {
+			return in.setHandleObject(handle, Bits.getChar(readValue(in, slots), 0));
+		}
+	};
+
+	/** 预分配容量的上限，元素个数来自值本身，不能直接按它分配 */
+	private static final int MAX_CAPACITY = 4096;
+	/** 最外层的类名 -> 内置读取，类名相同时再比较完整的签名 */
+	private static final Map<String, JdkIntrinsic[]> byName = new HashMap<>();
+	private static final Unsafe unsafe = UnsafeUtil.unsafe;
+	/** LinkedHashMap.accessOrder的偏移量，它是final字段，只能直接写入 */
+	private static final long ACCESS_ORDER;
+	/** 使用内置读取的对象个数 */
+	private static final LongAdder reads = new LongAdder();
+	/** 读出的是单个值而不是容器的类 */
+	private static final Set<JdkIntrinsic> SCALARS = EnumSet.of(DATE, BIG_INTEGER, BIG_DECIMAL, INTEGER, LONG,
+		SHORT, BYTE, DOUBLE, FLOAT, BOOLEAN, CHARACTER);
+
+	static{
+		try{
+			ACCESS_ORDER = unsafe.objectFieldOffset(LinkedHashMap.class.getDeclaredField("accessOrder"));
+		}catch(NoSuchFieldException e){
+			throw new ExceptionInInitializerError(e);
+		}
+		for(JdkIntrinsic intrinsic : values()){
+			String sig = intrinsic.signature;
+			int start = sig.lastIndexOf('|') + 1;
+			String name = sig.substring(start, sig.indexOf(':', start));
+			JdkIntrinsic[] old = byName.get(name);
+			JdkIntrinsic[] list = old == null ? new JdkIntrinsic[1] : Arrays.copyOf(old, old.length + 1);
+			list[list.length - 1] = intrinsic;
+			byName.put(name, list);
+		}
+	}
+
+	/** 从父类到子类每一层的类名:字段签名和名称，层之间以|分隔 */
+	private final String signature;
+
+	JdkIntrinsic(String signature) {
+		this.signature = signature;
+	}
+
+	/**
+	 * 读取对象的数据，创建出对象后立即放入handle，之后再读取其中的元素，
+	 * 元素中对这个对象的引用才能正确解析
+	 */
+	abstract Object read(JdkInputStream in, ObjectStreamDesc[] slots, int handle) throws IOException;
+
+	/**
+	 * Date、BigInteger、BigDecimal和包装类，事件模式下不推送字段，读出后作为value推送
+	 */
+	boolean isScalar() {
+		return SCALARS.contains(this);
+	}
+
+	/**
+	 * 返回与描述符的类层次完全相同的内置读取，没有时返回null
+	 */
+	static JdkIntrinsic of(ObjectStreamDesc desc) throws InvalidClassException {
+		JdkIntrinsic[] candidates = byName.get(desc.getName());
+		if(candidates == null)
+			return null;
+		String sig = signature(desc.getClassDataLayout());
+		for(JdkIntrinsic intrinsic : candidates){
+			if(intrinsic.signature.equals(sig))
+				return intrinsic;
+		}
+		return null;
+	}
+
+	private static String signature(ObjectStreamDesc[] slots) {
+		StringBuilder sb = new StringBuilder();
+		for(ObjectStreamDesc slot : slots){
+			if(sb.length() > 0){
+				sb.append('|');
+			}
+			sb.append(slot.getName()).append(':');
+			ObjectStreamField[] fields = slot.getFields(false);
+			for(int i = 0; i < fields.length; i++){
+				if(i > 0){
+					sb.append(' ');
+				}
+				sb.append(fields[i].getSignature()).append(fields[i].getName());
+			}
+		}
+		return sb.toString();
+	}
+
+	static void count() {
+		reads.increment();
+	}
+
+	public static long reads() {
+		return reads.sum();
+	}
+
+	private static int checkSize(int size) throws InvalidObjectException {
+		if(size < 0)
+			throw new InvalidObjectException("illegal size: " + size);
+		return size;
+	}
+
+	private static int capacity(int size) {
+		return Math.min(size, MAX_CAPACITY);
+	}
+
+	/**
+	 * 与HashMap.readObject相同，loadFactor限制在0.25到4之间
+	 */
+	private static float loadFactor(float loadFactor) throws InvalidObjectException {
+		if(loadFactor <= 0 || Float.isNaN(loadFactor))
+			throw new InvalidObjectException("illegal load factor: " + loadFactor);
+		return Math.min(Math.max(0.25F, loadFactor), 4.0F);
+	}
+
+	/**
+	 * 没有比较器时按自然顺序。比较器的类不存在时读出的不是Comparator，TreeMap和TreeSet
+	 * 在调用之前已经改为LinkedHashMap和LinkedHashSet或JdkObject
+	 */
+	@SuppressWarnings("unchecked")
+	private static Comparator<Object> comparator(Object comparator) {
+		return comparator instanceof Comparator ? (Comparator<Object>)comparator : null;
+	}
+
+	private static Object readHashMap(JdkInputStream in, ObjectStreamDesc[] slots, int handle, boolean linked)
+		throws IOException {
+		float loadFactor = loadFactor(Bits.getFloat(in.readSlotPrims(slots[0]), 0));
+		in.startCustomData();
+		in.readInt(); // buckets
+		int size = checkSize(in.readInt());
+		// 与HashMap.readObject相同，按元素个数和loadFactor计算初始容量
+		int capacity = (int)Math.min(capacity(size) / loadFactor + 1.0F, MAX_CAPACITY);
+		Map<Object, Object> map = in.setHandleObject(handle, linked ? new LinkedHashMap<>(capacity, loadFactor)
+			: new HashMap<>(capacity, loadFactor));
+		for(int i = 0; i < size; i++){
+			Object key = in.readSlotObject(handle);
+			map.put(key, in.readSlotObject(handle));
+		}
+		in.endSlot(slots[0]);
+		return map;
+	}
+
+	private static Object readHashSet(JdkInputStream in, ObjectStreamDesc[] slots, int handle, boolean linked)
+		throws IOException {
+		in.startCustomData();
+		in.readInt(); // capacity
+		float loadFactor = loadFactor(in.readFloat());
+		int size = checkSize(in.readInt());
+		int capacity = (int)Math.min(capacity(size) / loadFactor + 1.0F, MAX_CAPACITY);
+		HashSet<Object> set = in.setHandleObject(handle, linked ? new LinkedHashSet<>(capacity, loadFactor)
+			: new HashSet<>(capacity, loadFactor));
+		for(int i = 0; i < size; i++){
+			set.add(in.readSlotObject(handle));
+		}
+		in.endSlot(slots[0]);
+		return set;
+	}
+
+	/**
+	 * 包装类只有一个基本类型的value字段
+	 */
+	private static byte[] readValue(JdkInputStream in, ObjectStreamDesc[] slots) throws IOException {
+		ObjectStreamDesc last = slots[slots.length - 1];
+		if(slots.length > 1){
+			in.endSlot(slots[0]);
+		}
+		byte[] prims = in.readSlotPrims(last);
+		in.endSlot(last);
+		return prims;
+	}
+
+	/**
+	 * 已经按比较器排好序的entry，只用于TreeMap.putAll，空的TreeMap遇到比较器相同的SortedMap时
+	 * 直接按顺序建树。建树只用到comparator、size和entrySet的迭代，首尾的key直接取数组的两端，
+	 * 子视图不支持
+	 */
+	private static final class SortedEntries extends AbstractMap<Object, Object>
+		implements SortedMap<Object, Object> {
+		private final Comparator<Object> comparator;
+		private final Object[] entries;
+		private final int size;
+
+		SortedEntries(Comparator<Object> comparator, Object[] entries, int size) {
+			this.comparator = comparator;
+			this.entries = entries;
+			this.size = size;
+		}
+
+		@Override
+		public Comparator<Object> comparator() {
+			return comparator;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Set<Map.Entry<Object, Object>> entrySet() {
+			return new AbstractSet<Map.Entry<Object, Object>>() {
+				@Override
+				public Iterator<Map.Entry<Object, Object>> iterator() {
+					return new Iterator<Map.Entry<Object, Object>>() {
+						private int i;
+
+						@Override
+						public boolean hasNext() {
+							return i < size;
+						}
+
+						@Override
+						public Map.Entry<Object, Object> next() {
+							if(i >= size)
+								throw new NoSuchElementException();
+							Map.Entry<Object, Object> e = new SimpleImmutableEntry<>(entries[i << 1],
+								entries[i << 1 | 1]);
+							i++;
+							return e;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+
+		@Override
+		public Object firstKey() {
+			if(size == 0)
+				throw new NoSuchElementException();
+			return entries[0];
+		}
+
+		@Override
+		public Object lastKey() {
+			if(size == 0)
+				throw new NoSuchElementException();
+			return entries[size - 1 << 1];
+		}
+
+		/**
+		 * 只用于建树，TreeMap.putAll不会取子视图，按key范围查找需要比较器，这里不支持
+		 */
+		@Override
+		public SortedMap<Object, Object> subMap(Object fromKey, Object toKey) {
+			throw new UnsupportedOperationException();
+		}
+
+		/** 同subMap */
+		@Override
+		public SortedMap<Object, Object> headMap(Object toKey) {
+			throw new UnsupportedOperationException();
+		}
+
+		/** 同subMap */
+		@Override
+		public SortedMap<Object, Object> tailMap(Object fromKey) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * 已经按比较器排好序的元素，只用于TreeSet.addAll，与SortedEntries相同只支持建树用到的方法
+	 * 和取首尾元素
+	 */
+	private static final class SortedElements extends AbstractSet<Object> implements SortedSet<Object> {
+		private final Comparator<Object> comparator;
+		private final Object[] elements;
+		private final int size;
+
+		SortedElements(Comparator<Object> comparator, Object[] elements, int size) {
+			this.comparator = comparator;
+			this.elements = elements;
+			this.size = size;
+		}
+
+		@Override
+		public Comparator<Object> comparator() {
+			return comparator;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Iterator<Object> iterator() {
+			return new Iterator<Object>() {
+				private int i;
+
+				@Override
+				public boolean hasNext() {
+					return i < size;
+				}
+
+				@Override
+				public Object next() {
+					if(i >= size)
+						throw new NoSuchElementException();
+					return elements[i++];
+				}
+			};
+		}
+
+		@Override
+		public Object first() {
+			if(size == 0)
+				throw new NoSuchElementException();
+			return elements[0];
+		}
+
+		@Override
+		public Object last() {
+			if(size == 0)
+				throw new NoSuchElementException();
+			return elements[size - 1];
+		}
+
+		/**
+		 * 只用于建树，TreeSet.addAll不会取子视图，按元素范围查找需要比较器，这里不支持
+		 */
+		@Override
+		public SortedSet<Object> subSet(Object fromElement, Object toElement) {
+			throw new UnsupportedOperationException();
+		}
+
+		/** 同subSet */
+		@Override
+		public SortedSet<Object> headSet(Object toElement) {
+			throw new UnsupportedOperationException();
+		}
+
+		/** 同subSet */
+		@Override
+		public SortedSet<Object> tailSet(Object fromElement) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.wedis.redis.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 可写回模式下没有类的对象。与普通模式一样以字段名为key，同时保留流中的类描述符、父类中被子类同名字段
+ * 覆盖的值和每一层writeObject写出的自定义数据，JdkOutputStream按原来的描述符写回。
+ *
+ * 修改map中的值即修改对应的字段，自定义数据原样写回
+ */
+public class JdkObject extends HashMap<String, Object> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient ObjectStreamDesc desc;
+	/** 每一层writeObject写出的数据，按getClassDataLayout的顺序，块数据为Block，没有时为null */
+	private transient List<Object>[] customData;
+	/** 父类中与子类同名的字段，map中只保留子类的值 */
+	private transient Map<ObjectStreamDesc, Map<String, Object>> shadowed;
+
+	JdkObject(ObjectStreamDesc desc) {
+		this.desc = desc;
+	}
+
+	/**
+	 * 流中的类名
+	 */
+	public String getClassName() {
+		return desc.getName();
+	}
+
+	public long getSerialVersionUID() {
+		return desc.getSerialVersionUID();
+	}
+
+	ObjectStreamDesc getDesc() {
+		return desc;
+	}
+
+	/**
+	 * 第slot层writeObject写出的数据，块数据为Block，其他为解码出的对象；没有时返回null
+	 */
+	public List<Object> getCustomData(int slot) {
+		return customData == null || slot >= customData.length ? null : customData[slot];
+	}
+
+	@SuppressWarnings("unchecked")
+	void setCustomData(int slot, int slots, List<Object> data) {
+		if(customData == null){
+			customData = new List[slots];
+		}
+		customData[slot] = data;
+	}
+
+	/**
+	 * 读取一层的字段，父类的同名字段已经在map中时移到shadowed
+	 */
+	void putField(ObjectStreamDesc slot, String name, Object value) {
+		if(containsKey(name)){
+			ObjectStreamDesc owner = null;
+			for(ObjectStreamDesc c = slot.getSuperDesc(); c != null && owner == null; c = c.getSuperDesc()){
+				for(ObjectStreamField f : c.getFields(false)){
+					if(f.getName().equals(name)){
+						owner = c;
+						break;
+					}
+				}
+			}
+			if(owner != null){
+				if(shadowed == null){
+					shadowed = new IdentityHashMap<>();
+				}
+				shadowed.computeIfAbsent(owner, k -> new HashMap<>()).put(name, get(name));
+			}
+		}
+		put(name, value);
+	}
+
+	/**
+	 * 写回时取一层的字段值，被子类覆盖的父类字段取shadowed中的值
+	 */
+	Object getField(ObjectStreamDesc slot, String name) {
+		if(shadowed != null){
+			Map<String, Object> values = shadowed.get(slot);
+			if(values != null && values.containsKey(name)){
+				return values.get(name);
+			}
+		}
+		return get(name);
+	}
+
+	/**
+	 * writeObject写出的一段块数据
+	 */
+	public static final class Block {
+		private final byte[] bytes;
+
+		Block(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		@Override
+		public String toString() {
+			return "Block" + Arrays.toString(bytes);
+		}
+	}
+
+	static List<Object> newCustomData() {
+		return new ArrayList<>(4);
+	}
+}
@@ -0,0 +1,926 @@
+package com.wedis.redis.io;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.NotActiveException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UTFDataFormatException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JdkInputStream的反向，按ObjectOutputStream的格式写出对象图，可以写出可写回模式解码出的没有类的对象。
+ *
+ * JdkObject、JdkEnum、JdkClass和JdkArray按解码时保留的类描述符写出，名称、serialVersionUID、flags和字段
+ * 与原来的流相同，JdkObject中每一层writeObject写出的数据原样写回；有类的对象与ObjectOutputStream一样
+ * 调用writeReplace、writeObject和writeExternal，类描述符按类缓存，跨流复用。
+ *
+ * 同一个对象只写出一次，之后写出对它的引用；同一个类的描述符只写出一次，流中读出的描述符和本地类的描述符
+ * 名称、serialVersionUID和字段都相同时共用。块数据与ObjectOutputStream一样按1024字节分块。
+ * 不支持动态代理类，不是线程安全的
+ */
+public class JdkOutputStream extends ObjectOutputStream {
+
+	/** 块数据每一块的最大长度，与ObjectOutputStream相同 */
+	private static final int MAX_BLOCK_SIZE = 1024;
+	/** 短块数据头能表示的最大长度 */
+	private static final int MAX_BLOCK_SHORT = 0xFF;
+
+	/** 写出的数据 */
+	private byte[] out;
+	private int count;
+	/** 块数据模式下未写出的一块 */
+	private final byte[] block = new byte[MAX_BLOCK_SIZE];
+	private int pos;
+	private boolean blkmode;
+	/** 写基本类型值用的缓冲 */
+	private final byte[] scratch = new byte[8];
+
+	/** 已写出的对象和描述符的handle，按对象identity查找 */
+	private final IdentityHashMap<Object, Integer> handles = new IdentityHashMap<>();
+	/** 下一个handle，unshared的对象也占用一个handle */
+	private int nextHandle;
+	/** 按类名查找已写出的描述符，内容相同的描述符只写出一次 */
+	private final Map<String, ObjectStreamDesc> descNames = new HashMap<>();
+	/** 字段的类型签名按内容查找handle */
+	private final Map<String, Integer> typeStrings = new HashMap<>();
+	/** writeReplace的替换结果 */
+	private final IdentityHashMap<Object, Object> subs = new IdentityHashMap<>();
+	private int depth;
+
+	/** 正在调用writeObject的对象和这一层的描述符，defaultWriteObject和putFields中使用 */
+	private Object curObj;
+	private ObjectStreamDesc curDesc;
+	private PutFieldImpl curPut;
+
+	public JdkOutputStream() throws IOException {
+		this(256);
+	}
+
+	public JdkOutputStream(int size) throws IOException {
+		super();
+		out = new byte[Math.max(size, 16)];
+		writeStreamHeader();
+		blkmode = true;
+	}
+
+	/**
+	 * 写出的所有数据，包括未满一块的块数据
+	 */
+	public byte[] toByteArray() {
+		drainBlock();
+		return Arrays.copyOf(out, count);
+	}
+
+	/**
+	 * 已写出的字节数
+	 */
+	public int size() {
+		return count + pos;
+	}
+
+	@Override
+	protected void writeObjectOverride(Object obj) throws IOException {
+		writeObject0(obj, false);
+	}
+
+	@Override
+	public void writeUnshared(Object obj) throws IOException {
+		writeObject0(obj, true);
+	}
+
+	@Override
+	protected void writeStreamHeader() throws IOException {
+		writeShort0(STREAM_MAGIC);
+		writeShort0(STREAM_VERSION);
+	}
+
+	/**
+	 * 只支持PROTOCOL_VERSION_2
+	 */
+	@Override
+	public void useProtocolVersion(int version) throws IOException {
+		if(version != PROTOCOL_VERSION_2){
+			throw new IllegalArgumentException("unsupported protocol version: " + version);
+		}
+	}
+
+	@Override
+	public void reset() throws IOException {
+		if(depth != 0){
+			throw new IOException("stream active");
+		}
+		setBlockDataMode(false);
+		writeByte0(TC_RESET);
+		clear();
+		setBlockDataMode(true);
+	}
+
+	private void clear() {
+		handles.clear();
+		descNames.clear();
+		typeStrings.clear();
+		subs.clear();
+		nextHandle = 0;
+	}
+
+	@Override
+	protected void drain() throws IOException {
+		drainBlock();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drainBlock();
+	}
+
+	@Override
+	public void close() throws IOException {
+		drainBlock();
+	}
+
+	/* ---------------------- 应用类writeObject中调用的方法 ---------------------- */
+
+	@Override
+	public void defaultWriteObject() throws IOException {
+		if(curObj == null){
+			throw new NotActiveException("not in call to writeObject");
+		}
+		setBlockDataMode(false);
+		defaultWriteFields(curObj, curDesc);
+		setBlockDataMode(true);
+	}
+
+	@Override
+	public ObjectOutputStream.PutField putFields() throws IOException {
+		if(curPut == null){
+			if(curObj == null){
+				throw new NotActiveException("not in call to writeObject");
+			}
+			curPut = new PutFieldImpl(curDesc);
+		}
+		return curPut;
+	}
+
+	@Override
+	public void writeFields() throws IOException {
+		if(curPut == null){
+			throw new NotActiveException("no current PutField object");
+		}
+		setBlockDataMode(false);
+		curPut.writeFields();
+		setBlockDataMode(true);
+	}
+
+	/* ---------------------------- 对象图 ---------------------------- */
+
+	private void writeObject0(Object obj, boolean unshared) throws IOException {
+		boolean oldMode = setBlockDataMode(false);
+		depth++;
+		try{
+			Object rep = subs.get(obj);
+			if(rep != null){
+				obj = rep;
+			}
+			Integer h;
+			if(obj == null){
+				writeNull();
+				return;
+			}else if(!unshared && (h = handles.get(obj)) != null){
+				writeHandle(h);
+				return;
+			}else if(obj instanceof Class){
+				writeClass((Class<?>)obj, unshared);
+				return;
+			}else if(obj instanceof ObjectStreamDesc){
+				writeClassDesc((ObjectStreamDesc)obj, unshared);
+				return;
+			}else if(obj instanceof JdkClass){
+				writeByte0(TC_CLASS);
+				writeClassDesc(((JdkClass)obj).getDesc(), false);
+				assign(unshared ? null : obj);
+				return;
+			}else if(obj instanceof JdkEnum){
+				writeEnum(obj, ((JdkEnum)obj).getDesc(), ((JdkEnum)obj).getName(), unshared);
+				return;
+			}else if(obj instanceof JdkArray){
+				writeJdkArray((JdkArray)obj, unshared);
+				return;
+			}else if(obj instanceof JdkObject){
+				writeJdkObject((JdkObject)obj, unshared);
+				return;
+			}
+
+			// 与ObjectOutputStream相同，writeReplace返回其他类的对象时继续查找替换
+			Object orig = obj;
+			Class<?> cl = obj.getClass();
+			ObjectStreamDesc desc;
+			for(;;){
+				Class<?> repCl;
+				desc = lookup(cl);
+				if(!desc.hasWriteReplaceMethod() || (obj = desc.invokeWriteReplace(obj)) == null
+					|| (repCl = obj.getClass()) == cl){
+					break;
+				}
+				cl = repCl;
+			}
+			if(obj != orig){
+				subs.put(orig, obj);
+				if(obj == null){
+					writeNull();
+					return;
+				}else if(!unshared && (h = handles.get(obj)) != null){
+					writeHandle(h);
+					return;
+				}else if(obj instanceof Class){
+					writeClass((Class<?>)obj, unshared);
+					return;
+				}
+			}
+
+			if(obj instanceof String){
+				writeString((String)obj, unshared);
+			}else if(cl.isArray()){
+				writeArray(obj, desc, unshared);
+			}else if(obj instanceof Enum){
+				writeEnum(obj, lookup(((Enum<?>)obj).getDeclaringClass()), ((Enum<?>)obj).name(), unshared);
+			}else if(obj instanceof Serializable){
+				writeOrdinaryObject(obj, desc, unshared);
+			}else{
+				throw new NotSerializableException(cl.getName());
+			}
+		}finally{
+			depth--;
+			setBlockDataMode(oldMode);
+		}
+	}
+
+	private static ObjectStreamDesc lookup(Class<?> cl) throws NotSerializableException {
+		if(Proxy.isProxyClass(cl)){
+			throw new NotSerializableException("proxy class is not supported: " + cl.getName());
+		}
+		return ObjectStreamDesc.lookupLocal(cl);
+	}
+
+	private int assign(Object obj) {
+		int handle = nextHandle++;
+		if(obj != null){
+			handles.put(obj, handle);
+		}
+		return handle;
+	}
+
+	private void writeNull() {
+		writeByte0(TC_NULL);
+	}
+
+	private void writeHandle(int handle) {
+		writeByte0(TC_REFERENCE);
+		writeInt0(baseWireHandle + handle);
+	}
+
+	private void writeClass(Class<?> cl, boolean unshared) throws IOException {
+		writeByte0(TC_CLASS);
+		writeClassDesc(lookup(cl), false);
+		assign(unshared ? null : cl);
+	}
+
+	private void writeClassDesc(ObjectStreamDesc desc, boolean unshared) throws IOException {
+		Integer h;
+		if(desc == null){
+			writeNull();
+			return;
+		}else if(!unshared && (h = handles.get(desc)) != null){
+			writeHandle(h);
+			return;
+		}else if(desc.isProxy()){
+			throw new NotSerializableException("proxy class is not supported: " + desc.getName());
+		}
+		if(!unshared){
+			// 流中读出的描述符和本地类的描述符内容相同时只写出一次
+			ObjectStreamDesc same = descNames.get(desc.getName());
+			if(same != null && sameDesc(same, desc)){
+				h = handles.get(same);
+				handles.put(desc, h);
+				writeHandle(h);
+				return;
+			}
+		}
+
+		writeByte0(TC_CLASSDESC);
+		assign(unshared ? null : desc);
+		if(!unshared){
+			descNames.putIfAbsent(desc.getName(), desc);
+		}
+		writeUTF0(desc.getName());
+		writeLong0(desc.getSerialVersionUID());
+		writeByte0(desc.getFlags());
+		ObjectStreamField[] fields = desc.getFields(false);
+		writeShort0(fields.length);
+		for(ObjectStreamField f : fields){
+			writeByte0(f.getTypeCode());
+			writeUTF0(f.getName());
+			if(!f.isPrimitive()){
+				writeTypeString(f.getTypeString());
+			}
+		}
+		// 没有类注解
+		writeByte0(TC_ENDBLOCKDATA);
+		writeClassDesc(desc.getSuperDesc(), false);
+	}
+
+	/**
+	 * 名称、serialVersionUID、flags、字段和父类都相同的描述符可以共用
+	 */
+	private static boolean sameDesc(ObjectStreamDesc a, ObjectStreamDesc b) {
+		for(; a != null && b != null; a = a.getSuperDesc(), b = b.getSuperDesc()){
+			if(a == b){
+				return true;
+			}
+			if(a.isProxy() || b.isProxy() || !a.getName().equals(b.getName())
+				|| a.getSerialVersionUID() != b.getSerialVersionUID() || a.getFlags() != b.getFlags()){
+				return false;
+			}
+			ObjectStreamField[] fa = a.getFields(false);
+			ObjectStreamField[] fb = b.getFields(false);
+			if(fa.length != fb.length){
+				return false;
+			}
+			for(int i = 0; i < fa.length; i++){
+				if(fa[i].getTypeCode() != fb[i].getTypeCode() || !fa[i].getName().equals(fb[i].getName())
+					|| (!fa[i].isPrimitive() && !fa[i].getTypeString().equals(fb[i].getTypeString()))){
+					return false;
+				}
+			}
+		}
+		return a == b;
+	}
+
+	private void writeTypeString(String str) throws IOException {
+		Integer h = typeStrings.get(str);
+		if(h != null){
+			writeHandle(h);
+			return;
+		}
+		typeStrings.put(str, nextHandle);
+		writeString(str, true);
+	}
+
+	private void writeString(String str, boolean unshared) throws IOException {
+		assign(unshared ? null : str);
+		long utflen = utfLength(str);
+		if(utflen <= 0xFFFF){
+			writeByte0(TC_STRING);
+			writeShort0((int)utflen);
+		}else{
+			writeByte0(TC_LONGSTRING);
+			writeLong0(utflen);
+		}
+		writeUTFBody(str, utflen);
+	}
+
+	private void writeArray(Object array, ObjectStreamDesc desc, boolean unshared) throws IOException {
+		writeByte0(TC_ARRAY);
+		writeClassDesc(desc, false);
+		assign(unshared ? null : array);
+
+		Class<?> ccl = array.getClass().getComponentType();
+		if(ccl.isPrimitive()){
+			int len = Array.getLength(array);
+			writeInt0(len);
+			if(ccl == Byte.TYPE){
+				write0((byte[])array, 0, len);
+				return;
+			}
+			for(int i = 0; i < len; i++){
+				if(ccl == Integer.TYPE){
+					writeInt0(((int[])array)[i]);
+				}else if(ccl == Long.TYPE){
+					writeLong0(((long[])array)[i]);
+				}else if(ccl == Double.TYPE){
+					writeLong0(Double.doubleToLongBits(((double[])array)[i]));
+				}else if(ccl == Float.TYPE){
+					writeInt0(Float.floatToIntBits(((float[])array)[i]));
+				}else if(ccl == Boolean.TYPE){
+					writeByte0(((boolean[])array)[i] ? 1 : 0);
+				}else if(ccl == Short.TYPE){
+					writeShort0(((short[])array)[i]);
+				}else if(ccl == Character.TYPE){
+					writeShort0(((char[])array)[i]);
+				}else{
+					throw new InternalError();
+				}
+			}
+		}else{
+			Object[] objs = (Object[])array;
+			writeInt0(objs.length);
+			for(Object obj : objs){
+				writeObject0(obj, false);
+			}
+		}
+	}
+
+	private void writeJdkArray(JdkArray array, boolean unshared) throws IOException {
+		writeByte0(TC_ARRAY);
+		writeClassDesc(array.getDesc(), false);
+		assign(unshared ? null : array);
+		writeInt0(array.size());
+		for(Object obj : array){
+			writeObject0(obj, false);
+		}
+	}
+
+	private void writeEnum(Object en, ObjectStreamDesc desc, String name, boolean unshared) throws IOException {
+		writeByte0(TC_ENUM);
+		writeClassDesc(desc, false);
+		assign(unshared ? null : en);
+		writeString(name, false);
+	}
+
+	private void writeOrdinaryObject(Object obj, ObjectStreamDesc desc, boolean unshared) throws IOException {
+		writeByte0(TC_OBJECT);
+		writeClassDesc(desc, false);
+		assign(unshared ? null : obj);
+		if(desc.isExternalizable()){
+			writeExternalData((Externalizable)obj);
+		}else{
+			writeSerialData(obj, desc);
+		}
+	}
+
+	private void writeExternalData(Externalizable obj) throws IOException {
+		Object oldObj = curObj;
+		ObjectStreamDesc oldDesc = curDesc;
+		PutFieldImpl oldPut = curPut;
+		curObj = null;
+		curDesc = null;
+		curPut = null;
+		try{
+			setBlockDataMode(true);
+			obj.writeExternal(this);
+			setBlockDataMode(false);
+			writeByte0(TC_ENDBLOCKDATA);
+		}finally{
+			curObj = oldObj;
+			curDesc = oldDesc;
+			curPut = oldPut;
+		}
+	}
+
+	private void writeSerialData(Object obj, ObjectStreamDesc desc) throws IOException {
+		for(ObjectStreamDesc slotDesc : desc.getClassDataLayout()){
+			if(slotDesc.hasWriteObjectMethod()){
+				Object oldObj = curObj;
+				ObjectStreamDesc oldDesc = curDesc;
+				PutFieldImpl oldPut = curPut;
+				curObj = obj;
+				curDesc = slotDesc;
+				curPut = null;
+				try{
+					setBlockDataMode(true);
+					slotDesc.invokeWriteObject(obj, this);
+					setBlockDataMode(false);
+					writeByte0(TC_ENDBLOCKDATA);
+				}finally{
+					curObj = oldObj;
+					curDesc = oldDesc;
+					curPut = oldPut;
+				}
+			}else{
+				defaultWriteFields(obj, slotDesc);
+			}
+		}
+	}
+
+	private void defaultWriteFields(Object obj, ObjectStreamDesc desc) throws IOException {
+		byte[] primVals = new byte[desc.getPrimDataSize()];
+		desc.getPrimFieldValues(obj, primVals);
+		write0(primVals, 0, primVals.length);
+
+		ObjectStreamField[] fields = desc.getFields(false);
+		Object[] objVals = new Object[desc.getNumObjFields()];
+		int numPrimFields = fields.length - objVals.length;
+		desc.getObjFieldValues(obj, objVals);
+		for(int i = 0; i < objVals.length; i++){
+			writeObject0(objVals[i], fields[numPrimFields + i].isUnshared());
+		}
+	}
+
+	/**
+	 * 按解码时的类描述符写出，每一层先写字段，再原样写出writeObject写出的数据
+	 */
+	private void writeJdkObject(JdkObject obj, boolean unshared) throws IOException {
+		ObjectStreamDesc desc = obj.getDesc();
+		writeByte0(TC_OBJECT);
+		writeClassDesc(desc, false);
+		assign(unshared ? null : obj);
+		if(desc.isExternalizable()){
+			throw new NotSerializableException("externalizable class without class: " + desc.getName());
+		}
+		ObjectStreamDesc[] slots = desc.getClassDataLayout();
+		for(int i = 0; i < slots.length; i++){
+			ObjectStreamDesc slot = slots[i];
+			ObjectStreamField[] fields = slot.getFields(false);
+			byte[] primVals = new byte[slot.getPrimDataSize()];
+			int numPrimFields = fields.length - slot.getNumObjFields();
+			for(int j = 0; j < numPrimFields; j++){
+				putPrim(primVals, fields[j], obj.getField(slot, fields[j].getName()));
+			}
+			write0(primVals, 0, primVals.length);
+			for(int j = numPrimFields; j < fields.length; j++){
+				writeObject0(obj.getField(slot, fields[j].getName()), fields[j].isUnshared());
+			}
+
+			if(slot.hasWriteObjectData()){
+				List<Object> data = obj.getCustomData(i);
+				setBlockDataMode(true);
+				if(data != null){
+					for(Object item : data){
+						if(item instanceof JdkObject.Block){
+							byte[] b = ((JdkObject.Block)item).getBytes();
+							write0(b, 0, b.length);
+						}else{
+							writeObject0(item, false);
+						}
+					}
+				}
+				setBlockDataMode(false);
+				writeByte0(TC_ENDBLOCKDATA);
+			}
+		}
+	}
+
+	/**
+	 * 没有类的对象的基本类型字段，值的类型与字段不符时抛出InvalidObjectException
+	 */
+	private static void putPrim(byte[] buf, ObjectStreamField f, Object val) throws InvalidObjectException {
+		int off = f.getOffset();
+		char tc = f.getTypeCode();
+		if(tc == 'Z'){
+			if(!(val instanceof Boolean)){
+				throw fieldMismatch(f, val);
+			}
+			Bits.putBoolean(buf, off, (Boolean)val);
+			return;
+		}
+		if(tc == 'C'){
+			if(val instanceof Character){
+				Bits.putChar(buf, off, (Character)val);
+			}else if(val instanceof String && ((String)val).length() == 1){
+				Bits.putChar(buf, off, ((String)val).charAt(0));
+			}else{
+				throw fieldMismatch(f, val);
+			}
+			return;
+		}
+		if(!(val instanceof Number)){
+			throw fieldMismatch(f, val);
+		}
+		Number n = (Number)val;
+		switch(tc){
+		case 'B':
+			buf[off] = n.byteValue();
+			break;
+		case 'S':
+			Bits.putShort(buf, off, n.shortValue());
+			break;
+		case 'I':
+			Bits.putInt(buf, off, n.intValue());
+			break;
+		case 'F':
+			Bits.putFloat(buf, off, n.floatValue());
+			break;
+		case 'J':
+			Bits.putLong(buf, off, n.longValue());
+			break;
+		case 'D':
+			Bits.putDouble(buf, off, n.doubleValue());
+			break;
+		default:
+			throw new InternalError();
+		}
+	}
+
+	private static InvalidObjectException fieldMismatch(ObjectStreamField f, Object val) {
+		return new InvalidObjectException("field " + f.getName() + " of type " + f.getTypeCode() + " can not be "
+			+ (val == null ? "null" : val.getClass().getName()));
+	}
+
+	/* ---------------------------- 基本类型数据 ---------------------------- */
+
+	@Override
+	public void write(int val) throws IOException {
+		writeByte0(val);
+	}
+
+	@Override
+	public void write(byte[] buf) throws IOException {
+		write0(buf, 0, buf.length);
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) throws IOException {
+		if(buf == null){
+			throw new NullPointerException();
+		}
+		if(off < 0 || len < 0 || off > buf.length - len){
+			throw new IndexOutOfBoundsException();
+		}
+		write0(buf, off, len);
+	}
+
+	@Override
+	public void writeBoolean(boolean val) throws IOException {
+		writeByte0(val ? 1 : 0);
+	}
+
+	@Override
+	public void writeByte(int val) throws IOException {
+		writeByte0(val);
+	}
+
+	@Override
+	public void writeShort(int val) throws IOException {
+		writeShort0(val);
+	}
+
+	@Override
+	public void writeChar(int val) throws IOException {
+		writeShort0(val);
+	}
+
+	@Override
+	public void writeInt(int val) throws IOException {
+		writeInt0(val);
+	}
+
+	@Override
+	public void writeLong(long val) throws IOException {
+		writeLong0(val);
+	}
+
+	@Override
+	public void writeFloat(float val) throws IOException {
+		writeInt0(Float.floatToIntBits(val));
+	}
+
+	@Override
+	public void writeDouble(double val) throws IOException {
+		writeLong0(Double.doubleToLongBits(val));
+	}
+
+	@Override
+	public void writeBytes(String str) throws IOException {
+		int len = str.length();
+		byte[] b = new byte[len];
+		for(int i = 0; i < len; i++){
+			b[i] = (byte)str.charAt(i);
+		}
+		write0(b, 0, len);
+	}
+
+	@Override
+	public void writeChars(String str) throws IOException {
+		int len = str.length();
+		for(int i = 0; i < len; i++){
+			writeShort0(str.charAt(i));
+		}
+	}
+
+	@Override
+	public void writeUTF(String str) throws IOException {
+		writeUTF0(str);
+	}
+
+	private void writeUTF0(String str) throws UTFDataFormatException {
+		long utflen = utfLength(str);
+		if(utflen > 0xFFFF){
+			throw new UTFDataFormatException();
+		}
+		writeShort0((int)utflen);
+		writeUTFBody(str, utflen);
+	}
+
+	private void writeByte0(int val) {
+		scratch[0] = (byte)val;
+		write0(scratch, 0, 1);
+	}
+
+	private void writeShort0(int val) {
+		Bits.putShort(scratch, 0, (short)val);
+		write0(scratch, 0, 2);
+	}
+
+	private void writeInt0(int val) {
+		Bits.putInt(scratch, 0, val);
+		write0(scratch, 0, 4);
+	}
+
+	private void writeLong0(long val) {
+		Bits.putLong(scratch, 0, val);
+		write0(scratch, 0, 8);
+	}
+
+	/**
+	 * 块数据模式下写入当前块，满1024字节后写出一块，否则直接写出
+	 */
+	private void write0(byte[] b, int off, int len) {
+		if(!blkmode){
+			ensureCapacity(len);
+			System.arraycopy(b, off, out, count, len);
+			count += len;
+			return;
+		}
+		while(len > 0){
+			if(pos >= MAX_BLOCK_SIZE){
+				drainBlock();
+			}
+			int n = Math.min(len, MAX_BLOCK_SIZE - pos);
+			System.arraycopy(b, off, block, pos, n);
+			pos += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * 切换块数据模式，退出块数据模式时写出未满的一块，返回原来的模式
+	 */
+	private boolean setBlockDataMode(boolean mode) {
+		if(blkmode == mode){
+			return blkmode;
+		}
+		drainBlock();
+		blkmode = mode;
+		return !blkmode;
+	}
+
+	private void drainBlock() {
+		if(pos == 0){
+			return;
+		}
+		ensureCapacity(pos + 5);
+		if(pos <= MAX_BLOCK_SHORT){
+			out[count++] = TC_BLOCKDATA;
+			out[count++] = (byte)pos;
+		}else{
+			out[count++] = TC_BLOCKDATALONG;
+			Bits.putInt(out, count, pos);
+			count += 4;
+		}
+		System.arraycopy(block, 0, out, count, pos);
+		count += pos;
+		pos = 0;
+	}
+
+	private void ensureCapacity(int len) {
+		if(count + len > out.length){
+			out = Arrays.copyOf(out, Math.max(out.length << 1, count + len));
+		}
+	}
+
+	private static long utfLength(String s) {
+		int len = s.length();
+		long utflen = 0;
+		for(int i = 0; i < len; i++){
+			char c = s.charAt(i);
+			if(c >= 0x0001 && c <= 0x007F){
+				utflen++;
+			}else if(c > 0x07FF){
+				utflen += 3;
+			}else{
+				utflen += 2;
+			}
+		}
+		return utflen;
+	}
+
+	/**
+	 * 按modified UTF-8写出字符串内容，长度已经写出
+	 */
+	private void writeUTFBody(String s, long utflen) {
+		if(utflen > Integer.MAX_VALUE - 16){
+			throw new OutOfMemoryError("string too long: " + utflen);
+		}
+		byte[] b;
+		int p;
+		if(blkmode){
+			b = new byte[(int)utflen];
+			p = 0;
+		}else{
+			ensureCapacity((int)utflen);
+			b = out;
+			p = count;
+		}
+		int len = s.length();
+		for(int i = 0; i < len; i++){
+			char c = s.charAt(i);
+			if(c >= 0x0001 && c <= 0x007F){
+				b[p++] = (byte)c;
+			}else if(c > 0x07FF){
+				b[p++] = (byte)(0xE0 | ((c >> 12) & 0x0F));
+				b[p++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				b[p++] = (byte)(0x80 | (c & 0x3F));
+			}else{
+				b[p++] = (byte)(0xC0 | ((c >> 6) & 0x1F));
+				b[p++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		if(blkmode){
+			write0(b, 0, p);
+		}else{
+			count = p;
+		}
+	}
+
+	/**
+	 * 应用类writeObject中按名称写出的字段，writeFields时按描述符中的顺序写出
+	 */
+	private class PutFieldImpl extends ObjectOutputStream.PutField {
+
+		private final ObjectStreamDesc desc;
+		private final byte[] primVals;
+		private final Object[] objVals;
+
+		PutFieldImpl(ObjectStreamDesc desc) {
+			this.desc = desc;
+			primVals = new byte[desc.getPrimDataSize()];
+			objVals = new Object[desc.getNumObjFields()];
+		}
+
+		public void put(String name, boolean val) {
+			Bits.putBoolean(primVals, offset(name, Boolean.TYPE), val);
+		}
+
+		public void put(String name, byte val) {
+			primVals[offset(name, Byte.TYPE)] = val;
+		}
+
+		public void put(String name, char val) {
+			Bits.putChar(primVals, offset(name, Character.TYPE), val);
+		}
+
+		public void put(String name, short val) {
+			Bits.putShort(primVals, offset(name, Short.TYPE), val);
+		}
+
+		public void put(String name, int val) {
+			Bits.putInt(primVals, offset(name, Integer.TYPE), val);
+		}
+
+		public void put(String name, float val) {
+			Bits.putFloat(primVals, offset(name, Float.TYPE), val);
+		}
+
+		public void put(String name, long val) {
+			Bits.putLong(primVals, offset(name, Long.TYPE), val);
+		}
+
+		public void put(String name, double val) {
+			Bits.putDouble(primVals, offset(name, Double.TYPE), val);
+		}
+
+		public void put(String name, Object val) {
+			objVals[offset(name, Object.class)] = val;
+		}
+
+		@Deprecated
+		public void write(ObjectOutput out) throws IOException {
+			if(out != JdkOutputStream.this){
+				throw new IllegalArgumentException("wrong stream");
+			}
+			writeFields();
+		}
+
+		void writeFields() throws IOException {
+			write0(primVals, 0, primVals.length);
+			ObjectStreamField[] fields = desc.getFields(false);
+			int numPrimFields = fields.length - objVals.length;
+			for(int i = 0; i < objVals.length; i++){
+				writeObject0(objVals[i], fields[numPrimFields + i].isUnshared());
+			}
+		}
+
+		/**
+		 * 按名称和类型查找字段的偏移量，找不到时抛出IllegalArgumentException
+		 */
+		private int offset(String name, Class<?> type) {
+			for(ObjectStreamField f : desc.getFields(false)){
+				if(f.getName().equals(name)
+					&& (type == Object.class ? !f.isPrimitive() : f.getType() == type)){
+					return f.getOffset();
+				}
+			}
+			throw new IllegalArgumentException("no such field " + name + " with type " + type);
+		}
+	}
+}
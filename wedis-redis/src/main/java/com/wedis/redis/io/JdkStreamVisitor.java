@@ -0,0 +1,82 @@
+package com.wedis.redis.io;
+
+import java.io.IOException;
+
+/**
+ * JdkInputStream.accept的事件回调，对象图按读取顺序以事件推送，不创建对象也不保留已读过的值。
+ * 
+ * 对象的字段依次以field + 值事件推送，值可能是value、reference、数组或嵌套对象；
+ * Date、BigInteger、BigDecimal和包装类的对象不推送字段，解码后以value推送；
+ * 类的writeObject写出的自定义数据中的对象以名为@data的数组推送，其中的块数据被跳过
+ */
+public interface JdkStreamVisitor {
+
+	/**
+	 * 开始一个对象
+	 * 
+	 * @param handle 对象在流中的handle，之后的reference事件指向这个值
+	 */
+	void startObject(String className, int handle) throws IOException;
+
+	/**
+	 * 对象的一个字段，紧接着是这个字段的值
+	 */
+	void field(String name) throws IOException;
+
+	void endObject() throws IOException;
+
+	/**
+	 * 开始一个数组
+	 * 
+	 * @param className 数组的类名，如[I，自定义数据时为null
+	 * @param length 数组长度，自定义数据时为-1
+	 * @param handle 数组在流中的handle，自定义数据时为-1
+	 */
+	void startArray(String className, int length, int handle) throws IOException;
+
+	/**
+	 * 基本类型数组的一段元素，array为int[]、long[]等，只有前length个有效，
+	 * 回调返回后array会被复用
+	 */
+	void primitives(Object array, int length) throws IOException;
+
+	void endArray() throws IOException;
+
+	/**
+	 * null、String、基本类型的包装类、Date、BigInteger和BigDecimal，枚举和Class以名称推送
+	 */
+	void value(Object value) throws IOException;
+
+	/**
+	 * 指向之前已经推送过的对象或数组
+	 */
+	void reference(int handle) throws IOException;
+
+	/**
+	 * 预览限制下被截断的位置。在数组中表示还有remaining个元素没有推送，在对象中表示其余的字段没有推送，
+	 * 紧跟在field之后时表示这个字段的值没有推送。数量未知时remaining为-1
+	 */
+	void truncated(long remaining) throws IOException;
+
+	/**
+	 * 预览限制下被截断的字符串，prefix为前面的部分，还有remainingBytes个字节没有解码。
+	 * 对截断过的字符串的引用也以这个事件推送
+	 */
+	void truncatedString(String prefix, long remainingBytes) throws IOException;
+
+	/**
+	 * 读取对象字段、对象数组的元素和自定义数据中的对象之前调用，返回false时这个值只在流中跳过，
+	 * 不推送任何事件，字符串也不解码。基本类型的字段总是推送
+	 */
+	default boolean wantsValue() throws IOException {
+		return true;
+	}
+
+	/**
+	 * 引用没有保留的值之前调用，返回true时这个值从源数组中重新读取，以同样的handle再推送一次它的事件，
+	 * 代替reference事件。只在没有预览限制、从byte[]读取时调用，例如之前跳过的值或没有推送过的字符串
+	 */
+	default boolean replaysReference(int handle) throws IOException {
+		return false;
+	}
+}
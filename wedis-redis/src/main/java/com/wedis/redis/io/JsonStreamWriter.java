@@ -0,0 +1,743 @@
+package com.wedis.redis.io;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 把JdkInputStream的事件直接写成json，对象以{"@class":类名,"@id":handle,字段...}输出，
+ * 重复引用以{"@ref":handle}输出，Date以毫秒数输出。
+ *
+ * HashMap、TreeMap等map类不输出字段，以key -> value的json对象输出，key为值的字符串形式，
+ * 对象作为key时为它的json；ArrayList、HashSet等集合类以元素的数组输出，类名见FieldProjection。
+ * 它们和数组都没有@id，之后的引用再输出一次它们的json。记录的json合计不超过maxRecorded个字符，超出时
+ * 移除最早记录的值，基本类型的数组不记录；引用到没有记录的值时，完整输出并且源数组可以重新读取则重新读取
+ * 输出一次，引用到还没有结束(循环引用)或无法重新读取的值时以{"@truncated":-1}输出。
+ *
+ * 预览时被截断的位置在数组和字段值中以{"@truncated":剩余数量}输出，在对象中以"@truncated":-1字段输出，
+ * 截断的字符串以{"@truncated":剩余字节数,"@value":前面的部分}输出，之后对它的引用也这样输出，
+ * 预览时超过1024个字符的字符串被再次引用时同样只输出前面的部分
+ */
+public class JsonStreamWriter implements JdkStreamVisitor {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final String TRUNCATED = "{\"@truncated\":";
+	/** 记录没有@id的值的json时单个值最多记录的字符数 */
+	private static final int MAX_RECORD = 1 << 20;
+	/** 默认所有记录的json合计最多的字符数 */
+	public static final int MAX_RECORDED = 1 << 22;
+
+	private final Writer out;
+	/** 当前容器中还没有写过元素，下一个元素前不需要逗号 */
+	private boolean first = true;
+	/** 刚写完字段名，下一个值前不需要逗号 */
+	private boolean afterField;
+	/** 每一层是对象还是数组 */
+	private final BitSet objects = new BitSet();
+	/** 当前所在的对象和数组的层数 */
+	private int level;
+	/** 格式化整数用的缓冲，long最长20个字符 */
+	private final char[] digits = new char[20];
+	/** 正在输出的map类和集合类 */
+	private final ArrayDeque<Container> containers = new ArrayDeque<>();
+	/** map类和集合类的字段或ConcurrentHashMap结尾的null不输出，跳过下一个值 */
+	private boolean skipValue;
+	/** 下一个数组是map类和集合类的自定义数据 */
+	private boolean dataNext;
+	/** 对象作为map的key时先写成json，写完后作为字段名 */
+	private StringWriter keyBuffer;
+	private JsonStreamWriter keyWriter;
+	/** 正在输出没有@id的值时同时记录输出的json */
+	private final StringBuilder record = new StringBuilder();
+	private final ArrayDeque<Recording> recordings = new ArrayDeque<>();
+	/** record开头在所有记录的字符中的位置，超出MAX_RECORD时移除最外层的值，record从下一层的值开始 */
+	private int recordBase;
+	/** 没有@id的值的handle -> 输出的json，与写key的JsonStreamWriter共用 */
+	private final RecordCache recorded;
+	/** 以没有@id的方式输出过的handle */
+	private final BitSet bare;
+	/** 以没有@id的方式输出过并且已经结束的handle */
+	private final BitSet ended;
+	/** 以@id输出过的handle */
+	private final BitSet ids;
+
+	public JsonStreamWriter(Writer out) {
+		this(out, MAX_RECORDED);
+	}
+
+	/**
+	 * maxRecorded为记录的json合计最多的字符数
+	 */
+	public JsonStreamWriter(Writer out, int maxRecorded) {
+		this(out, new RecordCache(maxRecorded), new BitSet(), new BitSet(), new BitSet());
+	}
+
+	private JsonStreamWriter(Writer out, RecordCache recorded, BitSet bare, BitSet ended, BitSet ids) {
+		this.out = new Recorder(out);
+		this.recorded = recorded;
+		this.bare = bare;
+		this.ended = ended;
+		this.ids = ids;
+	}
+
+	private void beforeValue() throws IOException {
+		if(afterField){
+			afterField = false;
+			return;
+		}
+		if(!first)
+			out.write(',');
+		first = false;
+	}
+
+	/**
+	 * 当前层是map类或集合类时返回它，否则返回null
+	 */
+	private Container current() {
+		Container c = containers.peek();
+		return c != null && c.level == level ? c : null;
+	}
+
+	/**
+	 * 下一个值需要跳过时返回true，map中跳过的value之后是下一个key
+	 */
+	private boolean skipping() {
+		if(!skipValue)
+			return false;
+		skipValue = false;
+		Container c = current();
+		if(c != null && c.data){
+			c.expectKey = true;
+		}
+		return true;
+	}
+
+	/**
+	 * map的自定义数据中轮到key时返回true；轮到value时标记下一个是key
+	 */
+	private boolean atKey() {
+		Container c = current();
+		if(c == null || !c.data || !c.map)
+			return false;
+		if(c.expectKey)
+			return true;
+		c.expectKey = true;
+		return false;
+	}
+
+	/**
+	 * 对象作为key时开始写出它的json
+	 */
+	private void startKey() {
+		keyBuffer = new StringWriter();
+		keyWriter = new JsonStreamWriter(keyBuffer, recorded, bare, ended, ids);
+	}
+
+	/**
+	 * 作为key的对象写完后把json作为字段名
+	 */
+	private void endKey() throws IOException {
+		if(keyWriter.level > 0)
+			return;
+		String key = keyBuffer.toString();
+		keyWriter = null;
+		keyBuffer = null;
+		keyField(key);
+	}
+
+	private void keyField(String key) throws IOException {
+		Container c = current();
+		c.expectKey = false;
+		if(key == null && FieldProjection.CONCURRENT_HASH_MAP.equals(c.className)){
+			skipValue = true;
+			return;
+		}
+		writeField(String.valueOf(key));
+	}
+
+	/**
+	 * 开始输出没有@id的值，在写出括号之前调用
+	 */
+	private void startRecording(int handle) {
+		if(handle < 0)
+			return;
+		bare.set(handle);
+		recordings.push(new Recording(handle, level + 1, recordBase + record.length()));
+	}
+
+	/**
+	 * 第containerLevel层的值结束，在写出括号之后调用
+	 */
+	private void endRecording(int containerLevel) {
+		Recording r = recordings.peek();
+		if(r == null || r.level != containerLevel)
+			return;
+		recordings.pop();
+		ended.set(r.handle);
+		recorded.put(r.handle, record.substring(r.start - recordBase));
+		if(recordings.isEmpty()){
+			record.setLength(0);
+			recordBase = 0;
+		}
+	}
+
+	@Override
+	public boolean wantsValue() throws IOException {
+		if(keyWriter != null)
+			return keyWriter.wantsValue();
+		if(skipping())
+			return false;
+		Container c = current();
+		if(c != null && c.data && c.skip > 0){
+			// TreeSet开头的比较器
+			c.skip--;
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void startObject(String className, int handle) throws IOException {
+		if(keyWriter != null){
+			keyWriter.startObject(className, handle);
+			return;
+		}
+		if(atKey()){
+			startKey();
+			keyWriter.startObject(className, handle);
+			return;
+		}
+		boolean map = FieldProjection.MAP_CLASSES.contains(className);
+		if(map || FieldProjection.LIST_CLASSES.contains(className)){
+			beforeValue();
+			startRecording(handle);
+			out.write(map ? '{' : '[');
+			first = true;
+			objects.set(++level, map);
+			containers.push(new Container(level, className, map));
+			return;
+		}
+		beforeValue();
+		out.write("{\"@class\":");
+		writeString(className);
+		out.write(",\"@id\":");
+		out.write(Integer.toString(handle));
+		ids.set(handle);
+		first = false;
+		objects.set(++level);
+	}
+
+	@Override
+	public void field(String name) throws IOException {
+		if(keyWriter != null){
+			keyWriter.field(name);
+			return;
+		}
+		if(current() != null){
+			if(JdkInputStream.CUSTOM_DATA_FIELD.equals(name)){
+				dataNext = true;
+			}else{
+				skipValue = true;
+			}
+			return;
+		}
+		writeField(name);
+	}
+
+	private void writeField(String name) throws IOException {
+		if(!first)
+			out.write(',');
+		first = false;
+		writeString(name);
+		out.write(':');
+		afterField = true;
+	}
+
+	@Override
+	public void endObject() throws IOException {
+		if(keyWriter != null){
+			keyWriter.endObject();
+			endKey();
+			return;
+		}
+		Container c = current();
+		level--;
+		if(c != null){
+			containers.pop();
+			out.write(c.map ? '}' : ']');
+			endRecording(c.level);
+		}else{
+			out.write('}');
+		}
+		first = false;
+	}
+
+	@Override
+	public void startArray(String className, int length, int handle) throws IOException {
+		if(keyWriter != null){
+			keyWriter.startArray(className, length, handle);
+			return;
+		}
+		if(dataNext){
+			// map类和集合类的自定义数据直接作为它们的内容
+			dataNext = false;
+			Container c = current();
+			c.data = true;
+			c.expectKey = true;
+			c.skip = FieldProjection.TREE_SET.equals(c.className) ? 1 : 0;
+			return;
+		}
+		if(atKey()){
+			startKey();
+			keyWriter.startArray(className, length, handle);
+			return;
+		}
+		beforeValue();
+		if(isPrimitiveArray(className)){
+			// 基本类型的数组不会引用其他值，不记录，被引用时重新读取
+			if(handle >= 0){
+				bare.set(handle);
+				ended.set(handle);
+			}
+		}else{
+			startRecording(handle);
+		}
+		out.write('[');
+		first = true;
+		objects.clear(++level);
+	}
+
+	private static boolean isPrimitiveArray(String className) {
+		return className != null && className.length() == 2 && className.charAt(0) == '['
+			&& className.charAt(1) != 'L' && className.charAt(1) != '[';
+	}
+
+	/**
+	 * 按数组类型分别循环写出，大数组的元素不装箱
+	 */
+	@Override
+	public void primitives(Object array, int length) throws IOException {
+		if(keyWriter != null){
+			keyWriter.primitives(array, length);
+			return;
+		}
+		if(length <= 0)
+			return;
+		beforeValue();
+		if(array instanceof int[]){
+			int[] ints = (int[])array;
+			for(int i = 0; i < length; i++){
+				if(i > 0)
+					out.write(',');
+				writeLong(ints[i]);
+			}
+		}else if(array instanceof long[]){
+			long[] longs = (long[])array;
+			for(int i = 0; i < length; i++){
+				if(i > 0)
+					out.write(',');
+				writeLong(longs[i]);
+			}
+		}else if(array instanceof double[]){
+			double[] doubles = (double[])array;
+			for(int i = 0; i < length; i++){
+				if(i > 0)
+					out.write(',');
+				writeDouble(doubles[i]);
+			}
+		}else if(array instanceof float[]){
+			float[] floats = (float[])array;
+			for(int i = 0; i < length; i++){
+				if(i > 0)
+					out.write(',');
+				if(Float.isFinite(floats[i])){
+					out.write(Float.toString(floats[i]));
+				}else{
+					writeString(Float.toString(floats[i]));
+				}
+			}
+		}else if(array instanceof byte[]){
+			byte[] bytes = (byte[])array;
+			for(int i = 0; i < length; i++){
+				if(i > 0)
+					out.write(',');
+				writeLong(bytes[i]);
+			}
+		}else if(array instanceof short[]){
+			short[] shorts = (short[])array;
+			for(int i = 0; i < length; i++){
+				if(i > 0)
+					out.write(',');
+				writeLong(shorts[i]);
+			}
+		}else if(array instanceof boolean[]){
+			boolean[] booleans = (boolean[])array;
+			for(int i = 0; i < length; i++){
+				if(i > 0)
+					out.write(',');
+				out.write(booleans[i] ? "true" : "false");
+			}
+		}else if(array instanceof char[]){
+			char[] chars = (char[])array;
+			for(int i = 0; i < length; i++){
+				if(i > 0)
+					out.write(',');
+				writeString(String.valueOf(chars[i]));
+			}
+		}else{
+			throw new IllegalArgumentException("not a primitive array: " + array.getClass().getName());
+		}
+	}
+
+	/**
+	 * 不创建字符串，直接把数字写入缓冲
+	 */
+	private void writeLong(long v) throws IOException {
+		if(v == Long.MIN_VALUE){
+			out.write(Long.toString(v));
+			return;
+		}
+		boolean negative = v < 0;
+		if(negative)
+			v = -v;
+		int pos = digits.length;
+		do{
+			digits[--pos] = (char)('0' + v % 10);
+			v /= 10;
+		}while(v != 0);
+		if(negative)
+			digits[--pos] = '-';
+		out.write(digits, pos, digits.length - pos);
+	}
+
+	private void writeDouble(double v) throws IOException {
+		if(Double.isFinite(v)){
+			out.write(Double.toString(v));
+		}else{
+			// json中没有NaN和Infinity
+			writeString(Double.toString(v));
+		}
+	}
+
+	@Override
+	public void endArray() throws IOException {
+		if(keyWriter != null){
+			keyWriter.endArray();
+			endKey();
+			return;
+		}
+		Container c = current();
+		if(c != null && c.data){
+			c.data = false;
+			return;
+		}
+		level--;
+		out.write(']');
+		first = false;
+		endRecording(level + 1);
+	}
+
+	@Override
+	public void value(Object value) throws IOException {
+		if(keyWriter != null){
+			keyWriter.value(value);
+			endKey();
+			return;
+		}
+		if(skipping())
+			return;
+		if(atKey()){
+			keyField(value instanceof Date ? String.valueOf(((Date)value).getTime())
+				: value == null ? null : value.toString());
+			return;
+		}
+		beforeValue();
+		writeValue(value);
+	}
+
+	/**
+	 * 跳过的字段中的值没有输出过，已经结束但没有记录的值不能再输出json，引用它们时重新读取并输出一次
+	 */
+	@Override
+	public boolean replaysReference(int handle) throws IOException {
+		return !ids.get(handle) && (!bare.get(handle) || ended.get(handle) && !recorded.contains(handle));
+	}
+
+	@Override
+	public void reference(int handle) throws IOException {
+		if(keyWriter != null){
+			keyWriter.reference(handle);
+			endKey();
+			return;
+		}
+		if(atKey()){
+			startKey();
+			keyWriter.reference(handle);
+			endKey();
+			return;
+		}
+		beforeValue();
+		String json = recorded.get(handle);
+		if(json != null){
+			out.write(json);
+		}else if(bare.get(handle)){
+			out.write(TRUNCATED);
+			out.write("-1}");
+		}else{
+			out.write("{\"@ref\":");
+			out.write(Integer.toString(handle));
+			out.write('}');
+		}
+	}
+
+	@Override
+	public void truncated(long remaining) throws IOException {
+		if(keyWriter != null){
+			keyWriter.truncated(remaining);
+			endKey();
+			return;
+		}
+		skipValue = false;
+		Container c = current();
+		if(c != null){
+			c.expectKey = true;
+			// 自定义数据和所属的对象都会标记截断，只输出一次
+			if(!afterField){
+				if(c.truncated)
+					return;
+				c.truncated = true;
+			}
+		}
+		if(level > 0 && objects.get(level) && !afterField){
+			writeField("@truncated");
+			afterField = false;
+			out.write(Long.toString(remaining));
+			return;
+		}
+		beforeValue();
+		out.write(TRUNCATED);
+		out.write(Long.toString(remaining));
+		out.write('}');
+	}
+
+	@Override
+	public void truncatedString(String prefix, long remainingBytes) throws IOException {
+		if(keyWriter != null){
+			keyWriter.truncatedString(prefix, remainingBytes);
+			endKey();
+			return;
+		}
+		if(atKey()){
+			keyField(prefix);
+			return;
+		}
+		beforeValue();
+		out.write(TRUNCATED);
+		out.write(Long.toString(remainingBytes));
+		out.write(",\"@value\":");
+		writeString(prefix);
+		out.write('}');
+	}
+
+	private void writeValue(Object value) throws IOException {
+		if(value == null){
+			out.write("null");
+		}else if(value instanceof String || value instanceof Character){
+			writeString(value.toString());
+		}else if(value instanceof Date){
+			writeLong(((Date)value).getTime());
+		}else if((value instanceof Double && !Double.isFinite((Double)value))
+			|| (value instanceof Float && !Float.isFinite((Float)value))){
+			// json中没有NaN和Infinity
+			writeString(value.toString());
+		}else{
+			out.write(value.toString());
+		}
+	}
+
+	private void writeString(String s) throws IOException {
+		if(s == null){
+			out.write("null");
+			return;
+		}
+		out.write('"');
+		int start = 0;
+		int len = s.length();
+		for(int i = 0; i < len; i++){
+			char c = s.charAt(i);
+			if(c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029')
+				continue;
+			out.write(s, start, i - start);
+			start = i + 1;
+			switch(c){
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				out.write("\\u");
+				out.write(HEX[(c >> 12) & 0xF]);
+				out.write(HEX[(c >> 8) & 0xF]);
+				out.write(HEX[(c >> 4) & 0xF]);
+				out.write(HEX[c & 0xF]);
+			}
+		}
+		out.write(s, start, len - start);
+		out.write('"');
+	}
+
+	/**
+	 * 正在输出的map类或集合类
+	 */
+	private static final class Container {
+		/** 所在的层数 */
+		final int level;
+		final String className;
+		final boolean map;
+		/** 正在输出自定义数据，之前和之后是不输出的字段 */
+		boolean data;
+		/** map的自定义数据中下一个是key */
+		boolean expectKey;
+		/** 自定义数据开头需要跳过的对象个数 */
+		int skip;
+		/** 已经输出过截断标记 */
+		boolean truncated;
+
+		Container(int level, String className, boolean map) {
+			this.level = level;
+			this.className = className;
+			this.map = map;
+		}
+	}
+
+	/**
+	 * 记录的json，所有值的字符数合计不超过budget，超出时按记录的顺序移除最早的值
+	 */
+	private static final class RecordCache {
+		private final Map<Integer, String> values = new LinkedHashMap<>();
+		private final int budget;
+		private int chars;
+
+		RecordCache(int budget) {
+			this.budget = budget;
+		}
+
+		String get(int handle) {
+			return values.get(handle);
+		}
+
+		boolean contains(int handle) {
+			return values.containsKey(handle);
+		}
+
+		void put(int handle, String json) {
+			String old = values.remove(handle);
+			if(old != null){
+				chars -= old.length();
+			}
+			if(json.length() > budget)
+				return;
+			Iterator<String> it = values.values().iterator();
+			while(chars + json.length() > budget){
+				chars -= it.next().length();
+				it.remove();
+			}
+			values.put(handle, json);
+			chars += json.length();
+		}
+	}
+
+	/**
+	 * 一个正在记录的没有@id的值
+	 */
+	private static final class Recording {
+		final int handle;
+		/** 这个值所在的层数 */
+		final int level;
+		/** 在所有记录的字符中的开始位置 */
+		final int start;
+
+		Recording(int handle, int level, int start) {
+			this.handle = handle;
+			this.level = level;
+			this.start = start;
+		}
+	}
+
+	/**
+	 * 写出的同时在有正在记录的值时追加到record中
+	 */
+	private final class Recorder extends Writer {
+		private final Writer out;
+
+		Recorder(Writer out) {
+			this.out = out;
+		}
+
+		/**
+		 * 超出MAX_RECORD或记录的总字符数时从最外层开始放弃正在记录的值，里层的值仍继续记录
+		 */
+		private boolean recording(int len) {
+			int max = Math.min(MAX_RECORD, recorded.budget);
+			while(!recordings.isEmpty() && record.length() + len > max){
+				recordings.pollLast();
+				Recording outer = recordings.peekLast();
+				int start = outer == null ? recordBase + record.length() : outer.start;
+				record.delete(0, start - recordBase);
+				recordBase = start;
+			}
+			return !recordings.isEmpty();
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			out.write(c);
+			if(recording(1)){
+				record.append((char)c);
+			}
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			out.write(cbuf, off, len);
+			if(recording(len)){
+				record.append(cbuf, off, len);
+			}
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			out.write(str, off, len);
+			if(recording(len)){
+				record.append(str, off, off + len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,376 @@
+package com.wedis.redis.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wedis.base.util.BinaryUtil;
+
+/**
+ * MessagePack的读取，map按LinkedHashMap、array按ArrayList、bin按byte[]返回，
+ * timestamp扩展类型(-1)还原成Date，其他扩展类型按{type, data}返回。
+ *
+ * MessagePack的array和map只有元素个数没有字节数，children跳过不需要展开的元素时只读取每个元素的头部，
+ * 字符串和bin按长度跳过，不创建任何对象
+ */
+public class MsgpackReader implements WireReader {
+
+	/** readObject时嵌套的最大层数 */
+	private static final int MAX_DEPTH = 256;
+	/** children中字符串和bin最多显示的字节数 */
+	private static final int MAX_TEXT = 1024;
+	/** timestamp扩展类型 */
+	private static final int TIMESTAMP = -1;
+
+	private final byte[] buf;
+	private int pos;
+
+	public MsgpackReader(byte[] buf) {
+		this.buf = buf;
+	}
+
+	@Override
+	public Object readObject() throws IOException {
+		pos = 0;
+		return readValue(0);
+	}
+
+	@Override
+	public List<WireNode> children(int[] path, int limit) throws IOException {
+		pos = 0;
+		for(int index : path){
+			int b = read();
+			long count = containerSize(b);
+			if(count < 0 || index >= count)
+				throw new StreamCorruptedException("no element at index " + index);
+			skipHeader(b);
+			if(isMap(b)){
+				// 跳过前面的entry和这个entry的key，定位到value
+				skipValues(2L * index + 1);
+			}else{
+				skipValues(index);
+			}
+		}
+		List<WireNode> nodes = new ArrayList<>();
+		int b = read();
+		long count = containerSize(b);
+		if(count < 0){
+			// 根节点不是容器时只有它自己
+			pos--;
+			nodes.add(node("", WireNode.childPath(path, 0)));
+			return nodes;
+		}
+		skipHeader(b);
+		boolean map = isMap(b);
+		for(int i = 0; i < count; i++){
+			if(i == limit){
+				nodes.add(new WireNode("...", WireNode.MORE, (count - i) + " more", true, null));
+				break;
+			}
+			String name;
+			if(map){
+				int start = pos;
+				WireNode key = node("", null);
+				// 容器作为key时显示它开头的字节
+				name = key.isLeaf() ? key.getValue()
+					: BinaryUtil.toPrintable(slice(start, Math.min(pos - start, 64)));
+			}else{
+				name = "[" + i + "]";
+			}
+			nodes.add(node(name, WireNode.childPath(path, i)));
+		}
+		return nodes;
+	}
+
+	/**
+	 * 读取pos处的一个值作为节点，容器只读取头部并跳过
+	 */
+	private WireNode node(String name, String path) throws IOException {
+		int b = read();
+		long count = containerSize(b);
+		pos--;
+		if(count >= 0){
+			skipValues(1);
+			return new WireNode(name, isMap(b) ? "map" : "array", count + " items", false, path);
+		}
+		if(isString(b)){
+			pos++;
+			int len = readLength(b);
+			String text = new String(buf, pos, Math.min(len, MAX_TEXT), StandardCharsets.UTF_8);
+			pos += len;
+			return new WireNode(name, "string", len > MAX_TEXT ? text + "..." : text, true, path);
+		}
+		if(b == 0xC4 || b == 0xC5 || b == 0xC6){
+			pos++;
+			int len = readLength(b);
+			String text = BinaryUtil.toPrintable(slice(pos, Math.min(len, MAX_TEXT)));
+			pos += len;
+			return new WireNode(name, "bin", len > MAX_TEXT ? text + "..." : text, true, path);
+		}
+		Object value = readValue(MAX_DEPTH - 1);
+		String type = value == null ? "nil" : value instanceof Boolean ? "bool"
+			: value instanceof Double || value instanceof Float ? "float"
+			: value instanceof Number ? "int" : value instanceof Date ? "timestamp" : "ext";
+		return new WireNode(name, type, String.valueOf(value), true, path);
+	}
+
+	private Object readValue(int depth) throws IOException {
+		if(depth >= MAX_DEPTH)
+			throw new StreamCorruptedException("msgpack nested too deep");
+		int b = read();
+		if(b <= 0x7F)
+			return b;
+		if(b >= 0xE0)
+			return (int)(byte)b;
+		if(isString(b)){
+			int len = readLength(b);
+			String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+			pos += len;
+			return s;
+		}
+		long count = containerSize(b);
+		if(count >= 0){
+			skipHeader(b);
+			// 元素个数来自值本身，不能按它预分配
+			int capacity = (int)Math.min(count, end() - pos);
+			if(isMap(b)){
+				Map<Object, Object> map = new LinkedHashMap<>(Math.max(16, (int)(capacity / .75F) + 1));
+				for(long i = 0; i < count; i++){
+					Object key = readValue(depth + 1);
+					map.put(key, readValue(depth + 1));
+				}
+				return map;
+			}
+			List<Object> list = new ArrayList<>(capacity);
+			for(long i = 0; i < count; i++){
+				list.add(readValue(depth + 1));
+			}
+			return list;
+		}
+		switch(b){
+		case 0xC0:
+			return null;
+		case 0xC2:
+			return Boolean.FALSE;
+		case 0xC3:
+			return Boolean.TRUE;
+		case 0xC4:
+		case 0xC5:
+		case 0xC6:
+			int len = readLength(b);
+			byte[] bin = slice(pos, len);
+			pos += len;
+			return bin;
+		case 0xCA:
+			return Float.intBitsToFloat((int)readUnsigned(4));
+		case 0xCB:
+			return Double.longBitsToDouble(readUnsigned(8));
+		case 0xCC:
+			return (int)readUnsigned(1);
+		case 0xCD:
+			return (int)readUnsigned(2);
+		case 0xCE:
+			return readUnsigned(4);
+		case 0xCF:
+			long u = readUnsigned(8);
+			// 超出long范围的uint64按无符号的字符串显示
+			return u >= 0 ? (Object)u : Long.toUnsignedString(u);
+		case 0xD0:
+			return (int)(byte)readUnsigned(1);
+		case 0xD1:
+			return (int)(short)readUnsigned(2);
+		case 0xD2:
+			return (int)readUnsigned(4);
+		case 0xD3:
+			return readUnsigned(8);
+		default:
+			if((b >= 0xC7 && b <= 0xC9) || (b >= 0xD4 && b <= 0xD8))
+				return readExt(b);
+			throw new StreamCorruptedException(String.format("invalid msgpack type: 0x%02X at %d", b, pos - 1));
+		}
+	}
+
+	private Object readExt(int b) throws IOException {
+		int len = b >= 0xD4 ? 1 << (b - 0xD4) : readLength(b);
+		int type = (byte)read();
+		require(len);
+		int start = pos;
+		pos += len;
+		if(type == TIMESTAMP){
+			if(len == 4)
+				return new Date((Bits.getInt(buf, start) & 0xFFFFFFFFL) * 1000);
+			if(len == 8){
+				long v = Bits.getLong(buf, start);
+				return new Date((v & 0x3FFFFFFFFL) * 1000 + (v >>> 34) / 1000000);
+			}
+			if(len == 12)
+				return new Date(Bits.getLong(buf, start + 4) * 1000 + (Bits.getInt(buf, start) & 0xFFFFFFFFL) / 1000000);
+		}
+		Map<String, Object> ext = new LinkedHashMap<>();
+		ext.put("type", type);
+		ext.put("data", BinaryUtil.toPrintable(slice(start, len)));
+		return ext;
+	}
+
+	/**
+	 * 跳过n个值，array和map只读取头部，把元素个数加到剩余的个数中，不递归
+	 */
+	private void skipValues(long n) throws IOException {
+		while(n > 0){
+			n--;
+			int b = read();
+			long count = containerSize(b);
+			if(count >= 0){
+				skipHeader(b);
+				n += isMap(b) ? count * 2 : count;
+				if(n > end() - pos)
+					throw new EOFException("unexpected end of msgpack value");
+				continue;
+			}
+			if(b <= 0x7F || b >= 0xE0 || b == 0xC0 || b == 0xC2 || b == 0xC3)
+				continue;
+			if(isString(b) || b == 0xC4 || b == 0xC5 || b == 0xC6){
+				skip(readLength(b));
+				continue;
+			}
+			switch(b){
+			case 0xCC:
+			case 0xD0:
+				skip(1);
+				break;
+			case 0xCD:
+			case 0xD1:
+				skip(2);
+				break;
+			case 0xCA:
+			case 0xCE:
+			case 0xD2:
+				skip(4);
+				break;
+			case 0xCB:
+			case 0xCF:
+			case 0xD3:
+				skip(8);
+				break;
+			default:
+				if(b >= 0xD4 && b <= 0xD8){
+					skip(1 + (1 << (b - 0xD4)));
+				}else if(b >= 0xC7 && b <= 0xC9){
+					int len = readLength(b);
+					skip(1 + len);
+				}else{
+					throw new StreamCorruptedException(String.format("invalid msgpack type: 0x%02X at %d", b, pos - 1));
+				}
+			}
+		}
+	}
+
+	/**
+	 * array和map的元素个数，不是容器时返回-1，不移动pos
+	 */
+	private long containerSize(int b) throws IOException {
+		if(b >= 0x80 && b <= 0x9F)
+			return b & 0x0F;
+		switch(b){
+		case 0xDC:
+		case 0xDE:
+			require(2);
+			return (buf[pos] & 0xFF) << 8 | (buf[pos + 1] & 0xFF);
+		case 0xDD:
+		case 0xDF:
+			require(4);
+			return Bits.getInt(buf, pos) & 0xFFFFFFFFL;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * 跳过array和map头部中的元素个数
+	 */
+	private void skipHeader(int b) {
+		if(b == 0xDC || b == 0xDE){
+			pos += 2;
+		}else if(b == 0xDD || b == 0xDF){
+			pos += 4;
+		}
+	}
+
+	private static boolean isMap(int b) {
+		return (b >= 0x80 && b <= 0x8F) || b == 0xDE || b == 0xDF;
+	}
+
+	private static boolean isString(int b) {
+		return (b >= 0xA0 && b <= 0xBF) || b == 0xD9 || b == 0xDA || b == 0xDB;
+	}
+
+	/**
+	 * 读取字符串、bin和ext头部中的长度，并检查剩余的字节数
+	 */
+	private int readLength(int b) throws IOException {
+		long len;
+		if(b >= 0xA0 && b <= 0xBF){
+			len = b & 0x1F;
+		}else{
+			switch(b){
+			case 0xC4:
+			case 0xC7:
+			case 0xD9:
+				len = readUnsigned(1);
+				break;
+			case 0xC5:
+			case 0xC8:
+			case 0xDA:
+				len = readUnsigned(2);
+				break;
+			default:
+				len = readUnsigned(4);
+			}
+		}
+		// ext的长度之后还有1个字节的类型
+		int extra = b >= 0xC7 && b <= 0xC9 ? 1 : 0;
+		if(len + extra > end() - pos)
+			throw new EOFException("unexpected end of msgpack value");
+		return (int)len;
+	}
+
+	private long readUnsigned(int n) throws IOException {
+		require(n);
+		long v = 0;
+		for(int i = 0; i < n; i++){
+			v = v << 8 | (buf[pos++] & 0xFF);
+		}
+		return v;
+	}
+
+	private int read() throws IOException {
+		require(1);
+		return buf[pos++] & 0xFF;
+	}
+
+	private void skip(int n) throws IOException {
+		require(n);
+		pos += n;
+	}
+
+	private void require(int n) throws IOException {
+		if(n > end() - pos)
+			throw new EOFException("unexpected end of msgpack value");
+	}
+
+	private int end() {
+		return buf.length;
+	}
+
+	private byte[] slice(int start, int len) {
+		byte[] b = new byte[len];
+		System.arraycopy(buf, start, b, 0, len);
+		return b;
+	}
+}
@@ -15,9 +15,10 @@ import java.security.AccessController;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
-import com.wedis.base.util.UnsafeUtil;
-import com.wedis.redis.io.ObjectStreamField.VT;
+import com.wedis.base.enums.ResponseCode;
+import com.wedis.base.exception.CoreException;
 
 import sun.reflect.ReflectionFactory;
 
@@ -56,6 +57,18 @@ public class ObjectStreamDesc {
 	private boolean serializable;
 	/** true if represents enum type */
 	private boolean isEnum;
+	/** 流中的flags，写回时原样写出 */
+	private byte flags;
+	/** class-defined writeReplace method, or null if none */
+	private Method writeReplaceMethod;
+
+	/** 按类型码取基本类型字段的签名，不再每个字段创建一次 */
+	private static final String[] PRIM_SIGNATURES = new String['Z' + 1];
+	static{
+		for(char c : "ZBCSIFJD".toCharArray()){
+			PRIM_SIGNATURES[c] = String.valueOf(c).intern();
+		}
+	}
 
 	/** serialPersistentFields value indicating no serializable fields */
 	public static final ObjectStreamField[] NO_FIELDS = new ObjectStreamField[0];
@@ -73,70 +86,24 @@ public class ObjectStreamDesc {
 	private ObjectStreamDesc superDesc;
 	/** true if, and only if, the object has been correctly initialized */
 	private boolean initialized;
+	/** 从流中读取的描述符在ClassDescCache中的key */
+	private ClassDescCache.DescKey key;
+	/** 类存在时给对象的字段赋值 */
+	private FieldWriter writer;
+	/** 从父类到子类排列的描述符，第一次使用时创建 */
+	private ObjectStreamDesc[] layout;
+	/** 类层次与内置读取相同时的JdkIntrinsic，第一次使用时查找 */
+	private JdkIntrinsic intrinsic;
+	private boolean intrinsicResolved;
 	private static final ReflectionFactory reflFactory = AccessController
 		.doPrivileged(new ReflectionFactory.GetReflectionFactoryAction());
 
-	private static final VT<Boolean> booleanVT = new VT<Boolean>() {
-		@Override
-		public void setValue(Object obj, long key, Boolean value) {
-			UnsafeUtil.unsafe.putBoolean(obj, key, value);
-		}
-	};
-	private static final VT<Byte> byteVT = new VT<Byte>() {
-		@Override
-		public void setValue(Object obj, long key, Byte value) {
-			UnsafeUtil.unsafe.putByte(obj, key, value);
-		}
-	};
-	private static final VT<Character> charVT = new VT<Character>() {
-		@Override
-		public void setValue(Object obj, long key, Character value) {
-			UnsafeUtil.unsafe.putChar(obj, key, value);
-		}
-	};
-	private static final VT<Short> shortVT = new VT<Short>() {
-		@Override
-		public void setValue(Object obj, long key, Short value) {
-			UnsafeUtil.unsafe.putShort(obj, key, value);
-		}
-	};
-	private static final VT<Integer> intVT = new VT<Integer>() {
-		@Override
-		public void setValue(Object obj, long key, Integer value) {
-			UnsafeUtil.unsafe.putInt(obj, key, value);
-		}
-	};
-	private static final VT<Long> longVT = new VT<Long>() {
-		@Override
-		public void setValue(Object obj, long key, Long value) {
-			UnsafeUtil.unsafe.putLong(obj, key, value);
-		}
-	};
-	private static final VT<Float> floatVT = new VT<Float>() {
-		@Override
-		public void setValue(Object obj, long key, Float value) {
-			UnsafeUtil.unsafe.putFloat(obj, key, value);
-		}
-	};
-	private static final VT<Double> doubleVT = new VT<Double>() {
-		@Override
-		public void setValue(Object obj, long key, Double value) {
-			UnsafeUtil.unsafe.putDouble(obj, key, value);
-		}
-	};
-	private static final VT<Object> objectVT = new VT<Object>() {
-		@Override
-		public void setValue(Object obj, long key, Object value) {
-			UnsafeUtil.unsafe.putObject(obj, key, value);
-		}
-	};
-
 	void readNonProxy(JdkInputStream in) throws IOException {
-		name = in.readUTF();
+		name = in.readName();
 		suid = Long.valueOf(in.readLong());
 		isProxy = false;
 
-		byte flags = in.readByte();
+		flags = in.readByte();
 		hasWriteObjectData = ((flags & ObjectStreamConstants.SC_WRITE_METHOD) != 0);
 		hasBlockExternalData = ((flags & ObjectStreamConstants.SC_BLOCK_DATA) != 0);
 		externalizable = ((flags & ObjectStreamConstants.SC_EXTERNALIZABLE) != 0);
@@ -156,14 +123,28 @@ public class ObjectStreamDesc {
 			throw new InvalidClassException(name,
 				"enum descriptor has non-zero field count: " + numFields);
 		}
-		fields = (numFields > 0) ? new ObjectStreamField[numFields] : NO_FIELDS;
+		// 先只读出每个字段的签名和名称作为ClassDescCache的key，命中缓存时直接使用缓存的字段
+		String[] fieldKeys = new String[numFields << 1];
 		for(int i = 0; i < numFields; i++){
 			char tcode = (char)in.readByte();
-			String fname = in.readUTF();
-			String signature = ((tcode == 'L') || (tcode == '[')) ? in.readTypeString()
-				: new String(new char[]{tcode});
+			fieldKeys[i << 1 | 1] = in.readName();
+			fieldKeys[i << 1] = ((tcode == 'L') || (tcode == '[')) ? in.readTypeString()
+				: primSignature(tcode);
+		}
+		key = new ClassDescCache.DescKey(name, suid, flags, fieldKeys);
+	}
+
+	/**
+	 * 没有命中ClassDescCache时由key中的签名和名称创建字段并计算偏移量
+	 */
+	void readFields() throws IOException {
+		String[] fieldKeys = key.getFields();
+		int numFields = fieldKeys.length >> 1;
+		fields = (numFields > 0) ? new ObjectStreamField[numFields] : NO_FIELDS;
+		for(int i = 0; i < numFields; i++){
+			String fname = fieldKeys[i << 1 | 1];
 			try{
-				fields[i] = new ObjectStreamField(fname, signature, false);
+				fields[i] = new ObjectStreamField(fname, fieldKeys[i << 1], false);
 			}catch(RuntimeException e){
 				throw (IOException)new InvalidClassException(name,
 					"invalid descriptor for field " + fname).initCause(e);
@@ -172,6 +153,11 @@ public class ObjectStreamDesc {
 		computeFieldOffsets();
 	}
 
+	private static String primSignature(char tcode) {
+		String signature = tcode < PRIM_SIGNATURES.length ? PRIM_SIGNATURES[tcode] : null;
+		return signature != null ? signature : String.valueOf(tcode);
+	}
+
 	private void computeFieldOffsets() throws InvalidClassException {
 		primDataSize = 0;
 		numObjFields = 0;
@@ -240,6 +226,7 @@ public class ObjectStreamDesc {
 		numPrimFields = model.numPrimFields;
 		numObjFields = model.numObjFields;
 		hasClass = model.hasClass;
+		flags = model.flags;
 
 		if(!externalizable && hasClass){
 			cons = getSerializableConstructor(cl);
@@ -254,10 +241,157 @@ public class ObjectStreamDesc {
 		for(ObjectStreamField f : fields){
 			f.setField(resolveField(f.getName()));
 		}
+		writer = new FieldWriter(fields, numPrimFields);
+
+		initialized = true;
+	}
+
+	/**
+	 * 复制ClassDescCache中已经解析过的描述符，类、构造器、方法和字段都不再反射查找
+	 */
+	void initNonProxy(ObjectStreamDesc cached, ObjectStreamDesc superDesc) {
+		this.superDesc = superDesc;
+		name = cached.name;
+		cl = cached.cl;
+		suid = cached.suid;
+		isProxy = false;
+		isEnum = cached.isEnum;
+		serializable = cached.serializable;
+		externalizable = cached.externalizable;
+		hasBlockExternalData = cached.hasBlockExternalData;
+		hasWriteObjectData = cached.hasWriteObjectData;
+		fields = cached.fields;
+		primDataSize = cached.primDataSize;
+		numPrimFields = cached.numPrimFields;
+		numObjFields = cached.numObjFields;
+		hasClass = cached.hasClass;
+		flags = cached.flags;
+		cons = cached.cons;
+		writeObjectMethod = cached.writeObjectMethod;
+		readObjectMethod = cached.readObjectMethod;
+		readObjectNoDataMethod = cached.readObjectNoDataMethod;
+		writer = cached.writer;
 
 		initialized = true;
 	}
 
+	/**
+	 * 本地类的描述符，JdkOutputStream写出有类的对象时使用。与ObjectOutputStream使用的描述符相同，
+	 * 按类缓存，跨流复用，不阻止类被卸载
+	 */
+	static ObjectStreamDesc lookupLocal(Class<?> cl) {
+		return localDescs.get(cl);
+	}
+
+	private static final ClassValue<ObjectStreamDesc> localDescs = new ClassValue<ObjectStreamDesc>() {
+		@Override
+		protected ObjectStreamDesc computeValue(Class<?> type) {
+			ObjectStreamDesc desc = new ObjectStreamDesc();
+			desc.initLocal(type);
+			return desc;
+		}
+	};
+
+	private void initLocal(Class<?> cl) {
+		java.io.ObjectStreamClass osc = java.io.ObjectStreamClass.lookupAny(cl);
+		this.cl = cl;
+		name = osc.getName();
+		suid = Long.valueOf(osc.getSerialVersionUID());
+		isProxy = false;
+		isEnum = Enum.class.isAssignableFrom(cl);
+		serializable = Serializable.class.isAssignableFrom(cl);
+		externalizable = java.io.Externalizable.class.isAssignableFrom(cl);
+
+		java.io.ObjectStreamField[] localFields = osc.getFields();
+		fields = localFields.length > 0 ? new ObjectStreamField[localFields.length] : NO_FIELDS;
+		for(int i = 0; i < localFields.length; i++){
+			java.io.ObjectStreamField f = localFields[i];
+			fields[i] = new ObjectStreamField(f.getName(),
+				f.isPrimitive() ? primSignature(f.getTypeCode()) : f.getTypeString(), f.isUnshared());
+		}
+		try{
+			computeFieldOffsets();
+		}catch(InvalidClassException e){
+			// 本地类的字段已经按顺序排列
+			throw new InternalError(e);
+		}
+
+		if(serializable && !externalizable && !isEnum && !cl.isArray()){
+			writeObjectMethod = getPrivateMethod(cl, "writeObject",
+				new Class<?>[]{ObjectOutputStream.class}, Void.TYPE);
+		}
+		if(serializable && !isEnum){
+			writeReplaceMethod = getInheritableMethod(cl, "writeReplace", Object.class);
+		}
+		hasWriteObjectData = writeObjectMethod != null;
+		hasBlockExternalData = true;
+
+		if(externalizable){
+			flags = ObjectStreamConstants.SC_EXTERNALIZABLE | ObjectStreamConstants.SC_BLOCK_DATA;
+		}else if(serializable){
+			flags = ObjectStreamConstants.SC_SERIALIZABLE;
+		}
+		if(hasWriteObjectData){
+			flags |= ObjectStreamConstants.SC_WRITE_METHOD;
+		}
+		if(isEnum){
+			flags |= ObjectStreamConstants.SC_ENUM;
+		}
+
+		Class<?> superCl = cl.getSuperclass();
+		superDesc = superCl != null && Serializable.class.isAssignableFrom(superCl) ? lookupLocal(superCl)
+			: null;
+		for(ObjectStreamField f : fields){
+			f.setField(resolveField(f.getName()));
+		}
+		initialized = true;
+	}
+
+	/**
+	 * 查找类及父类中可以被这个类调用的无参方法，规则与ObjectStreamClass相同
+	 */
+	private static Method getInheritableMethod(Class<?> cl, String name, Class<?> returnType) {
+		Method meth = null;
+		Class<?> defCl = cl;
+		while(defCl != null){
+			try{
+				meth = defCl.getDeclaredMethod(name);
+				break;
+			}catch(NoSuchMethodException ex){
+				defCl = defCl.getSuperclass();
+			}
+		}
+		if(meth == null || meth.getReturnType() != returnType){
+			return null;
+		}
+		meth.setAccessible(true);
+		int mods = meth.getModifiers();
+		if((mods & (Modifier.STATIC | Modifier.ABSTRACT)) != 0){
+			return null;
+		}else if((mods & (Modifier.PUBLIC | Modifier.PROTECTED)) != 0){
+			return meth;
+		}else if((mods & Modifier.PRIVATE) != 0){
+			return cl == defCl ? meth : null;
+		}else{
+			return cl.getClassLoader() == defCl.getClassLoader()
+				&& packageName(cl).equals(packageName(defCl)) ? meth : null;
+		}
+	}
+
+	private static String packageName(Class<?> cl) {
+		String s = cl.getName();
+		int i = s.lastIndexOf('[');
+		if(i >= 0){
+			s = s.substring(i + 2);
+		}
+		i = s.lastIndexOf('.');
+		return i >= 0 ? s.substring(0, i) : "";
+	}
+
+	ClassDescCache.DescKey getKey() {
+		return key;
+	}
+
 	private Field resolveField(String fname) {
 		if(hasClass){
 			// class not found
@@ -315,6 +449,22 @@ public class ObjectStreamDesc {
 		return suid.longValue();
 	}
 
+	byte getFlags() {
+		return flags;
+	}
+
+	boolean isProxy() {
+		return isProxy;
+	}
+
+	ObjectStreamDesc getSuperDesc() {
+		return superDesc;
+	}
+
+	boolean hasClass() {
+		return hasClass;
+	}
+
 	boolean isExternalizable() {
 		requireInitialized();
 		return externalizable;
@@ -338,37 +488,48 @@ public class ObjectStreamDesc {
 		if(obj == null){
 			throw new NullPointerException();
 		}
+		if(obj instanceof JdkObject){
+			for(int i = 0; i < numPrimFields; i++){
+				ObjectStreamField field = fields[i];
+				((JdkObject)obj).putField(this, field.getName(), getPrimValue(field, buf));
+			}
+			return;
+		}
+		if(hasClass){
+			writer.writePrims(obj, buf);
+			return;
+		}
+		Map<String, Object> map = asMap(obj);
 		for(int i = 0; i < numPrimFields; i++){
 			ObjectStreamField field = fields[i];
-			int off = field.getOffset();
-			switch(field.getTypeCode()){
-			case 'Z':
-				field.setValue(obj, Bits.getBoolean(buf, off), hasClass, booleanVT);
-				break;
-			case 'B':
-				field.setValue(obj, buf[off], hasClass, byteVT);
-				break;
-			case 'C':
-				field.setValue(obj, Bits.getChar(buf, off), hasClass, charVT);
-				break;
-			case 'S':
-				field.setValue(obj, Bits.getShort(buf, off), hasClass, shortVT);
-				break;
-			case 'I':
-				field.setValue(obj, Bits.getInt(buf, off), hasClass, intVT);
-				break;
-			case 'F':
-				field.setValue(obj, Bits.getFloat(buf, off), hasClass, floatVT);
-				break;
-			case 'J':
-				field.setValue(obj, Bits.getLong(buf, off), hasClass, longVT);
-				break;
-			case 'D':
-				field.setValue(obj, Bits.getDouble(buf, off), hasClass, doubleVT);
-				break;
-			default:
-				throw new InternalError();
-			}
+			map.put(field.getName(), getPrimValue(field, buf));
+		}
+	}
+
+	/**
+	 * 从基本类型字段的数据中取出一个字段的值
+	 */
+	static Object getPrimValue(ObjectStreamField field, byte[] buf) {
+		int off = field.getOffset();
+		switch(field.getTypeCode()){
+		case 'Z':
+			return Bits.getBoolean(buf, off);
+		case 'B':
+			return buf[off];
+		case 'C':
+			return Bits.getChar(buf, off);
+		case 'S':
+			return Bits.getShort(buf, off);
+		case 'I':
+			return Bits.getInt(buf, off);
+		case 'F':
+			return Bits.getFloat(buf, off);
+		case 'J':
+			return Bits.getLong(buf, off);
+		case 'D':
+			return Bits.getDouble(buf, off);
+		default:
+			throw new InternalError();
 		}
 	}
 
@@ -376,18 +537,33 @@ public class ObjectStreamDesc {
 		if(obj == null){
 			throw new NullPointerException();
 		}
+		if(obj instanceof JdkObject){
+			for(int i = numPrimFields; i < fields.length; i++){
+				ObjectStreamField field = fields[i];
+				((JdkObject)obj).putField(this, field.getName(), vals[field.getOffset()]);
+			}
+			return;
+		}
+		if(hasClass){
+			writer.writeObjs(obj, vals);
+			return;
+		}
+		Map<String, Object> map = asMap(obj);
 		for(int i = numPrimFields; i < fields.length; i++){
 			ObjectStreamField field = fields[i];
-			switch(field.getTypeCode()){
-			case 'L':
-			case '[':
-				field.setValue(obj, vals[field.getOffset()], hasClass, objectVT);
-				break;
+			map.put(field.getName(), vals[field.getOffset()]);
+		}
+	}
 
-			default:
-				throw new InternalError();
-			}
+	/**
+	 * 类不存在时对象以HashMap代替，字段名为key
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> asMap(Object obj) {
+		if(obj instanceof HashMap){
+			return (Map<String, Object>)obj;
 		}
+		throw new CoreException(ResponseCode.JDK_DESERIALIZE_FAILED, "没有找到类");
 	}
 
 	ObjectStreamField[] getFields(boolean copy) {
@@ -402,6 +578,13 @@ public class ObjectStreamDesc {
 		return name;
 	}
 
+	/**
+	 * 解析出的类，没有对应的类时为HashMap
+	 */
+	Class<?> forClass() {
+		return cl;
+	}
+
 	boolean isEnum() {
 		requireInitialized();
 		return isEnum;
@@ -453,6 +636,108 @@ public class ObjectStreamDesc {
 		}
 	}
 
+	boolean hasWriteObjectMethod() {
+		requireInitialized();
+		return (writeObjectMethod != null);
+	}
+
+	void invokeWriteObject(Object obj, ObjectOutputStream out) throws IOException {
+		requireInitialized();
+		if(writeObjectMethod == null){
+			throw new UnsupportedOperationException();
+		}
+		try{
+			writeObjectMethod.invoke(obj, new Object[]{out});
+		}catch(InvocationTargetException ex){
+			Throwable th = ex.getTargetException();
+			if(th instanceof IOException){
+				throw (IOException)th;
+			}else{
+				throwMiscException(th);
+			}
+		}catch(IllegalAccessException ex){
+			// should not occur, as access checks have been suppressed
+			throw new InternalError(ex);
+		}
+	}
+
+	boolean hasWriteReplaceMethod() {
+		requireInitialized();
+		return (writeReplaceMethod != null);
+	}
+
+	Object invokeWriteReplace(Object obj) throws IOException {
+		requireInitialized();
+		try{
+			return writeReplaceMethod.invoke(obj, (Object[])null);
+		}catch(InvocationTargetException ex){
+			Throwable th = ex.getTargetException();
+			if(th instanceof IOException){
+				throw (IOException)th;
+			}else{
+				throwMiscException(th);
+				throw new InternalError(th); // never reached
+			}
+		}catch(IllegalAccessException ex){
+			// should not occur, as access checks have been suppressed
+			throw new InternalError(ex);
+		}
+	}
+
+	/**
+	 * 按字段偏移量取出有类的对象的基本类型字段，本地类中没有的字段写出默认值
+	 */
+	void getPrimFieldValues(Object obj, byte[] buf) throws IOException {
+		try{
+			for(int i = 0; i < numPrimFields; i++){
+				ObjectStreamField f = fields[i];
+				Field field = f.getField();
+				int off = f.getOffset();
+				switch(f.getTypeCode()){
+				case 'Z':
+					Bits.putBoolean(buf, off, field != null && field.getBoolean(obj));
+					break;
+				case 'B':
+					buf[off] = field == null ? 0 : field.getByte(obj);
+					break;
+				case 'C':
+					Bits.putChar(buf, off, field == null ? 0 : field.getChar(obj));
+					break;
+				case 'S':
+					Bits.putShort(buf, off, field == null ? 0 : field.getShort(obj));
+					break;
+				case 'I':
+					Bits.putInt(buf, off, field == null ? 0 : field.getInt(obj));
+					break;
+				case 'F':
+					Bits.putFloat(buf, off, field == null ? 0 : field.getFloat(obj));
+					break;
+				case 'J':
+					Bits.putLong(buf, off, field == null ? 0 : field.getLong(obj));
+					break;
+				case 'D':
+					Bits.putDouble(buf, off, field == null ? 0 : field.getDouble(obj));
+					break;
+				default:
+					throw new InternalError();
+				}
+			}
+		}catch(IllegalAccessException e){
+			throw new InternalError(e);
+		}
+	}
+
+	void getObjFieldValues(Object obj, Object[] vals) {
+		try{
+			for(int i = numPrimFields; i < fields.length; i++){
+				Field field = fields[i].getField();
+				vals[fields[i].getOffset()] = field == null ? null : field.get(obj);
+			}
+		}catch(IllegalAccessException e){
+			throw new InternalError(e);
+		}
+	}
+
 	private static void throwMiscException(Throwable th) throws IOException {
 		if(th instanceof RuntimeException){
 			throw (RuntimeException)th;
@@ -465,16 +750,33 @@ public class ObjectStreamDesc {
 		}
 	}
 
-	ObjectStreamDesc[] getClassDataLayout() throws InvalidClassException {
-		ArrayList<ObjectStreamDesc> slots = new ArrayList<>();
+	/**
+	 * 同一个流中对描述符的引用共用这个描述符，每个流中的每个类只查找一次
+	 */
+	JdkIntrinsic getIntrinsic() throws InvalidClassException {
+		if(!intrinsicResolved){
+			intrinsic = hasClass ? JdkIntrinsic.of(this) : null;
+			intrinsicResolved = true;
+		}
+		return intrinsic;
+	}
 
-		for(ObjectStreamDesc c = this; c != null; c = c.superDesc){
+	/**
+	 * 返回的数组在每个对象读取时共用，调用方不能修改
+	 */
+	ObjectStreamDesc[] getClassDataLayout() throws InvalidClassException {
+		if(layout == null){
+			ArrayList<ObjectStreamDesc> slots = new ArrayList<>();
+			for(ObjectStreamDesc c = this; c != null; c = c.superDesc){
+				slots.add(c);
+			}
+			// order slots from superclass -> subclass
+			Collections.reverse(slots);
+			layout = slots.toArray(new ObjectStreamDesc[slots.size()]);
+		}
+		for(ObjectStreamDesc c : layout){
 			c.hasClass(this.hasClass);
-			slots.add(c);
 		}
-
-		// order slots from superclass -> subclass
-		Collections.reverse(slots);
-		return slots.toArray(new ObjectStreamDesc[slots.size()]);
+		return layout;
 	}
 }
@@ -2,15 +2,10 @@ package com.wedis.redis.io;
 
 import java.io.ObjectStreamClass;
 import java.lang.reflect.Field;
-import java.util.HashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.wedis.base.enums.ResponseCode;
-import com.wedis.base.exception.CoreException;
-import com.wedis.base.util.UnsafeUtil;
-
 import sun.reflect.CallerSensitive;
 import sun.reflect.Reflection;
 import sun.reflect.misc.ReflectUtil;
@@ -31,8 +26,6 @@ public class ObjectStreamField implements Comparable<Object> {
 	private Field field;
 	/** offset of field value in enclosing field group */
 	private int offset = 0;
-	/** offset of field for unsafe use */
-	private long key;
 
 	/**
 	 * Create a Serializable field with the specified type. This field should be
@@ -326,30 +319,7 @@ public class ObjectStreamField implements Comparable<Object> {
 		return sbuf.toString();
 	}
 
-	@SuppressWarnings({"unchecked", "rawtypes"})
-	void setValue(Object obj, Object value, boolean hasClass, VT template) {
-		if(hasClass){
-			if(field != null){
-				template.setValue(obj, key, value);
-			}else{
-				throw new CoreException(ResponseCode.JDK_DESERIALIZE_FAILED, "没有找到字段:" + name);
-			}
-		}else if(obj instanceof HashMap){
-			HashMap m = (HashMap)obj;
-			m.put(name, value);
-		}else{
-			throw new CoreException(ResponseCode.JDK_DESERIALIZE_FAILED, "没有找到类");
-		}
-	}
-
 	void setField(Field field) {
 		this.field = field;
-		if(field != null){
-			this.key = UnsafeUtil.unsafe.objectFieldOffset(field);
-		}
-	}
-
-	public interface VT<E> {
-		void setValue(Object obj, long key, E value);
 	}
 }
@@ -0,0 +1,303 @@
+package com.wedis.redis.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wedis.base.util.BinaryUtil;
+
+/**
+ * 没有.proto时按wire format读取protobuf，与protoc --decode_raw相同，消息按字段编号 -> 值返回，
+ * 重复出现的字段合并成List。
+ *
+ * length-delimited的字段无法区分string、bytes和嵌套的消息，按以下顺序判断:
+ * 可打印的utf-8按string，能完整解析成字段序列的按消息，否则按bytes。
+ * 判断是否是消息时只扫描这一层的tag和长度，不会递归解析更深的消息。不支持已废弃的group
+ */
+public class ProtobufReader implements WireReader {
+
+	private static final int VARINT = 0;
+	private static final int FIXED64 = 1;
+	private static final int LENGTH_DELIMITED = 2;
+	private static final int FIXED32 = 5;
+	/** 字段编号的最大值 */
+	private static final long MAX_FIELD = (1 << 29) - 1;
+	/** readObject时嵌套消息的最大层数，更深的按bytes返回 */
+	private static final int MAX_DEPTH = 64;
+	/** children中string和bytes最多显示的字节数 */
+	private static final int MAX_TEXT = 1024;
+
+	private final byte[] buf;
+	private int pos;
+
+	public ProtobufReader(byte[] buf) {
+		this.buf = buf;
+	}
+
+	@Override
+	public Object readObject() throws IOException {
+		if(!isMessage(0, buf.length))
+			throw new StreamCorruptedException("not a protobuf message");
+		return readMessage(0, buf.length, 0);
+	}
+
+	@Override
+	public List<WireNode> children(int[] path, int limit) throws IOException {
+		int start = 0;
+		int end = buf.length;
+		for(int index : path){
+			// 只读取路径上每一层的tag和长度，找到第index个字段
+			pos = start;
+			int n = 0;
+			while(pos < end && n < index){
+				skipField(readTag(end), end);
+				n++;
+			}
+			if(pos >= end)
+				throw new StreamCorruptedException("no field at index " + index);
+			long tag = readTag(end);
+			if((tag & 0x07) != LENGTH_DELIMITED)
+				throw new StreamCorruptedException("field at index " + index + " is not a message");
+			int len = readLength(end);
+			if(kind(pos, len) != Kind.MESSAGE)
+				throw new StreamCorruptedException("field at index " + index + " is not a message");
+			start = pos;
+			end = pos + len;
+		}
+		List<WireNode> nodes = new ArrayList<>();
+		pos = start;
+		for(int i = 0; pos < end; i++){
+			if(i == limit){
+				nodes.add(new WireNode("...", WireNode.MORE, null, true, null));
+				break;
+			}
+			nodes.add(node(readTag(end), end, WireNode.childPath(path, i)));
+		}
+		return nodes;
+	}
+
+	private WireNode node(long tag, int end, String path) throws IOException {
+		String name = String.valueOf(tag >>> 3);
+		switch((int)tag & 0x07){
+		case VARINT:
+			return new WireNode(name, "varint", String.valueOf(readVarint(end)), true, path);
+		case FIXED64:
+			long l = readFixed64(end);
+			return new WireNode(name, "fixed64", l + " (double " + Double.longBitsToDouble(l) + ")", true, path);
+		case FIXED32:
+			int i = readFixed32(end);
+			return new WireNode(name, "fixed32", i + " (float " + Float.intBitsToFloat(i) + ")", true, path);
+		default:
+			int len = readLength(end);
+			int start = pos;
+			pos += len;
+			switch(kind(start, len)){
+			case STRING:
+				return new WireNode(name, "string", text(start, len), true, path);
+			case MESSAGE:
+				return new WireNode(name, "message", len + " bytes", false, path);
+			default:
+				return new WireNode(name, "bytes", BinaryUtil.toPrintable(slice(start, Math.min(len, MAX_TEXT)))
+					+ (len > MAX_TEXT ? "..." : ""), true, path);
+			}
+		}
+	}
+
+	private Map<String, Object> readMessage(int start, int end, int depth) throws IOException {
+		Map<String, Object> message = new LinkedHashMap<>();
+		pos = start;
+		while(pos < end){
+			long tag = readTag(end);
+			Object value;
+			switch((int)tag & 0x07){
+			case VARINT:
+				value = readVarint(end);
+				break;
+			case FIXED64:
+				value = readFixed64(end);
+				break;
+			case FIXED32:
+				value = readFixed32(end);
+				break;
+			default:
+				int len = readLength(end);
+				int from = pos;
+				switch(kind(from, len)){
+				case STRING:
+					value = new String(buf, from, len, StandardCharsets.UTF_8);
+					break;
+				case MESSAGE:
+					if(depth < MAX_DEPTH){
+						value = readMessage(from, from + len, depth + 1);
+						break;
+					}
+					// 超过最大层数时按bytes
+				default:
+					value = BinaryUtil.toPrintable(slice(from, len));
+				}
+				pos = from + len;
+			}
+			add(message, String.valueOf(tag >>> 3), value);
+		}
+		return message;
+	}
+
+	/**
+	 * 重复的字段合并成List，字段的值本身不会是List
+	 */
+	@SuppressWarnings("unchecked")
+	private static void add(Map<String, Object> message, String field, Object value) {
+		Object old = message.get(field);
+		if(old == null){
+			message.put(field, value);
+		}else if(old instanceof List){
+			((List<Object>)old).add(value);
+		}else{
+			List<Object> list = new ArrayList<>();
+			list.add(old);
+			list.add(value);
+			message.put(field, list);
+		}
+	}
+
+	private enum Kind {
+		STRING, MESSAGE, BYTES
+	}
+
+	private Kind kind(int start, int len) {
+		if(isPrintable(start, len))
+			return Kind.STRING;
+		int saved = pos;
+		try{
+			return isMessage(start, start + len) ? Kind.MESSAGE : Kind.BYTES;
+		}finally{
+			pos = saved;
+		}
+	}
+
+	/**
+	 * 只扫描这一层的tag和长度，能正好在end结束并且至少有一个字段时是消息
+	 */
+	private boolean isMessage(int start, int end) {
+		if(start >= end)
+			return false;
+		pos = start;
+		try{
+			while(pos < end){
+				skipField(readTag(end), end);
+			}
+			return pos == end;
+		}catch(IOException e){
+			return false;
+		}
+	}
+
+	private boolean isPrintable(int start, int len) {
+		int i = start;
+		int end = start + len;
+		while(i < end){
+			int b = buf[i] & 0xFF;
+			if(b < 0x80){
+				if((b < 0x20 && b != '\t' && b != '\n' && b != '\r') || b == 0x7F)
+					return false;
+				i++;
+				continue;
+			}
+			if(b < 0xC2 || b > 0xF4)
+				return false;
+			int size = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+			if(i + size > end)
+				return false;
+			for(int k = 1; k < size; k++){
+				if((buf[i + k] & 0xC0) != 0x80)
+					return false;
+			}
+			i += size;
+		}
+		return true;
+	}
+
+	private String text(int start, int len) {
+		if(len <= MAX_TEXT)
+			return new String(buf, start, len, StandardCharsets.UTF_8);
+		return new String(buf, start, MAX_TEXT, StandardCharsets.UTF_8) + "...";
+	}
+
+	private byte[] slice(int start, int len) {
+		byte[] b = new byte[len];
+		System.arraycopy(buf, start, b, 0, len);
+		return b;
+	}
+
+	private long readTag(int end) throws IOException {
+		long tag = readVarint(end);
+		long field = tag >>> 3;
+		int wireType = (int)tag & 0x07;
+		if(field == 0 || field > MAX_FIELD
+			|| (wireType != VARINT && wireType != FIXED64 && wireType != LENGTH_DELIMITED && wireType != FIXED32))
+			throw new StreamCorruptedException("invalid protobuf tag: " + tag);
+		return tag;
+	}
+
+	private void skipField(long tag, int end) throws IOException {
+		switch((int)tag & 0x07){
+		case VARINT:
+			readVarint(end);
+			break;
+		case FIXED64:
+			skip(8, end);
+			break;
+		case FIXED32:
+			skip(4, end);
+			break;
+		default:
+			skip(readLength(end), end);
+		}
+	}
+
+	private long readVarint(int end) throws IOException {
+		long v = 0;
+		for(int shift = 0; shift < 64; shift += 7){
+			if(pos >= end)
+				throw new EOFException("unexpected end of protobuf message");
+			int b = buf[pos++];
+			v |= (long)(b & 0x7F) << shift;
+			if(b >= 0)
+				return v;
+		}
+		throw new StreamCorruptedException("malformed protobuf varint");
+	}
+
+	private int readLength(int end) throws IOException {
+		long len = readVarint(end);
+		if(len < 0 || len > end - pos)
+			throw new EOFException("protobuf length out of range: " + len);
+		return (int)len;
+	}
+
+	private long readFixed64(int end) throws IOException {
+		skip(8, end);
+		long v = 0;
+		for(int i = 1; i <= 8; i++){
+			v = v << 8 | (buf[pos - i] & 0xFF);
+		}
+		return v;
+	}
+
+	private int readFixed32(int end) throws IOException {
+		skip(4, end);
+		return (buf[pos - 4] & 0xFF) | (buf[pos - 3] & 0xFF) << 8 | (buf[pos - 2] & 0xFF) << 16
+			| (buf[pos - 1] & 0xFF) << 24;
+	}
+
+	private void skip(int n, int end) throws IOException {
+		if(n > end - pos)
+			throw new EOFException("unexpected end of protobuf message");
+		pos += n;
+	}
+}
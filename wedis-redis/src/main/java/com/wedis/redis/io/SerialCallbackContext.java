@@ -14,15 +14,21 @@ import java.io.NotActiveException;
  * the getObj method throws NotActiveException.
  */
 final class SerialCallbackContext {
-	private final Object obj;
-	private final ObjectStreamDesc desc;
+	private Object obj;
+	private ObjectStreamDesc desc;
 	/**
 	 * Thread this context is in use by. As this only works in one thread, we do
 	 * not need to worry about thread-safety.
 	 */
 	private Thread thread;
 
-	public SerialCallbackContext(Object obj, ObjectStreamDesc desc) {
+	/**
+	 * JdkInputStream按readObject的嵌套层数复用context，每次调用readObject方法前通过enter设置
+	 */
+	SerialCallbackContext() {
+	}
+
+	void enter(Object obj, ObjectStreamDesc desc) {
 		this.obj = obj;
 		this.desc = desc;
 		this.thread = Thread.currentThread();
@@ -54,4 +60,13 @@ final class SerialCallbackContext {
 	public void setUsed() {
 		thread = null;
 	}
+
+	/**
+	 * 不再引用上一次的对象和描述符
+	 */
+	void exit() {
+		obj = null;
+		desc = null;
+		thread = null;
+	}
 }
@@ -0,0 +1,56 @@
+package com.wedis.redis.io;
+
+import java.util.Arrays;
+
+/**
+ * 跨JdkInputStream共享的短ASCII字符串表，用于类名、字段名、类型签名以及重复的短字符串值。
+ *
+ * 直接按源数组中的字节计算hash和比较，命中时不创建新的String。表的大小固定，
+ * 每个槽位只保存最后一次放入的字符串，冲突时直接覆盖，不加锁也不会无限增长。
+ * String是不可变对象，并发读写槽位最多导致重复创建，不会读到不完整的字符串
+ */
+final class StringTable {
+
+	/** 槽位数量，必须是2的幂 */
+	private static final int SIZE = 4096;
+	/** 放入表中的字符串的最大字节数 */
+	static final int MAX_LENGTH = 64;
+
+	private static final String[] table = new String[SIZE];
+
+	private StringTable() {
+	}
+
+	/**
+	 * 返回与b中off开始的len个字节相同的字符串，这些字节必须都是ASCII字符
+	 */
+	@SuppressWarnings("deprecation")
+	static String get(byte[] b, int off, int len) {
+		// 与String.hashCode相同，命中时hashCode已经缓存在String中
+		int h = 0;
+		for(int i = off, end = off + len; i < end; i++){
+			h = 31 * h + b[i];
+		}
+		int slot = (h ^ (h >>> 16)) & (SIZE - 1);
+		String s = table[slot];
+		if(s != null && s.length() == len && s.hashCode() == h && matches(s, b, off)){
+			return s;
+		}
+		s = new String(b, 0, off, len);
+		table[slot] = s;
+		return s;
+	}
+
+	private static boolean matches(String s, byte[] b, int off) {
+		for(int i = 0; i < s.length(); i++){
+			if(s.charAt(i) != b[off + i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static void clear() {
+		Arrays.fill(table, null);
+	}
+}
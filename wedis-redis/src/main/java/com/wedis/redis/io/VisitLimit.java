@@ -0,0 +1,46 @@
+package com.wedis.redis.io;
+
+/**
+ * JdkInputStream事件模式下的预览限制，超出限制的部分不推送事件，以truncated标记代替后快速跳过。
+ *
+ * 读取的字节数超出maxBytes或者源数据提前结束时停止读取，所有未结束的对象和数组都以truncated标记结束，
+ * 因此可以只从redis取值的前maxBytes个字节来预览
+ */
+public class VisitLimit {
+
+	/** 每个数组或自定义数据最多推送的元素个数 */
+	private final int maxElements;
+	/** 对象和数组最多嵌套的层数 */
+	private final int maxDepth;
+	/** 字符串最多解码的字节数 */
+	private final int maxStringBytes;
+	/** 最多从流中读取的字节数 */
+	private final long maxBytes;
+
+	public VisitLimit(int maxElements, int maxDepth, int maxStringBytes, long maxBytes) {
+		if(maxElements < 0 || maxDepth < 0 || maxStringBytes < 0 || maxBytes < 0){
+			throw new IllegalArgumentException("limit must not be negative");
+		}
+		this.maxElements = maxElements;
+		this.maxDepth = maxDepth;
+		this.maxStringBytes = maxStringBytes;
+		this.maxBytes = maxBytes;
+	}
+
+	public int getMaxElements() {
+		return maxElements;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public int getMaxStringBytes() {
+		return maxStringBytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.wedis.redis.io;
+
+/**
+ * WireReader展开的一个节点，转换成json后由界面以树的形式显示
+ */
+public class WireNode {
+
+	/** 还有更多子节点没有返回时的占位节点 */
+	public static final String MORE = "more";
+
+	private final String name; // protobuf的字段编号，数组的下标或者map的key
+	private final String type; // message、varint、string、array、map等
+	private final String value; // 叶子节点的值，不能展开的节点为元素个数或字节数
+	private final boolean leaf; // 是否不能继续展开
+	private final String path; // 从根开始每一层子节点的序号，以.分隔，展开时原样传回
+
+	public WireNode(String name, String type, String value, boolean leaf, String path) {
+		this.name = name;
+		this.type = type;
+		this.value = value;
+		this.leaf = leaf;
+		this.path = path;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public boolean isLeaf() {
+		return leaf;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * 把path参数解析成每一层的序号，null和空字符串表示根节点
+	 */
+	public static int[] parsePath(String path) {
+		if(path == null || path.isEmpty())
+			return new int[0];
+		String[] parts = path.split("\\.");
+		int[] indexes = new int[parts.length];
+		for(int i = 0; i < parts.length; i++){
+			indexes[i] = Integer.parseInt(parts[i]);
+			if(indexes[i] < 0)
+				throw new NumberFormatException("negative index: " + path);
+		}
+		return indexes;
+	}
+
+	static String childPath(int[] path, int index) {
+		StringBuilder sb = new StringBuilder();
+		for(int i : path){
+			sb.append(i).append('.');
+		}
+		return sb.append(index).toString();
+	}
+}
@@ -0,0 +1,23 @@
+package com.wedis.redis.io;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 没有schema的二进制格式(protobuf、MessagePack)的读取。readObject一次解码整个值，
+ * children只解析路径上的节点和被展开节点的直接子节点，其他分支只按长度跳过，
+ * 很大的值在界面上逐层展开时只有被查看的部分需要解码
+ */
+public interface WireReader {
+
+	/**
+	 * 解码整个值，嵌套的消息、数组和map按Map、List返回
+	 */
+	Object readObject() throws IOException;
+
+	/**
+	 * 返回path指向的节点的直接子节点，最多limit个，还有更多时最后一个节点的type为more。
+	 * path为从根开始每一层子节点的序号，空数组表示根节点
+	 */
+	List<WireNode> children(int[] path, int limit) throws IOException;
+}
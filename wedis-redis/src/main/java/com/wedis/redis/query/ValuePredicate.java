@@ -0,0 +1,303 @@
+package com.wedis.redis.query;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.alibaba.fastjson.JSON;
+import com.wedis.base.bean.QueryCondition;
+import com.wedis.base.enums.ResponseCode;
+import com.wedis.base.enums.SerializeType;
+import com.wedis.base.exception.CoreException;
+import com.wedis.redis.decoder.ValueDecoder;
+import com.wedis.redis.decoder.ValueDecoderRegistry;
+import com.wedis.redis.io.FieldProjection;
+import com.wedis.redis.io.JdkInputStream;
+import com.wedis.redis.io.JdkInputStreamPool;
+
+/**
+ * 对值的一组条件，所有条件都满足时匹配，可以在多个线程中同时使用。
+ *
+ * jdk序列化的值通过JdkInputStream.project只创建条件中path指向的字段，其他部分在流中跳过；
+ * 其他格式按ValueDecoderRegistry识别并解码后按path取值。数字按数值比较，其他值按字符串比较
+ */
+public class ValuePredicate {
+
+	private static final String[] OPS = { "==", "!=", ">", ">=", "<", "<=", "contains", "exists" };
+	private static final int EQ = 0;
+	private static final int NE = 1;
+	private static final int GT = 2;
+	private static final int GE = 3;
+	private static final int LT = 4;
+	private static final int LE = 5;
+	private static final int CONTAINS = 6;
+	private static final int EXISTS = 7;
+	private static final Object NOT_FOUND = new Object();
+
+	private final ValueDecoderRegistry decoders;
+	/** 不重复的path，按第一次出现的顺序 */
+	private final String[] paths;
+	/** 每个条件对应的paths下标 */
+	private final int[] pathIndex;
+	private final int[] ops;
+	private final String[] operands;
+	/** 能按数字解析的比较值，否则为null */
+	private final BigDecimal[] numbers;
+
+	public ValuePredicate(List<QueryCondition> conditions) {
+		this(ValueDecoderRegistry.getDefault(), conditions);
+	}
+
+	/**
+	 * 条件为空、操作符不支持或path过多时抛出CoreException
+	 */
+	public ValuePredicate(ValueDecoderRegistry decoders, List<QueryCondition> conditions) {
+		if(conditions == null || conditions.isEmpty())
+			throw new CoreException(ResponseCode.QUERY_INVALID, "no conditions");
+		this.decoders = decoders;
+		int n = conditions.size();
+		pathIndex = new int[n];
+		ops = new int[n];
+		operands = new String[n];
+		numbers = new BigDecimal[n];
+		Map<String, Integer> distinct = new LinkedHashMap<>();
+		for(int i = 0; i < n; i++){
+			QueryCondition condition = conditions.get(i);
+			String path = condition.getPath() == null ? "" : condition.getPath().trim();
+			Integer index = distinct.get(path);
+			if(index == null){
+				index = distinct.size();
+				distinct.put(path, index);
+			}
+			pathIndex[i] = index;
+			ops[i] = op(condition.getOp());
+			operands[i] = condition.getValue();
+			if(ops[i] == CONTAINS && operands[i] == null)
+				throw new CoreException(ResponseCode.QUERY_INVALID, "contains needs a value: " + path);
+			numbers[i] = number(operands[i]);
+		}
+		if(distinct.size() > FieldProjection.MAX_PATHS)
+			throw new CoreException(ResponseCode.QUERY_INVALID, "at most " + FieldProjection.MAX_PATHS + " paths");
+		paths = distinct.keySet().toArray(new String[distinct.size()]);
+	}
+
+	/**
+	 * 匹配时返回条件中每个path的值，不存在的path不在结果中；不匹配时返回null。
+	 * 值无法解码时抛出CoreException
+	 */
+	public Map<String, Object> evaluate(byte[] value) {
+		Map<String, Object> values = extract(value);
+		for(int i = 0; i < ops.length; i++){
+			String path = paths[pathIndex[i]];
+			Object actual = values.containsKey(path) ? values.get(path) : NOT_FOUND;
+			if(!test(ops[i], actual, operands[i], numbers[i]))
+				return null;
+		}
+		return values;
+	}
+
+	/**
+	 * 取出所有path的值，jdk序列化的值不创建path以外的部分
+	 */
+	private Map<String, Object> extract(byte[] value) {
+		ValueDecoder decoder = decoders.detect(value);
+		if(decoder.getType() == SerializeType.JDK){
+			JdkInputStream in = null;
+			try{
+				in = JdkInputStreamPool.acquire(value);
+				return in.project(paths);
+			}catch(Exception e){
+				throw new CoreException(ResponseCode.JDK_DESERIALIZE_FAILED,
+					"deserializing failed?" + e.toString());
+			}finally{
+				if(in != null)
+					JdkInputStreamPool.release(in);
+			}
+		}
+		Object root = decoder.decode(value);
+		Map<String, Object> values = new LinkedHashMap<>();
+		for(String path : paths){
+			Object v = walk(root, path);
+			if(v != NOT_FOUND)
+				values.put(path, v);
+		}
+		return values;
+	}
+
+	/**
+	 * 在解码出的值中按path逐段取值，不是Map、List或数组的对象先转换成json对象
+	 */
+	private static Object walk(Object value, String path) {
+		if(path.isEmpty())
+			return value;
+		for(String segment : path.split("\\.", -1)){
+			if(value != null && !(value instanceof Map) && !(value instanceof List)
+				&& !value.getClass().isArray() && !isScalar(value)){
+				value = JSON.toJSON(value);
+			}
+			if(value instanceof Map){
+				Map<?, ?> map = (Map<?, ?>)value;
+				if(map.containsKey(segment)){
+					value = map.get(segment);
+					continue;
+				}
+				// key不是字符串时按字符串形式匹配
+				Object next = NOT_FOUND;
+				for(Map.Entry<?, ?> e : map.entrySet()){
+					if(e.getKey() != null && segment.equals(e.getKey().toString())){
+						next = e.getValue();
+						break;
+					}
+				}
+				if(next == NOT_FOUND)
+					return NOT_FOUND;
+				value = next;
+			}else if(value instanceof List || (value != null && value.getClass().isArray())){
+				int index = index(segment);
+				int size = value instanceof List ? ((List<?>)value).size() : Array.getLength(value);
+				if(index < 0 || index >= size)
+					return NOT_FOUND;
+				value = value instanceof List ? ((List<?>)value).get(index) : Array.get(value, index);
+			}else{
+				return NOT_FOUND;
+			}
+		}
+		return value;
+	}
+
+	private static boolean test(int op, Object actual, String operand, BigDecimal number) {
+		switch(op){
+		case EXISTS:
+			return actual != NOT_FOUND;
+		case EQ:
+			if(operand == null)
+				return actual == NOT_FOUND || actual == null;
+			return actual != NOT_FOUND && equal(actual, operand, number);
+		case NE:
+			if(operand == null)
+				return actual != NOT_FOUND && actual != null;
+			return actual == NOT_FOUND || !equal(actual, operand, number);
+		case CONTAINS:
+			return actual != NOT_FOUND && contains(actual, operand, number);
+		default:
+			if(actual == NOT_FOUND || actual == null || operand == null)
+				return false;
+			Integer c = compare(actual, operand, number);
+			if(c == null)
+				return false;
+			return op == GT ? c > 0 : op == GE ? c >= 0 : op == LT ? c < 0 : c <= 0;
+		}
+	}
+
+	private static boolean equal(Object actual, String operand, BigDecimal number) {
+		if(actual == null)
+			return "null".equals(operand);
+		if(actual instanceof Number || actual instanceof Date){
+			Integer c = compare(actual, operand, number);
+			return c != null && c == 0;
+		}
+		return isScalar(actual) && actual.toString().equals(operand);
+	}
+
+	/**
+	 * 数字和Date按数值比较，字符串按字典序比较，无法比较时返回null
+	 */
+	private static Integer compare(Object actual, String operand, BigDecimal number) {
+		if(actual instanceof Number || actual instanceof Date){
+			BigDecimal d = decimal(actual);
+			return d == null || number == null ? null : d.compareTo(number);
+		}
+		if(actual instanceof String || actual instanceof Character)
+			return actual.toString().compareTo(operand);
+		return null;
+	}
+
+	/**
+	 * 字符串包含子串，集合和数组包含相等的元素，map包含这个key
+	 */
+	private static boolean contains(Object actual, String operand, BigDecimal number) {
+		if(actual instanceof String)
+			return ((String)actual).contains(operand);
+		if(actual instanceof Map){
+			for(Object key : ((Map<?, ?>)actual).keySet()){
+				if(key != null && operand.equals(key.toString()))
+					return true;
+			}
+			return false;
+		}
+		Collection<?> items = null;
+		if(actual instanceof Collection){
+			items = (Collection<?>)actual;
+		}else if(actual != null && actual.getClass().isArray()){
+			List<Object> list = new ArrayList<>();
+			for(int i = 0; i < Array.getLength(actual); i++){
+				list.add(Array.get(actual, i));
+			}
+			items = list;
+		}
+		if(items == null)
+			return false;
+		for(Object item : items){
+			if(equal(item, operand, number))
+				return true;
+		}
+		return false;
+	}
+
+	private static BigDecimal decimal(Object value) {
+		if(value instanceof BigDecimal)
+			return (BigDecimal)value;
+		if(value instanceof BigInteger)
+			return new BigDecimal((BigInteger)value);
+		if(value instanceof Date)
+			return BigDecimal.valueOf(((Date)value).getTime());
+		if(value instanceof Double || value instanceof Float){
+			double d = ((Number)value).doubleValue();
+			return Double.isNaN(d) || Double.isInfinite(d) ? null : BigDecimal.valueOf(d);
+		}
+		return BigDecimal.valueOf(((Number)value).longValue());
+	}
+
+	private static BigDecimal number(String operand) {
+		if(operand == null || operand.isEmpty())
+			return null;
+		char c = operand.charAt(0);
+		if(c != '-' && c != '+' && c != '.' && (c < '0' || c > '9'))
+			return null;
+		try{
+			return new BigDecimal(operand);
+		}catch(NumberFormatException e){
+			return null;
+		}
+	}
+
+	private static boolean isScalar(Object value) {
+		return value instanceof String || value instanceof Number || value instanceof Boolean
+			|| value instanceof Character || value instanceof Date || value instanceof Enum;
+	}
+
+	private static int index(String segment) {
+		try{
+			return Integer.parseInt(segment);
+		}catch(NumberFormatException e){
+			return -1;
+		}
+	}
+
+	private static int op(String op) {
+		String o = op == null || op.isEmpty() ? "==" : op.trim();
+		if("=".equals(o))
+			return EQ;
+		for(int i = 0; i < OPS.length; i++){
+			if(OPS[i].equalsIgnoreCase(o))
+				return i;
+		}
+		throw new CoreException(ResponseCode.QUERY_INVALID, "unsupported operator: " + op);
+	}
+}
@@ -5,23 +5,33 @@ import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.SerializationException;
 
 import com.wedis.redis.converter.JdkDeserializingConverter;
+import com.wedis.redis.converter.JdkSerializingConverter;
 
+/**
+ * 读出的值按可写回模式解码，没有类的对象修改后可以直接写回，不需要应用的类
+ */
 public class JdkRedisSerializer implements RedisSerializer<Object> {
 
+	private Converter<Object, byte[]> serializer;
 	private Converter<byte[], Object> deserializer;
 	public static final JdkRedisSerializer INSTANCE = new JdkRedisSerializer();
 
 	private JdkRedisSerializer() {
-		this.deserializer = new JdkDeserializingConverter();
+		this.serializer = new JdkSerializingConverter();
+		this.deserializer = new JdkDeserializingConverter(true);
 	}
 
 	@Override
 	public byte[] serialize(Object t) throws SerializationException {
-		return null;
+		if(t == null)
+			return new byte[0];
+		return serializer.convert(t);
 	}
 
 	@Override
 	public Object deserialize(byte[] bytes) throws SerializationException {
+		if(bytes == null || bytes.length == 0)
+			return null;
 		return deserializer.convert(bytes);
 	}
 
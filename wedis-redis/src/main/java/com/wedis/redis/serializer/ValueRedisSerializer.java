@@ -0,0 +1,45 @@
+package com.wedis.redis.serializer;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import com.wedis.redis.decoder.ValueDecoder;
+import com.wedis.redis.decoder.ValueDecoderRegistry;
+
+/**
+ * 通过ValueDecoderRegistry反序列化，decoder为null时按每个值开头的字节识别格式
+ */
+public class ValueRedisSerializer implements RedisSerializer<Object> {
+
+	public static final ValueRedisSerializer AUTO = new ValueRedisSerializer(
+		ValueDecoderRegistry.getDefault(), null);
+
+	private final ValueDecoderRegistry registry;
+	private final ValueDecoder decoder;
+
+	public ValueRedisSerializer(ValueDecoderRegistry registry, ValueDecoder decoder) {
+		this.registry = registry;
+		this.decoder = decoder;
+	}
+
+	@Override
+	public byte[] serialize(Object t) throws SerializationException {
+		if(t == null)
+			return new byte[0];
+		if(t instanceof byte[])
+			return (byte[])t;
+		if(t instanceof String)
+			return ((String)t).getBytes(StandardCharsets.UTF_8);
+		throw new SerializationException("cannot serialize value of type " + t.getClass().getName());
+	}
+
+	@Override
+	public Object deserialize(byte[] bytes) throws SerializationException {
+		if(bytes == null)
+			return null;
+		return decoder != null ? decoder.decode(bytes) : registry.decode(bytes);
+	}
+
+}
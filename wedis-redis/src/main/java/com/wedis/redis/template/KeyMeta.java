@@ -0,0 +1,74 @@
+package com.wedis.redis.template;
+
+import java.util.List;
+
+/**
+ * 一个key的元数据和值的预览，由WedisTemplate.inspect批量取回
+ */
+public class KeyMeta {
+
+	private byte[] key;
+	private String type; // TYPE，key已不存在时为none
+	private long ttl; // PTTL，毫秒，-1表示永不过期，-2表示key不存在
+	private Long size; // MEMORY USAGE，字节，redis 4.0以前不支持时为null
+	private long length; // 字符串的字节数或集合的元素个数
+	private List<byte[]> items; // 预览的内容，hash为field,value交替，zset为member,score交替
+	private String error; // 这个key取值失败时的错误信息
+
+	public byte[] getKey() {
+		return key;
+	}
+
+	public void setKey(byte[] key) {
+		this.key = key;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public long getTtl() {
+		return ttl;
+	}
+
+	public void setTtl(long ttl) {
+		this.ttl = ttl;
+	}
+
+	public Long getSize() {
+		return size;
+	}
+
+	public void setSize(Long size) {
+		this.size = size;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public void setLength(long length) {
+		this.length = length;
+	}
+
+	public List<byte[]> getItems() {
+		return items;
+	}
+
+	public void setItems(List<byte[]> items) {
+		this.items = items;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+}
@@ -0,0 +1,11 @@
+package com.wedis.redis.template;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 每完成一轮SCAN回调一次，用于把扫描到的key逐批推送给调用方
+ */
+public interface ScanCallback {
+	void doInScan(List<byte[]> keys, byte[] cursor) throws IOException;
+}
@@ -1,7 +1,14 @@
 package com.wedis.redis.template;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.bind.DatatypeConverter;
 
@@ -11,32 +18,75 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
 
 import com.wedis.base.bean.RedisInfo;
+import com.wedis.base.bean.ScanParam;
 import com.wedis.base.enums.SerializeType;
+import com.wedis.redis.decoder.ValueDecoder;
+import com.wedis.redis.decoder.ValueDecoderRegistry;
 import com.wedis.redis.factory.WedisConnectionFactory;
 import com.wedis.redis.serializer.ByteRedisSerializer;
 import com.wedis.redis.serializer.JdkRedisSerializer;
+import com.wedis.redis.serializer.ValueRedisSerializer;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
 
 @Component
 public class WedisTemplate {
+	/** 单次请求最多执行的SCAN次数，MATCH过于稀疏时提前返回游标，避免一次请求遍历整个keyspace */
+	private static final int MAX_SCAN_ROUNDS = 1000;
+	/** 单次SCAN的COUNT上限 */
+	private static final int MAX_SCAN_COUNT = 1000;
+	private static final byte[] SCAN_END = ScanParams.SCAN_POINTER_START_BINARY;
+	/** 单次批量取值的key数量上限 */
+	private static final int MAX_INSPECT_KEYS = 1000;
+	/**
+	 * 在一次EVALSHA中取回一个key的TYPE、PTTL、MEMORY USAGE、长度和预览，
+	 * 所有key的EVALSHA放在同一个pipeline中，一批key只需要一次往返。
+	 * 字符串预览前ARGV[1]个字节，集合预览前ARGV[2]个元素；
+	 * redis 4.0以前没有MEMORY命令，使用pcall忽略错误返回-1
+	 */
+	private static final byte[] INSPECT_SCRIPT = ("local k = KEYS[1]\n"
+		+ "local t = redis.call('TYPE', k).ok\n"
+		+ "local ttl = redis.call('PTTL', k)\n"
+		+ "local ok, mem = pcall(redis.call, 'MEMORY', 'USAGE', k)\n"
+		+ "if not ok or not mem then mem = -1 end\n"
+		+ "local n = tonumber(ARGV[2])\n"
+		+ "local len, items = 0, {}\n"
+		+ "if t == 'string' then\n"
+		+ "  len = redis.call('STRLEN', k)\n"
+		+ "  items = {redis.call('GETRANGE', k, 0, tonumber(ARGV[1]) - 1)}\n"
+		+ "elseif t == 'list' then\n"
+		+ "  len = redis.call('LLEN', k)\n"
+		+ "  items = redis.call('LRANGE', k, 0, n - 1)\n"
+		+ "elseif t == 'set' then\n"
+		+ "  len = redis.call('SCARD', k)\n"
+		+ "  items = redis.call('SSCAN', k, 0, 'COUNT', n)[2]\n"
+		+ "elseif t == 'zset' then\n"
+		+ "  len = redis.call('ZCARD', k)\n"
+		+ "  items = redis.call('ZRANGE', k, 0, n - 1, 'WITHSCORES')\n"
+		+ "elseif t == 'hash' then\n"
+		+ "  len = redis.call('HLEN', k)\n"
+		+ "  items = redis.call('HSCAN', k, 0, 'COUNT', n)[2]\n"
+		+ "end\n"
+		+ "return {t, ttl, mem, len, items}").getBytes(StandardCharsets.US_ASCII);
+
+	/** 每个连接SCRIPT LOAD得到的INSPECT_SCRIPT的sha1，之后只发送EVALSHA */
+	private final Map<Long, byte[]> inspectShas = new ConcurrentHashMap<>();
+
 	@Autowired
 	private WedisConnectionFactory factory;
 
-	public void selectDb(RedisInfo info) {
-		if(info.getId() == null || info.getDb() == null)
-			return;
-		RedisConnection conn = factory.getConnection(info.getId());
-		if(conn != null)
-			conn.select(info.getDb());
-	}
-
 	public void resetSerialize(RedisInfo info) {
 		if(info.getId() == null || info.getSerializeType() == null)
 			return;
-		RedisTemplate<byte[], byte[]> template = factory.getTemplate(info.getId());
+		RedisTemplate<byte[], byte[]> template = factory.getTemplate(info.getId(), info.getDb());
 		template.setDefaultSerializer(getSerializer(info.getSerializeType()));
 	}
 
@@ -44,15 +94,207 @@ public class WedisTemplate {
 		switch(type){
 		case JDK:
 			return JdkRedisSerializer.INSTANCE;
-		default:
+		case BYTES:
 			return ByteRedisSerializer.INSTANCE;
+		case AUTO:
+			return ValueRedisSerializer.AUTO;
+		default:
+			// 指定了格式时不再识别，直接使用这个格式的解码器
+			ValueDecoderRegistry registry = ValueDecoderRegistry.getDefault();
+			ValueDecoder decoder = registry.get(type);
+			return decoder == null ? ValueRedisSerializer.AUTO
+				: new ValueRedisSerializer(registry, decoder);
+		}
+	}
+
+	/**
+	 * 基于SCAN分批遍历key，不会使用KEYS阻塞redis。每轮SCAN的结果通过callback推送，
+	 * 累计返回count个key或遍历结束后停止，返回下一次请求使用的游标("0"表示已遍历完成)
+	 */
+	public String scan(RedisInfo<?, ?> info, ScanParam param, ScanCallback callback)
+		throws IOException {
+		int count = param.getCount() == null || param.getCount() <= 0 ? 100 : param.getCount();
+		ScanParams params = new ScanParams().count(Math.min(count, MAX_SCAN_COUNT));
+		if(param.getMatch() != null && !param.getMatch().isEmpty())
+			params.match(param.getMatch());
+		String type = param.getType() == null || param.getType().isEmpty() ? null
+			: param.getType();
+		byte[] cursor = param.getCursor() == null || param.getCursor().isEmpty() ? SCAN_END
+			: param.getCursor().getBytes(StandardCharsets.US_ASCII);
+
+		RedisConnection conn = factory.getConnection(info.getId(), info.getDb());
+		try{
+			Jedis jedis = (Jedis)conn.getNativeConnection();
+			int found = 0;
+			int rounds = 0;
+			do{
+				ScanResult<byte[]> result = jedis.scan(cursor, params);
+				cursor = result.getCursorAsBytes();
+				List<byte[]> keys = type == null ? result.getResult()
+					: filterType(jedis, result.getResult(), type);
+				found += keys.size();
+				if(!keys.isEmpty())
+					callback.doInScan(keys, cursor);
+			}while(found < count && !Arrays.equals(cursor, SCAN_END) && ++rounds < MAX_SCAN_ROUNDS);
+		}finally{
+			conn.close();
+		}
+		return new String(cursor, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * redis 6以前SCAN不支持TYPE参数，使用pipeline一次性取回这一批key的类型后过滤
+	 */
+	private List<byte[]> filterType(Jedis jedis, List<byte[]> keys, String type) {
+		if(keys.isEmpty())
+			return keys;
+		Pipeline pipeline = jedis.pipelined();
+		List<Response<String>> types = new ArrayList<>(keys.size());
+		for(byte[] key : keys){
+			types.add(pipeline.type(key));
+		}
+		pipeline.sync();
+
+		List<byte[]> filtered = new ArrayList<>();
+		for(int i = 0; i < keys.size(); i++){
+			if(type.equalsIgnoreCase(types.get(i).get()))
+				filtered.add(keys.get(i));
+		}
+		return filtered;
+	}
+
+	/**
+	 * 批量取回一页key的类型、过期时间、内存占用和值的预览，所有命令在一个pipeline中执行，
+	 * 单个key出错时只记录在这个key的error中，不影响其他key
+	 * 
+	 * @param previewBytes 字符串类型预览的字节数
+	 * @param previewItems 集合类型预览的元素个数，SSCAN/HSCAN的COUNT只是提示，返回的元素可能更多
+	 */
+	public List<KeyMeta> inspect(RedisInfo<?, ?> info, List<byte[]> keys, int previewBytes,
+		int previewItems) {
+		Assert.isTrue(keys.size() <= MAX_INSPECT_KEYS, "Too many keys, max:" + MAX_INSPECT_KEYS);
+		List<KeyMeta> metas = new ArrayList<>(keys.size());
+		if(keys.isEmpty())
+			return metas;
+		List<byte[]> args = Arrays.asList(
+			String.valueOf(previewBytes).getBytes(StandardCharsets.US_ASCII),
+			String.valueOf(previewItems).getBytes(StandardCharsets.US_ASCII));
+
+		RedisConnection conn = factory.getConnection(info.getId(), info.getDb());
+		try{
+			Jedis jedis = (Jedis)conn.getNativeConnection();
+			// 脚本只在每个连接第一次使用时上传，每个key只发送sha1。上传在map之外，不在computeIfAbsent中
+			// 等待网络，并发时可能重复上传，得到的sha1相同
+			byte[] sha = inspectShas.get(info.getId());
+			if(sha == null){
+				byte[] loaded = jedis.scriptLoad(INSPECT_SCRIPT);
+				sha = inspectShas.putIfAbsent(info.getId(), loaded);
+				if(sha == null)
+					sha = loaded;
+			}
+			Pipeline pipeline = jedis.pipelined();
+			List<Response<Object>> responses = new ArrayList<>(keys.size());
+			for(byte[] key : keys){
+				responses.add(pipeline.evalsha(sha, Collections.singletonList(key), args));
+			}
+			pipeline.sync();
+			retryNoScript(jedis, keys, args, responses);
+
+			for(int i = 0; i < keys.size(); i++){
+				KeyMeta meta = new KeyMeta();
+				meta.setKey(keys.get(i));
+				try{
+					List<?> reply = (List<?>)responses.get(i).get();
+					meta.setType(new String((byte[])reply.get(0), StandardCharsets.US_ASCII));
+					meta.setTtl((Long)reply.get(1));
+					Long size = (Long)reply.get(2);
+					meta.setSize(size < 0 ? null : size);
+					meta.setLength((Long)reply.get(3));
+					List<byte[]> items = new ArrayList<>();
+					for(Object item : (List<?>)reply.get(4)){
+						items.add((byte[])item);
+					}
+					meta.setItems(items);
+				}catch(JedisDataException e){
+					meta.setError(e.getMessage());
+				}catch(RuntimeException e){
+					// 回复的格式与脚本不符，只影响这个key
+					meta.setError("unexpected reply: " + e);
+				}
+				metas.add(meta);
+			}
+		}finally{
+			conn.close();
+		}
+		return metas;
+	}
+
+	/**
+	 * redis重启或SCRIPT FLUSH后脚本缓存被清空，EVALSHA返回NOSCRIPT的key改用EVAL重新执行，
+	 * EVAL同时把脚本重新放入redis的脚本缓存
+	 */
+	private static void retryNoScript(Jedis jedis, List<byte[]> keys, List<byte[]> args,
+		List<Response<Object>> responses) {
+		Pipeline pipeline = null;
+		for(int i = 0; i < keys.size(); i++){
+			try{
+				responses.get(i).get();
+			}catch(JedisDataException e){
+				if(e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT"))
+					continue;
+				if(pipeline == null)
+					pipeline = jedis.pipelined();
+				responses.set(i, pipeline.eval(INSPECT_SCRIPT, Collections.singletonList(keys.get(i)), args));
+			}catch(RuntimeException e){
+				// 其他错误在取回这个key的结果时记录到它的error中
+			}
+		}
+		if(pipeline != null)
+			pipeline.sync();
+	}
+
+	/**
+	 * 读取字符串类型的值，key不存在时返回null
+	 */
+	public byte[] get(RedisInfo<?, ?> info, byte[] key) {
+		RedisConnection conn = factory.getConnection(info.getId(), info.getDb());
+		try{
+			return conn.get(key);
+		}finally{
+			conn.close();
+		}
+	}
+
+	/**
+	 * 一次MGET读取一批字符串类型的值，key不存在或不是字符串类型时对应的值为null
+	 */
+	public List<byte[]> mget(RedisInfo<?, ?> info, List<byte[]> keys) {
+		Assert.isTrue(keys.size() <= MAX_INSPECT_KEYS, "Too many keys, max:" + MAX_INSPECT_KEYS);
+		if(keys.isEmpty())
+			return Collections.emptyList();
+		RedisConnection conn = factory.getConnection(info.getId(), info.getDb());
+		try{
+			return conn.mGet(keys.toArray(new byte[keys.size()][]));
+		}finally{
+			conn.close();
+		}
+	}
+
+	/**
+	 * 读取字符串类型的值从start到end(包含)的部分，key不存在时返回空数组
+	 */
+	public byte[] getRange(RedisInfo<?, ?> info, byte[] key, long start, long end) {
+		RedisConnection conn = factory.getConnection(info.getId(), info.getDb());
+		try{
+			return conn.getRange(key, start, end);
+		}finally{
+			conn.close();
 		}
 	}
 
 	public <K, V> RedisTemplate<K, V> getTemplate(RedisInfo<K, V> info) {
-		// selectDb(info);
 		// resetSerialize(info);
-		// return factory.getTemplate(info.getId());
+		// return factory.getTemplate(info.getId(), info.getDb());
 		return null;
 	}
 
@@ -0,0 +1,36 @@
+package com.wedis.redis.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import com.alibaba.fastjson.JSON;
+
+public class BatchDecoderTest {
+
+	@Test
+	public void decodeAll() throws Exception {
+		byte[] good = new JdkSerializationRedisSerializer().serialize(new JdkConvertBean());
+		byte[] bad = Arrays.copyOf(good, good.length / 2);
+		List<byte[]> page = new ArrayList<>();
+		for(int i = 0; i < 200; i++){
+			page.add(i % 50 == 7 ? bad : i % 50 == 8 ? null : good);
+		}
+		BatchResult result = new BatchDecoder(new JdkDeserializingConverter(), 4).decodeAll(page);
+		// 截断的值只在自己的位置返回错误，不影响其他值
+		assertEquals(4, result.getFailed());
+		assertNotNull(result.getError(7));
+		assertNull(result.getValue(8));
+		assertNull(result.getError(8));
+		assertEquals(JSON.toJSONString(result.getValue(0)), JSON.toJSONString(result.getValue(199)));
+		assertTrue(result.getMaxNanos() <= result.getElapsedNanos());
+	}
+}
@@ -0,0 +1,183 @@
+package com.wedis.redis.decoder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import com.wedis.base.enums.SerializeType;
+
+public class ValueDecoderRegistryTest {
+
+	private final ValueDecoderRegistry registry = ValueDecoderRegistry.getDefault();
+
+	private SerializeType detect(byte[] value) {
+		return registry.detect(value).getType();
+	}
+
+	private static byte[] utf8(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] bytes(int... values) {
+		byte[] b = new byte[values.length];
+		for(int i = 0; i < values.length; i++){
+			b[i] = (byte)values[i];
+		}
+		return b;
+	}
+
+	@Test
+	public void detectFormats() throws Exception {
+		ByteArrayOutputStream jdk = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(jdk)){
+			out.writeObject(Arrays.asList("a", 1));
+		}
+		assertEquals(SerializeType.JDK, detect(jdk.toByteArray()));
+		assertEquals(SerializeType.GZIP, detect(gzip(utf8("{\"a\":1}"))));
+		assertEquals(SerializeType.ZLIB, detect(zlib(utf8("text"))));
+		assertEquals(SerializeType.LZ4, detect(LZ4_JSON));
+		assertEquals(SerializeType.SNAPPY, detect(SNAPPY_FRAMED));
+		assertEquals(SerializeType.SNAPPY, detect(SNAPPY_XERIAL));
+		assertEquals(SerializeType.JSON, detect(utf8("  {\"name\":\"值\"}")));
+		assertEquals(SerializeType.JSON, detect(utf8("[1,2]")));
+		// 缩进的json和只检查开头的全空白值
+		char[] indent = new char[40];
+		Arrays.fill(indent, ' ');
+		assertEquals(SerializeType.JSON, detect(utf8("{\n" + new String(indent) + "\"a\":1}")));
+		byte[] blank = new byte[1 << 20];
+		Arrays.fill(blank, (byte)' ');
+		assertEquals(SerializeType.STRING, detect(blank));
+		// fixmap {"a":1}
+		assertEquals(SerializeType.MSGPACK, detect(bytes(0x81, 0xA1, 'a', 0x01)));
+		// 类定义C + 长度10的类名
+		assertEquals(SerializeType.HESSIAN2, detect(utf8("C\ncom.a.User\u0091")));
+		// field 1 = 150, field 2 = "ab"
+		assertEquals(SerializeType.PROTOBUF, detect(bytes(0x08, 0x96, 0x01, 0x12, 0x02, 'a', 'b')));
+		assertEquals(SerializeType.STRING, detect(utf8("Hello, 中文")));
+		assertEquals(SerializeType.STRING, detect(utf8("{not json")));
+		assertEquals(SerializeType.STRING, detect(new byte[0]));
+		assertEquals(SerializeType.BYTES, detect(bytes(0x00, 0xFF, 0x10)));
+		// 长度超出范围的protobuf不能识别
+		assertEquals(SerializeType.BYTES, detect(bytes(0x0A, 0x7F, 'a')));
+	}
+
+	@Test
+	public void decodeNested() throws Exception {
+		Object value = registry.decode(gzip(utf8("{\"a\":1,\"@type\":\"java.lang.Thread\"}")));
+		// @type只作为普通的key
+		assertEquals("java.lang.Thread", ((Map<?, ?>)value).get("@type"));
+		assertEquals("text", registry.decode(zlib(utf8("text"))));
+	}
+
+	@Test
+	public void decodeStreaming() throws Exception {
+		assertEquals("xyzxyzxyzxyz", ((Map<?, ?>)registry.decode(LZ4_JSON)).get("a"));
+		assertEquals("hello hello hello hello", registry.decode(SNAPPY_FRAMED));
+		assertEquals("hello hello hello hello", registry.decode(SNAPPY_XERIAL));
+		// gzip中的jdk序列化值直接从解压流中反序列化
+		ByteArrayOutputStream jdk = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(jdk)){
+			out.writeObject(Arrays.asList("a", 1));
+		}
+		assertEquals(Arrays.asList("a", 1), registry.decode(gzip(gzip(jdk.toByteArray()))));
+	}
+
+	/**
+	 * lz4/linked-frames.lz4由liblz4 1.9.4(lz4命令行使用的库)压缩lz4Json()得到，两个frame连在一起：
+	 * 前150000字节是64K的相互引用的block，共3个，后两个引用前一个block中的数据，带content checksum；
+	 * 其余是256K的block，带block checksum和content size
+	 */
+	@Test
+	public void decodeLz4Frames() throws Exception {
+		byte[] value = readResource("lz4/linked-frames.lz4");
+		byte[] json = lz4Json();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try(InputStream in = new Lz4FrameInputStream(new ByteArrayInputStream(value))){
+			byte[] buf = new byte[1000];
+			for(int n; (n = in.read(buf, 0, buf.length)) > 0;){
+				out.write(buf, 0, n);
+			}
+		}
+		assertArrayEquals(json, out.toByteArray());
+		assertEquals(SerializeType.LZ4, detect(value));
+		List<?> items = (List<?>)((Map<?, ?>)registry.decode(value)).get("items");
+		assertEquals(LZ4_ITEMS, items.size());
+		assertEquals("item-" + (LZ4_ITEMS - 1), ((Map<?, ?>)items.get(LZ4_ITEMS - 1)).get("name"));
+	}
+
+	private static final int LZ4_ITEMS = 6000;
+
+	private static byte[] lz4Json() {
+		StringBuilder sb = new StringBuilder("{\"items\":[");
+		for(int i = 0; i < LZ4_ITEMS; i++){
+			if(i > 0)
+				sb.append(',');
+			sb.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i).append("\"}");
+		}
+		return utf8(sb.append("]}").toString());
+	}
+
+	private static byte[] readResource(String name) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try(InputStream in = ValueDecoderRegistryTest.class.getClassLoader().getResourceAsStream(name)){
+			byte[] buf = new byte[8192];
+			for(int n; (n = in.read(buf)) > 0;){
+				out.write(buf, 0, n);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/** 一个block: 9个literal {"a":"xyz，offset 3长度9的match，2个literal "} */
+	private static final byte[] LZ4_JSON = bytes(0x04, 0x22, 0x4D, 0x18, 0x60, 0x40, 0x82,
+		0x0F, 0x00, 0x00, 0x00,
+		0x95, '{', '"', 'a', '"', ':', '"', 'x', 'y', 'z', 0x03, 0x00, 0x20, '"', '}',
+		0x00, 0x00, 0x00, 0x00);
+
+	/** 长度23，6个literal "hello "，offset 6长度17的copy */
+	private static final byte[] SNAPPY_BLOCK = bytes(0x17, 0x14, 'h', 'e', 'l', 'l', 'o', ' ', 0x42,
+		0x06, 0x00);
+
+	private static final byte[] SNAPPY_FRAMED = concat(
+		bytes(0xFF, 0x06, 0x00, 0x00, 's', 'N', 'a', 'P', 'p', 'Y', 0x00, 0x0F, 0x00, 0x00, 0, 0, 0, 0),
+		SNAPPY_BLOCK);
+
+	private static final byte[] SNAPPY_XERIAL = concat(
+		bytes(0x82, 'S', 'N', 'A', 'P', 'P', 'Y', 0x00, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 0x0B),
+		SNAPPY_BLOCK);
+
+	private static byte[] concat(byte[] a, byte[] b) {
+		byte[] c = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, c, a.length, b.length);
+		return c;
+	}
+
+	private static byte[] gzip(byte[] b) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(GZIPOutputStream out = new GZIPOutputStream(bos)){
+			out.write(b);
+		}
+		return bos.toByteArray();
+	}
+
+	private static byte[] zlib(byte[] b) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(DeflaterOutputStream out = new DeflaterOutputStream(bos)){
+			out.write(b);
+		}
+		return bos.toByteArray();
+	}
+}
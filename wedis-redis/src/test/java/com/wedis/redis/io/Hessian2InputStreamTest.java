@@ -0,0 +1,82 @@
+package com.wedis.redis.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class Hessian2InputStreamTest {
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	private Hessian2InputStreamTest write(int... bytes) {
+		for(int b : bytes){
+			out.write(b);
+		}
+		return this;
+	}
+
+	/** 长度小于32的字符串，长度是字符个数 */
+	private Hessian2InputStreamTest str(String s) {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.write(s.length());
+		out.write(b, 0, b.length);
+		return this;
+	}
+
+	private Object read() throws Exception {
+		return new Hessian2InputStream(out.toByteArray()).readObject();
+	}
+
+	@Test
+	public void classlessObjects() throws Exception {
+		// 类定义com.a.User(name, age)之后是两个元素的list，第二个元素引用第一个对象
+		write('C').str("com.a.User").write(0x92).str("name").str("age");
+		write(0x7A, 0x60).str("jim").write(0xA0, 'Q', 0x91);
+		byte[] bytes = out.toByteArray();
+
+		List<?> list = (List<?>)read();
+		Map<?, ?> user = (Map<?, ?>)list.get(0);
+		assertEquals("jim", user.get("name"));
+		assertEquals(16, user.get("age"));
+		assertSame(user, list.get(1));
+
+		// 'C'之后21个字节的类定义已经放入缓存，再次读取时直接使用
+		assertNotNull(Hessian2ClassDefCache.get(bytes, 1, 21));
+		assertEquals(list.toString(), new Hessian2InputStream(bytes).readObject().toString());
+	}
+
+	@Test
+	public void scalars() throws Exception {
+		// 'H' 0x02 0x00消息头，之后是以'Z'结束的untyped list
+		write('H', 0x02, 0x00, 'W');
+		write(0xE5); // long 5
+		write(0x5D, 0xFE); // double -2.0
+		write('J', 0, 0, 0x01, 0x5E, 0x67, 0x8C, 0x9C, 0x00); // date
+		write('R', 0x00, 0x02, 'a', 'b').str("c"); // 分块的字符串
+		str("中文");
+		write(0x23, 1, 2, 3); // binary
+		write('H').str("k").write('N', 'Z'); // map
+		write('C').str("java.math.BigDecimal").write(0x91).str("value").write(0x60).str("1.50");
+		write('Z');
+
+		List<?> list = (List<?>)read();
+		assertEquals(5L, list.get(0));
+		assertEquals(-2.0D, list.get(1));
+		assertEquals(new Date(0x015E678C9C00L), list.get(2));
+		assertEquals("abc", list.get(3));
+		assertEquals("中文", list.get(4));
+		assertEquals(Arrays.toString(new byte[]{1, 2, 3}), Arrays.toString((byte[])list.get(5)));
+		assertEquals(true, ((Map<?, ?>)list.get(6)).containsKey("k"));
+		assertEquals(new BigDecimal("1.50"), list.get(7));
+	}
+}
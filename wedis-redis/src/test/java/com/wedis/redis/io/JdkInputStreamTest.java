@@ -0,0 +1,864 @@
+package com.wedis.redis.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+public class JdkInputStreamTest {
+
+	static byte[] serialize(Object obj) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(obj);
+		oos.close();
+		return baos.toByteArray();
+	}
+
+	static String readStream(byte[] bytes) throws Exception {
+		return JSON.toJSONString(new JdkInputStream(new ByteArrayInputStream(bytes)).readObject());
+	}
+
+	@Test
+	public void arrayModeSameAsStream() throws Exception {
+		byte[] bytes = serialize(new LargeBean(2000));
+		String expected = readStream(bytes);
+		assertTrue(expected.contains("value-1999-值") && expected.contains("item1999"));
+		assertEquals(expected, JSON.toJSONString(new JdkInputStream(bytes).readObject()));
+	}
+
+	@Test
+	public void arrayModeWithOffset() throws Exception {
+		byte[] bytes = serialize(new LargeBean(10));
+		byte[] padded = new byte[bytes.length + 7];
+		System.arraycopy(bytes, 0, padded, 3, bytes.length);
+		String expected = readStream(bytes);
+		assertEquals(expected,
+			JSON.toJSONString(new JdkInputStream(padded, 3, bytes.length).readObject()));
+		assertEquals(expected,
+			JSON.toJSONString(new JdkInputStream(ByteBuffer.wrap(padded, 3, bytes.length)).readObject()));
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes).flip();
+		assertEquals(expected, JSON.toJSONString(new JdkInputStream(direct).readObject()));
+	}
+
+	@Test
+	public void classDescCached() throws Exception {
+		byte[] bytes = serialize(new LargeBean(3));
+		ClassDescCache.DEFAULT.clear();
+		String first = JSON.toJSONString(new JdkInputStream(bytes).readObject());
+		int size = ClassDescCache.DEFAULT.size();
+		assertTrue(size > 0);
+		assertEquals(first, JSON.toJSONString(new JdkInputStream(bytes).readObject()));
+		assertEquals(size, ClassDescCache.DEFAULT.size());
+	}
+
+	@Test
+	public void missingClassLookedUpOnce() throws Exception {
+		// 把流中的类名改成一个不存在的同长度类名
+		byte[] bytes = serialize(new Item("a", 1));
+		String stream = new String(bytes, StandardCharsets.ISO_8859_1)
+			.replace("com.wedis.redis.io.Item", "com.wedis.redis.io.Itex");
+		bytes = stream.getBytes(StandardCharsets.ISO_8859_1);
+
+		ClassDescCache.DEFAULT.clear();
+		ClassMissCache.clear();
+		long misses = ClassMissCache.misses();
+		Object obj = new JdkInputStream(bytes).readObject();
+		assertTrue(obj instanceof HashMap);
+		assertEquals("a", ((Map<?, ?>)obj).get("name"));
+		assertEquals(misses + 1, ClassMissCache.misses());
+
+		ClassDescCache.DEFAULT.clear();
+		long hits = ClassMissCache.hits();
+		new JdkInputStream(bytes).readObject();
+		assertEquals(misses + 1, ClassMissCache.misses());
+		assertEquals(hits + 1, ClassMissCache.hits());
+	}
+
+	@Test
+	public void visitAsJson() throws Exception {
+		LargeBean bean = new LargeBean(3);
+		StringWriter out = new StringWriter();
+		new JdkInputStream(serialize(new Object[]{bean, bean})).accept(new JsonStreamWriter(out));
+
+		JSONArray json = JSON.parseArray(out.toString());
+		JSONObject obj = json.getJSONObject(0);
+		assertEquals(LargeBean.class.getName(), obj.getString("@class"));
+		assertEquals(bean.getText(), obj.getString("text"));
+		assertEquals(62, obj.getJSONArray("ints").getIntValue(2));
+		assertEquals(0.5F, obj.getFloatValue("rate"), 0);
+		// ArrayList输出为元素的数组
+		JSONArray items = obj.getJSONArray("items");
+		assertEquals(3, items.size());
+		assertEquals("item2", items.getJSONObject(2).getString("name"));
+		assertEquals(obj.getIntValue("@id"), json.getJSONObject(1).getIntValue("@ref"));
+	}
+
+	@Test
+	public void visitCollectionsAsJson() throws Exception {
+		Date date = new Date(1500000000000L);
+		Map<Object, Object> hash = new HashMap<>();
+		hash.put("created", date);
+		hash.put(7, new BigDecimal("-12.50"));
+		hash.put(null, BigInteger.TEN);
+		hash.put(Level.HIGH, new ArrayList<>(Arrays.asList("a", 1L)));
+		Map<Object, Object> linked = new LinkedHashMap<>();
+		linked.put(new Item("jim", 1), "object key");
+		linked.put(date, 'c');
+		TreeSet<String> sorted = new TreeSet<>(Collections.reverseOrder());
+		sorted.addAll(Arrays.asList("m", "n", "o"));
+		Map<String, Object> concurrent = new ConcurrentHashMap<>(Collections.singletonMap("k", "v"));
+		Object[] value = { hash, linked, sorted, concurrent, new LinkedList<>(Collections.singleton(hash)) };
+		StringWriter out = new StringWriter();
+		new JdkInputStream(serialize(value)).accept(new JsonStreamWriter(out));
+
+		JSONArray json = JSON.parseArray(out.toString());
+		// map类输出为以key的字符串形式为字段名的对象，不输出loadFactor等字段
+		JSONObject map = json.getJSONObject(0);
+		assertEquals(4, map.size());
+		assertEquals(1500000000000L, map.getLongValue("created"));
+		assertEquals(new BigDecimal("-12.50"), map.getBigDecimal("7"));
+		assertEquals(10, map.getIntValue("null"));
+		assertEquals("[\"a\",1]", map.getJSONArray("HIGH").toJSONString());
+		// 对象作为key时为它的json
+		JSONObject objectKeys = json.getJSONObject(1);
+		String itemKey = objectKeys.keySet().stream().filter(k -> k.startsWith("{")).findFirst().get();
+		assertEquals("jim", JSON.parseObject(itemKey).getString("name"));
+		assertEquals("object key", objectKeys.getString(itemKey));
+		assertEquals("c", objectKeys.getString("1500000000000"));
+		// TreeSet不输出比较器，ConcurrentHashMap不输出结尾的null
+		assertEquals("[\"o\",\"n\",\"m\"]", json.getJSONArray(2).toJSONString());
+		assertEquals("{\"k\":\"v\"}", json.getJSONObject(3).toJSONString());
+		// 引用已经输出过的map时再输出一次
+		assertEquals(1, json.getJSONArray(4).size());
+		assertEquals(map, json.getJSONArray(4).getJSONObject(0));
+
+		// 预览时只输出前面的key和value，截断标记只有一个
+		Map<String, Integer> large = new LinkedHashMap<>();
+		for(int i = 0; i < 100; i++){
+			large.put("k" + i, i);
+		}
+		byte[] bytes = serialize(large);
+		String preview = preview(bytes, new VisitLimit(10, 8, 64, bytes.length));
+		assertEquals("{\"k0\":0,\"k1\":1,\"k2\":2,\"k3\":3,\"k4\":4,\"@truncated\":-1}", preview);
+		preview = preview(Arrays.copyOf(bytes, 400), new VisitLimit(1000, 8, 64, 400));
+		JSONObject prefix = JSON.parseObject(preview);
+		assertEquals(-1, prefix.getIntValue("@truncated"));
+		assertEquals(12, prefix.getIntValue("k12"));
+	}
+
+	@Test
+	public void visitSharedCollections() throws Exception {
+		List<Object> list = new ArrayList<>(Arrays.asList("a", new Item("jim", 1)));
+		Map<String, Object> map = new HashMap<>();
+		map.put("list", list);
+		int[] ints = { 1, 2 };
+		List<Object> cyclic = new ArrayList<>();
+		cyclic.add(cyclic);
+		Object[] value = { map, list, map, ints, ints, cyclic };
+		StringWriter out = new StringWriter();
+		new JdkInputStream(serialize(value)).accept(new JsonStreamWriter(out));
+
+		// map类、集合类和数组没有@id，之后的引用输出同样的内容
+		JSONArray json = JSON.parseArray(out.toString());
+		assertEquals(json.getJSONObject(0), json.getJSONObject(2));
+		assertEquals(json.getJSONObject(0).getJSONArray("list"), json.getJSONArray(1));
+		assertEquals("jim", json.getJSONArray(1).getJSONObject(1).getString("name"));
+		assertEquals("[1,2]", json.getJSONArray(4).toJSONString());
+		// 还没有结束的值被引用时以截断标记输出
+		assertEquals(-1, json.getJSONArray(5).getJSONObject(0).getIntValue("@truncated"));
+	}
+
+	@Test
+	public void visitSharedWithinRecordBudget() throws Exception {
+		List<Object> lists = new ArrayList<>();
+		for(int i = 0; i < 200; i++){
+			List<Object> list = new ArrayList<>();
+			for(int j = 0; j < 20; j++){
+				list.add("v" + i + "-" + j);
+			}
+			lists.add(list);
+		}
+		long[] longs = new long[1000];
+		Arrays.fill(longs, Long.MAX_VALUE);
+		Object[] value = { lists, new ArrayList<>(lists), longs, longs };
+		byte[] bytes = serialize(value);
+		StringWriter out = new StringWriter();
+		new JdkInputStream(bytes).accept(new JsonStreamWriter(out, 1024));
+
+		// 记录的json只保留最近的1024个字符，移除的值和基本类型的数组被引用时重新读取输出
+		JSONArray json = JSON.parseArray(out.toString());
+		assertEquals(json.getJSONArray(0), json.getJSONArray(1));
+		assertEquals("v199-19", json.getJSONArray(1).getJSONArray(199).getString(19));
+		assertEquals(json.getJSONArray(2), json.getJSONArray(3));
+		assertEquals(1000, json.getJSONArray(3).size());
+
+		// 预览时不能重新读取，没有记录的值以截断标记输出，最近记录的值仍完整输出
+		out = new StringWriter();
+		JdkInputStream in = new JdkInputStream(bytes);
+		in.setVisitLimit(new VisitLimit(1000, 8, 64, bytes.length));
+		in.accept(new JsonStreamWriter(out, 1024));
+		json = JSON.parseArray(out.toString());
+		JSONArray again = json.getJSONArray(1);
+		assertEquals(-1, again.getJSONObject(0).getIntValue("@truncated"));
+		assertEquals(json.getJSONArray(0).getJSONArray(199), again.getJSONArray(199));
+		assertEquals(-1, json.getJSONObject(3).getIntValue("@truncated"));
+	}
+
+	@Test
+	public void visitSharedLongString() throws Exception {
+		char[] chars = new char[5000];
+		Arrays.fill(chars, 'x');
+		String s = new String(chars);
+		byte[] bytes = serialize(new Object[]{ s, s });
+		StringWriter out = new StringWriter();
+		new JdkInputStream(bytes).accept(new JsonStreamWriter(out));
+
+		// 完整输出时长字符串的引用输出同样的字符串
+		JSONArray json = JSON.parseArray(out.toString());
+		assertEquals(s, json.getString(0));
+		assertEquals(s, json.getString(1));
+		// 预览时截断过的字符串的引用同样输出截断标记
+		json = JSON.parseArray(preview(bytes, new VisitLimit(10, 8, 64, bytes.length)));
+		assertEquals(json.getJSONObject(0), json.getJSONObject(1));
+		assertEquals(4936, json.getJSONObject(1).getLongValue("@truncated"));
+		// 预览时没有截断的长字符串被引用时只输出前面的部分
+		json = JSON.parseArray(preview(bytes, new VisitLimit(10, 8, 8192, bytes.length)));
+		assertEquals(s, json.getString(0));
+		assertEquals(s.substring(0, 1024), json.getJSONObject(1).getString("@value"));
+		assertEquals(5000 - 1024, json.getJSONObject(1).getLongValue("@truncated"));
+	}
+
+	@Test
+	public void visitPrimitiveArrays() throws Exception {
+		int[] ints = new int[3000];
+		for(int i = 0; i < ints.length; i++){
+			ints[i] = i % 2 == 0 ? -i : i;
+		}
+		Object[] arrays = { ints, new long[]{ Long.MIN_VALUE, 0, Long.MAX_VALUE }, new double[]{ 1.5, Double.NaN },
+			new float[]{ -0.25F }, new byte[]{ -128, 127 }, new short[]{ -7 }, new boolean[]{ true, false },
+			new char[]{ 'a', '"' } };
+		StringWriter out = new StringWriter();
+		new JdkInputStream(serialize(arrays)).accept(new JsonStreamWriter(out));
+
+		JSONArray json = JSON.parseArray(out.toString());
+		JSONArray decodedInts = json.getJSONArray(0);
+		assertEquals(ints.length, decodedInts.size());
+		assertEquals(-2998, decodedInts.getIntValue(2998));
+		assertEquals(2999, decodedInts.getIntValue(2999));
+		assertEquals("[-9223372036854775808,0,9223372036854775807]", json.getJSONArray(1).toJSONString());
+		assertEquals("NaN", json.getJSONArray(2).getString(1));
+		assertEquals(-0.25F, json.getJSONArray(3).getFloatValue(0), 0);
+		assertEquals("[-128,127]", json.getJSONArray(4).toJSONString());
+		assertEquals("[-7]", json.getJSONArray(5).toJSONString());
+		assertEquals("[true,false]", json.getJSONArray(6).toJSONString());
+		assertEquals("[\"a\",\"\\\"\"]", json.getJSONArray(7).toJSONString());
+	}
+
+	static String preview(byte[] bytes, VisitLimit limit) throws IOException {
+		StringWriter out = new StringWriter();
+		JdkInputStream in = new JdkInputStream(bytes);
+		in.setVisitLimit(limit);
+		in.accept(new JsonStreamWriter(out));
+		return out.toString();
+	}
+
+	@Test
+	public void previewElements() throws Exception {
+		byte[] bytes = serialize(new LargeBean(5000));
+		JSONObject obj = JSON.parseObject(preview(bytes, new VisitLimit(10, 8, 64, bytes.length)));
+
+		JSONArray ints = obj.getJSONArray("ints");
+		assertEquals(11, ints.size());
+		assertEquals(31 * 9, ints.getIntValue(9));
+		assertEquals(4990, ints.getJSONObject(10).getLongValue("@truncated"));
+		JSONArray items = obj.getJSONArray("items");
+		assertEquals(11, items.size());
+		assertEquals(-1, items.getJSONObject(10).getLongValue("@truncated"));
+		// 不会截断在多字节字符中间
+		JSONObject text = obj.getJSONObject("text");
+		assertEquals("value-0-值value-1-值value-2-值value-3-值value-4-值value-5-",
+			text.getString("@value"));
+		assertTrue(text.getLongValue("@truncated") > 0);
+		assertEquals(0.5F, obj.getFloatValue("rate"), 0);
+	}
+
+	@Test
+	public void previewDepth() throws Exception {
+		JSONObject obj = JSON
+			.parseObject(preview(serialize(new LargeBean(3)), new VisitLimit(100, 1, 1024, 1 << 20)));
+		assertEquals("[{\"@truncated\":-1}]", obj.getJSONArray("items").toJSONString());
+		assertEquals(3, obj.getJSONArray("ints").getJSONObject(0).getLongValue("@truncated"));
+		assertEquals("value-0-值value-1-值value-2-值", obj.getString("text"));
+	}
+
+	@Test
+	public void previewPrefix() throws Exception {
+		byte[] bytes = serialize(new Object[]{new LargeBean(2000), "tail"});
+		// 只取前面一部分字节，与从redis用GETRANGE取值的结果相同
+		byte[] prefix = Arrays.copyOf(bytes, 20000);
+		JSONArray json = JSON
+			.parseArray(preview(prefix, new VisitLimit(100000, 8, 100000, prefix.length)));
+		assertEquals(2, json.size());
+		assertEquals(-1, json.getJSONObject(1).getLongValue("@truncated"));
+		assertEquals(-1, json.getJSONObject(0).getLongValue("@truncated"));
+		assertEquals(2000, json.getJSONObject(0).getJSONArray("ints").size());
+	}
+
+	@Test
+	public void primitiveFields() throws Exception {
+		Prims p = (Prims)new JdkInputStream(serialize(new Prims(-7))).readObject();
+		assertEquals(true, p.z);
+		assertEquals(-7, p.b);
+		assertEquals('\uFFF9', p.c);
+		assertEquals(-7, p.s);
+		assertEquals(-7, p.i);
+		assertEquals(-3.5F, p.f, 0);
+		assertEquals(-7000000049L, p.j);
+		assertEquals(-1.75, p.d, 0);
+		assertEquals("p-7", p.name);
+	}
+
+	@Test
+	public void primitiveArrays() throws Exception {
+		int n = 3001;
+		char[] chars = new char[n];
+		short[] shorts = new short[n];
+		int[] ints = new int[n];
+		float[] floats = new float[n];
+		long[] longs = new long[n];
+		double[] doubles = new double[n];
+		for(int i = 0; i < n; i++){
+			chars[i] = (char)(i * 40503);
+			shorts[i] = (short)(-i * 7);
+			ints[i] = i * -1640531527;
+			floats[i] = i == 0 ? Float.NaN : i * -0.75F;
+			longs[i] = i * -7046029254386353131L;
+			doubles[i] = i == 0 ? Double.NEGATIVE_INFINITY : i / 3.0;
+		}
+		byte[] bytes = serialize(new Object[]{chars, shorts, ints, floats, longs, doubles});
+		Object[] fromArray = (Object[])new JdkInputStream(bytes).readObject();
+		Object[] fromStream = (Object[])new JdkInputStream(new ByteArrayInputStream(bytes))
+			.readObject();
+		for(Object[] arrays : Arrays.asList(fromArray, fromStream)){
+			assertTrue(Arrays.equals(chars, (char[])arrays[0]));
+			assertTrue(Arrays.equals(shorts, (short[])arrays[1]));
+			assertTrue(Arrays.equals(ints, (int[])arrays[2]));
+			assertTrue(Arrays.equals(floats, (float[])arrays[3]));
+			assertTrue(Arrays.equals(longs, (long[])arrays[4]));
+			assertTrue(Arrays.equals(doubles, (double[])arrays[5]));
+		}
+	}
+
+	@Test
+	public void forgedArrayLength() throws Exception {
+		// 数组长度改为超出值本身的大小，长度乘以元素大小超出int范围
+		Object[][] cases = { { new int[]{ 1, 2 }, 0x20000001 }, { new long[]{ 3 }, 0x10000001 },
+			{ new char[]{ 'a' }, 0x7FFFFFFF } };
+		for(Object[] c : cases){
+			byte[] bytes = serialize(c[0]);
+			int data = java.lang.reflect.Array.getLength(c[0]) * primitiveSize(c[0]);
+			ByteBuffer.wrap(bytes).putInt(bytes.length - data - 4, (Integer)c[1]);
+			// 数组模式下不会按伪造的长度分配，也不会读到源数组之外
+			try{
+				new JdkInputStream(bytes).readObject();
+				fail("forged length " + c[1]);
+			}catch(EOFException e){
+				// 与ObjectInputStream相同
+			}
+		}
+	}
+
+	private static int primitiveSize(Object array) {
+		return array instanceof long[] ? 8 : array instanceof int[] ? 4 : 2;
+	}
+
+	@Test
+	public void longString() throws Exception {
+		// 超过65535字节时使用TC_LONGSTRING
+		char[] chars = new char[70000];
+		Arrays.fill(chars, '中');
+		String s = new String(chars);
+		assertEquals(s, new JdkInputStream(serialize(s)).readObject());
+	}
+
+	@Test
+	public void internStrings() throws Exception {
+		Object[] values = new Object[]{new Item("same", 1), new Item("same", 2), new Item("中文", 3)};
+		byte[] bytes = serialize(values);
+		JdkInputStream in = new JdkInputStream(bytes);
+		in.setInternStrings(true);
+		Object[] first = (Object[])in.readObject();
+		in = new JdkInputStream(new ByteArrayInputStream(bytes));
+		in.setInternStrings(true);
+		Object[] second = (Object[])in.readObject();
+		// 两个流中相同的短字符串是同一个对象，非ASCII字符串正常解码
+		assertTrue(((Item)first[0]).getName() == ((Item)second[1]).getName());
+		assertEquals("中文", ((Item)second[2]).getName());
+		assertEquals(JSON.toJSONString(values), JSON.toJSONString(second));
+	}
+
+	@Test
+	public void intrinsicCollections() throws Exception {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("list", new ArrayList<>(Arrays.asList(1, 2L, (short)3, (byte)4, 5.5D, 6.5F, true, 'c')));
+		map.put("linked", new LinkedList<>(Arrays.asList("a", null, "b")));
+		map.put("hash", new HashMap<>(Collections.singletonMap("k", new Date(1500000000000L))));
+		map.put("set", new LinkedHashSet<>(Arrays.asList("x", "y")));
+		map.put("tree", new TreeMap<>(Collections.singletonMap("z", new BigDecimal("-12345678901234567890.125"))));
+		map.put("sorted", new TreeSet<>(Collections.reverseOrder()));
+		((TreeSet<String>)map.get("sorted")).addAll(Arrays.asList("m", "n", "o"));
+		map.put("concurrent", new ConcurrentHashMap<>(Collections.singletonMap(BigInteger.TEN, new HashSet<>())));
+		List<Object> self = new ArrayList<>();
+		self.add(self);
+		byte[] bytes = serialize(new Object[]{map, self});
+
+		long reads = JdkIntrinsic.reads();
+		Object[] result = (Object[])new JdkInputStream(bytes).readObject();
+		assertTrue(JdkIntrinsic.reads() - reads >= 20);
+		Map<?, ?> actual = (Map<?, ?>)result[0];
+		assertEquals(map.getClass(), actual.getClass());
+		assertEquals(String.valueOf(map), String.valueOf(actual));
+		for(Map.Entry<String, Object> e : map.entrySet()){
+			assertEquals(e.getValue().getClass(), actual.get(e.getKey()).getClass());
+		}
+		// 不调用readResolve，比较器不是单例，但顺序相同
+		assertEquals(Collections.reverseOrder().getClass(), ((TreeSet<?>)actual.get("sorted")).comparator().getClass());
+		assertEquals("[o, n, m]", actual.get("sorted").toString());
+		List<?> list = (List<?>)result[1];
+		assertTrue(list.get(0) == list);
+		Object expected = new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+		assertEquals(JSON.toJSONString(expected), JSON.toJSONString(result));
+	}
+
+	@Test
+	public void intrinsicAccessOrderAndMissingComparator() throws Exception {
+		Map<String, Object> lru = new LinkedHashMap<>(16, 0.75F, true);
+		lru.put("self", lru);
+		lru.put("a", 1);
+		lru.put("b", 2);
+		Map<?, ?> actual = (Map<?, ?>)new JdkInputStream(serialize(lru)).readObject();
+		// 元素中对自身的引用指向返回的map，get之后按访问顺序
+		assertTrue(actual.get("self") == actual);
+		assertEquals(Arrays.asList("a", "b", "self"), new ArrayList<>(actual.keySet()));
+
+		TreeMap<String, Integer> tree = new TreeMap<>(new Descending());
+		tree.put("a", 1);
+		tree.put("c", 3);
+		tree.put("b", 2);
+		TreeSet<String> set = new TreeSet<>(new Descending());
+		set.addAll(tree.keySet());
+		byte[] bytes = JdkOutputStreamTest.rename(serialize(new Object[]{ tree, set }), "com.wedis.redis.io.Descending",
+			"com.wedis.redis.io.Descendinx");
+		Object[] result = (Object[])new JdkInputStream(bytes).readObject();
+		// 比较器的类不存在时按流中的顺序，仍能查找
+		Map<?, ?> map = (Map<?, ?>)result[0];
+		assertEquals(LinkedHashMap.class, map.getClass());
+		assertEquals(Arrays.asList("c", "b", "a"), new ArrayList<>(map.keySet()));
+		assertEquals(1, map.get("a"));
+		assertEquals(LinkedHashSet.class, result[1].getClass());
+		assertTrue(((Set<?>)result[1]).contains("a"));
+	}
+
+	@Test
+	public void projectFieldPaths() throws Exception {
+		Map<String, Object> attributes = new HashMap<>();
+		Item user = new Item("jim", 42);
+		attributes.put("user", user);
+		attributes.put("roles", new ArrayList<>(Arrays.asList("admin", "ops")));
+		attributes.put("blob", new LargeBean(1000));
+		Map<String, Object> session = new LinkedHashMap<>();
+		session.put("attributes", attributes);
+		session.put("owner", user);
+		session.put("expireAt", 1500000000000L);
+		session.put("amount", new BigDecimal("-12.50"));
+		byte[] bytes = serialize(session);
+
+		JdkInputStream in = new JdkInputStream(bytes);
+		Map<String, Object> values = in.project("attributes.user.index", "expireAt", "attributes.roles.1",
+			"attributes.user", "owner", "attributes.blob.ints.2", "attributes.missing");
+		assertEquals(42, values.get("attributes.user.index"));
+		assertEquals(1500000000000L, values.get("expireAt"));
+		assertEquals(new BigDecimal("-12.50"), new JdkInputStream(bytes).project("amount").get("amount"));
+		assertEquals("ops", values.get("attributes.roles.1"));
+		assertEquals("jim", ((Map<?, ?>)values.get("attributes.user")).get("name"));
+		// owner是对attributes.user的引用，指向已经创建出的值
+		assertTrue(values.get("owner") == values.get("attributes.user"));
+		assertEquals(62, values.get("attributes.blob.ints.2"));
+		assertTrue(!values.containsKey("attributes.missing"));
+		assertEquals(Arrays.asList("attributes.user.index", "expireAt", "attributes.roles.1", "attributes.user",
+			"owner", "attributes.blob.ints.2"), new ArrayList<>(values.keySet()));
+
+		// 空的path为整个值
+		Map<?, ?> whole = (Map<?, ?>)new JdkInputStream(bytes).project("").get("");
+		assertEquals("admin", ((List<?>)((Map<?, ?>)whole.get("attributes")).get("roles")).get(0));
+	}
+
+	@Test
+	public void projectReferenceIntoSkipped() throws Exception {
+		Item user = new Item("jim", 42);
+		String status = new String("CANCELLED");
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put("user", user);
+		attributes.put("status", status);
+		attributes.put("level", Level.HIGH);
+		Map<String, Object> session = new LinkedHashMap<>();
+		session.put("attributes", attributes);
+		session.put("owner", user);
+		session.put("status", status);
+		session.put("level", Level.HIGH);
+		byte[] bytes = serialize(session);
+
+		// attributes被跳过，之后对其中的值的引用从源数组中重新读取
+		Map<String, Object> values = new JdkInputStream(bytes).project("owner.index", "status", "level");
+		assertEquals(42, values.get("owner.index"));
+		assertEquals("CANCELLED", values.get("status"));
+		assertEquals("HIGH", values.get("level"));
+		values = new JdkInputStream(bytes).project("owner", "owner.name");
+		assertEquals("jim", ((Map<?, ?>)values.get("owner")).get("name"));
+		assertEquals("jim", values.get("owner.name"));
+
+		// 没有输出的TreeSet比较器被引用时输出一次
+		TreeSet<String> sorted = new TreeSet<>(new Descending());
+		sorted.add("a");
+		StringWriter out = new StringWriter();
+		new JdkInputStream(serialize(new Object[]{ sorted, sorted.comparator() })).accept(new JsonStreamWriter(out));
+		JSONArray json = JSON.parseArray(out.toString());
+		assertEquals("[\"a\"]", json.getJSONArray(0).toJSONString());
+		assertEquals(Descending.class.getName(), json.getJSONObject(1).getString("@class"));
+	}
+
+	@Test
+	public void projectIntrinsicValues() throws Exception {
+		Date created = new Date(1500000000000L);
+		Map<String, Object> order = new HashMap<>();
+		order.put("created", created);
+		order.put("price", new BigDecimal("99.90"));
+		order.put("count", BigInteger.ONE.shiftLeft(70));
+		Map<String, Object> session = new LinkedHashMap<>();
+		session.put("order", order);
+		// 对同一个Date的引用也是值本身
+		session.put("updated", created);
+		session.put("boxed", new ArrayList<>(Arrays.asList(7L, 'c')));
+		byte[] bytes = serialize(session);
+
+		Map<String, Object> values = new JdkInputStream(bytes).project("order.created", "order.price", "order.count",
+			"updated", "boxed");
+		assertEquals(created, values.get("order.created"));
+		assertEquals(new BigDecimal("99.90"), values.get("order.price"));
+		assertEquals(BigInteger.ONE.shiftLeft(70), values.get("order.count"));
+		assertEquals(created, values.get("updated"));
+		assertEquals(Arrays.asList(7L, 'c'), values.get("boxed"));
+		// 创建整个map时其中的Date和BigDecimal也是值本身
+		Map<?, ?> whole = (Map<?, ?>)new JdkInputStream(bytes).project("order").get("order");
+		assertEquals(order, whole);
+	}
+
+	@Test
+	public void pooledReuse() throws Exception {
+		byte[] large = serialize(new LargeBean(300));
+		byte[] small = serialize(new Item("small", 1));
+		JdkInputStream in = JdkInputStreamPool.acquire(large);
+		assertEquals(readStream(large), JSON.toJSONString(in.readObject()));
+		int capacity = in.handleCapacity();
+		JdkInputStreamPool.release(in);
+		// 同一个线程取回同一个实例，handle表保留扩容后的容量
+		JdkInputStream again = JdkInputStreamPool.acquire(small);
+		assertTrue(again == in);
+		assertEquals(capacity, again.handleCapacity());
+		assertEquals(readStream(small), JSON.toJSONString(again.readObject()));
+		again.reset(large);
+		assertEquals(readStream(large), JSON.toJSONString(again.readObject()));
+		JdkInputStreamPool.release(again);
+	}
+
+	@Test
+	public void decodeWithJarClassLoader() throws Exception {
+		byte[] bytes = serialize(new ArrayList<>(Arrays.asList(new Account("alice", 42), new Account("bob", 7))));
+		URL classes = Account.class.getProtectionDomain().getCodeSource().getLocation();
+		JarClassLoader loader = new JarClassLoader(new URL[]{ classes }, getClass().getClassLoader(), "test");
+		try{
+			JdkInputStream in = JdkInputStreamPool.acquire(bytes);
+			in.setClassLoader(loader);
+			List<?> accounts = (List<?>)in.readObject();
+			JdkInputStreamPool.release(in);
+			// 类由应用的loader加载，字段由类自己的readObject通过readFields读取
+			Object alice = accounts.get(0);
+			assertTrue(alice.getClass().getClassLoader() == loader);
+			assertEquals("alice:42", field(alice, "display"));
+			assertEquals("bob:7", field(accounts.get(1), "display"));
+			int resolved = loader.resolvedSize();
+			assertTrue(resolved > 0);
+
+			// 第二次解码不再查找类
+			in = JdkInputStreamPool.acquire(bytes);
+			in.setClassLoader(loader);
+			Object again = ((List<?>)in.readObject()).get(0);
+			JdkInputStreamPool.release(in);
+			assertTrue(again.getClass() == alice.getClass());
+			assertEquals(resolved, loader.resolvedSize());
+
+			// 放回池中后不再使用应用的loader
+			in = JdkInputStreamPool.acquire(bytes);
+			Object plain = ((List<?>)in.readObject()).get(0);
+			JdkInputStreamPool.release(in);
+			assertTrue(plain.getClass() == Account.class);
+		}finally{
+			loader.retire();
+		}
+		assertTrue(!loader.retain());
+	}
+
+	@Test
+	public void fieldTypeChanged() throws Exception {
+		// 写入时value是Object，本地的类中是String，与jar版本不同时相同
+		byte[] ok = JdkOutputStreamTest.rename(serialize(new Loose("text")), "com.wedis.redis.io.Loose",
+			"com.wedis.redis.io.Tight");
+		assertEquals("text", ((Tight)new JdkInputStream(ok).readObject()).value);
+		byte[] bytes = JdkOutputStreamTest.rename(serialize(new Loose(42)), "com.wedis.redis.io.Loose",
+			"com.wedis.redis.io.Tight");
+		for(ObjectInputStream in : Arrays.asList(new ObjectInputStream(new ByteArrayInputStream(bytes)),
+			new JdkInputStream(bytes))){
+			try{
+				in.readObject();
+				fail("Integer assigned to String field");
+			}catch(ClassCastException e){
+				assertTrue(e.getMessage(), e.getMessage().contains("java.lang.Integer"));
+			}
+		}
+	}
+
+	@Test
+	public void typedEnumClassAndArrayFields() throws Exception {
+		byte[] bytes = serialize(new Order(Level.HIGH, Item.class, new Item[]{ new Item("a", 1) }));
+		URL classes = Order.class.getProtectionDomain().getCodeSource().getLocation();
+		JarClassLoader loader = new JarClassLoader(new URL[]{ classes }, getClass().getClassLoader(), "test");
+		try{
+			JdkInputStream in = JdkInputStreamPool.acquire(bytes);
+			in.setClassLoader(loader);
+			Object order = in.readObject();
+			JdkInputStreamPool.release(in);
+			// 字段的类型有类时解码为真正的枚举常量、Class和数组类型
+			Object level = field(order, "level");
+			assertTrue(level instanceof Enum && level.getClass().getClassLoader() == loader);
+			assertEquals("HIGH", ((Enum<?>)level).name());
+			assertTrue(field(order, "kind") == loader.resolve("com.wedis.redis.io.Item"));
+			assertTrue(field(order, "items").getClass().getComponentType() == loader.resolve("com.wedis.redis.io.Item"));
+		}finally{
+			loader.retire();
+		}
+		// 没有类的枚举读成名称，不能写入枚举字段
+		byte[] missing = JdkOutputStreamTest.rename(bytes, "com.wedis.redis.io.Level", "com.wedis.redis.io.Levex");
+		try{
+			new JdkInputStream(missing).readObject();
+			fail("String assigned to enum field");
+		}catch(ClassCastException e){
+			assertTrue(e.getMessage(), e.getMessage().contains("java.lang.String"));
+		}
+	}
+
+	private static Object field(Object obj, String name) throws ReflectiveOperationException {
+		Field f = obj.getClass().getDeclaredField(name);
+		f.setAccessible(true);
+		return f.get(obj);
+	}
+}
+
+class LargeBean implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private String text;
+	private int[] ints;
+	private long[] longs;
+	private float rate = 0.5F;
+	private List<Item> items = new ArrayList<>();
+
+	LargeBean(int n) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < n; i++){
+			sb.append("value-").append(i).append("-值");
+		}
+		text = sb.toString();
+		ints = new int[n];
+		longs = new long[n];
+		for(int i = 0; i < n; i++){
+			ints[i] = i * 31;
+			longs[i] = i * 1000000007L;
+			items.add(new Item("item" + i, i));
+		}
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public int[] getInts() {
+		return ints;
+	}
+
+	public long[] getLongs() {
+		return longs;
+	}
+
+	public float getRate() {
+		return rate;
+	}
+
+	public List<Item> getItems() {
+		return items;
+	}
+}
+
+class Item implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private String name;
+	private int index;
+
+	Item(String name, int index) {
+		this.name = name;
+		this.index = index;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+}
+
+/**
+ * 用readFields读取字段并注册校验的类
+ */
+class Account implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private String owner;
+	private long balance;
+	private transient String display;
+
+	Account(String owner, long balance) {
+		this.owner = owner;
+		this.balance = balance;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		owner = (String)fields.get("owner", null);
+		balance = fields.get("balance", 0L);
+		display = owner + ":" + balance;
+		in.registerValidation(() -> {
+			if(balance < 0)
+				throw new InvalidObjectException("negative balance");
+		}, 0);
+	}
+}
+
+class Prims implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	double d;
+	long j;
+	String name;
+	float f;
+	int i;
+	short s;
+	char c;
+	byte b;
+	boolean z;
+
+	Prims(int n) {
+		z = n < 0;
+		b = (byte)n;
+		c = (char)n;
+		s = (short)n;
+		i = n;
+		f = n * 0.5F;
+		j = n * 1000000007L;
+		d = n * 0.25;
+		name = "p" + n;
+	}
+}
+
+class Loose implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	final Object value;
+
+	Loose(Object value) {
+		this.value = value;
+	}
+}
+
+class Tight implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	final String value;
+
+	Tight(String value) {
+		this.value = value;
+	}
+}
+
+class Order implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	final Level level;
+	final Class<?> kind;
+	final Item[] items;
+
+	Order(Level level, Class<?> kind, Item[] items) {
+		this.level = level;
+		this.kind = kind;
+		this.items = items;
+	}
+}
+
+class Descending implements Comparator<String>, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public int compare(String a, String b) {
+		return b.compareTo(a);
+	}
+}
@@ -0,0 +1,184 @@
+package com.wedis.redis.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class JdkOutputStreamTest {
+
+	static byte[] write(Object obj) throws IOException {
+		JdkOutputStream out = new JdkOutputStream();
+		out.writeObject(obj);
+		return out.toByteArray();
+	}
+
+	static Object readEditable(byte[] bytes) throws Exception {
+		JdkInputStream in = new JdkInputStream(bytes);
+		in.setEditable(true);
+		return in.readObject();
+	}
+
+	/**
+	 * 同长度地替换流中的类名
+	 */
+	static byte[] rename(byte[] bytes, String from, String to) {
+		return new String(bytes, StandardCharsets.ISO_8859_1).replace(from, to).getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	@Test
+	public void sameAsObjectOutputStream() throws Exception {
+		// writeObject、putFields、枚举常量的子类、Class和超过一块的块数据
+		Object graph = new ArrayList<>(Arrays.asList(new LargeBean(300), TimeUnit.SECONDS, String.class,
+			BigInteger.ONE.shiftLeft(200), new BigDecimal("-12.50"), new Date(1500000000000L), new Prims(7),
+			new Ledger("a", 2000, Level.HIGH)));
+		byte[] bytes = JdkInputStreamTest.serialize(graph);
+		assertArrayEquals(bytes, write(graph));
+		// 有类时可写回模式解码出真正的对象和枚举常量
+		List<?> decoded = (List<?>)readEditable(bytes);
+		assertTrue(decoded.get(1) == TimeUnit.SECONDS && decoded.get(2) == String.class);
+		assertArrayEquals(bytes, write(decoded));
+	}
+
+	@Test
+	public void rewriteClasslessValue() throws Exception {
+		int[] shared = { 1, 2, 3 };
+		Ledger ledger = new Ledger("a", 1500, Level.HIGH);
+		List<Object> value = new ArrayList<>(Arrays.asList(ledger, ledger, new Ledger[]{ ledger, null }, Level.LOW,
+			Ledger.class, shared, shared));
+		byte[] bytes = rename(rename(JdkInputStreamTest.serialize(value), "com.wedis.redis.io.Ledger",
+			"com.wedis.redis.io.Ledgex"), "com.wedis.redis.io.Level", "com.wedis.redis.io.Levex");
+
+		List<?> decoded = (List<?>)readEditable(bytes);
+		JdkObject obj = (JdkObject)decoded.get(0);
+		assertEquals("com.wedis.redis.io.Ledgex", obj.getClassName());
+		assertEquals(7L, obj.getSerialVersionUID());
+		// 子类的name覆盖父类的name，父类的值写回时仍在原来的位置
+		assertEquals("a", obj.get("name"));
+		assertEquals("HIGH", obj.get("level").toString());
+		assertTrue(decoded.get(1) == obj);
+		assertTrue(((JdkArray)decoded.get(2)).get(0) == obj);
+		assertEquals("com.wedis.redis.io.Ledgex", decoded.get(4).toString());
+		assertTrue(decoded.get(5) == decoded.get(6));
+		// 没有修改时与原来的值完全相同
+		assertArrayEquals(bytes, write(decoded));
+
+		// 修改后换回原来的类名，ObjectInputStream可以按真正的类读出
+		obj.put("count", 99L);
+		obj.put("level", ((JdkEnum)obj.get("level")).valueOf("LOW"));
+		byte[] edited = rename(rename(write(decoded), "com.wedis.redis.io.Ledgex", "com.wedis.redis.io.Ledger"),
+			"com.wedis.redis.io.Levex", "com.wedis.redis.io.Level");
+		List<?> restored = (List<?>)new ObjectInputStream(new ByteArrayInputStream(edited)).readObject();
+		Ledger again = (Ledger)restored.get(0);
+		assertEquals(99, again.getCount());
+		assertEquals(Level.LOW, again.getLevel());
+		assertEquals("base-a", again.getName());
+		assertArrayEquals(ledger.getJournal(), again.getJournal());
+		assertTrue(restored.get(1) == again && ((Ledger[])restored.get(2))[0] == again);
+		assertTrue(restored.get(4) == Ledger.class);
+	}
+
+	@Test
+	public void rewriteSortedWithoutComparator() throws Exception {
+		TreeMap<String, Object> map = new TreeMap<>(new Descending());
+		TreeSet<String> set = new TreeSet<>(new Descending());
+		for(String s : Arrays.asList("b", "d", "a", "c")){
+			map.put(s, s.toUpperCase());
+			set.add(s);
+		}
+		List<Object> value = new ArrayList<>(Arrays.asList(map, set, map));
+		byte[] bytes = rename(JdkInputStreamTest.serialize(value), "com.wedis.redis.io.Descending",
+			"com.wedis.redis.io.Descendinx");
+
+		// 比较器的类不存在时不改为LinkedHashMap，保留TreeMap的描述符、比较器和流中的顺序
+		List<?> decoded = (List<?>)readEditable(bytes);
+		JdkObject sortedMap = (JdkObject)decoded.get(0);
+		assertEquals("java.util.TreeMap", sortedMap.getClassName());
+		assertEquals("com.wedis.redis.io.Descendinx", ((JdkObject)sortedMap.get("comparator")).getClassName());
+		assertEquals(Arrays.asList("d", "D", "c", "C", "b", "B", "a", "A"),
+			sortedMap.getCustomData(0).subList(1, 9));
+		JdkObject sortedSet = (JdkObject)decoded.get(1);
+		assertEquals("java.util.TreeSet", sortedSet.getClassName());
+		assertTrue(decoded.get(2) == sortedMap);
+		assertArrayEquals(bytes, write(decoded));
+
+		// 换回原来的类名后按真正的比较器读出
+		List<?> restored = (List<?>)new ObjectInputStream(new ByteArrayInputStream(rename(write(decoded),
+			"com.wedis.redis.io.Descendinx", "com.wedis.redis.io.Descending"))).readObject();
+		assertEquals(map, restored.get(0));
+		assertTrue(((TreeMap<?, ?>)restored.get(0)).comparator() instanceof Descending);
+		assertEquals(Arrays.asList("d", "c", "b", "a"), new ArrayList<>((TreeSet<?>)restored.get(1)));
+		assertTrue(((TreeSet<?>)restored.get(1)).comparator() instanceof Descending);
+	}
+}
+
+enum Level {
+	LOW, HIGH
+}
+
+/**
+ * 有同名字段的父类，writeObject在字段之后写出超过一块的块数据和对象
+ */
+class Ledger extends Item {
+	private static final long serialVersionUID = 7L;
+
+	private String name;
+	private int count;
+	private Level level;
+	private transient byte[] journal;
+
+	Ledger(String name, int journalSize, Level level) {
+		super("base-" + name, journalSize);
+		this.name = name;
+		this.count = journalSize / 100;
+		this.level = level;
+		journal = new byte[journalSize];
+		for(int i = 0; i < journalSize; i++){
+			journal[i] = (byte)i;
+		}
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	public byte[] getJournal() {
+		return journal;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(journal.length);
+		out.write(journal);
+		out.writeObject(level);
+		out.writeUTF(name);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		journal = new byte[in.readInt()];
+		in.readFully(journal);
+		in.readObject();
+		in.readUTF();
+	}
+}
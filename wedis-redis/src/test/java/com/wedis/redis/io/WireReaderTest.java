@@ -0,0 +1,80 @@
+package com.wedis.redis.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class WireReaderTest {
+
+	private static byte[] bytes(int... values) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for(int b : values){
+			out.write(b);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for(byte[] b : parts){
+			out.write(b, 0, b.length);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void protobuf() throws Exception {
+		// {1: 150, 2: "hi", 3: {1: 1}, 3: {1: 2}}
+		byte[] value = concat(bytes(0x08, 0x96, 0x01), bytes(0x12, 0x02), "hi".getBytes(StandardCharsets.UTF_8),
+			bytes(0x1A, 0x02, 0x08, 0x01), bytes(0x1A, 0x02, 0x08, 0x02));
+		ProtobufReader reader = new ProtobufReader(value);
+
+		Map<?, ?> message = (Map<?, ?>)reader.readObject();
+		assertEquals(150L, message.get("1"));
+		assertEquals("hi", message.get("2"));
+		assertEquals(2, ((List<?>)message.get("3")).size());
+
+		List<WireNode> root = reader.children(WireNode.parsePath(""), 100);
+		assertEquals(4, root.size());
+		assertEquals("string", root.get(1).getType());
+		assertEquals("message", root.get(3).getType());
+		assertFalse(root.get(3).isLeaf());
+		assertEquals("3", root.get(3).getPath());
+
+		List<WireNode> nested = reader.children(WireNode.parsePath(root.get(3).getPath()), 100);
+		assertEquals(1, nested.size());
+		assertEquals("2", nested.get(0).getValue());
+		assertEquals("3.0", nested.get(0).getPath());
+
+		List<WireNode> limited = reader.children(new int[0], 2);
+		assertEquals(WireNode.MORE, limited.get(2).getType());
+	}
+
+	@Test
+	public void msgpack() throws Exception {
+		// {"a": [1, {"b": true}], "c": "x"}
+		byte[] value = bytes(0x82, 0xA1, 'a', 0x92, 0x01, 0x81, 0xA1, 'b', 0xC3, 0xA1, 'c', 0xA1, 'x');
+		MsgpackReader reader = new MsgpackReader(value);
+
+		Map<?, ?> map = (Map<?, ?>)reader.readObject();
+		assertEquals("x", map.get("c"));
+		assertEquals(true, ((Map<?, ?>)((List<?>)map.get("a")).get(1)).get("b"));
+
+		List<WireNode> root = reader.children(new int[0], 100);
+		assertEquals("a", root.get(0).getName());
+		assertEquals("array", root.get(0).getType());
+		assertEquals("x", root.get(1).getValue());
+
+		List<WireNode> nested = reader.children(WireNode.parsePath("0.1"), 100);
+		assertEquals("b", nested.get(0).getName());
+		assertEquals("true", nested.get(0).getValue());
+		assertTrue(nested.get(0).isLeaf());
+	}
+}
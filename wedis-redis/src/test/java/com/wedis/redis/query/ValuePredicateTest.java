@@ -0,0 +1,118 @@
+package com.wedis.redis.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.wedis.base.bean.QueryCondition;
+import com.wedis.base.exception.CoreException;
+
+public class ValuePredicateTest {
+
+	private static byte[] serialize(Object obj) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(obj);
+		oos.close();
+		return baos.toByteArray();
+	}
+
+	private static ValuePredicate where(String... conditions) {
+		List<QueryCondition> list = new ArrayList<>();
+		for(int i = 0; i < conditions.length; i += 3){
+			QueryCondition condition = new QueryCondition();
+			condition.setPath(conditions[i]);
+			condition.setOp(conditions[i + 1]);
+			condition.setValue(conditions[i + 2]);
+			list.add(condition);
+		}
+		return new ValuePredicate(list);
+	}
+
+	@Test
+	public void jdkValue() throws Exception {
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put("user", new User(42, "alice"));
+		attributes.put("tags", new ArrayList<>(Arrays.asList("vip", "beta")));
+		attributes.put("blob", new byte[4096]);
+		attributes.put("paidAt", new Date(1500000000000L));
+		byte[] value = serialize(new Order(Status.CANCELLED, new BigDecimal("99.90"), attributes));
+
+		Map<String, Object> values = where("attributes.user.id", "==", "42", "status", "==", "CANCELLED")
+			.evaluate(value);
+		assertNotNull(values);
+		assertEquals(42, values.get("attributes.user.id"));
+		assertEquals("CANCELLED", values.get("status"));
+
+		assertNotNull(where("amount", ">", "99.5", "amount", "<=", "99.9").evaluate(value));
+		// Date按毫秒数比较
+		assertNotNull(where("attributes.paidAt", ">=", "1500000000000").evaluate(value));
+		assertNull(where("attributes.paidAt", "<", "1500000000000").evaluate(value));
+		assertNotNull(where("attributes.tags", "contains", "vip").evaluate(value));
+		assertNotNull(where("attributes.user.name", ">=", "alice").evaluate(value));
+		assertNotNull(where("attributes.missing", "==", null).evaluate(value));
+		assertNotNull(where("attributes.user", "exists", null).evaluate(value));
+		assertNull(where("attributes.user.id", "!=", "42").evaluate(value));
+		assertNull(where("attributes.tags", "contains", "ops").evaluate(value));
+		assertNull(where("attributes.missing", "exists", null).evaluate(value));
+	}
+
+	@Test
+	public void jsonValue() throws Exception {
+		byte[] value = "{\"user\":{\"id\":42,\"roles\":[\"admin\",\"ops\"]},\"status\":\"PAID\",\"total\":12.5}"
+			.getBytes(StandardCharsets.UTF_8);
+		assertNotNull(where("user.id", "=", "42.0", "user.roles.1", "==", "ops").evaluate(value));
+		assertNotNull(where("total", "<", "13", "status", "!=", "CANCELLED").evaluate(value));
+		assertNotNull(where("user", "contains", "roles").evaluate(value));
+		assertNull(where("status", "==", "CANCELLED").evaluate(value));
+		assertNull(where("user.roles.5", "exists", null).evaluate(value));
+	}
+
+	@Test(expected = CoreException.class)
+	public void invalidOperator() {
+		where("user.id", "~", "42");
+	}
+
+	enum Status {
+		PAID, CANCELLED
+	}
+
+	static class User implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final int id;
+		private final String name;
+
+		User(int id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+	}
+
+	static class Order implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final Status status;
+		private final BigDecimal amount;
+		private final Map<String, Object> attributes;
+
+		Order(Status status, BigDecimal amount, Map<String, Object> attributes) {
+			this.status = status;
+			this.amount = amount;
+			this.attributes = attributes;
+		}
+	}
+}
@@ -0,0 +1,9 @@
+package com.wedis.service;
+
+import java.io.IOException;
+
+import com.wedis.base.dto.CachePageDto;
+
+public interface CacheCallback {
+	void doInPage(CachePageDto page) throws IOException;
+}
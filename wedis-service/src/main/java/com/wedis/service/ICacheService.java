@@ -1,9 +1,63 @@
 package com.wedis.service;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
+import com.wedis.base.bean.QueryParam;
+import com.wedis.base.bean.ScanParam;
 import com.wedis.base.dto.CacheDto;
+import com.wedis.base.dto.CacheValuesDto;
+import com.wedis.base.dto.QueryPageDto;
+import com.wedis.redis.io.JdkInputStream;
+import com.wedis.redis.io.WireNode;
 
 public interface ICacheService {
-	List<CacheDto> listCache(Long connId, Long db);
+	/**
+	 * 分批SCAN key，每扫描到一批key就回调一次，返回下一页的游标
+	 */
+	String listCache(Long connId, Integer db, ScanParam param, CacheCallback callback)
+		throws IOException;
+
+	/**
+	 * 批量取回一页key的类型、过期时间、内存占用和值的预览，key为listCache返回的可打印形式
+	 */
+	List<CacheDto> inspectCache(Long connId, Integer db, List<String> keys);
+
+	/**
+	 * 打开一个jdk序列化的值，已经校验过流的头部，调用accept以事件的方式读取。
+	 * preview为true时只从redis取值的前面一部分，accept按预览限制推送，超出的部分以truncated标记代替
+	 */
+	JdkInputStream openJdkValue(Long connId, Integer db, String key, boolean preview)
+		throws IOException;
+
+	/**
+	 * 批量取回一页字符串类型的值，按开头的字节识别每个值的格式，并行解码后以json返回。
+	 * 单个值失败时只在这个值中返回错误信息
+	 */
+	CacheValuesDto decodeValues(Long connId, Integer db, List<String> keys);
+
+	/**
+	 * 逐层展开protobuf或MessagePack的值，返回path指向的节点的直接子节点，path为空时返回根节点的子节点。
+	 * 只解析路径上的节点，其他分支按长度跳过
+	 */
+	List<WireNode> expandValue(Long connId, Integer db, String key, String path);
+
+	/**
+	 * 按值中字段的条件查询key：SCAN遍历keyspace，每批key用MGET取回值后并行解码和判断，
+	 * 每判断完一批就回调一次，第一次回调在开始扫描之前，只有queryId。
+	 * 遍历完成、匹配数达到limit或被取消时结束，返回最后的状态，达到limit时这一批中剩余的key不再返回
+	 */
+	QueryPageDto queryValues(Long connId, Integer db, QueryParam param, QueryCallback callback)
+		throws IOException;
+
+	/**
+	 * 取消正在执行的查询，查询在判断完当前这一批后结束，查询不存在或已经结束时返回false
+	 */
+	boolean cancelQuery(long queryId);
+
+	/**
+	 * 反序列化相关的统计
+	 */
+	Map<String, Long> metrics();
 }
@@ -1,6 +1,8 @@
 package com.wedis.service;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 import com.wedis.base.dto.ConnectionDto;
 
@@ -12,4 +14,12 @@ public interface IConnectionService {
 	public boolean testConnecton(ConnectionDto conn);
 
 	public ConnectionDto load(Long id);
+
+	public Map<String, Long> metrics();
+
+	public List<String> listJars(Long id);
+
+	public void saveJar(Long id, String fileName, InputStream in);
+
+	public boolean deleteJar(Long id, String fileName);
 }
@@ -0,0 +1,9 @@
+package com.wedis.service;
+
+import java.io.IOException;
+
+import com.wedis.base.dto.QueryPageDto;
+
+public interface QueryCallback {
+	void doInQuery(QueryPageDto page) throws IOException;
+}
@@ -1,28 +1,469 @@
 package com.wedis.service.impl;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
-import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.wedis.base.bean.QueryParam;
+import com.wedis.base.bean.RedisInfo;
+import com.wedis.base.bean.ScanParam;
 import com.wedis.base.dto.CacheDto;
-import com.wedis.redis.factory.WedisConnectionFactory;
+import com.wedis.base.dto.CachePageDto;
+import com.wedis.base.dto.CacheValuesDto;
+import com.wedis.base.dto.QueryPageDto;
+import com.wedis.base.enums.ResponseCode;
+import com.wedis.base.enums.SerializeType;
+import com.wedis.base.exception.CoreException;
+import com.wedis.base.util.BinaryUtil;
+import com.wedis.redis.converter.BatchDecoder;
+import com.wedis.redis.converter.BatchResult;
+import com.wedis.redis.converter.JdkDeserializingConverter;
+import com.wedis.redis.decoder.ValueDecoderRegistry;
+import com.wedis.redis.factory.ClassLoaderFactory;
+import com.wedis.redis.io.ClassMissCache;
+import com.wedis.redis.io.JarClassLoader;
+import com.wedis.redis.io.JdkInputStream;
+import com.wedis.redis.io.JdkInputStreamPool;
+import com.wedis.redis.io.JdkIntrinsic;
+import com.wedis.redis.io.MsgpackReader;
+import com.wedis.redis.io.ProtobufReader;
+import com.wedis.redis.io.VisitLimit;
+import com.wedis.redis.io.WireNode;
+import com.wedis.redis.io.WireReader;
+import com.wedis.redis.query.ValuePredicate;
+import com.wedis.redis.template.KeyMeta;
+import com.wedis.redis.template.ScanCallback;
+import com.wedis.redis.template.WedisTemplate;
+import com.wedis.service.CacheCallback;
 import com.wedis.service.ICacheService;
+import com.wedis.service.QueryCallback;
 
 @Service
-public class CacheServiceImpl implements ICacheService {
+public class CacheServiceImpl implements ICacheService, InitializingBean {
+	private static final Logger logger = LoggerFactory.getLogger(CacheServiceImpl.class);
 
+	/** 字符串类型预览的字节数 */
+	private static final int PREVIEW_BYTES = 256;
+	/** 集合类型预览的元素个数 */
+	private static final int PREVIEW_ITEMS = 10;
+
+	/** 预览jdk序列化的值时只从redis取前面的字节数 */
+	@Value("${wedis.value.preview-bytes:65536}")
+	private int valuePreviewBytes;
+	/** 预览时每个数组或集合最多推送的元素个数 */
+	@Value("${wedis.value.preview-elements:100}")
+	private int valuePreviewElements;
+	/** 预览时对象最多嵌套的层数 */
+	@Value("${wedis.value.preview-depth:16}")
+	private int valuePreviewDepth;
+	/** 预览时字符串最多解码的字节数 */
+	@Value("${wedis.value.preview-string-bytes:1024}")
+	private int valuePreviewStringBytes;
+	/** 批量反序列化值的并行线程数 */
+	@Value("${wedis.value.decode-threads:4}")
+	private int valueDecodeThreads;
+	/** 逐层展开值时每个节点最多返回的子节点个数 */
+	@Value("${wedis.value.tree-children:1000}")
+	private int valueTreeChildren;
+
+	/** 值查询每秒最多扫描的key数量，请求中的rate不能超过它，0表示不限速 */
+	@Value("${wedis.query.max-rate:5000}")
+	private int queryMaxRate;
+	/** 值查询最多返回的匹配key数量 */
+	@Value("${wedis.query.max-matches:10000}")
+	private int queryMaxMatches;
+	/** 同时执行的值查询的数量上限 */
+	@Value("${wedis.query.max-running:4}")
+	private int queryMaxRunning;
+
+	/** 按每个值开头的字节识别格式 */
+	private final ValueDecoderRegistry decoders = ValueDecoderRegistry.getDefault();
+	/** 按应用jar中的类解码jdk序列化的值 */
+	private final JdkDeserializingConverter jdkConverter = new JdkDeserializingConverter();
+	/** 批量识别格式、解码并转换成json，在valueDecodeThreads个线程中并行 */
+	private BatchDecoder batchDecoder;
+	private final AtomicLong queryIds = new AtomicLong();
+	/** 正在执行的值查询，queryId -> 取消标记 */
+	private final Map<Long, AtomicBoolean> runningQueries = new ConcurrentHashMap<>();
+	/** 值查询的许可，数量为queryMaxRunning */
+	private Semaphore querySlots;
+
+	@Autowired
+	private WedisTemplate template;
 	@Autowired
-	private WedisConnectionFactory factorys;
+	private ClassLoaderFactory classLoaders;
+
+	@Override
+	public void afterPropertiesSet() {
+		batchDecoder = new BatchDecoder(
+			source -> JSON.toJSONString(decoders.decode(source)), Math.max(1, valueDecodeThreads));
+		querySlots = new Semaphore(Math.max(0, queryMaxRunning));
+	}
+
+	@Override
+	public String listCache(Long connId, Integer db, ScanParam param,
+		final CacheCallback callback) throws IOException {
+		RedisInfo<byte[], byte[]> info = new RedisInfo<>();
+		info.setId(connId);
+		info.setDb(db);
+		return template.scan(info, param, new ScanCallback() {
+			@Override
+			public void doInScan(List<byte[]> keys, byte[] cursor) throws IOException {
+				List<CacheDto> caches = new ArrayList<>(keys.size());
+				for(byte[] key : keys){
+					CacheDto cache = new CacheDto();
+					cache.setKey(BinaryUtil.toPrintable(key));
+					caches.add(cache);
+				}
+				callback.doInPage(
+					new CachePageDto(new String(cursor, StandardCharsets.US_ASCII), caches));
+			}
+		});
+	}
+
+	@Override
+	public List<CacheDto> inspectCache(Long connId, Integer db, List<String> keys) {
+		RedisInfo<byte[], byte[]> info = new RedisInfo<>();
+		info.setId(connId);
+		info.setDb(db);
+		List<byte[]> binaryKeys = new ArrayList<>(keys.size());
+		for(String key : keys){
+			binaryKeys.add(BinaryUtil.fromPrintable(key));
+		}
+
+		List<KeyMeta> metas = template.inspect(info, binaryKeys, PREVIEW_BYTES, PREVIEW_ITEMS);
+		List<CacheDto> caches = new ArrayList<>(metas.size());
+		for(KeyMeta meta : metas){
+			CacheDto cache = new CacheDto();
+			cache.setKey(BinaryUtil.toPrintable(meta.getKey()));
+			if(meta.getError() != null){
+				cache.setValue("(error) " + meta.getError());
+			}else{
+				cache.setType(meta.getType());
+				cache.setTtl(meta.getTtl());
+				cache.setSize(meta.getSize());
+				cache.setLength(meta.getLength());
+				cache.setValue(preview(meta));
+				if("string".equals(meta.getType()))
+					// 预览的前PREVIEW_BYTES个字节足够识别格式
+					cache.setFormat(decoders.detect(meta.getItems().get(0)).getType().name());
+			}
+			caches.add(cache);
+		}
+		return caches;
+	}
+
+	@Override
+	public JdkInputStream openJdkValue(Long connId, Integer db, String key, boolean preview)
+		throws IOException {
+		RedisInfo<byte[], byte[]> info = new RedisInfo<>();
+		info.setId(connId);
+		info.setDb(db);
+		byte[] value;
+		if(preview){
+			// 只取前面的字节，很大的值也不会整个读到内存中
+			value = template.getRange(info, BinaryUtil.fromPrintable(key), 0, valuePreviewBytes - 1);
+		}else{
+			value = template.get(info, BinaryUtil.fromPrintable(key));
+		}
+		if(value == null || value.length == 0)
+			throw new CoreException(ResponseCode.KEY_NOT_EXIST, key);
+		JdkInputStream in;
+		try{
+			in = new JdkInputStream(value);
+		}catch(StreamCorruptedException | EOFException e){
+			throw new CoreException(ResponseCode.JDK_DESERIALIZE_FAILED, e.getMessage());
+		}
+		if(preview){
+			in.setVisitLimit(new VisitLimit(valuePreviewElements, valuePreviewDepth,
+				valuePreviewStringBytes, valuePreviewBytes));
+		}
+		return in;
+	}
+
+	@Override
+	public CacheValuesDto decodeValues(Long connId, Integer db, List<String> keys) {
+		RedisInfo<byte[], byte[]> info = new RedisInfo<>();
+		info.setId(connId);
+		info.setDb(db);
+		List<byte[]> binaryKeys = new ArrayList<>(keys.size());
+		for(String key : keys){
+			binaryKeys.add(BinaryUtil.fromPrintable(key));
+		}
+
+		List<byte[]> values = template.mget(info, binaryKeys);
+		// 连接配置了应用jar时jdk序列化的值按应用的类解码
+		JarClassLoader loader = classLoaders.acquire(connId);
+		BatchResult result;
+		try{
+			if(loader == null){
+				result = batchDecoder.decodeAll(values);
+			}else{
+				// 应用的类按loader自己的配置输出，全局的配置中不留下应用的类
+				SerializeConfig config = loader.getSerializeConfig();
+				result = batchDecoder.decodeAll(values, source -> decodeTyped(source, loader, config));
+			}
+		}finally{
+			if(loader != null)
+				loader.release();
+		}
+		List<CacheDto> caches = new ArrayList<>(keys.size());
+		for(int i = 0; i < keys.size(); i++){
+			CacheDto cache = new CacheDto();
+			cache.setKey(keys.get(i));
+			byte[] value = values.get(i);
+			if(value != null){
+				cache.setType("string");
+				cache.setLength((long)value.length);
+				cache.setFormat(decoders.detect(value).getType().name());
+				cache.setValue(result.getError(i) != null ? "(error) " + result.getError(i)
+					: (String)result.getValue(i));
+			}
+			caches.add(cache);
+		}
+		logger.debug("decode {} values in {}us, failed:{}, max:{}us", result.size(),
+			result.getElapsedNanos() / 1000, result.getFailed(), result.getMaxNanos() / 1000);
+		return new CacheValuesDto(caches, result.getFailed(), result.getElapsedNanos() / 1000,
+			result.getMaxNanos() / 1000);
+	}
+
+	/**
+	 * jdk序列化的值使用应用jar中的类解码，其他格式与不使用应用jar时相同
+	 */
+	private String decodeTyped(byte[] source, JarClassLoader loader, SerializeConfig config) {
+		if(decoders.detect(source).getType() != SerializeType.JDK)
+			return JSON.toJSONString(decoders.decode(source));
+		return JSON.toJSONString(jdkConverter.convert(source, loader), config);
+	}
 
 	@Override
-	public List<CacheDto> listCache(Long connId, Long db) {
-		RedisTemplate<byte[], byte[]> template = factorys.getTemplate(connId);
-		String key = new StringRedisSerializer()
-			.deserialize(new JdkSerializationRedisSerializer().serialize("bb"));
-		return null;
+	public List<WireNode> expandValue(Long connId, Integer db, String key, String path) {
+		RedisInfo<byte[], byte[]> info = new RedisInfo<>();
+		info.setId(connId);
+		info.setDb(db);
+		byte[] value = template.get(info, BinaryUtil.fromPrintable(key));
+		if(value == null || value.length == 0)
+			throw new CoreException(ResponseCode.KEY_NOT_EXIST, key);
+		WireReader reader;
+		SerializeType type = decoders.detect(value).getType();
+		switch(type){
+		case PROTOBUF:
+			reader = new ProtobufReader(value);
+			break;
+		case MSGPACK:
+			reader = new MsgpackReader(value);
+			break;
+		default:
+			throw new CoreException(ResponseCode.VALUE_DECODE_FAILED, "not a protobuf or msgpack value: " + type);
+		}
+		try{
+			return reader.children(WireNode.parsePath(path), valueTreeChildren);
+		}catch(IOException | NumberFormatException e){
+			// 两次展开之间值被修改时路径可能已经不存在
+			throw new CoreException(ResponseCode.VALUE_DECODE_FAILED, e.getMessage());
+		}
+	}
+
+	@Override
+	public QueryPageDto queryValues(Long connId, Integer db, QueryParam param,
+		QueryCallback callback) throws IOException {
+		ValuePredicate predicate = new ValuePredicate(decoders, param.getConditions());
+		int batch = param.getCount() == null || param.getCount() <= 0 ? 500
+			: Math.min(param.getCount(), 1000);
+		int limit = param.getLimit() == null || param.getLimit() <= 0 ? queryMaxMatches
+			: Math.min(param.getLimit(), queryMaxMatches);
+		int rate = param.getRate() == null || param.getRate() <= 0 ? queryMaxRate
+			: queryMaxRate <= 0 ? param.getRate() : Math.min(param.getRate(), queryMaxRate);
+		RedisInfo<byte[], byte[]> info = new RedisInfo<>();
+		info.setId(connId);
+		info.setDb(db);
+		ScanParam scan = new ScanParam();
+		scan.setMatch(param.getMatch());
+		scan.setCount(batch);
+
+		if(!querySlots.tryAcquire())
+			throw new CoreException(ResponseCode.QUERY_REJECTED,
+				"too many running queries, max:" + queryMaxRunning);
+		long queryId = queryIds.incrementAndGet();
+		AtomicBoolean cancelled = new AtomicBoolean();
+		runningQueries.put(queryId, cancelled);
+		// 继续查询的位置，还没有处理完任何一批时为空，"0"表示已遍历完成
+		String cursor = param.getCursor() == null || "0".equals(param.getCursor()) ? ""
+			: param.getCursor();
+		long scanned = 0;
+		long matched = 0;
+		long failed = 0;
+		try{
+			callback.doInQuery(
+				new QueryPageDto(queryId, cursor, 0, 0, 0, Collections.<CacheDto> emptyList()));
+			long start = System.nanoTime();
+			do{
+				scan.setCursor(cursor.isEmpty() ? "0" : cursor);
+				final List<byte[]> keys = new ArrayList<>();
+				String next = template.scan(info, scan, new ScanCallback() {
+					@Override
+					public void doInScan(List<byte[]> page, byte[] next) {
+						keys.addAll(page);
+					}
+				});
+				List<CacheDto> caches = new ArrayList<>();
+				// 已经判断过的key数量，这一批没有全部判断完时返回的游标仍是这一批开始的游标，
+				// 继续查询时重新判断这一批，可能重复返回这一批中已经返回过的key
+				int evaluated = 0;
+				// 最后一轮SCAN可能使这一批超过MGET的上限
+				for(int from = 0; from < keys.size() && matched < limit && !cancelled.get(); from += batch){
+					List<byte[]> chunk = keys.subList(from, Math.min(from + batch, keys.size()));
+					List<byte[]> values = template.mget(info, chunk);
+					BatchResult result = batchDecoder.decodeAll(values,
+						source -> cancelled.get() ? null : predicate.evaluate(source));
+					// 取消后没有判断的值结果为null，丢弃这一小批
+					if(cancelled.get())
+						break;
+					scanned += chunk.size();
+					failed += result.getFailed();
+					int i = 0;
+					for(; i < chunk.size() && matched < limit; i++){
+						if(result.getValue(i) == null)
+							continue;
+						CacheDto cache = new CacheDto();
+						cache.setKey(BinaryUtil.toPrintable(chunk.get(i)));
+						cache.setType("string");
+						cache.setLength((long)values.get(i).length);
+						cache.setFormat(decoders.detect(values.get(i)).getType().name());
+						cache.setValue(JSON.toJSONString(result.getValue(i)));
+						caches.add(cache);
+						matched++;
+					}
+					evaluated = from + i;
+				}
+				if(evaluated == keys.size()){
+					cursor = next;
+				}
+				callback.doInQuery(new QueryPageDto(queryId, cursor, scanned, matched, failed, caches));
+				throttle(start, scanned, rate, cancelled);
+			}while(!"0".equals(cursor) && matched < limit && !cancelled.get());
+		}finally{
+			runningQueries.remove(queryId);
+			querySlots.release();
+		}
+		logger.debug("query {} scanned:{}, matched:{}, failed:{}, cancelled:{}", queryId, scanned,
+			matched, failed, cancelled.get());
+		QueryPageDto last = new QueryPageDto(queryId, cursor, scanned, matched, failed,
+			Collections.<CacheDto> emptyList());
+		last.setDone(true);
+		last.setCancelled(cancelled.get());
+		return last;
+	}
+
+	@Override
+	public boolean cancelQuery(long queryId) {
+		AtomicBoolean cancelled = runningQueries.get(queryId);
+		if(cancelled == null)
+			return false;
+		cancelled.set(true);
+		return true;
+	}
+
+	/**
+	 * 按每秒rate个key限速，扫描得比预期快时等待，等待时每100ms检查一次是否被取消
+	 */
+	private void throttle(long start, long scanned, int rate, AtomicBoolean cancelled)
+		throws InterruptedIOException {
+		if(rate <= 0)
+			return;
+		long wait;
+		while(!cancelled.get()
+			&& (wait = start + scanned * TimeUnit.SECONDS.toNanos(1) / rate - System.nanoTime()) > 0){
+			try{
+				Thread.sleep(Math.min(TimeUnit.NANOSECONDS.toMillis(wait) + 1, 100));
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("query interrupted");
+			}
+		}
+	}
+
+	@Override
+	public Map<String, Long> metrics() {
+		Map<String, Long> metrics = new LinkedHashMap<>();
+		metrics.put("classMissHits", ClassMissCache.hits());
+		metrics.put("classMissMisses", ClassMissCache.misses());
+		metrics.put("classMissSize", (long)ClassMissCache.size());
+		metrics.put("intrinsicReads", JdkIntrinsic.reads());
+		metrics.put("decoderReused", JdkInputStreamPool.reused());
+		metrics.put("decoderCreated", JdkInputStreamPool.created());
+		metrics.put("batchCount", batchDecoder.batches());
+		metrics.put("batchValues", batchDecoder.values());
+		metrics.put("batchFailures", batchDecoder.failures());
+		metrics.put("batchElapsedMicros", batchDecoder.elapsedNanos() / 1000);
+		metrics.put("batchMaxElapsedMicros", batchDecoder.maxElapsedNanos() / 1000);
+		metrics.put("runningQueries", (long)runningQueries.size());
+		metrics.putAll(classLoaders.metrics());
+		return metrics;
+	}
+
+	/**
+	 * 按redis-cli的格式输出预览，超出预览范围的部分以...结尾
+	 */
+	private String preview(KeyMeta meta) {
+		List<byte[]> items = meta.getItems();
+		StringBuilder sb = new StringBuilder();
+		switch(meta.getType()){
+		case "string":
+			byte[] value = items.get(0);
+			sb.append(BinaryUtil.toPrintable(value));
+			if(meta.getLength() > value.length)
+				sb.append("...");
+			return sb.toString();
+		case "hash":
+		case "zset":
+			// field,value或member,score交替出现
+			int pairs = Math.min(items.size() / 2, PREVIEW_ITEMS);
+			sb.append('{');
+			for(int i = 0; i < pairs; i++){
+				if(i > 0)
+					sb.append(", ");
+				sb.append(BinaryUtil.toPrintable(items.get(i * 2))).append('=')
+					.append(BinaryUtil.toPrintable(items.get(i * 2 + 1)));
+			}
+			if(meta.getLength() > pairs)
+				sb.append(pairs > 0 ? ", ..." : "...");
+			return sb.append('}').toString();
+		case "list":
+		case "set":
+			int n = Math.min(items.size(), PREVIEW_ITEMS);
+			sb.append('[');
+			for(int i = 0; i < n; i++){
+				if(i > 0)
+					sb.append(", ");
+				sb.append(BinaryUtil.toPrintable(items.get(i)));
+			}
+			if(meta.getLength() > n)
+				sb.append(n > 0 ? ", ..." : "...");
+			return sb.append(']').toString();
+		default:
+			return null;
+		}
 	}
 }
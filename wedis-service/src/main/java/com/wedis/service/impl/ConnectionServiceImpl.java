@@ -1,6 +1,9 @@
 package com.wedis.service.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -14,6 +17,7 @@ import com.wedis.base.dto.ConnectionDto;
 import com.wedis.base.enums.ResponseCode;
 import com.wedis.base.exception.CoreException;
 import com.wedis.dao.mapper.ConnectionInfoMapper;
+import com.wedis.redis.factory.ClassLoaderFactory;
 import com.wedis.redis.factory.WedisConnectionFactory;
 import com.wedis.service.IConnectionService;
 
@@ -28,14 +32,40 @@ public class ConnectionServiceImpl implements IConnectionService {
 	private ConnectionInfoMapper mapper;
 	@Autowired
 	private WedisConnectionFactory connFactory;
+	@Autowired
+	private ClassLoaderFactory classLoaders;
 
 	private static final Logger logger = LoggerFactory.getLogger(ConnectionServiceImpl.class);
 
 	@Override
 	public void saveConnection(ConnectionDto conn) {
+		checkPool(conn);
 		saveSetting(conn);
 		connFactory.destroy(conn.getId());
 		connFactory.addConnection(conn);
+		// classPath可能改变，下次解码时重新创建classloader
+		classLoaders.destroy(conn.getId());
+	}
+
+	/**
+	 * 连接池设置在创建连接池时直接使用，保存前检查范围，没有设置的项使用全局的默认值
+	 */
+	private static void checkPool(ConnectionDto conn) {
+		Integer maxTotal = conn.getMaxTotal();
+		Integer maxIdle = conn.getMaxIdle();
+		Integer minIdle = conn.getMinIdle();
+		checkRange("maxTotal", maxTotal, 1, Integer.MAX_VALUE);
+		checkRange("maxIdle", maxIdle, 0, maxTotal == null ? Integer.MAX_VALUE : maxTotal);
+		checkRange("minIdle", minIdle, 0, maxIdle == null ? Integer.MAX_VALUE : maxIdle);
+		checkRange("maxWaitMillis", conn.getMaxWaitMillis(), 0, Long.MAX_VALUE);
+		checkRange("timeout", conn.getTimeout(), 1, Integer.MAX_VALUE);
+		checkRange("preWarm", conn.getPreWarm(), 0, maxTotal == null ? Integer.MAX_VALUE : maxTotal);
+	}
+
+	private static void checkRange(String name, Number value, long min, long max) {
+		if(value != null && (value.longValue() < min || value.longValue() > max))
+			throw new CoreException(ResponseCode.SETTING_INVALID,
+				name + " must be between " + min + " and " + max + ", got " + value);
 	}
 
 	@Transactional
@@ -89,4 +119,34 @@ public class ConnectionServiceImpl implements IConnectionService {
 	public ConnectionDto load(Long id) {
 		return mapper.load(id);
 	}
+
+	@Override
+	public Map<String, Long> metrics() {
+		return connFactory.metrics();
+	}
+
+	@Override
+	public List<String> listJars(Long id) {
+		return classLoaders.listJars(id);
+	}
+
+	@Override
+	public void saveJar(Long id, String fileName, InputStream in) {
+		try{
+			classLoaders.saveJar(id, fileName, in);
+		}catch(IOException e){
+			logger.error("save jar error, id:{}, {}", id, e.toString());
+			throw new CoreException(ResponseCode.ERROR, e.getMessage());
+		}
+	}
+
+	@Override
+	public boolean deleteJar(Long id, String fileName) {
+		try{
+			return classLoaders.deleteJar(id, fileName);
+		}catch(IOException e){
+			logger.error("delete jar error, id:{}, {}", id, e.toString());
+			throw new CoreException(ResponseCode.ERROR, e.getMessage());
+		}
+	}
 }
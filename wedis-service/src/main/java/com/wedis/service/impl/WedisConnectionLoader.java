@@ -22,4 +22,10 @@ public class WedisConnectionLoader implements ConnectionLoader {
 		return connMapper.list();
 	}
 
+	@Override
+	@Transactional
+	public void touch(Long id, long lastUsed) {
+		connMapper.touch(id, lastUsed);
+	}
+
 }
@@ -8,6 +8,7 @@ import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
@@ -25,7 +26,20 @@ public class DruidDataSourceConfig {
 		return DruidDataSourceBuilder.create().build();
 	}
 
+	/**
+	 * 在mapper第一次使用之前补上旧库缺少的字段
+	 */
 	@Bean
+	public SchemaMigration schemaMigration(DataSource dataSource) {
+		return new SchemaMigration(dataSource)
+			// 最近使用时间，启动时预热最近使用过的连接
+			.addColumn("last_used", "bigint")
+			// 解码用的应用jar或目录，多个以;或换行分隔
+			.addColumn("class_path", "VARCHAR(2000)");
+	}
+
+	@Bean
+	@DependsOn("schemaMigration")
 	public SqlSessionTemplate sqlSessionTemplate(SqlSessionFactory sqlSessionFactory) {
 		return new SqlSessionTemplate(sqlSessionFactory);
 	}
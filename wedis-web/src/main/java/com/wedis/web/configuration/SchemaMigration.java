@@ -0,0 +1,65 @@
+package com.wedis.web.configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * schema.sql建表之后给旧库补上新增的字段。druid的wall不支持ADD COLUMN IF NOT EXISTS，
+ * 所以先查INFORMATION_SCHEMA.COLUMNS，只对不存在的字段执行ADD COLUMN，重复启动不会出错。
+ *
+ * 连接池设置的字段在这里固定加入，之后的功能新增的字段在创建时以addColumn各自登记
+ */
+public class SchemaMigration implements InitializingBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(SchemaMigration.class);
+	private static final String TABLE = "connection_info";
+	/** 连接池设置的字段名和类型 */
+	private static final Map<String, String> COLUMNS = new LinkedHashMap<>();
+
+	static{
+		// 连接池设置，为空时使用application.properties中的默认值
+		COLUMNS.put("max_total", "int(8)");
+		COLUMNS.put("max_idle", "int(8)");
+		COLUMNS.put("min_idle", "int(8)");
+		COLUMNS.put("max_wait_millis", "bigint");
+		COLUMNS.put("timeout", "int(8)");
+		COLUMNS.put("pre_warm", "int(8)");
+	}
+
+	private final JdbcTemplate jdbcTemplate;
+	/** 所有要补上的字段名和类型，按加入的先后顺序 */
+	private final Map<String, String> columns = new LinkedHashMap<>(COLUMNS);
+
+	public SchemaMigration(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	/**
+	 * 登记一个之后加入的字段，在已登记的字段之后补上
+	 */
+	public SchemaMigration addColumn(String name, String type) {
+		columns.put(name, type);
+		return this;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		for(Map.Entry<String, String> column : columns.entrySet()){
+			Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS"
+				+ " WHERE UPPER(TABLE_NAME) = UPPER(?) AND UPPER(COLUMN_NAME) = UPPER(?)", Integer.class, TABLE,
+				column.getKey());
+			if(count != null && count > 0)
+				continue;
+			jdbcTemplate.execute("ALTER TABLE `" + TABLE + "` ADD COLUMN `" + column.getKey() + "` "
+				+ column.getValue());
+			logger.info("add column {}.{}", TABLE, column.getKey());
+		}
+	}
+}
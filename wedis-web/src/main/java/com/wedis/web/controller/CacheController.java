@@ -1,16 +1,46 @@
 package com.wedis.web.controller;
 
+import java.io.IOException;
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.alibaba.fastjson.JSON;
+import com.wedis.base.bean.QueryParam;
+import com.wedis.base.bean.ScanParam;
+import com.wedis.base.dto.CacheDto;
+import com.wedis.base.dto.CachePageDto;
+import com.wedis.base.dto.CacheValuesDto;
+import com.wedis.base.dto.QueryPageDto;
+import com.wedis.base.enums.ResponseCode;
+import com.wedis.base.exception.CoreException;
 import com.wedis.base.util.BaseController;
 import com.wedis.base.vo.ApiResult;
+import com.wedis.redis.io.JdkInputStream;
+import com.wedis.redis.io.JsonStreamWriter;
+import com.wedis.redis.io.WireNode;
+import com.wedis.service.CacheCallback;
 import com.wedis.service.ICacheService;
+import com.wedis.service.QueryCallback;
 
 import redis.clients.jedis.Jedis;
 
@@ -18,14 +48,179 @@ import redis.clients.jedis.Jedis;
 @RequestMapping("/cache")
 public class CacheController extends BaseController {
 
+	private static final Logger logger = LoggerFactory.getLogger(CacheController.class);
+	private static final byte[] LINE_END = "\n".getBytes(StandardCharsets.UTF_8);
+	/** 流式输出值时ApiResult的开头部分 */
+	private static final String VALUE_PREFIX = "{\"code\":" + ResponseCode.SUCCESS.getCode()
+		+ ",\"msg\":null,\"content\":";
+
 	@Autowired
 	private ICacheService cacheService;
 
-	@RequestMapping(value = "/list/{id}/{db}", method = RequestMethod.GET)
-	public ApiResult<?> list(@PathVariable("id") Long connectionId, @PathVariable Long db) {
-		// cacheService.listCache(connectionId, db);
-		byte[] b = new JdkSerializationRedisSerializer().serialize("bb");
-		return success(new String(b));
+	/**
+	 * 以换行分隔的json流返回，每扫描到一批key就输出一行ApiResult&lt;CachePageDto&gt;，
+	 * 最后一行的cursor为下一页的游标
+	 */
+	@RequestMapping(value = "/list/{id}/{db}", method = RequestMethod.GET,
+		produces = MediaType.APPLICATION_STREAM_JSON_VALUE)
+	public StreamingResponseBody list(@PathVariable("id") final Long connectionId,
+		@PathVariable final Integer db, final ScanParam param) {
+		return new StreamingResponseBody() {
+			@Override
+			public void writeTo(final OutputStream out) throws IOException {
+				try{
+					String cursor = cacheService.listCache(connectionId, db, param,
+						new CacheCallback() {
+							@Override
+							public void doInPage(CachePageDto page) throws IOException {
+								writeLine(out, success(page));
+							}
+						});
+					writeLine(out, success(new CachePageDto(cursor, Collections.emptyList())));
+				}catch(CoreException e){
+					writeLine(out, response(e.getCode(), e.getMessage()));
+				}catch(RuntimeException e){
+					logger.error("scan keys error:{}", e.toString());
+					writeLine(out, response(ResponseCode.ERROR, e.getMessage()));
+				}
+			}
+		};
+	}
+
+	/**
+	 * 批量取回一页key的类型、过期时间、内存占用和值的预览，请求体为/list返回的key数组
+	 */
+	@PostMapping("/meta/{id}/{db}")
+	public ApiResult<?> meta(@PathVariable("id") Long connectionId, @PathVariable Integer db,
+		@RequestBody List<String> keys) {
+		List<CacheDto> caches;
+		try{
+			caches = cacheService.inspectCache(connectionId, db, keys);
+		}catch(RuntimeException e){
+			logger.error("inspect keys error:{}", e.toString());
+			return response(ResponseCode.ERROR, e.getMessage());
+		}
+		return success(caches);
+	}
+
+	/**
+	 * 批量取回一页字符串类型的值，按格式解码后以json返回，单个值解码失败时value为(error)开头的错误信息，
+	 * 同时返回这一批的耗时
+	 */
+	@PostMapping("/values/{id}/{db}")
+	public ApiResult<?> values(@PathVariable("id") Long connectionId, @PathVariable Integer db,
+		@RequestBody List<String> keys) {
+		CacheValuesDto values;
+		try{
+			values = cacheService.decodeValues(connectionId, db, keys);
+		}catch(RuntimeException e){
+			logger.error("decode values error:{}", e.toString());
+			return response(ResponseCode.ERROR, e.getMessage());
+		}
+		return success(values);
+	}
+
+	/**
+	 * 把jdk序列化的值直接以json写到响应中，不创建对象图，也不在内存中拼接整个json，
+	 * 返回{"code":200,"msg":null,"content":值}。默认只预览值的前面一部分，full为true时返回完整的值
+	 */
+	@RequestMapping(value = "/value/{id}/{db}", method = RequestMethod.GET,
+		produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+	public StreamingResponseBody value(@PathVariable("id") final Long connectionId,
+		@PathVariable final Integer db, @RequestParam final String key,
+		@RequestParam(defaultValue = "false") final boolean full) {
+		return new StreamingResponseBody() {
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				JdkInputStream in;
+				try{
+					in = cacheService.openJdkValue(connectionId, db, key, !full);
+				}catch(CoreException e){
+					out.write(JSON.toJSONBytes(response(e.getCode(), e.getMessage())));
+					return;
+				}catch(RuntimeException e){
+					logger.error("get value error:{}", e.toString());
+					out.write(JSON.toJSONBytes(response(ResponseCode.ERROR, e.getMessage())));
+					return;
+				}
+				Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+				writer.write(VALUE_PREFIX);
+				try{
+					in.accept(new JsonStreamWriter(writer));
+				}catch(IOException | RuntimeException e){
+					// 已经输出了部分内容，只能中断响应
+					logger.error("deserializing value error, key:{}, {}", key, e.toString());
+					writer.flush();
+					throw e;
+				}
+				writer.write('}');
+				writer.flush();
+			}
+		};
+	}
+
+	/**
+	 * 逐层展开protobuf或MessagePack的值，返回path指向的节点的直接子节点，只有被展开的节点需要解析
+	 */
+	@RequestMapping(value = "/tree/{id}/{db}", method = RequestMethod.GET)
+	public ApiResult<?> tree(@PathVariable("id") Long connectionId, @PathVariable Integer db,
+		@RequestParam String key, @RequestParam(defaultValue = "") String path) {
+		List<WireNode> nodes;
+		try{
+			nodes = cacheService.expandValue(connectionId, db, key, path);
+		}catch(CoreException e){
+			return response(e.getCode(), e.getMessage());
+		}catch(RuntimeException e){
+			logger.error("expand value error:{}", e.toString());
+			return response(ResponseCode.ERROR, e.getMessage());
+		}
+		return success(nodes);
+	}
+
+	/**
+	 * 按值中字段的条件查询key，以换行分隔的json流返回，每判断完一批key输出一行ApiResult&lt;QueryPageDto&gt;，
+	 * 第一行只有用于取消的queryId，最后一行done为true。客户端断开后查询在当前这一批结束时停止
+	 */
+	@RequestMapping(value = "/query/{id}/{db}", method = RequestMethod.POST,
+		produces = MediaType.APPLICATION_STREAM_JSON_VALUE)
+	public StreamingResponseBody query(@PathVariable("id") final Long connectionId,
+		@PathVariable final Integer db, @RequestBody final QueryParam param) {
+		return new StreamingResponseBody() {
+			@Override
+			public void writeTo(final OutputStream out) throws IOException {
+				try{
+					QueryPageDto last = cacheService.queryValues(connectionId, db, param,
+						new QueryCallback() {
+							@Override
+							public void doInQuery(QueryPageDto page) throws IOException {
+								writeLine(out, success(page));
+							}
+						});
+					writeLine(out, success(last));
+				}catch(CoreException e){
+					writeLine(out, response(e.getCode(), e.getMessage()));
+				}catch(RuntimeException e){
+					logger.error("query values error:{}", e.toString());
+					writeLine(out, response(ResponseCode.ERROR, e.getMessage()));
+				}
+			}
+		};
+	}
+
+	@PostMapping("/query/cancel/{queryId}")
+	public ApiResult<?> cancelQuery(@PathVariable Long queryId) {
+		return success(cacheService.cancelQuery(queryId));
+	}
+
+	@RequestMapping(value = "/metrics", method = RequestMethod.GET)
+	public ApiResult<Map<String, Long>> metrics() {
+		return success(cacheService.metrics());
+	}
+
+	private void writeLine(OutputStream out, ApiResult<?> result) throws IOException {
+		out.write(JSON.toJSONBytes(result));
+		out.write(LINE_END);
+		out.flush();
 	}
 
 	@RequestMapping(value = "/test")
@@ -1,6 +1,8 @@
 package com.wedis.web.controller;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -8,9 +10,12 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
 
 import com.wedis.base.dto.ConnectionDto;
+import com.wedis.base.enums.ResponseCode;
 import com.wedis.base.exception.CoreException;
 import com.wedis.base.util.BaseController;
 import com.wedis.base.vo.ApiResult;
@@ -43,6 +48,40 @@ public class ConnectionController extends BaseController {
 		return success(connService.list());
 	}
 
+	@GetMapping("/metrics")
+	public ApiResult<Map<String, Long>> metrics() {
+		return success(connService.metrics());
+	}
+
+	/**
+	 * 连接解码时使用的应用jar，包括classPath设置中的和上传的
+	 */
+	@GetMapping("/jar/{id}")
+	public ApiResult<List<String>> listJars(@PathVariable Long id) {
+		return success(connService.listJars(id));
+	}
+
+	@PostMapping("/jar/{id}")
+	public ApiResult<?> uploadJar(@PathVariable Long id, @RequestParam("file") MultipartFile file) {
+		try{
+			connService.saveJar(id, file.getOriginalFilename(), file.getInputStream());
+		}catch(CoreException e){
+			return response(e.getCode(), e.getMessage());
+		}catch(IOException e){
+			return response(ResponseCode.ERROR, e.getMessage());
+		}
+		return success();
+	}
+
+	@PostMapping("/jar/delete/{id}")
+	public ApiResult<?> deleteJar(@PathVariable Long id, @RequestParam String name) {
+		try{
+			return success(connService.deleteJar(id, name));
+		}catch(CoreException e){
+			return response(e.getCode(), e.getMessage());
+		}
+	}
+
 	@PostMapping("/test")
 	public ApiResult<?> testConn(@RequestBody ConnectionDto conn) {
 		try{
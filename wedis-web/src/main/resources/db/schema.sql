@@ -6,4 +6,6 @@ CREATE TABLE IF NOT EXISTS `connection_info` (
 	`port` int(8) NOT NULL DEFAULT 6379,
 	`pwd` VARCHAR(100),
 	PRIMARY KEY (`id`)
-);
\ No newline at end of file
+);
+
+-- 后来加入的字段由SchemaMigration在字段不存在时补上
@@ -5,6 +5,36 @@ var c;
 			var uri = window.location.search;
 			var re = new RegExp("" +val+ "=([^&?]*)", "ig");
 			return ((uri.match(re))?(uri.match(re)[0].substr(val.length+1)):null);
+		},
+		/**
+		 * 读取以换行分隔的json流，每收到完整的一行回调一次，init为fetch的参数，可以为空
+		 */
+		streamLines:function(url, onLine, init){
+			return fetch(url, init).then(function(resp){
+				let reader = resp.body.getReader();
+				let decoder = new TextDecoder('utf-8');
+				let rest = '';
+				let pump = function(){
+					return reader.read().then(function(r){
+						if(r.done){
+							if(rest.trim()){
+								onLine(rest);
+							}
+							return;
+						}
+						rest += decoder.decode(r.value, {stream:true});
+						let lines = rest.split('\n');
+						rest = lines.pop();
+						lines.forEach((line, index)=>{
+							if(line.trim()){
+								onLine(line);
+							}
+						});
+						return pump();
+					});
+				};
+				return pump();
+			});
 		}
 	}
-})();
\ No newline at end of file
+})();
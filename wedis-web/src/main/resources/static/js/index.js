@@ -10,8 +10,16 @@ var v = new Vue({
         			name:'',
         			host:'',
         			port:'',
-        			pwd:''
-        		}
+        			pwd:'',
+        			maxTotal:'',
+        			maxIdle:'',
+        			minIdle:'',
+        			maxWaitMillis:'',
+        			timeout:'',
+        			preWarm:'',
+        			classPath:''
+        		},
+        		jars:[]
         	},
         	selectConn:'',
         	conns:[
@@ -99,7 +107,9 @@ var v = new Vue({
     				let conn = resp.data.content;
     				v.editConnection.title='编辑连接';
     				v.editConnection.setting = conn;
+    				v.editConnection.jars=[];
     	    		v.editConnection.visible=true;
+    	    		v.loadJars();
     			}else{
 					v.$message({message:'未知错误',type:'warning'});
     			}
@@ -126,8 +136,41 @@ var v = new Vue({
     			name:'',
     			host:'localhost',
     			port:'6379',
-    			pwd:''
+    			pwd:'',
+    			maxTotal:'',
+    			maxIdle:'',
+    			minIdle:'',
+    			maxWaitMillis:'',
+    			timeout:'',
+    			preWarm:'',
+    			classPath:''
     		};
+    		this.editConnection.jars=[];
+    	},
+    	loadJars(){
+    		axios.get('/connection/jar/'+this.editConnection.setting.id).then(function(resp){
+    			if(resp.data.code == 200){
+    				v.editConnection.jars = resp.data.content;
+    			}
+    		});
+    	},
+    	jarUploaded(resp){
+    		if(resp.code == 200){
+    			v.$message({message:'上传成功',type:'success'});
+    			this.loadJars();
+    		}else{
+    			v.$message({message:'('+resp.code +') '+resp.msg,type:'error'});
+    		}
+    	},
+    	deleteJar(jar){
+    		axios.post('/connection/jar/delete/'+this.editConnection.setting.id, null, {params:{name:jar}})
+    			.then(function(resp){
+    				if(resp.data.code == 200 && resp.data.content){
+    					v.loadJars();
+    				}else{
+    					v.$message({message:'只能删除上传的jar',type:'warning'});
+    				}
+    			});
     	}
     }
 })
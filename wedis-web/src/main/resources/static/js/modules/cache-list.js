@@ -4,19 +4,213 @@ var v = new Vue({
 		return {
 			cacheData:[
 			],
-			test: null
+			query:{
+				db:0,
+				match:'',
+				type:'',
+				count:100
+			},
+			types:['string','list','set','zset','hash'],
+			ops:['==','!=','>','>=','<','<=','contains','exists'],
+			cursor:'0',
+			loading:false,
+			valueDialog:{
+				visible:false,
+				loading:false,
+				truncated:false,
+				key:'',
+				format:'',
+				tree:false,
+				text:''
+			},
+			queryDialog:{
+				visible:false,
+				conditions:[{path:'',op:'==',value:''}],
+				rate:5000,
+				limit:1000,
+				running:false,
+				queryId:null,
+				scanned:0,
+				matched:0,
+				failed:0,
+				rows:[]
+			}
 		};
 	},
 	methods:{
-		
+		search:function(){
+			this.cacheData = [];
+			this.load('0');
+		},
+		more:function(){
+			this.load(this.cursor);
+		},
+		load:function(cursor){
+			let q = this.query;
+			let url = '/cache/list/'+c.queryString('id')+'/'+q.db
+				+'?cursor='+cursor+'&count='+q.count
+				+'&match='+encodeURIComponent(q.match||'')
+				+'&type='+(q.type||'');
+			v.loading = true;
+			// 服务端每扫描到一批key就输出一行json，逐行解析以便第一批key能立即渲染
+			c.streamLines(url, function(line){
+				let resp = JSON.parse(line);
+				if(resp.code == 200){
+					v.cursor = resp.content.cursor;
+					let rows = [];
+					resp.content.caches.forEach((item, index)=>{
+						// 先声明元数据字段，异步取回后才能触发表格更新
+						v.cacheData.push(Object.assign({type:'',ttl:'',size:'',length:'',format:''}, item));
+						rows.push(v.cacheData[v.cacheData.length - 1]);
+					});
+					v.inspect(rows);
+				}else{
+					v.$message({message:'('+resp.code +') '+resp.msg,type:'error'});
+				}
+			}).then(function(){
+				v.loading = false;
+			}).catch(function(err){
+				v.loading = false;
+				v.$message({message:err,type:'warning'});
+			});
+		},
+		// 只有字符串类型的值可以查看，jdk序列化的值由服务端边反序列化边输出json
+		showValue:function(row){
+			if(row.type && row.type != 'string')
+				return;
+			this.valueDialog.key = row.key;
+			this.valueDialog.format = row.format;
+			// protobuf和MessagePack的值按树逐层展开，每次只解析被展开的节点
+			this.valueDialog.tree = row.format == 'PROTOBUF' || row.format == 'MSGPACK';
+			this.valueDialog.visible = true;
+			if(this.valueDialog.tree)
+				return;
+			this.loadValue(false);
+		},
+		// 默认只预览值的前面一部分，被截断的位置显示为@truncated
+		loadValue:function(full){
+			let d = this.valueDialog;
+			d.text = '';
+			d.truncated = false;
+			d.loading = true;
+			if(d.format && d.format != 'JDK'){
+				this.decodeValue();
+				return;
+			}
+			let url = '/cache/value/'+c.queryString('id')+'/'+this.query.db
+				+'?key='+encodeURIComponent(d.key)+'&full='+full;
+			axios.get(url, {transformResponse:[data=>data]}).then(function(resp){
+				d.loading = false;
+				d.truncated = !full && resp.data.indexOf('"@truncated":') >= 0;
+				// 值很大时不再格式化，直接显示原始json
+				if(resp.data.length > 1024 * 1024){
+					d.text = resp.data;
+					return;
+				}
+				let result = JSON.parse(resp.data);
+				if(result.code == 200){
+					d.text = JSON.stringify(result.content, null, 2);
+				}else{
+					d.text = '('+result.code +') '+result.msg;
+				}
+			}).catch(function(err){
+				d.loading = false;
+				d.text = String(err);
+			});
+		},
+		// 其他格式由服务端识别后整个解码成json
+		decodeValue:function(){
+			let d = this.valueDialog;
+			axios.post('/cache/values/'+c.queryString('id')+'/'+this.query.db, [d.key]).then(function(resp){
+				d.loading = false;
+				if(resp.data.code == 200){
+					let value = resp.data.content.caches[0].value;
+					try{
+						d.text = JSON.stringify(JSON.parse(value), null, 2);
+					}catch(e){
+						d.text = value;
+					}
+				}else{
+					d.text = '('+resp.data.code +') '+resp.data.msg;
+				}
+			}).catch(function(err){
+				d.loading = false;
+				d.text = String(err);
+			});
+		},
+		// 根节点的path为空，其他节点使用服务端返回的path
+		loadNode:function(node, resolve){
+			let d = this.valueDialog;
+			let path = node.level == 0 ? '' : node.data.path;
+			let url = '/cache/tree/'+c.queryString('id')+'/'+this.query.db
+				+'?key='+encodeURIComponent(d.key)+'&path='+encodeURIComponent(path);
+			axios.get(url).then(function(resp){
+				if(resp.data.code == 200){
+					resolve(resp.data.content.map(item=>Object.assign({
+						label:item.name+' ('+item.type+')'+(item.value != null ? ': '+item.value : '')
+					}, item)));
+				}else{
+					v.$message({message:'('+resp.data.code +') '+resp.data.msg,type:'error'});
+					resolve([]);
+				}
+			}).catch(function(err){
+				v.$message({message:String(err),type:'warning'});
+				resolve([]);
+			});
+		},
+		// 服务端按key的MATCH表达式SCAN，逐批解码值并判断条件，每判断完一批输出一行json
+		runQuery:function(){
+			let d = this.queryDialog;
+			d.rows = [];
+			d.scanned = d.matched = d.failed = 0;
+			d.running = true;
+			let body = {
+				match:this.query.match,
+				conditions:d.conditions.map(cond=>({path:cond.path, op:cond.op,
+					value:cond.op == 'exists' ? null : cond.value})),
+				rate:d.rate,
+				limit:d.limit
+			};
+			c.streamLines('/cache/query/'+c.queryString('id')+'/'+this.query.db, function(line){
+				let resp = JSON.parse(line);
+				if(resp.code == 200){
+					let page = resp.content;
+					d.queryId = page.queryId;
+					d.scanned = page.scanned;
+					d.matched = page.matched;
+					d.failed = page.failed;
+					page.caches.forEach(item=>d.rows.push(item));
+				}else{
+					v.$message({message:'('+resp.code +') '+resp.msg,type:'error'});
+				}
+			}, {method:'POST', headers:{'Content-Type':'application/json'}, body:JSON.stringify(body)}).then(function(){
+				d.running = false;
+			}).catch(function(err){
+				d.running = false;
+				v.$message({message:String(err),type:'warning'});
+			});
+		},
+		cancelQuery:function(){
+			let d = this.queryDialog;
+			if(d.queryId != null)
+				axios.post('/cache/query/cancel/'+d.queryId);
+		},
+		// 每批key只请求一次，服务端用pipeline取回类型、TTL、内存和值的预览
+		inspect:function(rows){
+			if(rows.length == 0)
+				return;
+			let keys = rows.map(item=>item.key);
+			axios.post('/cache/meta/'+c.queryString('id')+'/'+this.query.db, keys).then(function(resp){
+				if(resp.data.code == 200){
+					resp.data.content.forEach((meta, index)=>{
+						Object.assign(rows[index], meta);
+					});
+				}else{
+					v.$message({message:'('+resp.data.code +') '+resp.data.msg,type:'error'});
+				}
+			});
+		}
 	}
 });
 
-axios.get('/cache/list/'+c.queryString('id')+'/0/')
-	.then(function(resp){
-		if(resp.data.code==200){
-			let data = resp.data.content;
-			console.log(data);
-			cacheData = [-84, -19, 0, 5, 116, 0, 2, 98, 98];
-		}
-	});
\ No newline at end of file
+v.search();